@@ -133,9 +133,16 @@ public class Globals {
   public static final String EMBEDDED_FASTQSCREEN_PROJECT_XSL =
       "/fastqscreen_project.xsl";
 
+  /** Embedded viewer of the paginated QC report. */
+  public static final String EMBEDDED_QC_VIEWER = "/aozan_viewer.html";
+
   public static final String INDEX_HTML_TEMPLATE_FILENAME =
       "/template_index_run.html";
 
+  /** Template of the HTML reports of the undetermined indexes. */
+  public static final String UNDETERMINED_HTML_TEMPLATE_FILENAME =
+      "/template_undetermined_report.html";
+
   /** Default locale of the application. */
   public static final Locale DEFAULT_LOCALE = Locale.US;
 
@@ -157,6 +164,18 @@ public class Globals {
   /** QC data files extensions. */
   public static final String QC_DATA_EXTENSION = ".data";
 
+  /** QC JSON Lines files extensions. */
+  public static final String QC_JSON_LINES_EXTENSION = ".jsonl";
+
+  /** QC run data CSV files extensions. */
+  public static final String QC_DATA_CSV_EXTENSION = ".data.csv";
+
+  /** QC test results CSV files extensions. */
+  public static final String QC_TESTS_CSV_EXTENSION = ".tests.csv";
+
+  /** QC paginated report directories suffix. */
+  public static final String QC_PAGINATED_REPORT_SUFFIX = "-report";
+
   //
   // Private constants
   //
@@ -0,0 +1,521 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Strings;
+import com.google.gson.stream.JsonWriter;
+
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+
+/**
+ * This class define a writer of the paginated QC report, for the runs with
+ * too many samples for the HTML report created by the XSL stylesheet. The
+ * results of the tests are written in compact data files read by a static
+ * viewer that only renders the visible rows of the tables. The results of the
+ * run, the lanes, the projects and the pooled samples are written in a single
+ * file, and the samples of each project in their own file, loaded by the
+ * viewer when the section of the project is opened. The data files contain a
+ * JSON document wrapped in a function call, as the browsers forbid to request
+ * the local files from a page.
+ * @since 3.1
+ * @author agent
+ */
+final class PaginatedReportWriter
+    implements QCReport.ResultVisitor, Closeable {
+
+  /** Version of the format of the data files. */
+  static final int FORMAT_VERSION = 1;
+
+  /** Name of the viewer file. */
+  static final String VIEWER_FILENAME = "index.html";
+
+  /** Name of the directory of the data files. */
+  static final String DATA_DIRECTORY = "data";
+
+  /** Name of the data file of the run. */
+  static final String RUN_DATA_FILENAME = "run.js";
+
+  private static final String UNDETERMINED = "undetermined";
+
+  private final RunData data;
+  private final File outputDir;
+  private final Map<String, Section> sections = new LinkedHashMap<>();
+  private final Section samples = new Section("sample", "Samples");
+  private final Map<String, List<Row>> projectSamples = new LinkedHashMap<>();
+  private Row currentRow;
+
+  /**
+   * This interface define the writer of the JSON document of a data file.
+   */
+  private interface DataWriter {
+
+    void write(JsonWriter writer) throws IOException;
+  }
+
+  /**
+   * This class define a table of the report: the tests are the columns, and
+   * each entity tested is a row.
+   */
+  private static final class Section {
+
+    private final String entity;
+    private final String title;
+    private final List<AozanTest> columns = new ArrayList<>();
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final List<Row> rows = new ArrayList<>();
+
+    /**
+     * Get the index of the column of a test. The column is added if the test
+     * is new.
+     * @param test the test
+     * @return the index of the column
+     */
+    int columnIndex(final AozanTest test) {
+
+      return this.columnIndexes.computeIfAbsent(test.getName(), k -> {
+        this.columns.add(test);
+        return this.columns.size() - 1;
+      });
+    }
+
+    /**
+     * Write the columns of the section.
+     * @param writer the JSON writer
+     * @throws IOException if an error occurs while writing the columns
+     */
+    void writeColumns(final JsonWriter writer) throws IOException {
+
+      writer.name("columns").beginArray();
+      for (AozanTest test : this.columns) {
+        writer.beginObject();
+        writer.name("name").value(test.getName());
+        writer.name("title").value(Strings.nullToEmpty(test.getColumnName()));
+        writer.name("description")
+            .value(Strings.nullToEmpty(test.getDescription()));
+        writer.name("unit").value(Strings.nullToEmpty(test.getUnit()));
+        writer.endObject();
+      }
+      writer.endArray();
+    }
+
+    //
+    // Constructor
+    //
+
+    private Section(final String entity, final String title) {
+
+      this.entity = entity;
+      this.title = title;
+    }
+  }
+
+  /**
+   * This class define a row of a table: the results of the tests of an entity.
+   */
+  private static final class Row {
+
+    private final String entity;
+    private final int read;
+    private final int lane;
+    private final int id;
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final List<TestResult> results = new ArrayList<>();
+
+    /**
+     * Test if the row is the row of an entity.
+     * @param entity the type of the entity
+     * @param read the read
+     * @param lane the lane
+     * @param id the id of the entity
+     * @return true if the row is the row of the entity
+     */
+    boolean is(final String entity, final int read, final int lane,
+        final int id) {
+
+      return this.entity.equals(entity)
+          && this.read == read && this.lane == lane && this.id == id;
+    }
+
+    /**
+     * Set the result of a column.
+     * @param column the index of the column
+     * @param result the result
+     */
+    void set(final int column, final TestResult result) {
+
+      while (this.results.size() <= column) {
+        this.results.add(null);
+      }
+      this.results.set(column, result);
+    }
+
+    /**
+     * Get the lowest score of the results, ignoring the results without score.
+     * @return the lowest score or -1 if no result has a score
+     */
+    int minScore() {
+
+      int result = -1;
+      for (TestResult r : this.results) {
+        if (r != null
+            && r.getScore() >= 0 && (result == -1 || r.getScore() < result)) {
+          result = r.getScore();
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Write the row. Each result is written as an array with the score, the
+     * type and the value.
+     * @param writer the JSON writer
+     * @throws IOException if an error occurs while writing the row
+     */
+    void write(final JsonWriter writer) throws IOException {
+
+      writer.beginObject();
+
+      if (this.read > 0) {
+        writer.name("read").value(this.read);
+      }
+      if (this.lane > 0) {
+        writer.name("lane").value(this.lane);
+      }
+      if (this.id > 0) {
+        writer.name("id").value(this.id);
+      }
+      for (Map.Entry<String, String> e : this.attributes.entrySet()) {
+        writer.name(e.getKey()).value(e.getValue());
+      }
+
+      writer.name("cells").beginArray();
+      for (TestResult r : this.results) {
+
+        if (r == null) {
+          writer.nullValue();
+          continue;
+        }
+
+        writer.beginArray();
+        writer.value(r.getScore());
+        writer.value(r.getType());
+        StructuredDataWriter.writeValue(writer,
+            StructuredDataWriter.parseResultValue(r));
+        writer.endArray();
+      }
+      writer.endArray();
+
+      writer.endObject();
+    }
+
+    //
+    // Constructor
+    //
+
+    private Row(final String entity, final int read, final int lane,
+        final int id) {
+
+      this.entity = entity;
+      this.read = read;
+      this.lane = lane;
+      this.id = id;
+    }
+  }
+
+  @Override
+  public void visit(final String entity, final int read, final int lane,
+      final int id, final AozanTest test, final TestResult result)
+      throws IOException {
+
+    final Section section = getSection(entity);
+
+    // The results of an entity are contiguous
+    if (this.currentRow == null
+        || !this.currentRow.is(entity, read, lane, id)) {
+      this.currentRow = createRow(entity, read, lane, id);
+    }
+
+    this.currentRow.set(section.columnIndex(test), result);
+  }
+
+  private Section getSection(final String entity) {
+
+    if (this.samples.entity.equals(entity)) {
+      return this.samples;
+    }
+
+    return this.sections.computeIfAbsent(entity,
+        k -> new Section(k, sectionTitle(k)));
+  }
+
+  private static String sectionTitle(final String entity) {
+
+    switch (entity) {
+    case "run":
+      return "Run";
+    case "lane":
+      return "Lanes";
+    case "project":
+      return "Projects";
+    case "pooledsample":
+      return "Pooled samples";
+    default:
+      return entity;
+    }
+  }
+
+  private Row createRow(final String entity, final int read, final int lane,
+      final int id) {
+
+    final Row row = new Row(entity, read, lane, id);
+
+    switch (entity) {
+
+    case "project":
+      row.attributes.put("name", this.data.getProjectName(id));
+      break;
+
+    case "pooledsample":
+      row.attributes.put("name", this.data.getPooledSampleDemuxName(id));
+      row.attributes.put("project",
+          this.data.getPooledSampleProjectName(id));
+      row.attributes.put("index", this.data.getPooledSampleIndex(id));
+      break;
+
+    case "sample":
+      final String sampleName = this.data.getSampleDemuxName(id);
+      String projectName = this.data.getProjectSample(id);
+      projectName = Strings.isNullOrEmpty(projectName)
+          ? "Undefined project" : projectName;
+      final String index;
+
+      if (this.data.isUndeterminedSample(id)) {
+        index = UNDETERMINED;
+        projectName = UNDETERMINED;
+      } else {
+        index = this.data.isIndexedSample(id)
+            ? this.data.getIndexSample(id) : "NoIndex";
+      }
+
+      row.attributes.put("name",
+          sampleName == null ? UNDETERMINED : sampleName);
+      row.attributes.put("index", index);
+      row.attributes.put("description",
+          Strings.nullToEmpty(this.data.getSampleDescription(id)));
+
+      this.projectSamples.computeIfAbsent(projectName, k -> new ArrayList<>())
+          .add(row);
+      return row;
+
+    default:
+      break;
+    }
+
+    this.sections.get(entity).rows.add(row);
+
+    return row;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    final File dataDir = new File(this.outputDir, DATA_DIRECTORY);
+
+    if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+      throw new IOException("Unable to create directory: " + dataDir);
+    }
+
+    // Write the samples of the projects
+    int projectIndex = 0;
+    for (Map.Entry<String, List<Row>> e : this.projectSamples.entrySet()) {
+
+      final File file = new File(dataDir, projectFilename(++projectIndex));
+
+      writeDataFile(file, "loadProject", writer -> {
+
+        writer.beginObject();
+        writer.name("project").value(e.getKey());
+        writer.name("rows").beginArray();
+        for (Row row : e.getValue()) {
+          row.write(writer);
+        }
+        writer.endArray();
+        writer.endObject();
+      });
+    }
+
+    // Write the run data file
+    writeDataFile(new File(dataDir, RUN_DATA_FILENAME), "loadRun",
+        this::writeRun);
+
+    // Copy the viewer
+    try (InputStream is = PaginatedReportWriter.class
+        .getResourceAsStream(Globals.EMBEDDED_QC_VIEWER)) {
+
+      if (is == null) {
+        throw new IOException(
+            "Unable to find the viewer: " + Globals.EMBEDDED_QC_VIEWER);
+      }
+
+      Files.copy(is, new File(this.outputDir, VIEWER_FILENAME).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Write the results of the run, the lanes, the projects and the pooled
+   * samples, and the list of the projects of the samples.
+   * @param writer the JSON writer
+   * @throws IOException if an error occurs while writing the data
+   */
+  private void writeRun(final JsonWriter writer) throws IOException {
+
+    writer.beginObject();
+    writer.name("format").value("aozan.report");
+    writer.name("version").value(FORMAT_VERSION);
+
+    writer.name("run").beginObject();
+    writer.name("id").value(this.data.get("run.info.run.id"));
+    writer.name("date").value(this.data.get("run.info.date"));
+    writer.name("instrument").value(this.data.get("run.info.instrument"));
+    writer.name("flowcell").value(this.data.get("run.info.flow.cell.id"));
+    writer.name("aozanVersion").value(Globals.APP_VERSION_STRING);
+    writer.endObject();
+
+    writer.name("sections").beginArray();
+    for (Section section : this.sections.values()) {
+      writer.beginObject();
+      writer.name("entity").value(section.entity);
+      writer.name("title").value(section.title);
+      section.writeColumns(writer);
+      writer.name("rows").beginArray();
+      for (Row row : section.rows) {
+        row.write(writer);
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+    writer.endArray();
+
+    writer.name("samples").beginObject();
+    writer.name("title").value(this.samples.title);
+    this.samples.writeColumns(writer);
+    writer.name("projects").beginArray();
+    int projectIndex = 0;
+    for (Map.Entry<String, List<Row>> e : this.projectSamples.entrySet()) {
+
+      int minScore = -1;
+      for (Row row : e.getValue()) {
+        final int score = row.minScore();
+        if (score != -1 && (minScore == -1 || score < minScore)) {
+          minScore = score;
+        }
+      }
+
+      writer.beginObject();
+      writer.name("name").value(e.getKey());
+      writer.name("file")
+          .value(DATA_DIRECTORY + '/' + projectFilename(++projectIndex));
+      writer.name("rows").value(e.getValue().size());
+      writer.name("minScore").value(minScore);
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.endObject();
+
+    writer.endObject();
+  }
+
+  private static String projectFilename(final int projectIndex) {
+
+    return "project-" + projectIndex + ".js";
+  }
+
+  /**
+   * Write a data file. The JSON document is the argument of a function of the
+   * viewer.
+   * @param file the data file
+   * @param function the function of the viewer
+   * @param content the writer of the JSON document
+   * @throws IOException if an error occurs while writing the file
+   */
+  private static void writeDataFile(final File file, final String function,
+      final DataWriter content) throws IOException {
+
+    try (Writer writer =
+        Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+
+      writer.write("aozanReport." + function + "(");
+
+      final JsonWriter jsonWriter = new JsonWriter(writer);
+      content.write(jsonWriter);
+      jsonWriter.flush();
+
+      writer.write(");\n");
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param data the run data
+   * @param outputDir the output directory
+   * @throws IOException if the output directory cannot be created
+   */
+  PaginatedReportWriter(final RunData data, final File outputDir)
+      throws IOException {
+
+    requireNonNull(data, "data argument cannot be null");
+    requireNonNull(outputDir, "outputDir argument cannot be null");
+
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IOException("Unable to create directory: " + outputDir);
+    }
+
+    this.data = data;
+    this.outputDir = outputDir;
+  }
+
+}
@@ -38,21 +38,28 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
 import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorRegistry;
 import fr.ens.biologie.genomique.aozan.collectors.FastqScreenCollector;
 import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
 import fr.ens.biologie.genomique.aozan.collectors.SamplesheetCollector;
 import fr.ens.biologie.genomique.aozan.fastqc.RuntimePatchFastQC;
+import fr.ens.biologie.genomique.aozan.fastqscreen.FastqScreen;
+import fr.ens.biologie.genomique.aozan.fastqscreen.FastqScreenGenomes;
+import fr.ens.biologie.genomique.aozan.fastqscreen.FastqScreenIndexCache;
 import fr.ens.biologie.genomique.aozan.fastqscreen.GenomeAliases;
 import fr.ens.biologie.genomique.aozan.tests.AozanTest;
 import fr.ens.biologie.genomique.aozan.tests.AozanTestRegistry;
 import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.TestResultCache;
 import fr.ens.biologie.genomique.aozan.tests.global.GlobalTest;
 import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
 import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
@@ -117,6 +124,7 @@ public class QC {
   private final SampleSheet sampleSheet;
 
   private final CollectorRegistry collectorRegistry = new CollectorRegistry();
+  private final TestResultCache testResultCache = new TestResultCache();
 
   //
   // Getters
@@ -250,9 +258,12 @@ public class QC {
     }
 
     // Create the report
-    final QCReport qcReport =
-        new QCReport(data, this.globalTests, this.laneTests,
-            this.projectStatsTests, this.samplesStatsTests, this.sampleTests);
+    final QCReport qcReport = new QCReport(data, this.globalTests,
+        this.laneTests, this.projectStatsTests, this.samplesStatsTests,
+        this.sampleTests,
+        new CollectorConfiguration(this.globalConf)
+            .getInt(Settings.QC_CONF_THREADS_KEY, -1),
+        this.testResultCache);
 
     return qcReport;
   }
@@ -622,6 +633,51 @@ public class QC {
       Storages.init(genomeStoragePath, genomeDescStoragePath,
           genomeMapperIndexStoragePath, Aozan2Logger.getGenericLogger());
     }
+
+    // Configure the host cache for genome descriptions and mapper indexes
+    if (!FastqScreenIndexCache.isInstance()) {
+
+      final String cachePath =
+          settings.get(Settings.QC_CONF_FASTQSCREEN_CACHE_PATH_KEY);
+
+      FastqScreenIndexCache.init(cachePath == null || cachePath.trim().isEmpty()
+          ? new File(this.tmpDir, FastqScreenIndexCache.DEFAULT_CACHE_DIRNAME)
+          : new File(cachePath.trim()), this.tmpDir);
+
+      // Remove the entries not used since the maximal age
+      final int maxAge = new CollectorConfiguration(this.globalConf)
+          .getInt(Settings.QC_CONF_FASTQSCREEN_CACHE_MAX_AGE_KEY, -1);
+      if (maxAge > 0) {
+        try {
+          FastqScreenIndexCache.getInstance()
+              .evict(TimeUnit.DAYS.toMillis(maxAge));
+        } catch (IOException e) {
+          LOGGER.warning("FASTQSCREEN: unable to evict the old entries of "
+              + "the cache: " + e.getMessage());
+        }
+      }
+    }
+
+    // Warm the cache if the collectors will be launched
+    final String contaminantGenomeNames =
+        settings.get(Settings.QC_CONF_FASTQSCREEN_GENOMES_KEY);
+    final File dataFile =
+        new File(this.qcDir, this.runId + Globals.QC_DATA_EXTENSION);
+
+    if (contaminantGenomeNames != null
+        && !contaminantGenomeNames.trim().isEmpty() && !dataFile.exists()) {
+
+      // The genome files and descriptions are resolved by the cache threads
+      FastqScreenIndexCache.getInstance().prewarm(
+          FastqScreenGenomes.getGenomeNames(this.sampleSheet,
+              contaminantGenomeNames),
+          settings.get(Settings.QC_CONF_FASTQSCREEN_MAPPER_KEY),
+          new CollectorConfiguration(this.globalConf)
+              .getInt(Settings.QC_CONF_THREADS_KEY, -1),
+          FastqScreen.MINIMIZERS_ENGINE.equalsIgnoreCase(Strings
+              .nullToEmpty(settings.get(Settings.QC_CONF_FASTQSCREEN_ENGINE_KEY))
+              .trim()));
+    }
   }
 
   /**
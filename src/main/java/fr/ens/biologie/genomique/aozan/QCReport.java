@@ -25,29 +25,39 @@ package fr.ens.biologie.genomique.aozan;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import fr.ens.biologie.genomique.aozan.collectors.stats.SampleStatisticsCollector;
 import fr.ens.biologie.genomique.aozan.tests.AozanTest;
 import fr.ens.biologie.genomique.aozan.tests.AozanTestRegistry;
 import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.tests.TestResultCache;
 import fr.ens.biologie.genomique.aozan.tests.global.GlobalTest;
 import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
 import fr.ens.biologie.genomique.aozan.tests.pooledsample.PooledSampleTest;
@@ -69,7 +79,145 @@ public class QCReport {
   private final List<ProjectTest> projectStatsTests = new ArrayList<>();
   private final List<PooledSampleTest> samplesStatsTests = new ArrayList<>();
   private final List<SampleTest> sampleTests = new ArrayList<>();
-  private Document doc;
+  private final int threadCount;
+  private final TestResultCache cache;
+
+  /**
+   * This interface define a visitor of the results of the tests of a report.
+   */
+  public interface ResultVisitor {
+
+    /**
+     * Visit the result of a test.
+     * @param entity the type of the tested entity: run, lane, project,
+     *          pooledsample or sample
+     * @param read the number of the read, 0 for the run, project and pooled
+     *          sample tests. For the sample tests, the indexed reads are not
+     *          counted like in the report
+     * @param lane the number of the lane, 0 for the run, project and pooled
+     *          sample tests
+     * @param id the identifier of the project, of the pooled sample or of the
+     *          sample, 0 for the run and lane tests
+     * @param test the test
+     * @param result the result of the test
+     * @throws IOException if an error occurs while handling the result
+     */
+    void visit(String entity, int read, int lane, int id, AozanTest test,
+        TestResult result) throws IOException;
+  }
+
+  /**
+   * This class define the location of a result in the report.
+   */
+  private static final class ResultLocation {
+
+    private final String entity;
+    private final int read;
+    private final int lane;
+    private final int id;
+    private final AozanTest test;
+
+    private ResultLocation(final String entity, final int read,
+        final int lane, final int id, final AozanTest test) {
+
+      this.entity = entity;
+      this.read = read;
+      this.lane = lane;
+      this.id = id;
+      this.test = test;
+    }
+  }
+
+  /**
+   * This class define the evaluation of the tests of a report. The tests are
+   * submitted to an executor and read a read-only copy of the run data. The
+   * results are retrieved in the order of the submission of the tests. Only
+   * the tests whose result is not in the cache are evaluated.
+   */
+  private static final class TestEvaluator {
+
+    private final RunData data;
+    private final TestResultCache cache;
+    private final ExecutorService executor;
+    private final Queue<Future<TestResult>> results = new ArrayDeque<>();
+
+    /**
+     * Submit a test.
+     * @param test the test
+     * @param arguments the arguments of the test, as a string
+     * @param evaluation the evaluation of the test
+     */
+    void submit(final AozanTest test, final String arguments,
+        final TestResultCache.Evaluation evaluation) {
+
+      final TestResult cached = this.cache.get(test, arguments);
+
+      if (cached != null) {
+        this.results.add(Futures.immediateFuture(cached));
+      } else {
+        this.results.add(this.executor.submit(() -> this.cache
+            .evaluate(test, arguments, this.data, evaluation)));
+      }
+    }
+
+    /**
+     * Get the result of the oldest submitted test that has not been retrieved.
+     * @return a TestResult object
+     * @throws XMLStreamException if the evaluation has been interrupted
+     */
+    TestResult next() throws XMLStreamException {
+
+      final Future<TestResult> future = this.results.remove();
+
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+
+        final Throwable cause = e.getCause();
+
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new XMLStreamException(
+            "The evaluation of the tests has been interrupted", e);
+      }
+    }
+
+    /**
+     * Stop the threads of the evaluator.
+     */
+    void shutdown() {
+
+      this.executor.shutdownNow();
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param data the run data
+     * @param cache the cache of the results
+     * @param threadCount the number of threads to use
+     */
+    private TestEvaluator(final RunData data, final TestResultCache cache,
+        final int threadCount) {
+
+      this.data = cache.update(data);
+      this.cache = cache;
+      this.executor = threadCount < 2
+          ? MoreExecutors.newDirectExecutorService()
+          : Executors.newFixedThreadPool(threadCount);
+    }
+  }
 
   //
   // Getters
@@ -85,17 +233,185 @@ public class QCReport {
   }
 
   /**
-   * Get Report as a XML Document.
-   * @return a XML document
-   * @throws AozanException if an error occurs while creating the report.
+   * Write the report as a XML document in an output stream. The tests are
+   * computed while the report is written, so the report is never entirely
+   * kept in memory.
+   * @param out output stream, not closed by this method
+   * @throws AozanException if an error occurs while creating the report
    */
-  public Document toDocument() throws AozanException {
+  public void write(final OutputStream out) throws AozanException {
+
+    requireNonNull(out);
+
+    try {
+
+      final XMLStreamWriter writer = XMLOutputFactory.newInstance()
+          .createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+
+      writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+      write(writer);
+      writer.writeEndDocument();
+      writer.close();
+
+    } catch (final XMLStreamException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Write the root element of the report in a XML stream.
+   * @param writer the XML stream writer
+   * @throws XMLStreamException if an error occurs while writing the report
+   */
+  public void write(final XMLStreamWriter writer) throws XMLStreamException {
+
+    requireNonNull(writer);
+
+    // Create the root element
+    writer.writeStartElement("QCReport");
+    writer.writeAttribute("formatversion", "1.0");
+
+    // Common tag header in document xml
+    XMLUtilsWriter.buildXMLCommonTagHeader(writer, this.data);
+
+    final TestEvaluator evaluator =
+        new TestEvaluator(this.data, this.cache, this.threadCount);
+
+    try {
+
+      if (!this.globalTests.isEmpty()) {
+        doGlobalTests(writer, evaluator);
+      }
+
+      if (!this.laneTests.isEmpty()) {
+        doLanesTests(writer, evaluator);
+      }
+
+      if (!this.projectStatsTests.isEmpty()) {
+        doProjectsStatsTests(writer, evaluator);
+      }
 
-    if (this.doc == null) {
-      doTests();
+      if (!this.samplesStatsTests.isEmpty()) {
+        doSamplesStatsTests(writer, evaluator);
+      }
+
+      if (!this.sampleTests.isEmpty()) {
+        addElementForFilter(writer);
+        doSamplesTests(writer, evaluator);
+      }
+
+    } finally {
+      evaluator.shutdown();
     }
 
-    return this.doc;
+    writer.writeEndElement();
+  }
+
+  /**
+   * Visit the results of all the tests of the report, in the order of the
+   * report. The results already computed for the report are not computed
+   * again.
+   * @param visitor the visitor
+   * @throws AozanException if an error occurs while visiting the results
+   */
+  public void visitResults(final ResultVisitor visitor)
+      throws AozanException {
+
+    requireNonNull(visitor);
+
+    final List<ResultLocation> locations = new ArrayList<>();
+    final TestEvaluator evaluator =
+        new TestEvaluator(this.data, this.cache, this.threadCount);
+
+    try {
+
+      final int readCount = this.data.getReadCount();
+      final int laneCount = this.data.getLaneCount();
+
+      for (final GlobalTest test : this.globalTests) {
+        evaluator.submit(test, "", test::test);
+        locations.add(new ResultLocation("run", 0, 0, 0, test));
+      }
+
+      for (int read = 1; !this.laneTests.isEmpty() && read <= readCount;
+          read++) {
+
+        final int r = read;
+        final boolean indexedRead = this.data.isReadIndexed(read);
+
+        for (int lane = 1; lane <= laneCount; lane++) {
+
+          final int l = lane;
+          final String arguments = read + "," + indexedRead + "," + lane;
+
+          for (final LaneTest test : this.laneTests) {
+            evaluator.submit(test, arguments,
+                d -> test.test(d, r, indexedRead, l));
+            locations.add(new ResultLocation("lane", read, lane, 0, test));
+          }
+        }
+      }
+
+      if (!this.projectStatsTests.isEmpty()) {
+        for (int projectId : this.data.getProjects()) {
+          for (final ProjectTest test : this.projectStatsTests) {
+            evaluator.submit(test, "" + projectId,
+                d -> test.test(d, projectId));
+            locations
+                .add(new ResultLocation("project", 0, 0, projectId, test));
+          }
+        }
+      }
+
+      // Like in the report, pooled samples are only tested for one project
+      if (!this.samplesStatsTests.isEmpty()
+          && this.data.getProjectCount() <= 1) {
+        for (int pooledSampleId : this.data.getAllPooledSamples()) {
+          for (final PooledSampleTest test : this.samplesStatsTests) {
+            evaluator.submit(test, "" + pooledSampleId,
+                d -> test.test(d, pooledSampleId));
+            locations.add(new ResultLocation("pooledsample", 0, 0,
+                pooledSampleId, test));
+          }
+        }
+      }
+
+      int readSample = 0;
+      for (int read = 1; !this.sampleTests.isEmpty() && read <= readCount;
+          read++) {
+
+        if (this.data.isReadIndexed(read)) {
+          continue;
+        }
+
+        final int r = read;
+        final int rs = ++readSample;
+
+        for (int lane = 1; lane <= laneCount; lane++) {
+          for (final int sampleId : this.data.getAllSamplesInLane(lane)) {
+
+            final String arguments = read + "," + rs + "," + sampleId;
+
+            for (final SampleTest test : this.sampleTests) {
+              evaluator.submit(test, arguments,
+                  d -> test.test(d, r, rs, sampleId));
+              locations.add(
+                  new ResultLocation("sample", rs, lane, sampleId, test));
+            }
+          }
+        }
+      }
+
+      for (final ResultLocation l : locations) {
+        visitor.visit(l.entity, l.read, l.lane, l.id, l.test,
+            evaluator.next());
+      }
+
+    } catch (IOException | XMLStreamException e) {
+      throw new AozanException(e);
+    } finally {
+      evaluator.shutdown();
+    }
   }
 
   //
@@ -103,210 +419,239 @@ public class QCReport {
   //
 
   /**
-   * Generate the QC report for global tests.
-   * @param parentElement parent Element
+   * Write an attribute. A null value is written as an empty value.
+   * @param writer the XML stream writer
+   * @param name name of the attribute
+   * @param value value of the attribute
+   * @throws XMLStreamException if an error occurs while writing the attribute
+   */
+  private static void writeAttribute(final XMLStreamWriter writer,
+      final String name, final String value) throws XMLStreamException {
+
+    writer.writeAttribute(name, Strings.nullToEmpty(value));
+  }
+
+  /**
+   * Write the Columns element of a list of tests.
+   * @param writer the XML stream writer
+   * @param tests the tests
+   * @throws XMLStreamException if an error occurs while writing the element
    */
-  private void doGlobalTests(final Document doc, final Element parentElement) {
+  private static void writeColumns(final XMLStreamWriter writer,
+      final List<? extends AozanTest> tests) throws XMLStreamException {
+
+    writer.writeStartElement("Columns");
+
+    for (final AozanTest test : tests) {
+      writer.writeStartElement("Column");
+      writeAttribute(writer, "testname", test.getName());
+      writeAttribute(writer, "description", test.getDescription());
+      writeAttribute(writer, "unit", test.getUnit());
+      writer.writeCharacters(Strings.nullToEmpty(test.getColumnName()));
+      writer.writeEndElement();
+    }
+
+    writer.writeEndElement();
+  }
 
-    final Element root = doc.createElement("GlobalReport");
-    parentElement.appendChild(root);
+  /**
+   * Write the Test element of a test result.
+   * @param writer the XML stream writer
+   * @param test the test
+   * @param result the result of the test
+   * @throws XMLStreamException if an error occurs while writing the element
+   */
+  private static void writeTestResult(final XMLStreamWriter writer,
+      final AozanTest test, final TestResult result)
+      throws XMLStreamException {
+
+    writer.writeStartElement("Test");
+    writeAttribute(writer, "name", test.getName());
+    writeAttribute(writer, "score", Integer.toString(result.getScore()));
+    writeAttribute(writer, "type", result.getType());
+    writer.writeCharacters(Strings.nullToEmpty(result.getMessage()));
+    writer.writeEndElement();
+  }
 
-    final Element columns = doc.createElement("Columns");
-    root.appendChild(columns);
+  /**
+   * Generate the QC report for global tests.
+   * @param writer the XML stream writer
+   * @param evaluator the test evaluator
+   * @throws XMLStreamException if an error occurs while writing the report
+   */
+  private void doGlobalTests(final XMLStreamWriter writer,
+      final TestEvaluator evaluator) throws XMLStreamException {
 
     for (final GlobalTest test : this.globalTests) {
-      final Element columnElement = doc.createElement("Column");
-      columnElement.setAttribute("testname", test.getName());
-      columnElement.setAttribute("description", test.getDescription());
-      columnElement.setAttribute("unit", test.getUnit());
-      columnElement.setTextContent(test.getColumnName());
-      columns.appendChild(columnElement);
+      evaluator.submit(test, "", test::test);
     }
 
-    final Element runElement = doc.createElement("Run");
-    root.appendChild(runElement);
+    writer.writeStartElement("GlobalReport");
+    writeColumns(writer, this.globalTests);
 
-    for (final GlobalTest test : this.globalTests) {
-      final TestResult result = test.test(this.data);
+    writer.writeStartElement("Run");
 
-      final Element testElement = doc.createElement("Test");
-      testElement.setAttribute("name", test.getName());
-      testElement.setAttribute("score", Integer.toString(result.getScore()));
-      testElement.setAttribute("type", result.getType());
-      testElement.setTextContent(result.getMessage());
-      runElement.appendChild(testElement);
+    for (final GlobalTest test : this.globalTests) {
+      writeTestResult(writer, test, evaluator.next());
     }
+
+    writer.writeEndElement();
+    writer.writeEndElement();
   }
 
   /**
    * Generate the QC report for lane tests.
-   * @param parentElement parent Element
+   * @param writer the XML stream writer
+   * @param evaluator the test evaluator
+   * @throws XMLStreamException if an error occurs while writing the report
    */
-  private void doLanesTests(final Document doc, final Element parentElement) {
+  private void doLanesTests(final XMLStreamWriter writer,
+      final TestEvaluator evaluator) throws XMLStreamException {
 
     final int readCount = this.data.getReadCount();
     final int laneCount = this.data.getLaneCount();
 
-    final Element root = doc.createElement("ReadsReport");
-    parentElement.appendChild(root);
+    for (int read = 1; read <= readCount; read++) {
 
-    final Element columns = doc.createElement("Columns");
-    root.appendChild(columns);
+      final int r = read;
+      final boolean indexedRead = this.data.isReadIndexed(read);
 
-    for (final LaneTest test : this.laneTests) {
-      final Element columnElement = doc.createElement("Column");
-      columnElement.setAttribute("testname", test.getName());
-      columnElement.setAttribute("description", test.getDescription());
-      columnElement.setAttribute("unit", test.getUnit());
-      columnElement.setTextContent(test.getColumnName());
-      columns.appendChild(columnElement);
+      for (int lane = 1; lane <= laneCount; lane++) {
+
+        final int l = lane;
+        final String arguments = read + "," + indexedRead + "," + lane;
+
+        for (final LaneTest test : this.laneTests) {
+          evaluator.submit(test, arguments,
+              d -> test.test(d, r, indexedRead, l));
+        }
+      }
     }
 
-    final Element reads = doc.createElement("Reads");
-    root.appendChild(reads);
+    writer.writeStartElement("ReadsReport");
+    writeColumns(writer, this.laneTests);
+
+    writer.writeStartElement("Reads");
 
     for (int read = 1; read <= readCount; read++) {
 
       final int cycles = this.data.getReadCyclesCount(read);
       final boolean indexedRead = this.data.isReadIndexed(read);
 
-      final Element readElement = doc.createElement("Read");
-      readElement.setAttribute("number", Integer.toString(read));
-      readElement.setAttribute("cycles", Integer.toString(cycles));
-      readElement.setAttribute("indexed", Boolean.toString(indexedRead));
-      reads.appendChild(readElement);
+      writer.writeStartElement("Read");
+      writeAttribute(writer, "number", Integer.toString(read));
+      writeAttribute(writer, "cycles", Integer.toString(cycles));
+      writeAttribute(writer, "indexed", Boolean.toString(indexedRead));
 
       for (int lane = 1; lane <= laneCount; lane++) {
 
-        final Element laneElement = doc.createElement("Lane");
-        laneElement.setAttribute("number", Integer.toString(lane));
-        readElement.appendChild(laneElement);
+        writer.writeStartElement("Lane");
+        writeAttribute(writer, "number", Integer.toString(lane));
 
         for (final LaneTest test : this.laneTests) {
-          final TestResult result =
-              test.test(this.data, read, indexedRead, lane);
-
-          final Element testElement = doc.createElement("Test");
-          testElement.setAttribute("name", test.getName());
-          testElement.setAttribute("score",
-              Integer.toString(result.getScore()));
-          testElement.setAttribute("type", result.getType());
-          testElement.setTextContent(result.getMessage());
-          laneElement.appendChild(testElement);
-
+          writeTestResult(writer, test, evaluator.next());
         }
+
+        writer.writeEndElement();
       }
+
+      writer.writeEndElement();
     }
+
+    writer.writeEndElement();
+    writer.writeEndElement();
   }
 
-  private void doProjectsStatsTests(final Document doc,
-      final Element parentElement) {
+  private void doProjectsStatsTests(final XMLStreamWriter writer,
+      final TestEvaluator evaluator) throws XMLStreamException {
 
     // Sort pooled samples
     final List<Integer> projectIds = this.data.getProjects();
     Collections.sort(projectIds, new RunData.ProjectComparator(data));
 
-    final Element root = doc.createElement("ProjectsReport");
-    parentElement.appendChild(root);
-
-    final Element columns = doc.createElement("Columns");
-    root.appendChild(columns);
-
-    for (final ProjectTest test : this.projectStatsTests) {
-      final Element columnElement = doc.createElement("Column");
-      columnElement.setAttribute("testname", test.getName());
-      columnElement.setAttribute("description", test.getDescription());
-      columnElement.setAttribute("unit", test.getUnit());
-      columnElement.setTextContent(test.getColumnName());
-      columns.appendChild(columnElement);
+    for (int projectId : projectIds) {
+      for (final ProjectTest test : this.projectStatsTests) {
+        evaluator.submit(test, "" + projectId, d -> test.test(d, projectId));
+      }
     }
 
-    final Element projectsElement = doc.createElement("Projects");
-    root.appendChild(projectsElement);
+    writer.writeStartElement("ProjectsReport");
+    writeColumns(writer, this.projectStatsTests);
 
-    for (int projectId : projectIds) {
-      final Element projectElement = doc.createElement("Project");
-      projectElement.setAttribute("id", "" + projectId);
-      projectElement.setAttribute("name", data.getProjectName(projectId));
-      projectsElement.appendChild(projectElement);
+    writer.writeStartElement("Projects");
 
-      for (final ProjectTest test : this.projectStatsTests) {
-        final TestResult result = test.test(this.data, projectId);
+    for (int projectId : projectIds) {
 
-        final Element testElement = doc.createElement("Test");
-        testElement.setAttribute("name", test.getName());
-        testElement.setAttribute("score", Integer.toString(result.getScore()));
-        testElement.setAttribute("type", result.getType());
-        testElement.setTextContent(result.getMessage());
-        projectElement.appendChild(testElement);
+      writer.writeStartElement("Project");
+      writeAttribute(writer, "id", "" + projectId);
+      writeAttribute(writer, "name", data.getProjectName(projectId));
 
+      for (final ProjectTest test : this.projectStatsTests) {
+        writeTestResult(writer, test, evaluator.next());
       }
+
+      writer.writeEndElement();
     }
+
+    writer.writeEndElement();
+    writer.writeEndElement();
   }
 
-  private void doSamplesStatsTests(final Document doc,
-      final Element parentElement) {
+  private void doSamplesStatsTests(final XMLStreamWriter writer,
+      final TestEvaluator evaluator) throws XMLStreamException {
 
     // Check needed to add this tests
     if (this.data.getProjectCount() > 1) {
       return;
     }
 
-    final Element root = doc.createElement("SamplesStatsReport");
-    parentElement.appendChild(root);
+    writer.writeStartElement("SamplesStatsReport");
+    writeColumns(writer, this.samplesStatsTests);
 
-    final Element columns = doc.createElement("Columns");
-    root.appendChild(columns);
-
-    for (final PooledSampleTest test : this.samplesStatsTests) {
-      final Element columnElement = doc.createElement("Column");
-      columnElement.setAttribute("testname", test.getName());
-      columnElement.setAttribute("description", test.getDescription());
-      columnElement.setAttribute("unit", test.getUnit());
-      columnElement.setTextContent(test.getColumnName());
-      columns.appendChild(columnElement);
-    }
-
-    final Element samplesStatsElement = doc.createElement("SamplesStats");
-    root.appendChild(samplesStatsElement);
+    writer.writeStartElement("SamplesStats");
 
     // Sort pooled samples
     final List<Integer> pooledSamples = data.getAllPooledSamples();
     Collections.sort(pooledSamples, new RunData.PooledSampleComparator(data));
 
     for (int pooledSampleId : pooledSamples) {
-      final Element sampleStatsElement = doc.createElement("SampleStats");
-      sampleStatsElement.setAttribute("id", "" + pooledSampleId);
-      sampleStatsElement.setAttribute("name",
+      for (final PooledSampleTest test : this.samplesStatsTests) {
+        evaluator.submit(test, "" + pooledSampleId,
+            d -> test.test(d, pooledSampleId));
+      }
+    }
+
+    for (int pooledSampleId : pooledSamples) {
+
+      writer.writeStartElement("SampleStats");
+      writeAttribute(writer, "id", "" + pooledSampleId);
+      writeAttribute(writer, "name",
           this.data.getPooledSampleDemuxName(pooledSampleId));
-      sampleStatsElement.setAttribute("description",
+      writeAttribute(writer, "description",
           this.data.getPooledSampleDescription(pooledSampleId));
-      sampleStatsElement.setAttribute("index",
+      writeAttribute(writer, "index",
           this.data.getPooledSampleIndex(pooledSampleId));
-      sampleStatsElement.setAttribute("project",
+      writeAttribute(writer, "project",
           this.data.getPooledSampleProjectName(pooledSampleId));
-      samplesStatsElement.appendChild(sampleStatsElement);
 
       for (final PooledSampleTest test : this.samplesStatsTests) {
-        final TestResult result = test.test(this.data, pooledSampleId);
-
-        final Element testElement = doc.createElement("Test");
-        testElement.setAttribute("name", test.getName());
-        testElement.setAttribute("score", Integer.toString(result.getScore()));
-        testElement.setAttribute("type", result.getType());
-        testElement.setTextContent(result.getMessage());
-        sampleStatsElement.appendChild(testElement);
-
+        writeTestResult(writer, test, evaluator.next());
       }
+
+      writer.writeEndElement();
     }
+
+    writer.writeEndElement();
+    writer.writeEndElement();
   }
 
   /**
    * Generate the QC report for projects data.
-   * @param parentElement parent Element
+   * @param writer the XML stream writer
+   * @throws XMLStreamException if an error occurs while writing the report
    */
-  private void addElementForFilter(final Document doc,
-      final Element parentElement) {
+  private void addElementForFilter(final XMLStreamWriter writer)
+      throws XMLStreamException {
 
     final List<String> elements = new ArrayList<>();
     String filterType;
@@ -331,31 +676,26 @@ public class QCReport {
     final ListMultimap<String, Integer> lanesNumberRelatedElement =
         extractLaneNumberRelatedProjectName(filterType);
 
-    final Element filter = doc.createElement("TableFilter");
-    parentElement.appendChild(filter);
+    writer.writeStartElement("TableFilter");
 
     for (final String element : elements) {
 
-      final Element elementFilter = doc.createElement("ElementFilter");
-      elementFilter.setAttribute("classValue", "elementFilter");
-
       // Extract lanes number related project name
       final Set<Integer> lanesRelatedProject =
           Sets.newTreeSet(lanesNumberRelatedElement.get(element));
 
+      writer.writeStartElement("ElementFilter");
+      writeAttribute(writer, "classValue", "elementFilter");
+
       // Build command javascript for filter line samples report by project
-      elementFilter.setAttribute("cmdJS",
+      writeAttribute(writer, "cmdJS",
           "'" + Joiner.on(",").join(lanesRelatedProject) + "'");
-      elementFilter.setAttribute("typeFilter", filterType);
+      writeAttribute(writer, "typeFilter", filterType);
 
-      elementFilter.setTextContent(element);
-      filter.appendChild(elementFilter);
+      writer.writeCharacters(Strings.nullToEmpty(element));
+      writer.writeEndElement();
     }
 
-    // Add Element for undetermined lane
-    final Element undeterminedLanes = doc.createElement("ElementFilter");
-    undeterminedLanes.setAttribute("classValue", "elementFilter");
-
     // Build list lane number
     final List<Integer> s = new ArrayList<>();
     for (int lane = 1; lane <= this.data.getLaneCount(); lane++) {
@@ -366,39 +706,58 @@ public class QCReport {
       }
     }
 
-    undeterminedLanes.setAttribute("cmdJS", "'" + Joiner.on(",").join(s) + "'");
-    undeterminedLanes.setAttribute("typeFilter", filterType);
-
-    undeterminedLanes.setTextContent("undetermined");
-    filter.appendChild(undeterminedLanes);
+    // Add Element for undetermined lane
+    writer.writeStartElement("ElementFilter");
+    writeAttribute(writer, "classValue", "elementFilter");
+    writeAttribute(writer, "cmdJS", "'" + Joiner.on(",").join(s) + "'");
+    writeAttribute(writer, "typeFilter", filterType);
+    writer.writeCharacters("undetermined");
+    writer.writeEndElement();
+
+    writer.writeEndElement();
   }
 
   /**
    * Generate the QC report for samples tests.
-   * @param parentElement parent Element
+   * @param writer the XML stream writer
+   * @param evaluator the test evaluator
+   * @throws XMLStreamException if an error occurs while writing the report
    */
-  private void doSamplesTests(final Document doc, final Element parentElement) {
+  private void doSamplesTests(final XMLStreamWriter writer,
+      final TestEvaluator evaluator) throws XMLStreamException {
 
     final int readCount = this.data.getReadCount();
     final int laneCount = this.data.getLaneCount();
 
-    final Element root = doc.createElement("SamplesReport");
-    parentElement.appendChild(root);
+    // Submit the tests in the order of the report
+    int submittedReadSample = 0;
 
-    final Element columns = doc.createElement("Columns");
-    root.appendChild(columns);
+    for (int read = 1; read <= readCount; read++) {
 
-    for (final SampleTest test : this.sampleTests) {
-      final Element columnElement = doc.createElement("Column");
-      columnElement.setAttribute("testname", test.getName());
-      columnElement.setAttribute("description", test.getDescription());
-      columnElement.setAttribute("unit", test.getUnit());
-      columnElement.setTextContent(test.getColumnName());
-      columns.appendChild(columnElement);
+      if (this.data.isReadIndexed(read)) {
+        continue;
+      }
+
+      final int r = read;
+      final int readSample = ++submittedReadSample;
+
+      for (int lane = 1; lane <= laneCount; lane++) {
+        for (final int sampleId : this.data.getAllSamplesInLane(lane)) {
+
+          final String arguments = read + "," + readSample + "," + sampleId;
+
+          for (final SampleTest test : this.sampleTests) {
+            evaluator.submit(test, arguments,
+                d -> test.test(d, r, readSample, sampleId));
+          }
+        }
+      }
     }
 
-    final Element reads = doc.createElement("Reads");
-    root.appendChild(reads);
+    writer.writeStartElement("SamplesReport");
+    writeColumns(writer, this.sampleTests);
+
+    writer.writeStartElement("Reads");
     int readSample = 0;
 
     for (int read = 1; read <= readCount; read++) {
@@ -409,10 +768,8 @@ public class QCReport {
 
       readSample++;
 
-      final Element readElement = doc.createElement("Read");
-      readElement.setAttribute("number", Integer.toString(readSample));
-
-      reads.appendChild(readElement);
+      writer.writeStartElement("Read");
+      writeAttribute(writer, "number", Integer.toString(readSample));
 
       for (int lane = 1; lane <= laneCount; lane++) {
 
@@ -447,90 +804,38 @@ public class QCReport {
               indexString = "NoIndex";
             }
           }
-          addSample(doc, readElement, read, readSample, sampleId, lane,
-              sampleName, desc, projectName, indexString);
+          addSample(writer, evaluator, sampleId, lane, sampleName, desc,
+              projectName, indexString);
         }
       }
+
+      writer.writeEndElement();
     }
+
+    writer.writeEndElement();
+    writer.writeEndElement();
   }
 
-  private void addSample(final Document doc, final Element readElement,
-      final int read, final int readSample, final int sampleId, final int lane,
+  private void addSample(final XMLStreamWriter writer,
+      final TestEvaluator evaluator, final int sampleId, final int lane,
       final String sampleName, final String desc, final String projectName,
-      final String index) {
+      final String index) throws XMLStreamException {
 
-    final Element sampleElement = doc.createElement("Sample");
-    sampleElement.setAttribute("id", "" + sampleId);
-    sampleElement.setAttribute("name",
+    writer.writeStartElement("Sample");
+    writeAttribute(writer, "id", "" + sampleId);
+    writeAttribute(writer, "name",
         sampleName == null ? "undetermined" : sampleName);
-    sampleElement.setAttribute("desc", desc == null ? "No description" : desc);
-    sampleElement.setAttribute("project",
+    writeAttribute(writer, "desc", desc == null ? "No description" : desc);
+    writeAttribute(writer, "project",
         projectName == null ? "undetermined" : projectName);
-    sampleElement.setAttribute("lane", Integer.toString(lane));
-    sampleElement.setAttribute("index", index);
-
-    readElement.appendChild(sampleElement);
+    writeAttribute(writer, "lane", Integer.toString(lane));
+    writeAttribute(writer, "index", index);
 
     for (final SampleTest test : this.sampleTests) {
-
-      final TestResult result =
-          test.test(this.data, read, readSample, sampleId);
-
-      final Element testElement = doc.createElement("Test");
-      testElement.setAttribute("name", test.getName());
-      testElement.setAttribute("score", Integer.toString(result.getScore()));
-      testElement.setAttribute("type", result.getType());
-      testElement.setTextContent(result.getMessage());
-      sampleElement.appendChild(testElement);
+      writeTestResult(writer, test, evaluator.next());
     }
-  }
-
-  /**
-   * Create the QC report.
-   * @throws AozanException if an error occurs while creating the report
-   */
-  private void doTests() throws AozanException {
-
-    try {
-
-      final DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
-      final DocumentBuilder docBuilder = dbfac.newDocumentBuilder();
-      final Document doc = docBuilder.newDocument();
-
-      // Create the root element and add it to the document
-      final Element root = doc.createElement("QCReport");
-      root.setAttribute("formatversion", "1.0");
-      doc.appendChild(root);
-
-      // Common tag header in document xml
-      XMLUtilsWriter.buildXMLCommonTagHeader(doc, root, this.data);
-
-      if (!this.globalTests.isEmpty()) {
-        doGlobalTests(doc, root);
-      }
-
-      if (!this.laneTests.isEmpty()) {
-        doLanesTests(doc, root);
-      }
 
-      if (!this.projectStatsTests.isEmpty()) {
-        doProjectsStatsTests(doc, root);
-      }
-
-      if (!this.samplesStatsTests.isEmpty()) {
-        doSamplesStatsTests(doc, root);
-      }
-
-      if (!this.sampleTests.isEmpty()) {
-        addElementForFilter(doc, root);
-        doSamplesTests(doc, root);
-      }
-
-      this.doc = doc;
-
-    } catch (final ParserConfigurationException e) {
-      throw new AozanException(e);
-    }
+    writer.writeEndElement();
   }
 
   /**
@@ -619,7 +924,6 @@ public class QCReport {
   public void filterTests(Collection<String> testNamesToRemove) {
 
     requireNonNull(testNamesToRemove);
-    this.doc = null;
 
     final AozanTestRegistry registry = new AozanTestRegistry();
 
@@ -684,7 +988,8 @@ public class QCReport {
   //
 
   /**
-   * Public constructor.
+   * Public constructor. The tests are evaluated using all the available
+   * processors.
    * @param data Run data
    * @param globalTests list of the global tests
    * @param laneTests list of the read tests
@@ -697,7 +1002,35 @@ public class QCReport {
       final List<PooledSampleTest> samplesStatsTests,
       final List<SampleTest> sampleTests) {
 
+    this(data, globalTests, laneTests, projectStatsTests, samplesStatsTests,
+        sampleTests, -1, new TestResultCache());
+  }
+
+  /**
+   * Public constructor.
+   * @param data Run data
+   * @param globalTests list of the global tests
+   * @param laneTests list of the read tests
+   * @param projectStatsTests the project stats tests
+   * @param samplesStatsTests the samples stats tests
+   * @param sampleTests list of the sample tests
+   * @param threadCount the number of threads to use to evaluate the tests. If
+   *          the value is lower than 1, all the available processors are used
+   * @param cache the cache of the test results. The cache can be shared
+   *          between several reports of the same run
+   */
+  public QCReport(final RunData data, final List<GlobalTest> globalTests,
+      final List<LaneTest> laneTests, final List<ProjectTest> projectStatsTests,
+      final List<PooledSampleTest> samplesStatsTests,
+      final List<SampleTest> sampleTests, final int threadCount,
+      final TestResultCache cache) {
+
+    requireNonNull(cache);
+
     this.data = data;
+    this.cache = cache;
+    this.threadCount = threadCount < 1
+        ? Runtime.getRuntime().availableProcessors() : threadCount;
 
     if (globalTests != null) {
       this.globalTests.addAll(globalTests);
@@ -721,7 +1054,8 @@ public class QCReport {
   }
 
   /**
-   * Copy constructor.
+   * Copy constructor. The copy shares the cache of the test results of the
+   * report.
    * @param report report to copy
    */
   public QCReport(QCReport report) {
@@ -734,6 +1068,7 @@ public class QCReport {
     this.projectStatsTests.addAll(report.projectStatsTests);
     this.samplesStatsTests.addAll(report.samplesStatsTests);
     this.sampleTests.addAll(report.sampleTests);
-    this.doc = null;
+    this.threadCount = report.threadCount;
+    this.cache = report.cache;
   }
 }
@@ -2,18 +2,23 @@ package fr.ens.biologie.genomique.aozan;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
-import org.w3c.dom.Document;
+import javax.xml.transform.Templates;
 
 import com.google.common.io.Files;
 
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLTemplatesCache;
 
 /**
  * This class export the QC Report in several formats.
@@ -22,8 +27,11 @@ import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
  */
 public class QCReportExporter {
 
+  /** Key of the content of the samplesheet, not written in the data files. */
+  private static final String SAMPLESHEET_KEY = "aozan.info.conf.samplesheet";
+
   private final RunData data;
-  private final Document doc;
+  private final QCReport report;
 
   //
   // Raw data
@@ -50,7 +58,7 @@ public class QCReportExporter {
    */
   public void writeRawData(File outputFile) throws AozanException {
 
-    this.data.removeIfExists("aozan.info.conf.samplesheet");
+    this.data.removeIfExists(SAMPLESHEET_KEY);
 
     try {
       final Writer writer =
@@ -64,6 +72,72 @@ public class QCReportExporter {
     }
   }
 
+  //
+  // Structured data
+  //
+
+  /**
+   * Write the raw data of the QC and the results of all the tests in
+   * structured formats. The files are written in a single pass: a JSON Lines
+   * file with one record per line, and a CSV file for the run data and another
+   * for the results of the tests.
+   * @param jsonLinesFile the JSON Lines file, can be null
+   * @param dataCSVFile the CSV file of the run data, can be null
+   * @param testsCSVFile the CSV file of the results of the tests, can be null
+   * @throws AozanException if an error occurs while writing the files
+   */
+  public void writeStructuredData(final File jsonLinesFile,
+      final File dataCSVFile, final File testsCSVFile) throws AozanException {
+
+    if (jsonLinesFile == null && dataCSVFile == null && testsCSVFile == null) {
+      return;
+    }
+
+    try (StructuredDataWriter writer =
+        new StructuredDataWriter(this.data.get("run.info.run.id"),
+            jsonLinesFile, dataCSVFile, testsCSVFile)) {
+
+      for (Map.Entry<String, String> e : this.data.getMap().entrySet()) {
+        if (!SAMPLESHEET_KEY.equals(e.getKey())) {
+          writer.addData(e.getKey(), e.getValue());
+        }
+      }
+
+      this.report.visitResults(writer);
+
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  //
+  // Paginated report
+  //
+
+  /**
+   * Write the paginated QC report: a static viewer and the data files with
+   * the results of all the tests. The report does not use the XSL
+   * transformation, and the viewer only renders the visible rows of the
+   * tables and loads the samples of a project on demand, so it can be used for
+   * the runs with a large number of samples.
+   * @param outputDir the output directory of the report
+   * @throws AozanException if an error occurs while writing the report
+   */
+  public void writePaginatedReport(final File outputDir)
+      throws AozanException {
+
+    requireNonNull(outputDir, "outputDir argument cannot be null");
+
+    try (PaginatedReportWriter writer =
+        new PaginatedReportWriter(this.data, outputDir)) {
+
+      this.report.visitResults(writer);
+
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
   //
   // XML
   //
@@ -75,7 +149,20 @@ public class QCReportExporter {
    */
   public String toXML() throws AozanException, IOException {
 
-    return XMLUtilsWriter.createXMLFileContent(this.doc);
+    return new String(toXMLBytes(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create the QC report as XML bytes.
+   * @return an array of bytes with the report in XML encoded in UTF-8
+   * @throws AozanException if an error occurs while creating the report
+   */
+  private byte[] toXMLBytes() throws AozanException {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    this.report.write(out);
+
+    return out.toByteArray();
   }
 
   /**
@@ -96,13 +183,12 @@ public class QCReportExporter {
    */
   public void writeXMLReport(File outputFile) throws AozanException {
 
-    try {
-      final Writer writer =
-          Files.newWriter(outputFile, Globals.DEFAULT_FILE_ENCODING);
+    // The report is directly written in the file
+    try (OutputStream out = new BufferedOutputStream(
+        java.nio.file.Files.newOutputStream(outputFile.toPath()))) {
 
-      writer.write(toXML());
+      this.report.write(out);
 
-      writer.close();
     } catch (final IOException e) {
       throw new AozanException(e);
     }
@@ -122,11 +208,9 @@ public class QCReportExporter {
    */
   public String export(File XSLFile) throws AozanException {
 
-    try {
-      return export(new FileInputStream(XSLFile));
-    } catch (final FileNotFoundException e) {
-      throw new AozanException(e);
-    }
+    return XMLUtilsWriter.createHTMLFileFromXSL(
+        new ByteArrayInputStream(toXMLBytes()),
+        XSLTemplatesCache.get(XSLFile));
   }
 
   /**
@@ -143,7 +227,8 @@ public class QCReportExporter {
           "The input stream for the XSL stylesheet is null.");
     }
 
-    return XMLUtilsWriter.createHTMLFileFromXSL(this.doc, is);
+    return XMLUtilsWriter.createHTMLFileFromXSL(
+        new ByteArrayInputStream(toXMLBytes()), is);
   }
 
   /**
@@ -159,45 +244,62 @@ public class QCReportExporter {
       throw new AozanException("The filename for the qc report is null");
     }
 
-    InputStream is = null;
-    try {
+    // Get the compiled stylesheet
+    final Templates templates = stylesheetFilename == null
+        ? XSLTemplatesCache.getResource(Globals.EMBEDDED_QC_XSL)
+        : XSLTemplatesCache.get(new File(stylesheetFilename));
 
-      if (stylesheetFilename == null) {
-        is = this.getClass().getResourceAsStream(Globals.EMBEDDED_QC_XSL);
-      } else {
-        is = new FileInputStream(stylesheetFilename);
-      }
+    writeReport(templates, new File(outputFilename));
+  }
+
+  /**
+   * Write the report usually in HTML) in a file.
+   * @param xslIs XSL stylesheet input stream
+   * @param outputFile the report file
+   * @throws AozanException if an error occurs while creating the report
+   */
+  public void writeReport(InputStream xslIs, File outputFile)
+      throws AozanException {
+
+    if (xslIs == null) {
+      throw new NullPointerException(
+          "The input stream for the XSL stylesheet is null.");
+    }
 
-      writeReport(is, new File(outputFilename));
+    try (InputStream is = xslIs) {
+      writeReport(XSLTemplatesCache.compile(is), outputFile);
     } catch (final IOException e) {
       throw new AozanException(e);
-
-    } finally {
-      try {
-        if (is != null) {
-          is.close();
-        }
-      } catch (final IOException ignored) {
-      }
     }
   }
 
   /**
    * Write the report usually in HTML) in a file.
-   * @param xslIs XSL stylesheet input stream
+   * @param templates compiled XSL stylesheet
    * @param outputFile the report file
    * @throws AozanException if an error occurs while creating the report
    */
-  public void writeReport(InputStream xslIs, File outputFile)
+  private void writeReport(final Templates templates, final File outputFile)
       throws AozanException {
 
     try {
-      final Writer writer =
-          Files.newWriter(outputFile, Globals.DEFAULT_FILE_ENCODING);
 
-      writer.write(export(xslIs));
+      // The XML report is streamed in a temporary file instead of being kept
+      // in memory as a DOM. Note that the JDK XSL processor still builds a
+      // tree of the whole XML document during the transformation; the
+      // paginated report is the output that is never fully in memory
+      final File xmlFile = File.createTempFile(outputFile.getName() + "-",
+          ".xml", outputFile.getAbsoluteFile().getParentFile());
+
+      try {
+        writeXMLReport(xmlFile);
+        XMLUtilsWriter.createHTMLFileFromXSL(xmlFile, templates, outputFile);
+      } finally {
+        if (!xmlFile.delete()) {
+          xmlFile.deleteOnExit();
+        }
+      }
 
-      writer.close();
     } catch (final IOException e) {
       throw new AozanException(e);
     }
@@ -208,15 +310,16 @@ public class QCReportExporter {
   //
 
   /**
-   * Public constructor.
+   * Public constructor. The results of the tests computed for an export are
+   * reused by the next exports while the data of the run do not change.
    * @param qcReport QC report object
-   * @throws AozanException if an error occurs while getting the XML Document
-   *           form the QCReport object
+   * @throws AozanException if an error occurs while getting the data of the
+   *           QCReport object
    */
   public QCReportExporter(QCReport qcReport) throws AozanException {
 
     requireNonNull(qcReport);
     this.data = new RunData(qcReport.getData());
-    this.doc = qcReport.toDocument();
+    this.report = qcReport;
   }
 }
@@ -36,9 +36,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
@@ -60,7 +62,19 @@ public class RunData {
       Splitter.on(",").trimResults().omitEmptyStrings();
 
   /** The map. */
-  private final Map<String, String> map = new LinkedHashMap<>();
+  private final Map<String, String> map;
+
+  /** True if the object cannot be modified. */
+  private boolean readOnly;
+
+  /** The keys read from the object, null if the keys are not recorded. */
+  private final Set<String> readKeys;
+
+  /** The read-only RunData read through by an overlay, null otherwise. */
+  private RunData base;
+
+  /** The keys of the base removed from an overlay. */
+  private Set<String> removedKeys;
 
   //
   // Comparators
@@ -291,6 +305,16 @@ public class RunData {
     return get(SAMPLESHEET_DATA_PREFIX + ".sample" + sampleId + ".index");
   }
 
+  /**
+   * Get the second sequence index related to a sample.
+   * @param sampleId the sample id
+   * @return second sequence index related to sample or null if the sample is
+   *         not dual indexed
+   */
+  public String getIndex2Sample(final int sampleId) {
+    return get(SAMPLESHEET_DATA_PREFIX + ".sample" + sampleId + ".index2");
+  }
+
   /**
    * Get the sample identifier string.
    * @param sampleId the sample id
@@ -890,6 +914,21 @@ public class RunData {
         "undeterminedindices.lane" + lane + ".recoverable.raw.cluster.count");
   }
 
+  /**
+   * Test if the raw cluster recovery counts of a lane are available. They are
+   * not available when the undetermined indexes have been counted from the
+   * summary of the demultiplexing, that only contains the passing filter
+   * clusters.
+   * @param lane the lane
+   * @return true if the raw cluster recovery counts of the lane are available
+   */
+  public boolean isLaneRawClusterRecoveryCountAvailable(final int lane) {
+
+    return getBoolean(
+        "undeterminedindices.lane" + lane + ".raw.cluster.count.available",
+        true);
+  }
+
   /**
    * Get the passing filter cluster recovery count for a lane.
    * @param lane the lane
@@ -933,7 +972,14 @@ public class RunData {
       return null;
     }
 
-    return this.map.get(key.toLowerCase().trim());
+    final String k = recordKey(key.toLowerCase().trim());
+    final String value = this.map.get(k);
+
+    if (value != null || !isInBase(k)) {
+      return value;
+    }
+
+    return this.base.get(k);
   }
 
   /**
@@ -1183,11 +1229,18 @@ public class RunData {
    */
   public void put(final String key, final String value) {
 
+    checkNotReadOnly();
+
     if (key == null) {
       return;
     }
 
-    this.map.put(key.toLowerCase().trim(), value == null ? "" : value.trim());
+    final String k = key.toLowerCase().trim();
+    this.map.put(k, value == null ? "" : value.trim());
+
+    if (this.removedKeys != null) {
+      this.removedKeys.remove(k);
+    }
   }
 
   /**
@@ -1290,17 +1343,27 @@ public class RunData {
   }
 
   /**
-   * Set the key and values of a RunData object in the current RunData.
+   * Set the key and values of a RunData object in the current RunData. If the
+   * RunData object is an overlay, the keys removed from the overlay are also
+   * removed.
    * @param data Data to add
    */
   public void put(final RunData data) {
 
+    checkNotReadOnly();
+
     if (data == null) {
       return;
     }
 
     for (final Map.Entry<String, String> e : data.map.entrySet()) {
-      this.map.put(e.getKey(), e.getValue());
+      put(e.getKey(), e.getValue());
+    }
+
+    if (data.removedKeys != null) {
+      for (final String key : data.removedKeys) {
+        removeKey(key);
+      }
     }
   }
 
@@ -1319,7 +1382,9 @@ public class RunData {
       return false;
     }
 
-    return this.map.containsKey(key.toLowerCase().trim());
+    final String k = recordKey(key.toLowerCase().trim());
+
+    return this.map.containsKey(k) || isInBase(k);
   }
 
   /**
@@ -1329,12 +1394,37 @@ public class RunData {
   public void remove(final String key) {
 
     requireNonNull(key);
+    checkNotReadOnly();
 
-    if (!this.map.containsKey(key)) {
+    if (!contains(key)) {
       throw new IllegalArgumentException("Key does not exists: " + key);
     }
 
-    this.map.remove(key.toLowerCase().trim());
+    removeKey(key.toLowerCase().trim());
+  }
+
+  /**
+   * Remove a key if the key exists.
+   * @param key the normalized key
+   */
+  private void removeKey(final String key) {
+
+    this.map.remove(key);
+
+    if (isInBase(key)) {
+      this.removedKeys.add(key);
+    }
+  }
+
+  /**
+   * Test if a key of an overlay is read from its base.
+   * @param key the normalized key
+   * @return true if the key exists in the base and has not been removed
+   */
+  private boolean isInBase(final String key) {
+
+    return this.base != null
+        && !this.removedKeys.contains(key) && this.base.contains(key);
   }
 
   /**
@@ -1348,6 +1438,90 @@ public class RunData {
     }
   }
 
+  /**
+   * Test if the RunData cannot be modified.
+   * @return true if the RunData cannot be modified
+   */
+  public boolean isReadOnly() {
+
+    return this.readOnly;
+  }
+
+  /**
+   * Create a read-only copy of the RunData. The copy is not affected by the
+   * later changes of this object and can be safely read by several threads at
+   * the same time.
+   * @return a new RunData object that cannot be modified
+   */
+  public RunData snapshot() {
+
+    if (this.readOnly) {
+      return this;
+    }
+
+    final RunData result = new RunData(this);
+    result.readOnly = true;
+
+    return result;
+  }
+
+  /**
+   * Create a read-only view of a snapshot of the RunData that records all the
+   * keys read with the get and contains methods, including the keys that do
+   * not exist. The view is not thread-safe, each thread must use its own view.
+   * @param readKeys the set where the read keys will be added
+   * @return a new RunData object that cannot be modified
+   */
+  public RunData recordingView(final Set<String> readKeys) {
+
+    requireNonNull(readKeys);
+
+    return new RunData(snapshot(), readKeys);
+  }
+
+  /**
+   * Create an overlay of a snapshot of the RunData. The keys that are not set
+   * in the overlay are read from the snapshot, and the changes of the overlay,
+   * including the removed keys, are applied to another RunData with
+   * put(RunData). The getMap() and size() methods of the overlay only handle
+   * the keys set in the overlay. Several threads can use their own overlay of
+   * the same read-only RunData.
+   * @return a new RunData object
+   */
+  public RunData overlay() {
+
+    final RunData result = new RunData();
+    result.base = snapshot();
+    result.removedKeys = new HashSet<>();
+
+    return result;
+  }
+
+  /**
+   * Record a key read if the object records the read keys.
+   * @param key the normalized key
+   * @return the key
+   */
+  private String recordKey(final String key) {
+
+    if (this.readKeys != null) {
+      this.readKeys.add(key);
+    }
+
+    return key;
+  }
+
+  /**
+   * Check if the RunData can be modified.
+   * @throws UnsupportedOperationException if the RunData is read-only
+   */
+  private void checkNotReadOnly() {
+
+    if (this.readOnly) {
+      throw new UnsupportedOperationException("The run data is read-only");
+    }
+  }
+
   /**
    * Get the number of entries in RunData.
    * @return the number of entries
@@ -1472,6 +1646,9 @@ public class RunData {
    * Public constructor.
    */
   public RunData() {
+
+    this.map = new LinkedHashMap<>();
+    this.readKeys = null;
   }
 
   /**
@@ -1479,9 +1656,23 @@ public class RunData {
    * @param data Data to add
    */
   public RunData(final RunData data) {
+    this();
     put(data);
   }
 
+  /**
+   * Private constructor for the recording views. The view share the map of a
+   * read-only RunData.
+   * @param data read-only RunData
+   * @param readKeys the set where the read keys will be added
+   */
+  private RunData(final RunData data, final Set<String> readKeys) {
+
+    this.map = data.map;
+    this.readOnly = true;
+    this.readKeys = readKeys;
+  }
+
   /**
    * Public constructor.
    * @param file file to read
@@ -1489,6 +1680,8 @@ public class RunData {
    */
   public RunData(final File file) throws IOException {
 
+    this();
+
     if (file == null) {
       throw new NullPointerException("The file parameter is null");
     }
@@ -41,6 +41,7 @@ import com.google.common.base.Stopwatch;
 
 import fr.ens.biologie.genomique.aozan.collectors.Collector;
 import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+import fr.ens.biologie.genomique.aozan.history.MetricsStore;
 
 /**
  * This Class collect Data.
@@ -146,6 +147,13 @@ public class RunDataGenerator {
       collector.clear();
     }
 
+    // Add the metrics of the run to the store of the metrics of all the runs
+    final String storePath = this.generatorsProperties
+        .get(Settings.QC_CONF_METRICS_STORE_PATH_KEY);
+    if (storePath != null && !storePath.trim().isEmpty()) {
+      addToMetricsStore(new File(storePath.trim()), data);
+    }
+
     LOGGER.info("Step collector ended in "
         + toTimeHumanReadable(timerGlobal.elapsed(TimeUnit.MILLISECONDS)));
     timerGlobal.stop();
@@ -155,6 +163,29 @@ public class RunDataGenerator {
     return data;
   }
 
+  /**
+   * Add the metrics of the run to the store of the metrics of all the runs.
+   * @param storeDir directory of the store
+   * @param data the run data
+   */
+  private void addToMetricsStore(final File storeDir, final RunData data) {
+
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    // The store is optional, an error must not abort the collect
+    try {
+      new MetricsStore(storeDir).add(this.runId, data);
+    } catch (IOException e) {
+      LOGGER.warning("Unable to add the metrics of run "
+          + this.runId + " to the store " + storeDir + ": " + e.getMessage());
+      return;
+    }
+
+    LOGGER.info("Metrics of run "
+        + this.runId + " added to the store " + storeDir + " in "
+        + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+  }
+
   /**
    * Adds the all collectors and change order per default to move
    * ProjectStatCollector at the end, if is selected.
@@ -267,6 +267,21 @@ public final class Settings {
   /** Collector fastqscreen settings mappers indexes path. */
   public static final String QC_CONF_FASTQSCREEN_MAPPERS_INDEXES_PATH_KEY =
       "qc.conf.fastqscreen.mapper.indexes.path";
+  /** Collector fastqscreen settings host cache path. */
+  public static final String QC_CONF_FASTQSCREEN_CACHE_PATH_KEY =
+      "qc.conf.fastqscreen.cache.path";
+  /** Collector fastqscreen settings host cache maximal age of the entries. */
+  public static final String QC_CONF_FASTQSCREEN_CACHE_MAX_AGE_KEY =
+      "qc.conf.fastqscreen.cache.max.age";
+  /** Collector fastqscreen settings engine. */
+  public static final String QC_CONF_FASTQSCREEN_ENGINE_KEY =
+      "qc.conf.fastqscreen.engine";
+  /** Collector fastqscreen settings minimizers engine min hit fraction. */
+  public static final String QC_CONF_FASTQSCREEN_MINIMIZERS_MIN_HIT_FRACTION_KEY =
+      "qc.conf.fastqscreen.minimizers.min.hit.fraction";
+  /** Collector fastqscreen settings pre-screen percent threshold. */
+  public static final String QC_CONF_FASTQSCREEN_PRESCREEN_PERCENT_THRESHOLD_KEY =
+      "qc.conf.fastqscreen.prescreen.percent.threshold";
   /** Collector fastqscreen settings max read length. */
   public static final String QC_CONF_FASTQSCREEN_MAX_READ_LENGTH_KEY =
       "qc.conf.fastqscreen.max.read.length";
@@ -290,10 +305,57 @@ public final class Settings {
   /** Collector threads. */
   public static final String QC_CONF_THREADS_KEY = "qc.conf.threads";
 
+  /**
+   * Collector read, cache the data computed from the InterOp files in the QC
+   * output directory.
+   */
+  public static final String QC_CONF_INTEROP_CACHE_KEY =
+      "qc.conf.interop.cache";
+
+  /**
+   * Collector step, directory of the store of the metrics of all the runs.
+   */
+  public static final String QC_CONF_METRICS_STORE_PATH_KEY =
+      "qc.conf.metrics.store.path";
+
+  /**
+   * Collector read, threshold of the modified z-score of the tiles whose
+   * values are outliers.
+   */
+  public static final String QC_CONF_TILE_ANOMALY_THRESHOLD_KEY =
+      "qc.conf.tile.anomaly.threshold";
+
   /** Collector undetermined indexed xsl file. */
   public static final String QC_CONF_UNDETERMINED_INDEXED_XSL_FILE_KEY =
       "qc.conf.undetermined.indexed.xsl.file";
 
+  /**
+   * Collector undetermined indexes, maximal memory in MB used to count the
+   * indexes of a lane.
+   */
+  public static final String QC_CONF_UNDETERMINED_INDEXES_MAX_MEMORY_KEY =
+      "qc.conf.undetermined.indexes.max.memory";
+
+  /**
+   * Collector undetermined indexes, compute the exact counts of the most
+   * frequent indexes in a second pass.
+   */
+  public static final String QC_CONF_UNDETERMINED_INDEXES_EXACT_RECOUNT_KEY =
+      "qc.conf.undetermined.indexes.exact.recount";
+
+  /**
+   * Collector undetermined indexes, use the undetermined indexes summary of the
+   * demultiplexing instead of the FASTQ files when available.
+   */
+  public static final String QC_CONF_UNDETERMINED_INDEXES_USE_DEMUX_SUMMARY_KEY =
+      "qc.conf.undetermined.indexes.use.demux.summary";
+
+  /**
+   * Collector undetermined indexes, maximal number of indexes in the reports.
+   */
+  public static final String QC_CONF_UNDETERMINED_INDEXES_REPORT_MAX_ROWS_KEY =
+      "qc.conf.undetermined.indexes.report.max.rows";
+
   /**
    * Collector FastQC, process on undetermined indices samples, default at
    * false.
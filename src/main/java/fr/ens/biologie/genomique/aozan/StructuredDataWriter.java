@@ -0,0 +1,323 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.google.gson.stream.JsonWriter;
+
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+
+/**
+ * This class define a writer for the run data and the results of the tests in
+ * structured formats: JSON Lines with one record per line, and one CSV file
+ * per table (the run data and the results of the tests). The records are
+ * written while the data and the results are visited, so nothing is kept in
+ * memory, and all the formats can be written at the same time.
+ * <p>
+ * The values of the run data are always written as strings, as the run data
+ * does not declare the type of its keys: a value like "007" is kept as is.
+ * The values of the results of the tests are typed with the type declared by
+ * the result.
+ * @since 3.1
+ * @author agent
+ */
+final class StructuredDataWriter implements QCReport.ResultVisitor, Closeable {
+
+  /** Header of the CSV file of the run data. */
+  static final String[] DATA_CSV_HEADER = {"run", "key", "value"};
+
+  /** Header of the CSV file of the results of the tests. */
+  static final String[] TESTS_CSV_HEADER =
+      {"run", "entity", "read", "lane", "id", "test", "score", "type", "value"};
+
+  private final String runId;
+  private final Writer jsonLinesWriter;
+  private final JsonWriter jsonLines;
+  private final Writer dataCSVWriter;
+  private final Writer testsCSVWriter;
+
+  //
+  // Write methods
+  //
+
+  /**
+   * Add an entry of the run data.
+   * @param key the key
+   * @param value the value
+   * @throws IOException if an error occurs while writing the entry
+   */
+  void addData(final String key, final String value) throws IOException {
+
+    if (this.jsonLines != null) {
+
+      this.jsonLines.beginObject();
+      this.jsonLines.name("run").value(this.runId);
+      this.jsonLines.name("record").value("data");
+      this.jsonLines.name("key").value(key);
+      this.jsonLines.name("value").value(value);
+      this.jsonLines.endObject();
+      this.jsonLinesWriter.write('\n');
+    }
+
+    if (this.dataCSVWriter != null) {
+      writeCSVRow(this.dataCSVWriter, this.runId, key, value);
+    }
+  }
+
+  @Override
+  public void visit(final String entity, final int read, final int lane,
+      final int id, final AozanTest test, final TestResult result)
+      throws IOException {
+
+    final Object value = parseResultValue(result);
+    final Integer readValue = read == 0 ? null : read;
+    final Integer laneValue = lane == 0 ? null : lane;
+    final Integer idValue = id == 0 ? null : id;
+
+    if (this.jsonLines != null) {
+
+      this.jsonLines.beginObject();
+      this.jsonLines.name("run").value(this.runId);
+      this.jsonLines.name("record").value("test");
+      this.jsonLines.name("entity").value(entity);
+      this.jsonLines.name("read").value(readValue);
+      this.jsonLines.name("lane").value(laneValue);
+      this.jsonLines.name("id").value(idValue);
+      this.jsonLines.name("test").value(test.getName());
+      this.jsonLines.name("score").value(result.getScore());
+      this.jsonLines.name("type").value(result.getType());
+      this.jsonLines.name("value");
+      writeValue(this.jsonLines, value);
+      this.jsonLines.endObject();
+      this.jsonLinesWriter.write('\n');
+    }
+
+    if (this.testsCSVWriter != null) {
+      writeCSVRow(this.testsCSVWriter, this.runId, entity, toString(readValue),
+          toString(laneValue), toString(idValue), test.getName(),
+          Integer.toString(result.getScore()), result.getType(),
+          toString(value));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    // The JSON writer is not closed as it rejects empty documents
+    try (Writer w1 = this.jsonLinesWriter;
+        Writer w2 = this.dataCSVWriter;
+        Writer w3 = this.testsCSVWriter) {
+      // Only close the writers
+    }
+  }
+
+  //
+  // CSV methods
+  //
+
+  /**
+   * Write a row in a CSV file.
+   * @param writer the writer
+   * @param values the values of the row, the null values are empty fields
+   * @throws IOException if an error occurs while writing the row
+   */
+  static void writeCSVRow(final Writer writer, final String... values)
+      throws IOException {
+
+    for (int i = 0; i < values.length; i++) {
+
+      if (i > 0) {
+        writer.write(',');
+      }
+
+      if (values[i] != null) {
+        writer.write(escapeCSV(values[i]));
+      }
+    }
+
+    writer.write('\n');
+  }
+
+  /**
+   * Escape a CSV field as defined in RFC 4180.
+   * @param s the field
+   * @return the escaped field
+   */
+  static String escapeCSV(final String s) {
+
+    if (s.isEmpty()) {
+      return "\"\"";
+    }
+
+    for (int i = 0; i < s.length(); i++) {
+      switch (s.charAt(i)) {
+      case ',':
+      case '"':
+      case '\n':
+      case '\r':
+        return '"' + s.replace("\"", "\"\"") + '"';
+      default:
+        break;
+      }
+    }
+
+    return s;
+  }
+
+  //
+  // Value methods
+  //
+
+  /**
+   * Convert the message of a test result to a typed value using the type of
+   * the result.
+   * @param result the test result
+   * @return a Long, a Double or a String object
+   */
+  static Object parseResultValue(final TestResult result) {
+
+    final String message = result.getMessage();
+
+    if (message == null || message.isEmpty()) {
+      return null;
+    }
+
+    final String type = result.getType();
+
+    try {
+      if ("int".equals(type)) {
+        return Long.parseLong(message);
+      }
+
+      if ("float".equals(type) || "percent".equals(type)) {
+        return parseDouble(message);
+      }
+    } catch (NumberFormatException e) {
+      // The value is kept as a string
+    }
+
+    return message;
+  }
+
+  private static Object parseDouble(final String s) {
+
+    final double d = Double.parseDouble(s);
+
+    // NaN and infinite values are not allowed in JSON
+    return Double.isFinite(d) ? (Object) d : s;
+  }
+
+  private static String toString(final Object value) {
+
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * Write a value returned by parseResultValue().
+   * @param writer the JSON writer
+   * @param value the value, can be null
+   * @throws IOException if an error occurs while writing the value
+   */
+  static void writeValue(final JsonWriter writer, final Object value)
+      throws IOException {
+
+    if (value == null) {
+      writer.nullValue();
+    } else if (value instanceof Number) {
+      writer.value((Number) value);
+    } else {
+      writer.value(value.toString());
+    }
+  }
+
+  /**
+   * Create the writer of a CSV file and write its header.
+   * @param file the CSV file, can be null
+   * @param header the header of the file
+   * @return a new writer or null if the file is null
+   * @throws IOException if an error occurs while creating the file
+   */
+  private static Writer createCSVWriter(final File file,
+      final String[] header) throws IOException {
+
+    if (file == null) {
+      return null;
+    }
+
+    final Writer result =
+        Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    writeCSVRow(result, header);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param runId the run id
+   * @param jsonLinesFile the JSON Lines file, can be null
+   * @param dataCSVFile the CSV file of the run data, can be null
+   * @param testsCSVFile the CSV file of the results of the tests, can be null
+   * @throws IOException if an error occurs while creating the files
+   */
+  StructuredDataWriter(final String runId, final File jsonLinesFile,
+      final File dataCSVFile, final File testsCSVFile) throws IOException {
+
+    this.runId = runId;
+
+    if (jsonLinesFile == null) {
+      this.jsonLinesWriter = null;
+      this.jsonLines = null;
+    } else {
+      this.jsonLinesWriter = Files.newBufferedWriter(jsonLinesFile.toPath(),
+          StandardCharsets.UTF_8);
+      this.jsonLines = new JsonWriter(this.jsonLinesWriter);
+
+      // Several top level values are required by JSON Lines
+      this.jsonLines.setLenient(true);
+    }
+
+    Writer dataWriter = null;
+    try {
+      dataWriter = createCSVWriter(dataCSVFile, DATA_CSV_HEADER);
+      this.testsCSVWriter = createCSVWriter(testsCSVFile, TESTS_CSV_HEADER);
+    } catch (IOException e) {
+      try (Writer w1 = this.jsonLinesWriter; Writer w2 = dataWriter) {
+        throw e;
+      }
+    }
+    this.dataCSVWriter = dataWriter;
+  }
+
+}
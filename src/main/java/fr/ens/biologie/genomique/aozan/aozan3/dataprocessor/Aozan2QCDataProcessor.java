@@ -1,6 +1,10 @@
 package fr.ens.biologie.genomique.aozan.aozan3.dataprocessor;
 
+import static fr.ens.biologie.genomique.aozan.Globals.QC_DATA_CSV_EXTENSION;
 import static fr.ens.biologie.genomique.aozan.Globals.QC_DATA_EXTENSION;
+import static fr.ens.biologie.genomique.aozan.Globals.QC_JSON_LINES_EXTENSION;
+import static fr.ens.biologie.genomique.aozan.Globals.QC_PAGINATED_REPORT_SUFFIX;
+import static fr.ens.biologie.genomique.aozan.Globals.QC_TESTS_CSV_EXTENSION;
 import static fr.ens.biologie.genomique.aozan.aozan3.DataType.BCL;
 import static fr.ens.biologie.genomique.aozan.aozan3.DataType.ILLUMINA_FASTQ;
 import static fr.ens.biologie.genomique.aozan.aozan3.dataprocessor.BclConvertIlluminaDemuxDataProcessor.BCL_CONVERT_FORBIDDEN_DATA_SECTION;
@@ -346,6 +350,28 @@ public class Aozan2QCDataProcessor implements DataProcessor {
       }
     }
 
+    // Write JSON Lines and CSV files, the results of the tests computed for
+    // the reports are reused
+    boolean writeJSONLinesFile = conf.getBoolean("qc.write.jsonl.file", false);
+    boolean writeCSVFiles = conf.getBoolean("qc.write.csv.files", false);
+
+    exporter.writeStructuredData(
+        writeJSONLinesFile
+            ? new File(outputDirectory,
+                illuminaRunId + QC_JSON_LINES_EXTENSION)
+            : null,
+        writeCSVFiles
+            ? new File(outputDirectory, illuminaRunId + QC_DATA_CSV_EXTENSION)
+            : null,
+        writeCSVFiles
+            ? new File(outputDirectory, illuminaRunId + QC_TESTS_CSV_EXTENSION)
+            : null);
+
+    // Write the paginated report for the runs with a large number of samples
+    if (conf.getBoolean("qc.write.paginated.report", false)) {
+      exporter.writePaginatedReport(new File(outputDirectory,
+          illuminaRunId + QC_PAGINATED_REPORT_SUFFIX));
+    }
   }
 
 }
@@ -3,20 +3,28 @@ package fr.ens.biologie.genomique.aozan.aozan3.dataprocessor;
 import static fr.ens.biologie.genomique.aozan.aozan3.DataType.Category.RAW;
 import static fr.ens.biologie.genomique.aozan.aozan3.DataType.SequencingTechnology.ILLUMINA;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
+import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.aozan3.datatypefilter.CategoryDataTypeFilter;
 import fr.ens.biologie.genomique.aozan.aozan3.datatypefilter.DataTypeFilter;
 import fr.ens.biologie.genomique.aozan.aozan3.datatypefilter.MultiDataTypeFilter;
 import fr.ens.biologie.genomique.aozan.aozan3.datatypefilter.TechnologyDataTypeFilter;
 import fr.ens.biologie.genomique.aozan.aozan3.util.RSync;
+import fr.ens.biologie.genomique.aozan.collectors.interop.LiveInterOpReader;
 
 /**
- * This class define an Illumina synchronization data processor.
+ * This class define an Illumina synchronization data processor. After each
+ * partial synchronization of a run in progress, the new records of the
+ * synchronized InterOp files are read and the live metrics of the run are
+ * written in the output directory.
  * @author Laurent Jourdren
  * @since 3.0
  */
@@ -24,6 +32,12 @@ public class IlluminaSyncDataProcessor extends SyncDataProcessor {
 
   public static final String PROCESSOR_NAME = "illumina_sync";
 
+  /** Name of the file with the live metrics of a run in progress. */
+  public static final String LIVE_INTEROP_DATA_FILENAME = "live_interop.data";
+
+  /** The InterOp readers of the runs in progress, by input directory. */
+  private final Map<Path, LiveInterOpReader> liveReaders = new HashMap<>();
+
   @Override
   public String getName() {
     return PROCESSOR_NAME;
@@ -44,6 +58,11 @@ public class IlluminaSyncDataProcessor extends SyncDataProcessor {
     RSync rsync =
         new RSync(inputPath, outputPath, 0, Collections.<String> emptyList());
     rsync.sync();
+
+    // The run is complete
+    synchronized (this.liveReaders) {
+      this.liveReaders.remove(inputPath);
+    }
   }
 
   protected void partialSync(Path inputPath, Path outputPath)
@@ -51,6 +70,35 @@ public class IlluminaSyncDataProcessor extends SyncDataProcessor {
     RSync rsync =
         new RSync(inputPath, outputPath, 0, Arrays.asList("*.bin", "*.txt"));
     rsync.sync();
+
+    updateLiveMetrics(inputPath, outputPath);
+  }
+
+  /**
+   * Read the new records of the synchronized InterOp files of a run in
+   * progress and write the live metrics of the run.
+   * @param inputPath input directory of the run
+   * @param outputPath output directory of the partial synchronization
+   * @throws IOException if an error occurs while reading the InterOp files or
+   *           writing the metrics
+   */
+  private void updateLiveMetrics(Path inputPath, Path outputPath)
+      throws IOException {
+
+    final LiveInterOpReader reader;
+    synchronized (this.liveReaders) {
+      reader = this.liveReaders.computeIfAbsent(inputPath,
+          k -> new LiveInterOpReader(new File(outputPath.toFile(), "InterOp")));
+    }
+
+    try {
+      if (reader.update()) {
+        reader.getRunData().createRunDataFile(
+            new File(outputPath.toFile(), LIVE_INTEROP_DATA_FILENAME));
+      }
+    } catch (AozanException e) {
+      throw new IOException(e);
+    }
   }
 
 }
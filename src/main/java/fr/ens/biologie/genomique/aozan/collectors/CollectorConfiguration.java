@@ -6,6 +6,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import fr.ens.biologie.genomique.aozan.Settings;
 import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.SampleSheet;
 import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.SampleSheetUtils;
 
@@ -147,6 +148,19 @@ public class CollectorConfiguration {
     return Boolean.parseBoolean(value.trim());
   }
 
+  /**
+   * Get the number of threads to use. The number of threads is set by the
+   * qc.conf.threads setting, the number of processors is used if the setting
+   * is not set or is not a positive integer.
+   * @return the number of threads to use
+   */
+  public int getThreadCount() {
+
+    final int threads = getInt(Settings.QC_CONF_THREADS_KEY, -1);
+
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
   /**
    * Get a sample sheet.
    * @param key the setting key
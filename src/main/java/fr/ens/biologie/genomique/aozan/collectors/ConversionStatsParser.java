@@ -0,0 +1,564 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import static fr.ens.biologie.genomique.aozan.collectors.DemultiplexingCollector.PREFIX;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.base.Splitter;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.AozanRuntimeException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.util.XMLUtilsParser;
+
+/**
+ * This class define a streaming parser for the ConversionStats.xml file of
+ * bcl2fastq 2. The statistics of the tiles are summed on the fly in primitive
+ * accumulators, one group (project, sample, barcode, lane) at a time, so the
+ * whole document is never loaded in memory.
+ * @since 3.1
+ * @author agent
+ */
+final class ConversionStatsParser {
+
+  /** The Constant ALL_NAME_KEY. */
+  static final String ALL_NAME_KEY = "all";
+
+  /** The Constant UNKNOWN_NAME_KEY. */
+  static final String UNKNOWN_NAME_KEY = "unknown";
+
+  /** The Constant UNDETERMINED_NAME_KEY. */
+  static final String UNDETERMINED_NAME_KEY = "Undetermined";
+
+  private static final String[] TYPES = {"Raw", "Pf"};
+  private static final int RAW = 0;
+  private static final int PF = 1;
+
+  // Fields of the accumulators
+  private static final int CLUSTER_COUNT = 0;
+  private static final int YIELD = 1;
+  private static final int YIELD_Q30 = 2;
+  private static final int QUALITY_SCORE_SUM = 3;
+  private static final int FIELD_COUNT = 4;
+
+  private final int readCount;
+
+  /**
+   * Parse a ConversionStats.xml document and update the run data.
+   * @param in input stream of the document
+   * @param data the run data to update
+   * @throws AozanException if an error occurs while reading the document
+   */
+  void parse(final InputStream in, final RunData data) throws AozanException {
+
+    try {
+      final XMLStreamReader reader = XMLUtilsParser.createXMLStreamReader(in);
+
+      try {
+        parse(reader, data);
+      } finally {
+        reader.close();
+      }
+
+    } catch (XMLStreamException | NumberFormatException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  private void parse(final XMLStreamReader reader, final RunData data)
+      throws XMLStreamException, AozanException {
+
+    final TileStats tile = new TileStats();
+
+    String projectName = null;
+    String sampleName = null;
+    String barcodeSeq = null;
+    GroupTilesStats group = null;
+    int type = -1;
+    boolean inRead = false;
+
+    while (reader.hasNext()) {
+
+      switch (reader.next()) {
+
+      case XMLStreamConstants.START_ELEMENT:
+
+        switch (reader.getLocalName()) {
+
+        case "Project":
+          projectName = reader.getAttributeValue(null, "name");
+          break;
+
+        case "Sample":
+          sampleName =
+              reader.getAttributeValue(null, "name").replace('_', '-');
+          break;
+
+        case "Barcode":
+          barcodeSeq = reader.getAttributeValue(null, "name");
+          break;
+
+        case "Lane":
+          group = new GroupTilesStats(projectName, sampleName,
+              checkBarcodeSeq(barcodeSeq),
+              Integer.parseInt(reader.getAttributeValue(null, "number")));
+          break;
+
+        case "Tile":
+          tile.clear();
+          break;
+
+        case "Raw":
+          type = RAW;
+          break;
+
+        case "Pf":
+          type = PF;
+          break;
+
+        case "Read":
+          if (type != -1) {
+            tile.addRead(type, reader.getAttributeValue(null, "number"));
+            inRead = true;
+          }
+          break;
+
+        case "ClusterCount":
+          if (type != -1 && !inRead) {
+            tile.setClusterCount(type, parseLong(reader));
+          }
+          break;
+
+        case "Yield":
+          if (inRead) {
+            tile.setReadValue(type, YIELD, parseLong(reader));
+          }
+          break;
+
+        case "YieldQ30":
+          if (inRead) {
+            tile.setReadValue(type, YIELD_Q30, parseLong(reader));
+          }
+          break;
+
+        case "QualityScoreSum":
+          if (inRead) {
+            tile.setReadValue(type, QUALITY_SCORE_SUM, parseLong(reader));
+          }
+          break;
+
+        default:
+          break;
+        }
+        break;
+
+      case XMLStreamConstants.END_ELEMENT:
+
+        switch (reader.getLocalName()) {
+
+        case "Read":
+          inRead = false;
+          break;
+
+        case "Raw":
+        case "Pf":
+          type = -1;
+          break;
+
+        case "Tile":
+          if (group != null) {
+            group.add(tile);
+          }
+          break;
+
+        case "Lane":
+          if (group != null) {
+            group.putData(data);
+            group = null;
+          }
+          break;
+
+        default:
+          break;
+        }
+        break;
+
+      default:
+        break;
+      }
+    }
+  }
+
+  /**
+   * Read the text content of the current element as a long.
+   * @param reader the reader
+   * @return the value of the element
+   * @throws XMLStreamException if an error occurs while reading the element
+   */
+  private static long parseLong(final XMLStreamReader reader)
+      throws XMLStreamException {
+
+    return Long.parseLong(reader.getElementText().trim());
+  }
+
+  /**
+   * Check barcode sequence and replace unknown by undetermined.
+   * @param barcodeSeq the barcode sequence
+   * @return valid barcode sequence
+   */
+  static String checkBarcodeSeq(String barcodeSeq) {
+
+    if (barcodeSeq.equals(ALL_NAME_KEY)) {
+      return barcodeSeq;
+    }
+
+    if (barcodeSeq.equals(UNKNOWN_NAME_KEY)) {
+      // Replace name by usually term
+      return UNDETERMINED_NAME_KEY;
+    }
+
+    for (String s : Splitter.on('+').split(barcodeSeq)) {
+
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+
+        switch (c) {
+
+        case 'A':
+        case 'a':
+        case 'T':
+        case 't':
+        case 'G':
+        case 'g':
+        case 'C':
+        case 'c':
+          break;
+
+        default:
+          throw new AozanRuntimeException("Demultiplexing Collector: "
+              + "a base is invalid in the barcode sequence: " + barcodeSeq);
+        }
+      }
+    }
+
+    // Return sequence
+    return barcodeSeq;
+  }
+
+  //
+  // Internal classes
+  //
+
+  /**
+   * The internal class store the values of the current tile element. The
+   * instance is reused for all the tiles of the document.
+   */
+  private static final class TileStats {
+
+    private final long[] clusterCounts = new long[TYPES.length];
+    private final int[] readEntryCounts = new int[TYPES.length];
+    private final String[][] readNumbers = new String[TYPES.length][4];
+    private final long[][] readValues = new long[TYPES.length][4 * 3];
+
+    /**
+     * Clear the values of the previous tile.
+     */
+    void clear() {
+
+      Arrays.fill(this.clusterCounts, -1);
+      Arrays.fill(this.readEntryCounts, 0);
+    }
+
+    void setClusterCount(final int type, final long value) {
+
+      this.clusterCounts[type] = value;
+    }
+
+    /**
+     * Add a read entry for a type.
+     * @param type the type
+     * @param number the value of the number attribute of the read element
+     */
+    void addRead(final int type, final String number) {
+
+      final int entry = this.readEntryCounts[type]++;
+
+      if (entry == this.readNumbers[type].length) {
+        this.readNumbers[type] =
+            Arrays.copyOf(this.readNumbers[type], entry * 2);
+        this.readValues[type] =
+            Arrays.copyOf(this.readValues[type], entry * 2 * 3);
+      }
+
+      this.readNumbers[type][entry] = number == null ? "" : number.trim();
+      Arrays.fill(this.readValues[type], entry * 3, entry * 3 + 3, -1);
+    }
+
+    /**
+     * Set a value of the last read entry of a type.
+     * @param type the type
+     * @param field the field
+     * @param value the value
+     */
+    void setReadValue(final int type, final int field, final long value) {
+
+      this.readValues[type][(this.readEntryCounts[type] - 1) * 3 + field
+          - 1] = value;
+    }
+
+    /**
+     * Get the cluster count of a type.
+     * @param type the type
+     * @return the cluster count
+     * @throws AozanException if the tile does not contain the cluster count
+     */
+    long getClusterCount(final int type) throws AozanException {
+
+      if (this.clusterCounts[type] == -1) {
+        throw new AozanException(
+            "Parse XML file, not found cluster count in tile element for type "
+                + TYPES[type]);
+      }
+
+      return this.clusterCounts[type];
+    }
+
+    /**
+     * Get the index of the read entry of a type for a read number.
+     * @param type the type
+     * @param readNumber the read number
+     * @return the index of the first matching entry
+     * @throws AozanException if no entry match the read number
+     */
+    int getReadEntry(final int type, final int readNumber)
+        throws AozanException {
+
+      final String expected = Integer.toString(readNumber);
+
+      for (int i = 0; i < this.readEntryCounts[type]; i++) {
+
+        final String number = this.readNumbers[type][i];
+
+        // Patch for bc2fastq2 when no index is set
+        // TODO Remove this when bcl2fastq will be fixed
+        if (number.length() > 1 && readNumber == 1) {
+          return i;
+        }
+
+        if (number.equals(expected)) {
+          return i;
+        }
+      }
+
+      // No found expected element
+      throw new AozanException(
+          "Parse XML file, not found element in tile element for type "
+              + TYPES[type] + " read " + readNumber);
+    }
+
+    /**
+     * Get a value of a read entry.
+     * @param type the type
+     * @param entry the index of the entry
+     * @param field the field
+     * @return the value
+     * @throws AozanException if the value is not defined
+     */
+    long getReadValue(final int type, final int entry, final int field)
+        throws AozanException {
+
+      final long result = this.readValues[type][entry * 3 + field - 1];
+
+      if (result == -1) {
+        throw new AozanException("Parse XML file, incomplete read element "
+            + this.readNumbers[type][entry] + " in tile element for type "
+            + TYPES[type]);
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * The internal class compile statistics demultiplexing results data per
+   * project, per sample, per lane and per barcode sequence.
+   */
+  private final class GroupTilesStats {
+
+    private final String projectName;
+    private final String sampleName;
+    private final String barcodeSeq;
+    private final int lane;
+
+    /** Sums indexed by type, read and field. */
+    private final long[] sums;
+    private int tileCount;
+
+    /**
+     * Adds a tile data.
+     * @param t the tile stats instance.
+     * @throws AozanException if the tile does not contain the expected data
+     */
+    void add(final TileStats t) throws AozanException {
+
+      for (int type = 0; type < TYPES.length; type++) {
+
+        final long clusterCount = t.getClusterCount(type);
+
+        for (int read = 1; read <= readCount; read++) {
+
+          final int entry = t.getReadEntry(type, read);
+          final int offset = index(type, read);
+
+          this.sums[offset + CLUSTER_COUNT] += clusterCount;
+          this.sums[offset + YIELD] += t.getReadValue(type, entry, YIELD);
+          this.sums[offset + YIELD_Q30] +=
+              t.getReadValue(type, entry, YIELD_Q30);
+          this.sums[offset + QUALITY_SCORE_SUM] +=
+              t.getReadValue(type, entry, QUALITY_SCORE_SUM);
+        }
+      }
+
+      this.tileCount++;
+    }
+
+    private int index(final int type, final int read) {
+
+      return (type * readCount + read - 1) * FIELD_COUNT;
+    }
+
+    /**
+     * Update run data.
+     * @param runData the run data
+     */
+    void putData(final RunData runData) {
+
+      if (runData == null) {
+        return;
+      }
+
+      // Add barcode sequence, the index is not indices with a number to
+      // respect actual syntax entry in rundata
+      if (this.barcodeSeq.equals(UNDETERMINED_NAME_KEY)) {
+        runData.put(String.format(PREFIX + ".lane%s.sample.lane%s.barcode",
+            this.lane, this.lane), this.barcodeSeq);
+      } else if (!this.barcodeSeq.equals(ALL_NAME_KEY)) {
+        runData.put(String.format(PREFIX + ".lane%s.sample.%s.barcode",
+            this.lane, this.sampleName), this.barcodeSeq);
+      }
+
+      if (this.tileCount == 0) {
+        return;
+      }
+
+      for (int type = 0; type < TYPES.length; type++) {
+        for (int read = 1; read <= readCount; read++) {
+
+          final String prefix = buildPrefixRunData(TYPES[type], read);
+          final int offset = index(type, read);
+
+          runData.put(prefix + ".cluster.count",
+              this.sums[offset + CLUSTER_COUNT]);
+          runData.put(prefix + ".yield", this.sums[offset + YIELD]);
+          runData.put(prefix + ".yield.q30", this.sums[offset + YIELD_Q30]);
+          runData.put(prefix + ".quality.score.sum",
+              this.sums[offset + QUALITY_SCORE_SUM]);
+        }
+      }
+    }
+
+    /**
+     * Builds the prefix run data.
+     * @param type the type
+     * @param read the read number
+     * @return the prefix
+     */
+    private String buildPrefixRunData(final String type, final int read) {
+
+      if (this.barcodeSeq.equals(ALL_NAME_KEY)
+          && ALL_NAME_KEY.equals(this.projectName)
+          && ALL_NAME_KEY.equals(this.sampleName)) {
+
+        return String.format(PREFIX + ".lane%s.%s.read%s.%s", this.lane,
+            this.sampleName, read, type);
+      }
+
+      if (this.barcodeSeq.equals(ALL_NAME_KEY)) {
+
+        return String.format(PREFIX + ".lane%s.sample.%s.read%s.%s", this.lane,
+            this.sampleName, read, type);
+      }
+
+      if (this.barcodeSeq.equals(UNDETERMINED_NAME_KEY)) {
+        return String.format(PREFIX + ".lane%s.sample.lane%s.read%s.%s",
+            this.lane, this.lane, read, type);
+      }
+
+      return String.format(PREFIX + ".lane%s.sample.%s.read%s.%s.%s",
+          this.lane, this.sampleName, read, this.barcodeSeq, type);
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param projectName the project name
+     * @param sampleName the sample name
+     * @param barcodeSeq the barcode sequence
+     * @param lane the lane
+     */
+    GroupTilesStats(final String projectName, final String sampleName,
+        final String barcodeSeq, final int lane) {
+
+      this.projectName = projectName;
+      this.sampleName = sampleName;
+      this.barcodeSeq = barcodeSeq;
+      this.lane = lane;
+      this.sums = new long[TYPES.length * readCount * FIELD_COUNT];
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param readCount the number of non indexed reads
+   */
+  ConversionStatsParser(final int readCount) {
+
+    this.readCount = readCount;
+  }
+
+}
@@ -4,9 +4,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
@@ -30,6 +33,9 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
   /** The Bcl2fastq output path. */
   private String bcl2FastqOutputPath;
 
+  /** The number of threads. */
+  private int threadCount;
+
   private static class PairEntry {
 
     private final DemultiplexStats.Entry demultiplexStats;
@@ -62,6 +68,7 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
     }
 
     this.bcl2FastqOutputPath = qc.getFastqDir().getPath();
+    this.threadCount = conf.getThreadCount();
   }
 
   @Override
@@ -87,7 +94,8 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
 
     try {
       collect(data, demuxSummaryFile,
-          qualityMetricsFile.exists() ? qualityMetricsFile : null);
+          qualityMetricsFile.exists() ? qualityMetricsFile : null,
+          this.threadCount);
     } catch (IOException e) {
       throw new AozanException(e);
     }
@@ -97,13 +105,16 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
    * Collect values.
    * @param runData the RunData object
    * @param demuxSummaryFile CVS file to parse
+   * @param qualityMetrics quality metrics CSV file, can be null
+   * @param threadCount number of threads to use
    * @throws IOException if an error occurs while reading the CSV file
+   * @throws AozanException if an error occurs while computing the statistics
    */
   private static void collect(final RunData runData,
-      final File demuxSummaryFile, final File qualityMetrics)
-      throws IOException {
+      final File demuxSummaryFile, final File qualityMetrics,
+      final int threadCount) throws IOException, AozanException {
 
-    List<Integer> runReads = runReads(runData);
+    final Map<Integer, Integer> readSizes = readSizes(runData);
 
     Map<String, PairEntry> pairEntries = new HashMap<>();
 
@@ -132,39 +143,67 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
     }
 
     Map<String, Integer> indexMap = new HashMap<>();
+    Map<Integer, List<PairEntry>> laneEntries = new TreeMap<>();
     int count = 0;
 
     for (PairEntry entry : pairEntries.values()) {
 
-      if (UNDETERMINED_NAME_KEY.equals(entry.demultiplexStats.getSampleID())) {
-
-        // Create entries for undetermined clusters
-        addUndeterminedStats(runData, runReads, entry);
-
-      } else {
+      // The sample numbers are shared by all the lanes
+      if (!UNDETERMINED_NAME_KEY
+          .equals(entry.demultiplexStats.getSampleID())) {
 
         String index = entry.demultiplexStats.getIndex();
         if (!indexMap.containsKey(index)) {
           indexMap.put(index, count++);
         }
-        int sampleNumber = indexMap.get(index);
-
-        // Create entries for sample clusters
-        addSampleStats(runData, runReads, sampleNumber, entry);
       }
 
+      laneEntries.computeIfAbsent(entry.demultiplexStats.getLane(),
+          k -> new ArrayList<>()).add(entry);
+    }
+
+    // The statistics of each lane are summed in their own RunData object
+    final List<Callable<RunData>> tasks = new ArrayList<>();
+
+    for (List<PairEntry> entries : laneEntries.values()) {
+
+      tasks.add(() -> {
+
+        final RunData result = new RunData();
+
+        for (PairEntry entry : entries) {
+
+          if (UNDETERMINED_NAME_KEY
+              .equals(entry.demultiplexStats.getSampleID())) {
+
+            // Create entries for undetermined clusters
+            addUndeterminedStats(result, readSizes, entry);
+
+          } else {
+
+            int sampleNumber =
+                indexMap.get(entry.demultiplexStats.getIndex());
+
+            // Create entries for sample clusters
+            addSampleStats(result, readSizes, sampleNumber, entry);
+          }
+        }
+
+        return result;
+      });
     }
 
+    DemultiplexingStatsLoader.load(tasks, threadCount, runData);
   }
 
   /**
    * Add statistics in the RunData object for an undetermined entry.
    * @param runData RunData object
-   * @param runReads list of reads
+   * @param readSizes sizes of the reads
    * @param e Parsed CVS entry
    */
   private static void addUndeterminedStats(RunData runData,
-      List<Integer> runReads, PairEntry e) {
+      Map<Integer, Integer> readSizes, PairEntry e) {
 
     int lane = e.demultiplexStats.getLane();
     String sampleID = e.demultiplexStats.getSampleID();
@@ -175,10 +214,10 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
         String.format(PREFIX + ".lane%s.sample.lane%s.barcode", lane, lane),
         index);
 
-    for (int read : runReads) {
+    for (Map.Entry<Integer, Integer> r : readSizes.entrySet()) {
 
-      int readSize =
-          runData.getInt(String.format("run.info.read%s.cycles", read));
+      int read = r.getKey();
+      int readSize = r.getValue();
 
       List<String> prefixes = new ArrayList<>();
       prefixes.add(String.format(PREFIX + ".lane%s.sample.%s.read%d.%s", lane,
@@ -198,11 +237,11 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
   /**
    * Add statistics in the RunData object for a sample entry.
    * @param runData RunData object
-   * @param runReads list of reads
+   * @param readSizes sizes of the reads
    * @param e Parsed CVS entry
    */
-  private static void addSampleStats(RunData runData, List<Integer> runReads,
-      int sampleNumber, PairEntry e) {
+  private static void addSampleStats(RunData runData,
+      Map<Integer, Integer> readSizes, int sampleNumber, PairEntry e) {
 
     int lane = e.demultiplexStats.getLane();
     String sampleID = e.demultiplexStats.getSampleID();
@@ -212,10 +251,10 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
     runData.put(String.format(PREFIX + ".lane%s.sample.%s.barcode%s", lane,
         sampleID, (sampleNumber == 0 ? "" : sampleNumber)), index);
 
-    for (int read : runReads) {
+    for (Map.Entry<Integer, Integer> r : readSizes.entrySet()) {
 
-      int readSize =
-          runData.getInt(String.format("run.info.read%d.cycles", read));
+      int read = r.getKey();
+      int readSize = r.getValue();
 
       List<String> prefixes = new ArrayList<>();
       prefixes.add(String.format(PREFIX + ".lane%s.sample.%s.read%d.%s.%s",
@@ -287,20 +326,23 @@ public class DemultiplexStatsCollector extends DemultiplexingCollector {
   }
 
   /**
-   * Get the read number list.
+   * Get the sizes of the reads. The reads are numbered without the indexed
+   * reads.
    * @param runData RunData object
-   * @return a list with read number
+   * @return a map with the read number as key and the read size as value
    */
-  private static List<Integer> runReads(RunData runData) {
+  private static Map<Integer, Integer> readSizes(RunData runData) {
 
     int max = runData.getInt("run.info.read.count");
-    List<Integer> result = new ArrayList<>(max);
+    Map<Integer, Integer> result = new LinkedHashMap<>();
 
     int count = 0;
 
     for (int read = 1; read <= max; read++) {
       if (!runData.getBoolean("run.info.read" + read + ".indexed")) {
-        result.add(++count);
+        count++;
+        result.put(count, runData
+            .getInt(String.format("run.info.read%d.cycles", count)));
       }
     }
 
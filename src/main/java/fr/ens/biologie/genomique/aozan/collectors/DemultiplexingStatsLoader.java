@@ -0,0 +1,375 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+/**
+ * This class define a loader that process the demultiplexing statistics of a
+ * run in several partitions at the same time. Each partition fills its own
+ * RunData object, and the results are merged in the order of the partitions.
+ * For the XML statistics files, the partitions are byte ranges of the file
+ * that contains only complete elements.
+ * @since 3.1
+ * @author agent
+ */
+final class DemultiplexingStatsLoader {
+
+  /** Minimal size of a XML partition. */
+  static final int MIN_PARTITION_SIZE = 1024 * 1024;
+
+  /**
+   * This class define a byte range of a XML file that contains a sequence of
+   * complete sibling elements. The start tag of the parent element is kept to
+   * allow the parsing of the range as a standalone document.
+   */
+  static final class Partition {
+
+    private final byte[] parentStartTag;
+    private final String parentName;
+    private final long start;
+    private final long end;
+
+    /**
+     * Get the start position of the range.
+     * @return the start position of the range
+     */
+    long getStart() {
+      return this.start;
+    }
+
+    /**
+     * Get the end position (exclusive) of the range.
+     * @return the end position of the range
+     */
+    long getEnd() {
+      return this.end;
+    }
+
+    /**
+     * Open the range as a standalone XML document.
+     * @param file the XML file
+     * @return an input stream
+     * @throws IOException if an error occurs while reading the file
+     */
+    InputStream open(final File file) throws IOException {
+
+      final byte[] content = new byte[Math.toIntExact(this.end - this.start)];
+
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+        raf.seek(this.start);
+        raf.readFully(content);
+      }
+
+      final InputStream is = new ByteArrayInputStream(content);
+
+      if (this.parentStartTag == null) {
+        return is;
+      }
+
+      return new SequenceInputStream(
+          Collections.enumeration(Arrays.asList(
+              new ByteArrayInputStream(this.parentStartTag), is,
+              new ByteArrayInputStream(("</" + this.parentName + ">")
+                  .getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    //
+    // Constructor
+    //
+
+    private Partition(final byte[] parentStartTag, final String parentName,
+        final long start, final long end) {
+
+      this.parentStartTag = parentStartTag;
+      this.parentName = parentName;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * Split a XML file in byte ranges at the boundaries of an element.
+   * Consecutive elements with the same parent element are grouped until the
+   * size of the range reach the size of the file divided by the number of
+   * partitions.
+   * @param file the XML file
+   * @param elementName name of the element to use as boundary
+   * @param parentName name of the parent element to repeat in each partition
+   * @param partitionCount the expected number of partitions
+   * @return a list of partitions or an empty list if the file cannot be split
+   * @throws IOException if an error occurs while reading the file
+   */
+  static List<Partition> split(final File file, final String elementName,
+      final String parentName, final int partitionCount) throws IOException {
+
+    final long length = file.length();
+
+    if (partitionCount < 2
+        || length < 2 * MIN_PARTITION_SIZE || length > Integer.MAX_VALUE) {
+      return Collections.emptyList();
+    }
+
+    final long target =
+        Math.max(MIN_PARTITION_SIZE, length / partitionCount);
+    final byte[] elementTag = elementName.getBytes(StandardCharsets.UTF_8);
+    final byte[] parentTag = parentName.getBytes(StandardCharsets.UTF_8);
+
+    final List<Partition> result = new ArrayList<>();
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+
+      final MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      final int limit = buffer.limit();
+
+      byte[] parentStartTag = null;
+      int depth = 0;
+      long elementStart = -1;
+      long rangeStart = -1;
+      long rangeEnd = -1;
+
+      for (int i = 0; i < limit; i++) {
+
+        if (buffer.get(i) != '<' || i + 1 >= limit) {
+          continue;
+        }
+
+        final boolean endTag = buffer.get(i + 1) == '/';
+        final int nameStart = endTag ? i + 2 : i + 1;
+        final int tagEnd = indexOf(buffer, (byte) '>', nameStart);
+
+        if (tagEnd == -1) {
+          break;
+        }
+
+        if (matchName(buffer, nameStart, elementTag)) {
+
+          if (endTag) {
+
+            if (--depth < 0) {
+              return Collections.emptyList();
+            }
+
+          } else {
+
+            if (depth == 0) {
+
+              // A partition without parent would not be a valid document
+              if (parentStartTag == null) {
+                return Collections.emptyList();
+              }
+              elementStart = i;
+            }
+            if (buffer.get(tagEnd - 1) != '/') {
+              depth++;
+            }
+          }
+
+          // End of a complete element
+          if (depth == 0) {
+
+            if (rangeStart == -1) {
+              rangeStart = elementStart;
+            }
+            rangeEnd = tagEnd + 1;
+
+            if (rangeEnd - rangeStart >= target) {
+              result.add(new Partition(parentStartTag, parentName, rangeStart,
+                  rangeEnd));
+              rangeStart = -1;
+            }
+          }
+
+        } else if (depth == 0 && matchName(buffer, nameStart, parentTag)) {
+
+          // Close the current range at the end of the parent element
+          if (rangeStart != -1) {
+            result.add(new Partition(parentStartTag, parentName, rangeStart,
+                rangeEnd));
+            rangeStart = -1;
+          }
+
+          if (endTag) {
+            parentStartTag = null;
+          } else {
+            parentStartTag = new byte[tagEnd + 1 - i];
+            for (int j = 0; j < parentStartTag.length; j++) {
+              parentStartTag[j] = buffer.get(i + j);
+            }
+          }
+        }
+
+        i = tagEnd;
+      }
+
+      if (depth != 0) {
+        return Collections.emptyList();
+      }
+
+      if (rangeStart != -1) {
+        result.add(
+            new Partition(parentStartTag, parentName, rangeStart, rangeEnd));
+      }
+    }
+
+    return result.size() < 2 ? Collections.emptyList() : result;
+  }
+
+  private static int indexOf(final MappedByteBuffer buffer, final byte b,
+      final int from) {
+
+    for (int i = from; i < buffer.limit(); i++) {
+      if (buffer.get(i) == b) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Test if the name of a tag at a position is the expected name.
+   * @param buffer the buffer
+   * @param pos position of the first character of the name
+   * @param name the expected name
+   * @return true if the name of the tag is the expected name
+   */
+  private static boolean matchName(final MappedByteBuffer buffer,
+      final int pos, final byte[] name) {
+
+    if (pos + name.length >= buffer.limit()) {
+      return false;
+    }
+
+    for (int i = 0; i < name.length; i++) {
+      if (buffer.get(pos + i) != name[i]) {
+        return false;
+      }
+    }
+
+    switch (buffer.get(pos + name.length)) {
+
+    case '>':
+    case '/':
+    case ' ':
+    case '\t':
+    case '\r':
+    case '\n':
+      return true;
+
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Run the tasks of the partitions and merge their results in the order of
+   * the list.
+   * @param tasks the tasks of the partitions
+   * @param threadCount maximal number of threads to use
+   * @param data the run data to update
+   * @throws AozanException if an error occurs in a task
+   */
+  static void load(final List<Callable<RunData>> tasks,
+      final int threadCount, final RunData data) throws AozanException {
+
+    if (tasks.size() < 2 || threadCount < 2) {
+
+      for (Callable<RunData> task : tasks) {
+        data.put(call(task));
+      }
+      return;
+    }
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(threadCount, tasks.size()));
+
+    try {
+
+      final List<Future<RunData>> futures = new ArrayList<>();
+      for (Callable<RunData> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+
+      for (Future<RunData> future : futures) {
+        data.put(future.get());
+      }
+
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof AozanException) {
+        throw (AozanException) e.getCause();
+      }
+      throw new AozanException(e.getCause());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static RunData call(final Callable<RunData> task)
+      throws AozanException {
+
+    try {
+      return task.call();
+    } catch (AozanException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new AozanException(e);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  private DemultiplexingStatsLoader() {
+  }
+
+}
@@ -67,17 +67,7 @@ public class FastQCCollector extends AbstractFastqCollector {
     super.configure(qc, conf);
 
     // Set the number of threads
-    if (conf.containsKey(Settings.QC_CONF_THREADS_KEY)) {
-
-      try {
-        final int confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
-
-        if (confThreads > 0) {
-          this.numberThreads = confThreads;
-        }
-      } catch (final NumberFormatException ignored) {
-      }
-    }
+    this.numberThreads = conf.getThreadCount();
 
     // Check if process undetermined indices samples specify in Aozan
     // configuration
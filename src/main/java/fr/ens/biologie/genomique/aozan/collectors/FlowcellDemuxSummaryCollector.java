@@ -23,29 +23,27 @@
 
 package fr.ens.biologie.genomique.aozan.collectors;
 
-import static fr.ens.biologie.genomique.kenetre.util.XMLUtils.getAttributeValue;
-import static fr.ens.biologie.genomique.kenetre.util.XMLUtils.getTagValue;
-
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.base.MoreObjects;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
-import fr.ens.biologie.genomique.kenetre.util.XMLUtils;
+import fr.ens.biologie.genomique.aozan.util.XMLUtilsParser;
 
 /**
  * This class define a collector for demux statistics data from bcl2fastq
@@ -56,6 +54,7 @@ import fr.ens.biologie.genomique.kenetre.util.XMLUtils;
 class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
 
   private String bcl2fastqOutputPath;
+  private int threadCount;
 
   @Override
   public void configure(final QC qc, final CollectorConfiguration conf) {
@@ -65,6 +64,7 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
     }
 
     this.bcl2fastqOutputPath = qc.getFastqDir().getAbsolutePath();
+    this.threadCount = conf.getThreadCount();
   }
 
   @Override
@@ -79,120 +79,234 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
         + "/Basecall_Stats_" + data.getFlowcellId()
         + "/Flowcell_demux_summary.xml";
 
-    // Create the input stream
-    try (InputStream is = new FileInputStream(demuxSummaryPath)) {
+    final File demuxSummaryFile = new File(demuxSummaryPath);
+
+    try {
 
-      final DocumentBuilder dBuilder =
-          DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      final Document doc = dBuilder.parse(is);
-      doc.getDocumentElement().normalize();
+      // Each lane is processed in its own partition when the file is large
+      final List<DemultiplexingStatsLoader.Partition> partitions =
+          DemultiplexingStatsLoader.split(demuxSummaryFile, "Lane", "Summary",
+              this.threadCount);
 
-      parse(doc, data);
+      if (partitions.isEmpty()) {
 
-    } catch (final IOException | SAXException
-        | ParserConfigurationException e) {
+        // Create the input stream
+        try (InputStream is =
+            new BufferedInputStream(new FileInputStream(demuxSummaryFile))) {
+          parse(is, data);
+        }
+        return;
+      }
+
+      final List<Callable<RunData>> tasks = new ArrayList<>();
+
+      for (DemultiplexingStatsLoader.Partition partition : partitions) {
+
+        tasks.add(() -> {
+
+          final RunData result = new RunData();
+          try (InputStream is = partition.open(demuxSummaryFile)) {
+            parse(is, result);
+          }
+          return result;
+        });
+      }
+
+      DemultiplexingStatsLoader.load(tasks, this.threadCount, data);
+
+    } catch (final IOException e) {
       throw new AozanException(e);
     }
   }
 
-  private void parse(final Document document, final RunData data) {
+  /**
+   * Parse a document and update the run data.
+   * @param is input stream of the document
+   * @param data the run data to update
+   * @throws AozanException if an error occurs while reading the document
+   */
+  private void parse(final InputStream is, final RunData data)
+      throws AozanException {
+
+    try {
+
+      final XMLStreamReader reader = XMLUtilsParser.createXMLStreamReader(is);
 
-    for (final Element e1 : XMLUtils.getElementsByTagName(document,
-        "Summary")) {
-      for (final Element e2 : XMLUtils.getElementsByTagName(e1, "Lane")) {
-        parseLane(e2, data);
+      try {
+        parse(reader, data);
+      } finally {
+        reader.close();
       }
-    }
 
+    } catch (final XMLStreamException | NumberFormatException e) {
+      throw new AozanException(e);
+    }
   }
 
-  private void parseLane(final Element e, final RunData data) {
-
-    final int lane = Integer.parseInt(getAttributeValue(e, "index"));
+  /**
+   * Stream the document and sum the statistics of the tiles per sample and per
+   * lane.
+   * @param reader the reader
+   * @param data the run data to update
+   * @throws XMLStreamException if an error occurs while reading the document
+   */
+  private void parse(final XMLStreamReader reader, final RunData data)
+      throws XMLStreamException {
 
     final Map<Integer, TileStats> rawLine = new HashMap<>();
     final Map<Integer, TileStats> pfLine = new HashMap<>();
+    final Map<Integer, TileStats> mapRaw = new HashMap<>();
+    final Map<Integer, TileStats> mapPF = new HashMap<>();
 
-    // Parse samples of the line
-    for (final Element e1 : XMLUtils.getElementsByTagName(e, "Sample")) {
-      parseSample(e1, lane, data, rawLine, pfLine);
-    }
+    boolean inSummary = false;
+    int lane = -1;
+    String sample = null;
+    String barcode = null;
+    TileStats raw = null;
+    TileStats pf = null;
+    TileStats current = null;
 
-    // Put the line stats
-    for (final Map.Entry<Integer, TileStats> entry : rawLine.entrySet()) {
-      entry.getValue().putData(data,
-          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".raw");
-    }
+    while (reader.hasNext()) {
 
-    for (final Map.Entry<Integer, TileStats> entry : pfLine.entrySet()) {
-      entry.getValue().putData(data,
-          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".pf");
-    }
-  }
+      switch (reader.next()) {
 
-  private void parseSample(final Element e, final int lane, final RunData data,
-      final Map<Integer, TileStats> rawLine,
-      final Map<Integer, TileStats> pfLine) {
+      case XMLStreamConstants.START_ELEMENT:
 
-    final String sample = getAttributeValue(e, "index").trim();
+        switch (reader.getLocalName()) {
 
-    for (final Element e1 : XMLUtils.getElementsByTagName(e, "Barcode")) {
-      final String barcode = getAttributeValue(e1, "index").trim();
+        case "Summary":
+          inSummary = true;
+          break;
 
-      final Map<Integer, TileStats> mapRaw = new HashMap<>();
-      final Map<Integer, TileStats> mapPF = new HashMap<>();
+        case "Lane":
+          if (inSummary) {
+            lane = Integer.parseInt(reader.getAttributeValue(null, "index"));
+            rawLine.clear();
+            pfLine.clear();
+          }
+          break;
+
+        case "Sample":
+          sample = reader.getAttributeValue(null, "index").trim();
+          break;
+
+        case "Barcode":
+          barcode = reader.getAttributeValue(null, "index").trim();
+          mapRaw.clear();
+          mapPF.clear();
+          break;
+
+        case "Read":
+          if (lane != -1 && barcode != null) {
+            final int read =
+                Integer.parseInt(reader.getAttributeValue(null, "index"));
+
+            rawLine.computeIfAbsent(read, k -> new TileStats());
+            pfLine.computeIfAbsent(read, k -> new TileStats());
+            raw = mapRaw.computeIfAbsent(read, k -> new TileStats());
+            pf = mapPF.computeIfAbsent(read, k -> new TileStats());
+          }
+          break;
 
-      for (final Element e2 : XMLUtils.getElementsByTagName(e1, "Tile")) {
-        // final int tile = Integer.parseInt(getAttributeValue(e2, "index"));
+        case "Raw":
+          current = raw;
+          break;
 
-        for (final Element e3 : XMLUtils.getElementsByTagName(e2, "Read")) {
-          final int read = Integer.parseInt(getAttributeValue(e3, "index"));
+        case "Pf":
+          current = pf;
+          break;
 
-          if (!rawLine.containsKey(read)) {
-            rawLine.put(read, new TileStats());
-            pfLine.put(read, new TileStats());
+        default:
+          if (current != null) {
+            current.add(reader.getLocalName(), reader);
           }
+          break;
+        }
+        break;
 
-          final TileStats raw;
-          final TileStats pf;
-
-          if (!mapRaw.containsKey(read)) {
-            raw = new TileStats();
-            pf = new TileStats();
-            mapRaw.put(read, raw);
-            mapPF.put(read, pf);
-          } else {
-            raw = mapRaw.get(read);
-            pf = mapPF.get(read);
-          }
+      case XMLStreamConstants.END_ELEMENT:
+
+        switch (reader.getLocalName()) {
+
+        case "Raw":
+        case "Pf":
+          current = null;
+          break;
 
-          for (final Element e4 : XMLUtils.getElementsByTagName(e3, "Raw")) {
-            raw.add(new TileStats(e4));
+        case "Read":
+          raw = null;
+          pf = null;
+          break;
+
+        case "Barcode":
+          if (lane != -1) {
+            putSampleData(data, lane, sample, barcode, rawLine, pfLine, mapRaw,
+                mapPF);
           }
+          barcode = null;
+          break;
 
-          for (final Element e5 : XMLUtils.getElementsByTagName(e3, "Pf")) {
-            pf.add(new TileStats(e5));
+        case "Lane":
+          if (lane != -1) {
+            putLaneData(data, lane, rawLine, pfLine);
           }
+          lane = -1;
+          break;
+
+        case "Summary":
+          inSummary = false;
+          break;
+
+        default:
+          break;
         }
+        break;
+
+      default:
+        break;
       }
+    }
+  }
+
+  private static void putLaneData(final RunData data, final int lane,
+      final Map<Integer, TileStats> rawLine,
+      final Map<Integer, TileStats> pfLine) {
 
-      final String prefix = PREFIX + ".lane" + lane + ".sample." + sample;
+    // Put the line stats
+    for (final Map.Entry<Integer, TileStats> entry : rawLine.entrySet()) {
+      entry.getValue().putData(data,
+          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".raw");
+    }
 
-      data.put(prefix + ".barcode", barcode);
+    for (final Map.Entry<Integer, TileStats> entry : pfLine.entrySet()) {
+      entry.getValue().putData(data,
+          PREFIX + ".lane" + lane + ".all.read" + entry.getKey() + ".pf");
+    }
+  }
 
-      for (final Map.Entry<Integer, TileStats> entry : mapRaw.entrySet()) {
-        final int read = entry.getKey();
-        final TileStats ts = entry.getValue();
-        rawLine.get(read).add(ts);
-        ts.putData(data, prefix + ".read" + entry.getKey() + ".raw");
-      }
+  private static void putSampleData(final RunData data, final int lane,
+      final String sample, final String barcode,
+      final Map<Integer, TileStats> rawLine,
+      final Map<Integer, TileStats> pfLine,
+      final Map<Integer, TileStats> mapRaw,
+      final Map<Integer, TileStats> mapPF) {
 
-      for (final Map.Entry<Integer, TileStats> entry : mapPF.entrySet()) {
-        final int read = entry.getKey();
-        final TileStats ts = entry.getValue();
-        pfLine.get(read).add(ts);
-        ts.putData(data, prefix + ".read" + entry.getKey() + ".pf");
-      }
+    final String prefix = PREFIX + ".lane" + lane + ".sample." + sample;
+
+    data.put(prefix + ".barcode", barcode);
+
+    for (final Map.Entry<Integer, TileStats> entry : mapRaw.entrySet()) {
+      final int read = entry.getKey();
+      final TileStats ts = entry.getValue();
+      rawLine.get(read).add(ts);
+      ts.putData(data, prefix + ".read" + entry.getKey() + ".raw");
+    }
+
+    for (final Map.Entry<Integer, TileStats> entry : mapPF.entrySet()) {
+      final int read = entry.getKey();
+      final TileStats ts = entry.getValue();
+      pfLine.get(read).add(ts);
+      ts.putData(data, prefix + ".read" + entry.getKey() + ".pf");
     }
   }
 
@@ -226,6 +340,52 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
       this.qualityScoreSum += t.qualityScoreSum;
     }
 
+    /**
+     * Add the value of a child element of a Raw or Pf element.
+     * @param name name of the element
+     * @param reader the reader positioned on the element
+     * @throws XMLStreamException if an error occurs while reading the element
+     */
+    public void add(final String name, final XMLStreamReader reader)
+        throws XMLStreamException {
+
+      switch (name) {
+
+      case "Yield":
+        this.yield += parseLong(reader);
+        break;
+
+      case "YieldQ30":
+        this.yieldQ30 += parseLong(reader);
+        break;
+
+      case "ClusterCount":
+        this.clusterCount += parseLong(reader);
+        break;
+
+      case "ClusterCount0MismatchBarcode":
+        this.clusterCount0MismatchBarcode += parseLong(reader);
+        break;
+
+      case "ClusterCount1MismatchBarcode":
+        this.clusterCount1MismatchBarcode += parseLong(reader);
+        break;
+
+      case "QualityScoreSum":
+        this.qualityScoreSum += parseLong(reader);
+        break;
+
+      default:
+        break;
+      }
+    }
+
+    private static long parseLong(final XMLStreamReader reader)
+        throws XMLStreamException {
+
+      return Long.parseLong(reader.getElementText().trim());
+    }
+
     @Override
     public String toString() {
 
@@ -261,16 +421,5 @@ class FlowcellDemuxSummaryCollector extends DemultiplexingCollector {
     public TileStats() {
     }
 
-    public TileStats(final Element e) {
-      this.yield = Long.parseLong(getTagValue(e, "Yield"));
-      this.yieldQ30 = Long.parseLong(getTagValue(e, "YieldQ30"));
-      this.clusterCount = Long.parseLong(getTagValue(e, "ClusterCount"));
-      this.clusterCount0MismatchBarcode =
-          Long.parseLong(getTagValue(e, "ClusterCount0MismatchBarcode"));
-      this.clusterCount1MismatchBarcode =
-          Long.parseLong(getTagValue(e, "ClusterCount1MismatchBarcode"));
-      this.qualityScoreSum = Long.parseLong(getTagValue(e, "QualityScoreSum"));
-    }
-
   }
 }
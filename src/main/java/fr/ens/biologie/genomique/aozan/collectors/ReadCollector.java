@@ -23,6 +23,7 @@
 
 package fr.ens.biologie.genomique.aozan.collectors;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,7 +35,9 @@ import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.Settings;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ErrorMetricsCollector;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ExtractionMetricsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.InterOpLoader;
 import fr.ens.biologie.genomique.aozan.collectors.interop.QualityMetricsCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileAnomalyCollector;
 import fr.ens.biologie.genomique.aozan.collectors.interop.TileMetricsCollector;
 
 /**
@@ -50,6 +53,7 @@ public class ReadCollector implements Collector {
   public static final String READ_DATA_PREFIX = "reads";
 
   private final List<Collector> subCollectionList = new ArrayList<>();
+  private InterOpLoader interOpLoader;
 
   @Override
   public String getName() {
@@ -86,17 +90,37 @@ public class ReadCollector implements Collector {
       this.subCollectionList.add(new ExtractionMetricsCollector());
       this.subCollectionList.add(new ErrorMetricsCollector());
       this.subCollectionList.add(new QualityMetricsCollector());
+      this.subCollectionList.add(new TileAnomalyCollector());
     }
 
     // Configure sub-collector
     for (final Collector collector : this.subCollectionList) {
       collector.configure(qc, conf);
     }
+
+    if (!readXMLCollectorUsed) {
+
+      // The data computed from the InterOp files are cached in the QC output
+      // directory
+      File cacheDir = null;
+      if (conf.getBoolean(Settings.QC_CONF_INTEROP_CACHE_KEY, true)) {
+        cacheDir = qc == null ? conf.getFile(QC.QC_OUTPUT_DIR) : qc.getQcDir();
+      }
+
+      // The InterOp files are read concurrently
+      this.interOpLoader = new InterOpLoader(this.subCollectionList,
+          conf.getThreadCount(), cacheDir);
+    }
   }
 
   @Override
   public void collect(final RunData data) throws AozanException {
 
+    if (this.interOpLoader != null) {
+      this.interOpLoader.load(data);
+      return;
+    }
+
     // Collect sub-collector
     for (final Collector collector : this.subCollectionList) {
       collector.collect(data);
@@ -94,17 +94,7 @@ public class SubsetFastqCollector extends AbstractFastqCollector {
     super.configure(qc, conf);
 
     // Set the number of threads
-    if (conf.containsKey(Settings.QC_CONF_THREADS_KEY)) {
-
-      try {
-        final int confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
-        if (confThreads > 0) {
-          this.numberThreads = confThreads;
-        }
-
-      } catch (final NumberFormatException ignored) {
-      }
-    }
+    this.numberThreads = conf.getThreadCount();
 
     // Set the maximum read length
     if (conf.containsKey(Settings.QC_CONF_FASTQSCREEN_MAX_READ_LENGTH_KEY)) {
@@ -24,15 +24,20 @@
 package fr.ens.biologie.genomique.aozan.collectors;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Logger;
 
 import com.google.common.collect.Lists;
 
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.QC;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.Settings;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.TopUnknownBarcodes;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.UndeterminedIndexCounter;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
 
 /**
@@ -43,6 +48,9 @@ import fr.ens.biologie.genomique.aozan.io.FastqSample;
  */
 public class UndeterminedIndexesCollector extends AbstractFastqCollector {
 
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
   /** The collector name. */
   public static final String COLLECTOR_NAME = "undeterminedindexes";
 
@@ -51,6 +59,12 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
 
   private int numberThreads = Runtime.getRuntime().availableProcessors();
   private File undeterminedIndexedXSLFile;
+  private int maxIndexEntries;
+  private boolean exactRecount = true;
+  private File topUnknownBarcodesFile;
+  private TopUnknownBarcodes topUnknownBarcodes;
+  private boolean topUnknownBarcodesLoaded;
+  private int maxReportRows;
 
   @Override
   public String getName() {
@@ -92,16 +106,7 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
     super.configure(qc, conf);
 
     // Set the number of threads
-    if (conf.containsKey(Settings.QC_CONF_THREADS_KEY)) {
-
-      try {
-        int confThreads = conf.getInt(Settings.QC_CONF_THREADS_KEY, -1);
-        if (confThreads > 0)
-          this.numberThreads = confThreads;
-
-      } catch (NumberFormatException ignored) {
-      }
-    }
+    this.numberThreads = conf.getThreadCount();
 
     // Set external xsl file to write report html instead of default version
     try {
@@ -113,6 +118,57 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
       // Call default xsl file
       this.undeterminedIndexedXSLFile = null;
     }
+
+    // Set the maximal memory used to count the indexes of a lane
+    final int maxMemory =
+        conf.getInt(Settings.QC_CONF_UNDETERMINED_INDEXES_MAX_MEMORY_KEY, 0);
+    if (maxMemory > 0) {
+      this.maxIndexEntries = (int) Math.min(1 << 28, maxMemory * 1024L * 1024L
+          / UndeterminedIndexCounter.BOUNDED_ENTRY_SIZE);
+    }
+
+    this.exactRecount = conf.getBoolean(
+        Settings.QC_CONF_UNDETERMINED_INDEXES_EXACT_RECOUNT_KEY, true);
+
+    // Set the maximal number of rows of the reports
+    this.maxReportRows = conf.getInt(
+        Settings.QC_CONF_UNDETERMINED_INDEXES_REPORT_MAX_ROWS_KEY, 0);
+
+    // Set the summary of the undetermined indexes written by bcl-convert
+    if (conf.getBoolean(
+        Settings.QC_CONF_UNDETERMINED_INDEXES_USE_DEMUX_SUMMARY_KEY, false)) {
+      this.topUnknownBarcodesFile = new File(qc.getFastqDir(),
+          "Reports" + File.separator + TopUnknownBarcodes.FILENAME);
+    }
+  }
+
+  /**
+   * Get the summary of the undetermined indexes written by the
+   * demultiplexing.
+   * @return a TopUnknownBarcodes object or null if the summary is not
+   *         available or is invalid
+   */
+  private TopUnknownBarcodes getTopUnknownBarcodes() {
+
+    if (!this.topUnknownBarcodesLoaded) {
+
+      this.topUnknownBarcodesLoaded = true;
+
+      if (this.topUnknownBarcodesFile != null
+          && this.topUnknownBarcodesFile.isFile()) {
+
+        try {
+          this.topUnknownBarcodes =
+              new TopUnknownBarcodes(this.topUnknownBarcodesFile);
+        } catch (IOException e) {
+          LOGGER.warning(COLLECTOR_NAME.toUpperCase()
+              + ": unable to use the undetermined indexes summary, "
+              + "the undetermined FASTQ files will be read: " + e.getMessage());
+        }
+      }
+    }
+
+    return this.topUnknownBarcodes;
   }
 
   @Override
@@ -131,7 +187,8 @@ public class UndeterminedIndexesCollector extends AbstractFastqCollector {
     }
 
     return new UndeterminedIndexesProcessThread(data, fastqSample, reportDir,
-        this.undeterminedIndexedXSLFile);
+        this.undeterminedIndexedXSLFile, this.maxIndexEntries,
+        this.exactRecount, getTopUnknownBarcodes(), this.maxReportRows);
   }
 
 }
@@ -27,47 +27,51 @@ import static fr.ens.biologie.genomique.aozan.collectors.UndeterminedIndexesColl
 import static fr.ens.biologie.genomique.aozan.collectors.UndeterminedIndexesCollector.RUN_DATA_PREFIX;
 import static java.util.Objects.requireNonNull;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.function.ToIntFunction;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Templates;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multiset;
 import com.google.common.io.Files;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.AozanRuntimeException;
 import fr.ens.biologie.genomique.aozan.Aozan2Logger;
 import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.IndexNeighborhood;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.PackedIndexes;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.TopUnknownBarcodes;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.UndeterminedIndexCounter;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.UndeterminedReportWriter;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLTemplatesCache;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.IlluminaReadId;
-import fr.ens.biologie.genomique.kenetre.util.XMLUtils;
 import uk.ac.babraham.FastQC.Sequence.Sequence;
 import uk.ac.babraham.FastQC.Sequence.SequenceFactory;
 import uk.ac.babraham.FastQC.Sequence.SequenceFile;
@@ -93,22 +97,30 @@ public class UndeterminedIndexesProcessThread
 
   private static final String REPORT_FILENAME_SUFFIX = "-potentialindices";
 
+  private static final String FASTQ_COUNT_SOURCE = "fastq";
+  private static final String SUMMARY_COUNT_SOURCE = "demux.summary";
+
   private final RunData data;
   private final int lane;
   private final int read;
-  private final SequenceFile seqFile;
+  private final TopUnknownBarcodes topUnknownBarcodes;
   private final File reportDir;
   private final File xslFile;
 
+  private final boolean dualIndexes;
   private final Map<Integer, String> sampleIndexes;
+  private final int[] sampleIds;
+  private final long[] packedSampleIndexes;
   private final Map<String, Integer> reverseSampleIndexes;
-  private final Multiset<String> rawUndeterminedIndices = HashMultiset.create();
-  private final Multiset<String> pfUndeterminedIndices = HashMultiset.create();
+  private final UndeterminedIndexCounter undeterminedIndices;
+  private final boolean exactRecount;
+  private final int maxReportRows;
   private final Multimap<Integer, String> newSamplesIndexes =
       ArrayListMultimap.create();
   private final Multimap<String, String> newIndexes =
       ArrayListMultimap.create();
 
+  private IndexNeighborhood neighborhood;
   private int maxMismatches = 1;
   private boolean isSkipProcessResult = false;
 
@@ -143,10 +155,11 @@ public class UndeterminedIndexesProcessThread
     @Override
     public String toCSV() {
 
-      return String.format("%s\t%d\t%d\t%.02f%%\t%.02f%%\t%.02f%%\t%s%n",
-          this.index, this.rawClusterCount, this.pfClusterCount, this.pfPercent,
-          this.inRawUndeterminedIndicePercent,
-          this.inPFUndeterminedIndicePercent, this.comment);
+      return String.format("%s\t%s\t%d\t%s\t%s\t%s\t%s%n", this.index,
+          formatCount(this.rawClusterCount), this.pfClusterCount,
+          formatPercent(this.pfPercent),
+          formatPercent(this.inRawUndeterminedIndicePercent),
+          formatPercent(this.inPFUndeterminedIndicePercent), this.comment);
     }
 
     @Override
@@ -207,16 +220,14 @@ public class UndeterminedIndexesProcessThread
     }
 
     /**
-     * Add elements samples name in xml document to filter result table.
-     * @param doc the doc xml
-     * @param parent the parent element
+     * Get the names of the samples of a lane used to filter the result table.
      * @param data the data run object
      * @param lane the lane number
      * @param demultiplexingWithConflict true if demultiplexing conflict exist
+     * @return a sorted list with the names of the samples
      */
-    public static void samplesNameXML(final Document doc, final Element parent,
-        final RunData data, final int lane,
-        final boolean demultiplexingWithConflict) {
+    public static List<String> getSampleNames(final RunData data,
+        final int lane, final boolean demultiplexingWithConflict) {
 
       // Extract all samples names per lane
       final List<Integer> sampleIds =
@@ -233,23 +244,42 @@ public class UndeterminedIndexesProcessThread
         sampleNames.add(sampleNames.size(), CONFLICT_TAG);
       }
 
+      return sampleNames;
+    }
+
+    /**
+     * Add elements samples name in xml stream to filter result table.
+     * @param writer the XML stream writer
+     * @param data the data run object
+     * @param lane the lane number
+     * @param demultiplexingWithConflict true if demultiplexing conflict exist
+     * @throws XMLStreamException if an error occurs while writing the XML
+     */
+    public static void samplesNameXML(final XMLStreamWriter writer,
+        final RunData data, final int lane,
+        final boolean demultiplexingWithConflict) throws XMLStreamException {
+
+      final List<String> sampleNames =
+          getSampleNames(data, lane, demultiplexingWithConflict);
+
       // Write all samples name with correct syntax
       final String txt = "'" + Joiner.on("','").join(sampleNames) + "'";
 
       // Add list sample for lane undetermined sample
-      final Element samples = doc.createElement("Samples");
-      samples.setAttribute("classValue", "samples");
-      samples.setAttribute("cmdJS", txt);
-      parent.appendChild(samples);
+      writer.writeStartElement("Samples");
+      writer.writeAttribute("classValue", "samples");
+      writer.writeAttribute("cmdJS", txt);
 
       // Add tag XML per sample name
       for (final String sampleName : sampleNames) {
-        final Element sample = doc.createElement("Sample");
-        sample.setAttribute("classValue", "sample");
-        sample.setAttribute("cmdJS", "'" + sampleName + "'");
-        sample.setTextContent(sampleName);
-        samples.appendChild(sample);
+        writer.writeStartElement("Sample");
+        writer.writeAttribute("classValue", "sample");
+        writer.writeAttribute("cmdJS", "'" + sampleName + "'");
+        writer.writeCharacters(sampleName);
+        writer.writeEndElement();
       }
+
+      writer.writeEndElement();
     }
 
     //
@@ -259,9 +289,9 @@ public class UndeterminedIndexesProcessThread
     /**
      * Constructor.
      * @param index the index of the entry
-     * @param rawClusterCount raw cluster count
+     * @param rawClusterCount raw cluster count, -1 if not available
      * @param pfClusterCount passing filter cluster count
-     * @param totalRawClusterCount total raw cluster count
+     * @param totalRawClusterCount total raw cluster count, -1 if not available
      * @param totalPFRawClusterCount total passing filter cluster count
      * @param comment a comment about the entry
      */
@@ -272,11 +302,11 @@ public class UndeterminedIndexesProcessThread
       this.index = index;
       this.rawClusterCount = rawClusterCount;
       this.pfClusterCount = pfClusterCount;
-      this.pfPercent = 100.0 * pfClusterCount / rawClusterCount;
+      this.pfPercent = percent(pfClusterCount, rawClusterCount);
       this.inRawUndeterminedIndicePercent =
-          100.0 * rawClusterCount / totalRawClusterCount;
+          percent(rawClusterCount, totalRawClusterCount);
       this.inPFUndeterminedIndicePercent =
-          100.0 * pfClusterCount / totalPFRawClusterCount;
+          percent(pfClusterCount, totalPFRawClusterCount);
 
       this.comment = comment;
     }
@@ -313,9 +343,10 @@ public class UndeterminedIndexesProcessThread
     @Override
     public String toCSV() {
 
-      return String.format("%s\t%d\t%d\t%.02f%%\t%.02f%%\t%.02f%%\t%s%n",
-          this.index, this.rawClusterCount, this.pfClusterCount, this.pfPercent,
-          this.rawClusterPercent, this.pfClusterPercent, this.comment);
+      return String.format("%s\t%s\t%d\t%s\t%s\t%s\t%s%n", this.index,
+          formatCount(this.rawClusterCount), this.pfClusterCount,
+          formatPercent(this.pfPercent), formatPercent(this.rawClusterPercent),
+          formatPercent(this.pfClusterPercent), this.comment);
     }
 
     @Override
@@ -374,7 +405,7 @@ public class UndeterminedIndexesProcessThread
     /**
      * Constructor.
      * @param index the index of the entry
-     * @param rawClusterCount raw cluster count
+     * @param rawClusterCount raw cluster count, -1 if not available
      * @param pfClusterCount passing filter cluster count
      * @param demuxRawClusterCount demux raw cluster count
      * @param demuxPFClusterCount demux passing filter cluster count
@@ -389,9 +420,9 @@ public class UndeterminedIndexesProcessThread
       this.pfClusterCount = pfClusterCount;
       this.comment = comment;
 
-      this.pfPercent = 100.0 * pfClusterCount / rawClusterCount;
-      this.rawClusterPercent = 100.0 * rawClusterCount / demuxRawClusterCount;
-      this.pfClusterPercent = 100.0 * pfClusterCount / demuxPFClusterCount;
+      this.pfPercent = percent(pfClusterCount, rawClusterCount);
+      this.rawClusterPercent = percent(rawClusterCount, demuxRawClusterCount);
+      this.pfClusterPercent = percent(pfClusterCount, demuxPFClusterCount);
     }
   }
 
@@ -406,6 +437,7 @@ public class UndeterminedIndexesProcessThread
 
     protected static final String CONFLICT_TAG = "conflict";
     protected static final String TOTAL_TAG = "total";
+    protected static final String NOT_AVAILABLE = "NA";
 
     abstract String toCSV();
 
@@ -413,6 +445,38 @@ public class UndeterminedIndexesProcessThread
 
     public abstract String getAttributeClass();
 
+    /**
+     * Compute a percent of counts.
+     * @param count the count, -1 if not available
+     * @param total the total count, -1 if not available
+     * @return the percent or NaN if one of the counts is not available
+     */
+    protected static double percent(final int count, final int total) {
+
+      return count < 0 || total < 0 ? Double.NaN : 100.0 * count / total;
+    }
+
+    /**
+     * Format a count.
+     * @param count the count, -1 if not available
+     * @return the count as a string
+     */
+    protected static String formatCount(final int count) {
+
+      return count < 0 ? NOT_AVAILABLE : Integer.toString(count);
+    }
+
+    /**
+     * Format a percent.
+     * @param percent the percent, NaN if not available
+     * @return the percent as a string
+     */
+    protected static String formatPercent(final double percent) {
+
+      return Double.isNaN(percent)
+          ? NOT_AVAILABLE : String.format("%.02f%%", percent);
+    }
+
     /**
      * Get CSV header.
      * @return a string with the CSV header
@@ -422,71 +486,285 @@ public class UndeterminedIndexesProcessThread
     }
 
     /**
-     * Add tag XML header in document.
-     * @param doc XML document
-     * @param parent parent element in document XML
+     * Add tag XML header in a XML stream.
+     * @param writer XML stream writer
+     * @throws XMLStreamException if an error occurs while writing the XML
      */
-    public static void headerXML(final Document doc, final Element parent) {
+    public static void headerXML(final XMLStreamWriter writer)
+        throws XMLStreamException {
 
-      final Element columns = doc.createElement("Columns");
-      // columns.setAttribute("classValue", "headerColumns");
-      parent.appendChild(columns);
+      writer.writeStartElement("Columns");
 
       for (final String text : TAB_SPLITTER.split(headerCSV())) {
+        XMLUtilsWriter.addTagValue(writer, "Column", text);
+      }
+
+      writer.writeEndElement();
+    }
 
-        final Element elem = doc.createElement("Column");
-        elem.setTextContent(text);
-        columns.appendChild(elem);
+    /**
+     * Get the values of the columns of the entry.
+     * @return a list with the values of the columns
+     */
+    private List<String> values() {
+
+      final List<String> result =
+          new ArrayList<>(TAB_SPLITTER.splitToList(toCSV()));
+
+      // Add empty value for comment field
+      if (isCommentFieldEmpty()) {
+        result.add("");
       }
+
+      return result;
+    }
+
+    /**
+     * Get the class of the entry.
+     * @param defaultAttributeValue default value of the class
+     * @return the class of the entry
+     */
+    private String classValue(final String defaultAttributeValue) {
+
+      // Class at the default value or at sample name
+      return isCommentFieldEmpty()
+          ? defaultAttributeValue : getAttributeClass();
     }
 
     /**
-     * Add tag XML header in document.
-     * @param doc XML document
-     * @param parent parent element in document XML
+     * Add the entry in a XML stream.
+     * @param writer XML stream writer
      * @param defaultAttributeValue value for desc attribute
+     * @throws XMLStreamException if an error occurs while writing the XML
      */
-    public void toXML(final Document doc, final Element parent,
-        final String defaultAttributeValue) {
+    public void toXML(final XMLStreamWriter writer,
+        final String defaultAttributeValue) throws XMLStreamException {
 
-      final Element elemRoot = doc.createElement("Entry");
-      parent.appendChild(elemRoot);
+      writer.writeStartElement("Entry");
+      writer.writeAttribute("classValue", classValue(defaultAttributeValue));
 
       int n = 0;
-      for (final String text : TAB_SPLITTER.split(toCSV())) {
+      for (final String text : values()) {
+        writeData(writer, n++, text);
+      }
 
-        final Element elem = doc.createElement("Data");
-        elem.setAttribute("name",
-            headerNames.get(n).toLowerCase().replaceAll(" ", "_"));
-        elem.setAttribute("type", headerType.get(n));
-        elem.setAttribute("score", "-1");
+      writer.writeEndElement();
+    }
 
-        elem.setTextContent(text);
-        elemRoot.appendChild(elem);
+    /**
+     * Add the entry in an HTML report.
+     * @param writer HTML report writer
+     * @param defaultAttributeValue value for class attribute
+     * @throws IOException if an error occurs while writing the HTML
+     */
+    public void toHTML(final UndeterminedReportWriter writer,
+        final String defaultAttributeValue) throws IOException {
 
-        n++;
-      }
+      writer.writeEntry(classValue(defaultAttributeValue), values());
+    }
 
-      // Add empty element for comment field
-      if (isCommentFieldEmpty()) {
-        final Element elem = doc.createElement("Data");
-        elem.setAttribute("name",
-            headerNames.get(n).toLowerCase().replaceAll(" ", "_"));
-        elem.setAttribute("type", headerType.get(n));
-        elem.setAttribute("score", "-1");
+    private static void writeData(final XMLStreamWriter writer, final int n,
+        final String text) throws XMLStreamException {
+
+      writer.writeStartElement("Data");
+      writer.writeAttribute("name",
+          headerNames.get(n).toLowerCase().replaceAll(" ", "_"));
+      writer.writeAttribute("type", headerType.get(n));
+      writer.writeAttribute("score", "-1");
+      writer.writeCharacters(text);
+      writer.writeEndElement();
+    }
+
+  }
+
+  /**
+   * This class define the entries of the lane report, sorted by decreasing
+   * passing filter cluster count. If the number of rows of the report is
+   * limited, only the entries with the highest counts are kept in a bounded
+   * heap while the counter is read. Only the counts and the packed indexes are
+   * stored, in primitive arrays, and each entry is created when it is written,
+   * so the rows of the report are never all in memory.
+   */
+  private final class LaneEntries implements Iterable<LaneResultEntry> {
+
+    // Passing filter count in the high bits and position in the low bits
+    private final long[] sortKeys;
+    // Slot of the data of each key
+    private final int[] slots;
+    private final long[] packedIndexes;
+    private final int[] rawCounts;
+    private final int[] pfCounts;
+    private final Map<Integer, String> otherIndexes = new HashMap<>();
+    private int size;
+    private final int totalRawClusterCount;
+    private final int totalPFClusterCount;
+
+    /**
+     * Get the number of entries of the report.
+     * @return the number of entries of the report
+     */
+    int size() {
+      return this.size;
+    }
+
+    @Override
+    public Iterator<LaneResultEntry> iterator() {
+
+      return new Iterator<LaneResultEntry>() {
+
+        private int n;
 
-        elem.setTextContent("");
-        elemRoot.appendChild(elem);
+        @Override
+        public boolean hasNext() {
+          return this.n < size;
+        }
+
+        @Override
+        public LaneResultEntry next() {
+
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+
+          final int slot = slots[this.n++];
+          final long packedIndex = packedIndexes[slot];
+
+          return createLaneEntry(
+              packedIndex == PackedIndexes.NOT_PACKED
+                  ? otherIndexes.get(slot) : PackedIndexes.unpack(packedIndex),
+              rawCounts[slot], pfCounts[slot], totalRawClusterCount,
+              totalPFClusterCount);
+        }
+      };
+    }
+
+    /**
+     * Add an entry of the counter. If the heap is full, the entry replace the
+     * entry with the lowest count if its count is higher.
+     * @param e the entry of the counter
+     * @param position the position of the entry in the counter
+     */
+    private void add(final UndeterminedIndexCounter.Entry e,
+        final int position) {
+
+      // The entries with the same count keep the order of the counter
+      final long key =
+          ((long) e.getPFCount() << 32) | (Integer.MAX_VALUE - position);
+
+      final int slot;
+
+      if (this.size < this.sortKeys.length) {
+
+        slot = this.size;
+        this.sortKeys[slot] = key;
+        this.slots[slot] = slot;
+        siftUp(this.size++);
+
+      } else if (key > this.sortKeys[0]) {
+
+        slot = this.slots[0];
+        this.otherIndexes.remove(slot);
+        this.sortKeys[0] = key;
+        siftDown(0, this.size);
 
-        // Add class attribute at default value
-        elemRoot.setAttribute("classValue", defaultAttributeValue);
       } else {
-        // Add class attribute at sample name
-        elemRoot.setAttribute("classValue", getAttributeClass());
+        return;
       }
 
+      this.packedIndexes[slot] = e.getPackedIndex();
+      if (e.getPackedIndex() == PackedIndexes.NOT_PACKED) {
+        this.otherIndexes.put(slot, e.getIndex());
+      }
+      this.rawCounts[slot] = e.getRawCount();
+      this.pfCounts[slot] = e.getPFCount();
     }
 
+    /**
+     * Sort the heap by decreasing key. As the heap is a min-heap, the lowest
+     * key is moved at the end of the array at each step.
+     */
+    private void sort() {
+
+      for (int end = this.size - 1; end > 0; end--) {
+        swap(0, end);
+        siftDown(0, end);
+      }
+    }
+
+    private void siftUp(final int pos) {
+
+      int i = pos;
+      while (i > 0) {
+
+        final int parent = (i - 1) / 2;
+        if (this.sortKeys[parent] <= this.sortKeys[i]) {
+          return;
+        }
+        swap(i, parent);
+        i = parent;
+      }
+    }
+
+    private void siftDown(final int pos, final int heapSize) {
+
+      int i = pos;
+      while (true) {
+
+        final int left = 2 * i + 1;
+        if (left >= heapSize) {
+          return;
+        }
+
+        final int right = left + 1;
+        final int child =
+            right < heapSize && this.sortKeys[right] < this.sortKeys[left]
+                ? right : left;
+
+        if (this.sortKeys[i] <= this.sortKeys[child]) {
+          return;
+        }
+        swap(i, child);
+        i = child;
+      }
+    }
+
+    private void swap(final int i, final int j) {
+
+      final long key = this.sortKeys[i];
+      this.sortKeys[i] = this.sortKeys[j];
+      this.sortKeys[j] = key;
+
+      final int slot = this.slots[i];
+      this.slots[i] = this.slots[j];
+      this.slots[j] = slot;
+    }
+
+    /**
+     * Constructor. If the number of rows of the report is limited, only the
+     * entries with the highest passing filter cluster counts are kept.
+     * @param totalRawClusterCount total raw cluster count
+     * @param totalPFClusterCount total passing filter cluster count
+     */
+    LaneEntries(final int totalRawClusterCount,
+        final int totalPFClusterCount) {
+
+      final int count = undeterminedIndices.size();
+      final int capacity =
+          maxReportRows > 0 ? Math.min(count, maxReportRows) : count;
+
+      this.sortKeys = new long[capacity];
+      this.slots = new int[capacity];
+      this.packedIndexes = new long[capacity];
+      this.rawCounts = new int[capacity];
+      this.pfCounts = new int[capacity];
+      this.totalRawClusterCount = totalRawClusterCount;
+      this.totalPFClusterCount = totalPFClusterCount;
+
+      final int[] pos = {0};
+      undeterminedIndices.forEach(e -> add(e, pos[0]++));
+
+      sort();
+    }
   }
 
   @Override
@@ -498,7 +776,40 @@ public class UndeterminedIndexesProcessThread
   @Override
   protected void process() throws AozanException {
 
-    processSequences(this.seqFile);
+    // Use the summary of the demultiplexing if available, with the count of
+    // all the undetermined clusters of the lane from the demultiplexing stats
+    final int demuxPFClusterCount = getDemuxPFClusterCount();
+
+    if (this.topUnknownBarcodes != null
+        && demuxPFClusterCount >= 0
+        && this.topUnknownBarcodes.count(this.lane, this.dualIndexes,
+            demuxPFClusterCount, this.undeterminedIndices)) {
+
+      LOGGER.fine(COLLECTOR_NAME.toUpperCase()
+          + ": use the " + TopUnknownBarcodes.FILENAME + " file for lane "
+          + this.lane);
+      getResults().put(
+          RUN_DATA_PREFIX + ".lane" + this.lane + ".count.source",
+          SUMMARY_COUNT_SOURCE);
+
+    } else {
+
+      getResults().put(
+          RUN_DATA_PREFIX + ".lane" + this.lane + ".count.source",
+          FASTQ_COUNT_SOURCE);
+
+      if (!processSequences(openSequenceFile(getFastqSample()))) {
+        return;
+      }
+    }
+
+    putCountAccuracyResults();
+
+    // Set max mismatches allowed
+    computeMismatchesAllowed();
+
+    // Process results
+    processResults();
   }
 
   @Override
@@ -510,91 +821,126 @@ public class UndeterminedIndexesProcessThread
   }
 
   /**
-   * Read FASTQ file and process the data by FastQC modules.
+   * Read FASTQ file and count the indexes.
    * @param seqFile input file
+   * @return false if the reads have not Illumina ids
    * @throws AozanException if an error occurs while processing file
    */
-  private void processSequences(final SequenceFile seqFile)
+  private boolean processSequences(final SequenceFile seqFile)
       throws AozanException {
 
-    IlluminaReadId irid = null;
-
     try {
 
-      while (seqFile.hasNext()) {
+      if (!countIndexes(seqFile)) {
+        return false;
+      }
 
-        final Sequence seq = seqFile.next();
+      // Compute the exact counts of the most frequent indexes
+      if (this.undeterminedIndices.isApproximate() && this.exactRecount) {
 
-        // Parse sequence id
-        try {
-          if (irid == null) {
-            irid = new IlluminaReadId(seq.getID().substring(1));
-          } else {
-            irid.parse(seq.getID().substring(1));
-          }
-        } catch (final KenetreException e) {
+        this.undeterminedIndices.recount();
+        countIndexes(openSequenceFile(getFastqSample()));
+      }
 
-          // This is not an Illumina id
-          return;
-        }
+      return true;
+
+    } catch (final SequenceFormatException e) {
+      throw new AozanException(e);
+    }
 
-        // Get the sequence indexes
-        final List<String> indexes = irid.getSequenceIndexList();
+  }
 
-        // Process only nucleotides sequences
-        if (indexes.isEmpty()) {
-          continue;
-        }
+  /**
+   * Count the indexes of the reads of a FASTQ file.
+   * @param seqFile input file
+   * @return false if the reads have not Illumina ids
+   * @throws SequenceFormatException if an error occurs while reading the file
+   */
+  private boolean countIndexes(final SequenceFile seqFile)
+      throws SequenceFormatException {
 
-        // TODO Process the secondary indexes
-        final String index = indexes.get(0);
+    IlluminaReadId irid = null;
 
-        if (index == null
-            || index.isEmpty() || Character.isDigit(index.charAt(0))) {
-          continue;
-        }
+    while (seqFile.hasNext()) {
 
-        this.rawUndeterminedIndices.add(index);
-        if (!irid.isFiltered()) {
-          this.pfUndeterminedIndices.add(index);
+      final Sequence seq = seqFile.next();
+
+      // Parse sequence id
+      try {
+        if (irid == null) {
+          irid = new IlluminaReadId(seq.getID().substring(1));
+        } else {
+          irid.parse(seq.getID().substring(1));
         }
+      } catch (final KenetreException e) {
+
+        // This is not an Illumina id
+        return false;
       }
 
-      // Set max mismatches allowed
-      computeMismatchesAllowed();
+      // Get the sequence indexes
+      final List<String> indexes = irid.getSequenceIndexList();
 
-      // Process results
-      processResults();
+      // Process only nucleotides sequences
+      if (indexes.isEmpty()) {
+        continue;
+      }
 
-    } catch (final SequenceFormatException e) {
-      throw new AozanException(e);
-    }
+      final String index = indexes.get(0);
 
-  }
+      if (index == null
+          || index.isEmpty() || Character.isDigit(index.charAt(0))) {
+        continue;
+      }
 
-  private void computeMismatchesAllowed() {
+      // The second index is only used if all the samples are dual indexed
+      final String index2 =
+          this.dualIndexes && indexes.size() > 1 ? indexes.get(1) : null;
 
-    final int maxMismatchAllowed = 2;
+      this.undeterminedIndices.add(index, index2, !irid.isFiltered());
+    }
 
-    int minMismatchFound = Integer.MAX_VALUE;
+    return true;
+  }
 
-    for (final Map.Entry<Integer, String> e : this.sampleIndexes.entrySet()) {
+  /**
+   * Set the results about the accuracy of the counts of the indexes.
+   */
+  private void putCountAccuracyResults() {
+
+    final String prefix = RUN_DATA_PREFIX + ".lane" + this.lane;
+
+    getResults().put(prefix + ".count.approximate",
+        this.undeterminedIndices.isApproximate());
+    getResults().put(prefix + ".count.truncated",
+        this.undeterminedIndices.isTruncated());
+    getResults().put(prefix + ".count.max.uncounted.raw.cluster",
+        this.undeterminedIndices.getMaxUncountedRawCount());
+    getResults().put(prefix + ".raw.cluster.count.available",
+        this.undeterminedIndices.isRawCountAvailable());
+
+    if (this.undeterminedIndices.isTruncated()) {
+      LOGGER.info(COLLECTOR_NAME.toUpperCase()
+          + ": only the " + this.undeterminedIndices.size()
+          + " most frequent indexes of lane " + this.lane
+          + " have been counted, the other indexes have at most "
+          + this.undeterminedIndices.getMaxUncountedRawCount() + " clusters");
+    }
+  }
 
-      for (final String i : this.rawUndeterminedIndices.elementSet()) {
-        final String index = e.getValue();
-        final int mismatches = mismatches(index, i);
+  private void computeMismatchesAllowed() {
 
-        minMismatchFound = Math.min(minMismatchFound, mismatches);
+    final int maxMismatchAllowed = IndexNeighborhood.MAX_MISMATCHES;
 
-        // Check minimum found
-        if (minMismatchFound == 1) {
-          break;
-        }
-      }
+    // Most of the time an index at one mismatch is found, so the neighborhood
+    // at two mismatches, which is far larger, is only built when required
+    int minMismatchFound = Integer.MAX_VALUE;
+    for (int distance = 1; distance <= maxMismatchAllowed
+        && minMismatchFound > distance; distance++) {
 
-      if (minMismatchFound == 1) {
-        break;
-      }
+      this.neighborhood =
+          new IndexNeighborhood(this.packedSampleIndexes, distance);
+      minMismatchFound = findMinMismatches();
     }
 
     if (minMismatchFound > maxMismatchAllowed) {
@@ -609,6 +955,62 @@ public class UndeterminedIndexesProcessThread
     }
   }
 
+  /**
+   * Find the minimal number of mismatches between an undetermined index and
+   * the index of a sample. Undetermined indexes identical to a sample index are
+   * ignored as they cannot be recovered.
+   * @return the minimal number of mismatches found or Integer.MAX_VALUE if no
+   *         undetermined index is near a sample index
+   */
+  private int findMinMismatches() {
+
+    final int[] minMismatchFound = {Integer.MAX_VALUE};
+
+    this.undeterminedIndices.forEach(entry -> forEachCandidate(entry,
+        (sampleOrdinal, mismatches) -> {
+          if (mismatches > 0) {
+            minMismatchFound[0] = Math.min(minMismatchFound[0], mismatches);
+          }
+        }));
+
+    return minMismatchFound[0];
+  }
+
+  /**
+   * Get the samples near an undetermined index. Packed indexes are searched in
+   * the neighborhood of the sample indexes, the other indexes are compared to
+   * all the sample indexes that cannot be packed.
+   * @param entry the undetermined index entry
+   * @param consumer the consumer of the candidate samples
+   */
+  private void forEachCandidate(final UndeterminedIndexCounter.Entry entry,
+      final IndexNeighborhood.CandidateConsumer consumer) {
+
+    final long packedIndex = entry.getPackedIndex();
+    final int maxDistance = this.neighborhood.getMaxMismatches();
+
+    if (packedIndex != PackedIndexes.NOT_PACKED) {
+      this.neighborhood.lookup(packedIndex, consumer);
+    }
+
+    for (int i = 0; i < this.sampleIds.length; i++) {
+
+      if (packedIndex != PackedIndexes.NOT_PACKED
+          && this.packedSampleIndexes[i] != PackedIndexes.NOT_PACKED) {
+        continue;
+      }
+
+      final int mismatches = entry.mismatches(
+          this.sampleIndexes.get(this.sampleIds[i]),
+          this.packedSampleIndexes[i]);
+
+      // Indexes with different lengths cannot be compared
+      if (mismatches >= 0 && mismatches <= maxDistance) {
+        consumer.accept(i, mismatches);
+      }
+    }
+  }
+
   /**
    * Process results after the end of the thread.
    * @throws AozanException if an error occurs while generate report
@@ -618,50 +1020,95 @@ public class UndeterminedIndexesProcessThread
     int recoverableRawClusterCount = 0;
     int recoverablePFClusterCount = 0;
 
+    // The raw counts are not available with the summary of the demultiplexing
+    final boolean rawCountAvailable =
+        this.undeterminedIndices.isRawCountAvailable();
+
     // Initialize results for each sample of the lane
     for (final int sampleId : this.data.getSamplesInLane(this.lane)) {
 
-      getResults().put(RUN_DATA_PREFIX
-          + ".sample" + sampleId + ".recoverable.raw.cluster.count", 0);
+      if (rawCountAvailable) {
+        getResults().put(RUN_DATA_PREFIX
+            + ".sample" + sampleId + ".recoverable.raw.cluster.count", 0);
+      }
       getResults().put(RUN_DATA_PREFIX
           + ".sample" + sampleId + ".recoverable.pf.cluster.count", 0);
     }
 
-    if (!this.isSkipProcessResult) {
-      // For each sample find the indexes sequences that can be recovered
-      for (final Map.Entry<Integer, String> e : this.sampleIndexes.entrySet()) {
+    final int[] ambiguousCounts = new int[3];
 
-        final int sampleId = e.getKey();
-        final String index = e.getValue();
+    if (!this.isSkipProcessResult) {
 
-        for (final String i : this.rawUndeterminedIndices.elementSet()) {
+      // For each undetermined index find the samples that can be recovered
+      final List<Integer> candidates = new ArrayList<>();
 
-          final int mismatches = mismatches(index, i);
+      this.undeterminedIndices.forEach(entry -> {
 
+        candidates.clear();
+        forEachCandidate(entry, (sampleOrdinal, mismatches) -> {
           if (mismatches > 0 && mismatches <= this.maxMismatches) {
-
-            this.newSamplesIndexes.put(sampleId, i);
-            this.newIndexes.put(i, index);
+            candidates.add(sampleOrdinal);
           }
+        });
+
+        if (candidates.isEmpty()) {
+          return;
+        }
+
+        // Keep the order of the samples whatever the way they were found
+        Collections.sort(candidates);
+
+        final String index = entry.getIndex();
+        for (final int sampleOrdinal : candidates) {
+
+          final int sampleId = this.sampleIds[sampleOrdinal];
+          this.newSamplesIndexes.put(sampleId, index);
+          this.newIndexes.put(index, this.sampleIndexes.get(sampleId));
         }
-      }
+
+        // The index is near the indexes of several samples
+        if (candidates.size() > 1) {
+          ambiguousCounts[0]++;
+          ambiguousCounts[1] += entry.getRawCount();
+          ambiguousCounts[2] += entry.getPFCount();
+        }
+      });
 
       // Compute results for each sample
       for (final int sampleId : this.data.getSamplesInLane(this.lane)) {
-        recoverableRawClusterCount +=
-            computeRecoverableSampleClusterCount(sampleId,
-                this.rawUndeterminedIndices, ".recoverable.raw.cluster.count");
+        if (rawCountAvailable) {
+          recoverableRawClusterCount +=
+              computeRecoverableSampleClusterCount(sampleId,
+                  this.undeterminedIndices::getRawCount,
+                  ".recoverable.raw.cluster.count");
+        }
         recoverablePFClusterCount +=
             computeRecoverableSampleClusterCount(sampleId,
-                this.pfUndeterminedIndices, ".recoverable.pf.cluster.count");
+                this.undeterminedIndices::getPFCount,
+                ".recoverable.pf.cluster.count");
       }
     }
 
     // Set the result for the lane
+    if (ambiguousCounts[0] > 0) {
+      LOGGER.warning(COLLECTOR_NAME.toUpperCase()
+          + ": " + ambiguousCounts[0] + " undetermined indexes of lane "
+          + this.lane + " are near the indexes of several samples");
+    }
     getResults().put(
-        RUN_DATA_PREFIX
-            + ".lane" + this.lane + ".recoverable.raw.cluster.count",
-        recoverableRawClusterCount);
+        RUN_DATA_PREFIX + ".lane" + this.lane + ".ambiguous.index.count",
+        ambiguousCounts[0]);
+    getResults().put(
+        RUN_DATA_PREFIX + ".lane" + this.lane + ".ambiguous.pf.cluster.count",
+        ambiguousCounts[2]);
+    if (rawCountAvailable) {
+      getResults().put(RUN_DATA_PREFIX
+          + ".lane" + this.lane + ".ambiguous.raw.cluster.count",
+          ambiguousCounts[1]);
+      getResults().put(RUN_DATA_PREFIX
+          + ".lane" + this.lane + ".recoverable.raw.cluster.count",
+          recoverableRawClusterCount);
+    }
     getResults().put(
         RUN_DATA_PREFIX + ".lane" + this.lane + ".recoverable.pf.cluster.count",
         recoverablePFClusterCount);
@@ -684,12 +1131,13 @@ public class UndeterminedIndexesProcessThread
   /**
    * Compute for a sample the number of clusters that can be recovered.
    * @param sampleId sample Id
-   * @param indicesCounts multiset that contain data to process
+   * @param indicesCounts function that returns the count of an index
    * @param resultKeySuffix the suffix for the run data key entry
    * @return the number of cluster that can be recovered for the sample
    */
   private int computeRecoverableSampleClusterCount(final int sampleId,
-      final Multiset<String> indicesCounts, final String resultKeySuffix) {
+      final ToIntFunction<String> indicesCounts,
+      final String resultKeySuffix) {
 
     int recoverableClusterCount = 0;
 
@@ -698,10 +1146,7 @@ public class UndeterminedIndexesProcessThread
       if (this.newSamplesIndexes.containsKey(sampleId)) {
         for (final String newIndex : this.newSamplesIndexes.get(sampleId)) {
 
-          if (indicesCounts.contains(newIndex)) {
-            final int count = indicesCounts.count(newIndex);
-            recoverableClusterCount += count;
-          }
+          recoverableClusterCount += indicesCounts.applyAsInt(newIndex);
         }
       }
     }
@@ -713,6 +1158,26 @@ public class UndeterminedIndexesProcessThread
     return recoverableClusterCount;
   }
 
+  /**
+   * Get the passing filter cluster count of the undetermined clusters of the
+   * lane from the statistics of the demultiplexing.
+   * @return the passing filter cluster count or -1 if not available
+   */
+  private int getDemuxPFClusterCount() {
+
+    final int sampleId = getFastqSample().getSampleId();
+
+    if (!this.data.isUndeterminedSample(sampleId)) {
+      return -1;
+    }
+
+    try {
+      return this.data.getSamplePFClusterCount(sampleId, this.read);
+    } catch (final AozanRuntimeException e) {
+      return -1;
+    }
+  }
+
   /**
    * Create the report for the lane.
    * @throws IOException if an error occurs while creating the report
@@ -729,11 +1194,9 @@ public class UndeterminedIndexesProcessThread
       }
     }
 
-    final int totalRawClusterCount = this.rawUndeterminedIndices.size();
-    final int totalPFClusterCount = this.pfUndeterminedIndices.size();
-
-    // Create sorted set
-    final List<LaneResultEntry> entries = new ArrayList<>();
+    final int totalRawClusterCount =
+        this.undeterminedIndices.getTotalRawCount();
+    final int totalPFClusterCount = this.undeterminedIndices.getTotalPFCount();
 
     // Total entry
     final LaneResultEntry totalEntry = new LaneResultEntry("Total",
@@ -743,32 +1206,45 @@ public class UndeterminedIndexesProcessThread
             ? ""
             : "Demultiplexing with one mismatche is not possible due to indexes conflicts");
 
-    for (final Multiset.Entry<String> e : this.rawUndeterminedIndices
-        .entrySet()) {
-
-      final String index = e.getElement();
-      final int rawClusterCount = e.getCount();
-      final int pfClusterCount = this.pfUndeterminedIndices.count(index);
+    final LaneEntries entries =
+        new LaneEntries(totalRawClusterCount, totalPFClusterCount);
 
-      final List<Integer> sampleIds = getSampleForNewIndex(index);
-      final List<String> sampleNames = new ArrayList<>(sampleIds.size());
-      for (int sampleId : sampleIds) {
-        sampleNames.add(this.data.getSampleDemuxName(sampleId));
-      }
-      final String samples =
-          sampleIds.size() > 0 ? JOINER.join(sampleNames) : "";
-
-      entries.add(new LaneResultEntry(index, rawClusterCount, pfClusterCount,
-          totalRawClusterCount, totalPFClusterCount, samples));
+    if (entries.size() < this.undeterminedIndices.size()) {
+      LOGGER.fine(COLLECTOR_NAME.toUpperCase()
+          + ": the report of lane " + this.lane + " only contains the "
+          + entries.size() + " most frequent indexes on "
+          + this.undeterminedIndices.size());
     }
 
-    // Sort list
-    Collections.sort(entries);
-
     writeLaneCSVResults(entries, totalEntry);
     writeLaneHTMLResults(entries, totalEntry, !oneMismatcheDemuxPossible);
   }
 
+  /**
+   * Create the entry of the lane report for an index.
+   * @param index the index
+   * @param rawClusterCount raw cluster count of the index, -1 if not available
+   * @param pfClusterCount passing filter cluster count of the index
+   * @param totalRawClusterCount total raw cluster count
+   * @param totalPFClusterCount total passing filter cluster count
+   * @return a new LaneResultEntry object
+   */
+  private LaneResultEntry createLaneEntry(final String index,
+      final int rawClusterCount, final int pfClusterCount,
+      final int totalRawClusterCount, final int totalPFClusterCount) {
+
+    final List<Integer> sampleIds = getSampleForNewIndex(index);
+    final List<String> sampleNames = new ArrayList<>(sampleIds.size());
+    for (int sampleId : sampleIds) {
+      sampleNames.add(this.data.getSampleDemuxName(sampleId));
+    }
+    final String samples =
+        sampleIds.size() > 0 ? JOINER.join(sampleNames) : "";
+
+    return new LaneResultEntry(index, rawClusterCount, pfClusterCount,
+        totalRawClusterCount, totalPFClusterCount, samples);
+  }
+
   /**
    * Get the list of samples that can be recovered for an index.
    * @param newIndex the index
@@ -811,7 +1287,7 @@ public class UndeterminedIndexesProcessThread
    * @param totalEntry total entries summary
    * @throws IOException if an error occurs while writing the file
    */
-  private void writeLaneCSVResults(final List<LaneResultEntry> entries,
+  private void writeLaneCSVResults(final Iterable<LaneResultEntry> entries,
       final LaneResultEntry totalEntry) throws IOException {
 
     final BufferedWriter br =
@@ -840,7 +1316,7 @@ public class UndeterminedIndexesProcessThread
    * @throws IOException if an error occurs while writing the file
    * @throws AozanException if an error occurs while building xml file
    */
-  private void writeLaneHTMLResults(final List<LaneResultEntry> entries,
+  private void writeLaneHTMLResults(final Iterable<LaneResultEntry> entries,
       final LaneResultEntry totalEntry,
       final boolean demultiplexingWithConflict)
       throws IOException, AozanException {
@@ -853,7 +1329,7 @@ public class UndeterminedIndexesProcessThread
             + ".lane" + this.lane + ".report.file.name",
             reportHtml.getName());
 
-    toXML(-1, null, entries, totalEntry, reportHtml, false,
+    writeHTMLReport(-1, null, entries, totalEntry, reportHtml,
         demultiplexingWithConflict);
   }
 
@@ -888,9 +1364,9 @@ public class UndeterminedIndexesProcessThread
       for (final String newIndex : this.newSamplesIndexes.get(sampleId)) {
 
         final int newIndexRawClusterCount =
-            this.rawUndeterminedIndices.count(newIndex);
+            this.undeterminedIndices.getRawCount(newIndex);
         final int newIndexPFClusterCount =
-            this.pfUndeterminedIndices.count(newIndex);
+            this.undeterminedIndices.getPFCount(newIndex);
         final String comment = this.newIndexes.get(newIndex).size() > 1
             ? "Conflict if run demultiplexing with "
                 + this.maxMismatches + " mismatch(es) : "
@@ -910,12 +1386,20 @@ public class UndeterminedIndexesProcessThread
     // Total result
     final SampleResultEntry totalEntry =
         new SampleResultEntry("Total recoverable indices",
-            newIndexesRawClusterCount, newIndexesPFClusterCount,
+            this.undeterminedIndices.isRawCountAvailable()
+                ? newIndexesRawClusterCount : -1,
+            newIndexesPFClusterCount,
             sampleRawClusterCount, samplePFClusterCount, "");
 
     // Sort lists
     Collections.sort(entries);
 
+    // Limit the number of rows of the report
+    final List<SampleResultEntry> reportEntries =
+        this.maxReportRows > 0 && entries.size() > this.maxReportRows
+            ? entries.subList(0, this.maxReportRows)
+            : entries;
+
     // Define the output files
     final File csvFile = createSampleResultFile(sampleId, ".csv");
     final File htmlFile = createSampleResultFile(sampleId, ".html");
@@ -925,8 +1409,10 @@ public class UndeterminedIndexesProcessThread
         RUN_DATA_PREFIX + ".sample" + sampleId + ".report.file.name",
         htmlFile.getName());
 
-    writeCSVSampleResult(sampleId, demuxEntry, entries, totalEntry, csvFile);
-    writeSampleHTMLResult(sampleId, demuxEntry, entries, totalEntry, htmlFile);
+    writeCSVSampleResult(sampleId, demuxEntry, reportEntries, totalEntry,
+        csvFile);
+    writeSampleHTMLResult(sampleId, demuxEntry, reportEntries, totalEntry,
+        htmlFile);
   }
 
   /**
@@ -1002,17 +1488,87 @@ public class UndeterminedIndexesProcessThread
       final List<SampleResultEntry> entries, final SampleResultEntry totalEntry,
       final File outputFile) throws IOException, AozanException {
 
-    toXML(sampleId, demuxEntry, entries, totalEntry, outputFile, true, false);
+    writeHTMLReport(sampleId, demuxEntry, entries, totalEntry, outputFile,
+        false);
   }
 
   /**
-   * Write the sample result file in HTML format.
-   * @param sampleId sample id
+   * Write the result file in HTML format. Without custom XSL stylesheet, the
+   * report is directly written from the entries with an HTML template, so the
+   * report is never fully loaded in memory.
+   * @param sampleId sample id, -1 for the lane report
+   * @param demuxEntry original demux result
+   * @param entries entries to write
+   * @param totalEntry total entries summary
+   * @param reportHtml report output file in HTML
+   * @param demultiplexingWithConflict true if conflict occurs during recovering
+   *          cluster
+   * @throws IOException if an error occurs while writing the file
+   * @throws AozanException if an usefull file are not define or if an error
+   *           occurs during building document xml
+   */
+  private void writeHTMLReport(final int sampleId,
+      final ResultEntry demuxEntry,
+      final Iterable<? extends ResultEntry> entries,
+      final ResultEntry totalEntry, final File reportHtml,
+      final boolean demultiplexingWithConflict)
+      throws IOException, AozanException {
+
+    if (this.xslFile != null) {
+      toXML(sampleId, demuxEntry, entries, totalEntry, reportHtml,
+          demultiplexingWithConflict);
+      return;
+    }
+
+    final Map<String, String> values =
+        XMLUtilsWriter.getCommonTagHeaderValues(this.data);
+    final List<String> sampleNames;
+
+    if (sampleId == -1) {
+
+      values.put("sampleName", "lane" + this.lane + "_undetermined");
+      sampleNames = LaneResultEntry.getSampleNames(this.data, this.lane,
+          demultiplexingWithConflict);
+    } else {
+
+      values.put("sampleName", this.data.getSampleDemuxName(sampleId));
+      values.put("projectName", this.data.getProjectSample(sampleId));
+      values.put("description", this.data.getSampleDescription(sampleId));
+      sampleNames = Collections.emptyList();
+    }
+    values.put("condition",
+        "Compile results on recovery clusters in undetermined fastq with "
+            + this.maxMismatches + " mismatch(es).");
+
+    try (UndeterminedReportWriter writer = new UndeterminedReportWriter(
+        Files.newWriter(reportHtml, StandardCharsets.UTF_8), values,
+        sampleNames, ResultEntry.headerNames, ResultEntry.headerType)) {
+
+      // Only exists for sample report
+      if (demuxEntry != null) {
+        // Demultiplexing result
+        demuxEntry.toHTML(writer, "demultiplexing");
+      }
+
+      // Total entry
+      totalEntry.toHTML(writer, "total");
+
+      for (final ResultEntry e : entries) {
+        e.toHTML(writer, "entry");
+      }
+    }
+  }
+
+  /**
+   * Write the result file in HTML format with the custom XSL stylesheet. The
+   * XML document is written in a temporary file with a XML stream writer and
+   * then transformed in HTML. Note that the XSL transformation build the tree
+   * of the whole document in memory.
+   * @param sampleId sample id, -1 for the lane report
    * @param demuxEntry original demux result
    * @param entries entries to write
    * @param totalEntry total entries summary
    * @param reportHtml report output file in HTML
-   * @param isSampleData true if it is a demultiplexed sample
    * @param demultiplexingWithConflict true if conflict occurs during recovering
    *          cluster
    * @throws IOException if an error occurs while writing the file
@@ -1020,122 +1576,104 @@ public class UndeterminedIndexesProcessThread
    *           occurs during building document xml
    */
   private void toXML(final int sampleId, final ResultEntry demuxEntry,
-      final List<? extends ResultEntry> entries, final ResultEntry totalEntry,
-      final File reportHtml, final boolean isSampleData,
+      final Iterable<? extends ResultEntry> entries,
+      final ResultEntry totalEntry, final File reportHtml,
       final boolean demultiplexingWithConflict)
       throws IOException, AozanException {
 
-    Document doc = null;
+    final File xmlFile = File.createTempFile(
+        reportHtml.getName() + "-", ".xml", reportHtml.getParentFile());
 
     try {
-      final DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
-      DocumentBuilder docBuilder = null;
-      docBuilder = dbfac.newDocumentBuilder();
-      doc = docBuilder.newDocument();
 
-    } catch (final ParserConfigurationException e) {
-      throw new AozanException(e);
-    }
+      try (OutputStream out = new BufferedOutputStream(
+          java.nio.file.Files.newOutputStream(xmlFile.toPath()))) {
 
-    // Create the root element and add it to the document
-    final Element root = doc.createElement("RecoveryClusterReport");
-    root.setAttribute("formatversion", "1.0");
-    doc.appendChild(root);
+        final XMLStreamWriter writer = XMLOutputFactory.newInstance()
+            .createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
 
-    XMLUtils.addTagValue(doc, root, "Step",
-        "Recovery cluster from undetermined fastq file");
+        writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
 
-    // Common XML tag
-    XMLUtilsWriter.buildXMLCommonTagHeader(doc, root, this.data);
+        // Create the root element
+        writer.writeStartElement("RecoveryClusterReport");
+        writer.writeAttribute("formatversion", "1.0");
 
-    if (sampleId == -1) {
+        XMLUtilsWriter.addTagValue(writer, "Step",
+            "Recovery cluster from undetermined fastq file");
 
-      XMLUtils.addTagValue(doc, root, "sampleName",
-          "lane" + this.lane + "_undetermined");
-      XMLUtils.addTagValue(doc, root, "description", null);
-      XMLUtils.addTagValue(doc, root, "condition",
-          "Compile results on recovery clusters in undetermined fastq with "
-              + this.maxMismatches + " mismatch(es).");
+        // Common XML tag
+        XMLUtilsWriter.buildXMLCommonTagHeader(writer, this.data);
 
-      // Add sample name in this lane
-      LaneResultEntry.samplesNameXML(doc, root, this.data, this.lane,
-          demultiplexingWithConflict);
+        if (sampleId == -1) {
 
-    } else {
+          XMLUtilsWriter.addTagValue(writer, "sampleName",
+              "lane" + this.lane + "_undetermined");
+          XMLUtilsWriter.addTagValue(writer, "condition",
+              "Compile results on recovery clusters in undetermined fastq with "
+                  + this.maxMismatches + " mismatch(es).");
 
-      XMLUtils.addTagValue(doc, root, "sampleName",
-          this.data.getSampleDemuxName(sampleId));
-      XMLUtils.addTagValue(doc, root, "projectName",
-          this.data.getProjectSample(sampleId));
-      XMLUtils.addTagValue(doc, root, "description",
-          this.data.getSampleDescription(sampleId));
-      XMLUtils.addTagValue(doc, root, "condition",
-          "Compile results on recovery clusters in undetermined fastq with "
-              + this.maxMismatches + " mismatch(es).");
-    }
+          // Add sample name in this lane
+          LaneResultEntry.samplesNameXML(writer, this.data, this.lane,
+              demultiplexingWithConflict);
 
-    // Table - column
-    ResultEntry.headerXML(doc, root);
+        } else {
 
-    final Element results = doc.createElement("Results");
-    results.setAttribute("id", "data");
-    root.appendChild(results);
+          XMLUtilsWriter.addTagValue(writer, "sampleName",
+              this.data.getSampleDemuxName(sampleId));
+          XMLUtilsWriter.addTagValue(writer, "projectName",
+              this.data.getProjectSample(sampleId));
+          XMLUtilsWriter.addTagValue(writer, "description",
+              this.data.getSampleDescription(sampleId));
+          XMLUtilsWriter.addTagValue(writer, "condition",
+              "Compile results on recovery clusters in undetermined fastq with "
+                  + this.maxMismatches + " mismatch(es).");
+        }
 
-    // Only exists for sample report
-    if (demuxEntry != null) {
-      // Demultiplexing result
-      demuxEntry.toXML(doc, results, "demultiplexing");
-    }
+        // Table - column
+        ResultEntry.headerXML(writer);
 
-    // Total entry
-    totalEntry.toXML(doc, results, "total");
+        writer.writeStartElement("Results");
+        writer.writeAttribute("id", "data");
 
-    for (final ResultEntry e : entries) {
-      e.toXML(doc, results, "entry");
-    }
+        // Only exists for sample report
+        if (demuxEntry != null) {
+          // Demultiplexing result
+          demuxEntry.toXML(writer, "demultiplexing");
+        }
 
-    // Set xsl file to write report HTML file
-    InputStream is = null;
-    if (this.xslFile == null) {
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_UNDETERMINED_XSL);
-    } else {
-      is = new FileInputStream(this.xslFile);
-    }
+        // Total entry
+        totalEntry.toXML(writer, "total");
 
-    // Write report HTML
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
-  }
+        for (final ResultEntry e : entries) {
+          e.toXML(writer, "entry");
+        }
 
-  //
-  // Utility methods
-  //
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
 
-  /**
-   * Get the number of mismatches of two string of the same length.
-   * @param a the first string
-   * @param b the second string
-   * @return the number of mismatches
-   */
-  public static final int mismatches(final String a, final String b) {
+      } catch (final XMLStreamException e) {
+        throw new AozanException(e);
+      }
 
-    requireNonNull(a, "a cannot be null");
-    requireNonNull(b, "b cannot be null");
-    Preconditions.checkArgument(a.length() == b.length(),
-        "The length of the 2 String must be equals (a=" + a + ", b=" + b + ")");
+      // Write report HTML with the compiled custom xsl file
+      final Templates templates = XSLTemplatesCache.get(this.xslFile);
+      XMLUtilsWriter.createHTMLFileFromXSL(xmlFile, templates, reportHtml);
 
-    final int len = a.length();
-    int result = 0;
+    } finally {
 
-    for (int i = 0; i < len; i++) {
-      if (a.charAt(i) != b.charAt(i)) {
-        result++;
+      if (!xmlFile.delete()) {
+        LOGGER.warning(COLLECTOR_NAME.toUpperCase()
+            + ": unable to delete temporary file " + xmlFile);
       }
     }
-
-    return result;
   }
 
+  //
+  // Utility methods
+  //
+
   /**
    * Reverse a map.
    * @param map the original map
@@ -1157,7 +1695,31 @@ public class UndeterminedIndexesProcessThread
   }
 
   /**
-   * Get a map with for each sample the index.
+   * Test if all the samples of the lane are dual indexed.
+   * @return true if all the samples of the lane are dual indexed
+   */
+  private boolean isDualIndexedLane() {
+
+    final List<Integer> sampleIds = this.data.getSamplesInLane(this.lane);
+
+    if (sampleIds.isEmpty()) {
+      return false;
+    }
+
+    for (final int sampleId : sampleIds) {
+
+      final String index2 = this.data.getIndex2Sample(sampleId);
+      if (index2 == null || index2.isEmpty()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get a map with for each sample the index. For dual indexed lanes, the
+   * index is the two indexes separated by a '+'.
    * @return a Map object
    */
   private Map<Integer, String> getSampleIndexes() {
@@ -1169,12 +1731,52 @@ public class UndeterminedIndexesProcessThread
       // Get the sample index
       final String index = this.data.getIndexSample(sampleId);
 
-      result.put(sampleId, index);
+      result.put(sampleId, this.dualIndexes
+          ? index + PackedIndexes.SEPARATOR + this.data.getIndex2Sample(sampleId)
+          : index);
     }
 
     return result;
   }
 
+  /**
+   * Pack the indexes of the samples.
+   * @param sampleIds the identifiers of the samples
+   * @param sampleIndexes the indexes of the samples
+   * @return an array with the packed indexes in the order of the sample
+   *         identifiers
+   */
+  private static long[] pack(final int[] sampleIds,
+      final Map<Integer, String> sampleIndexes) {
+
+    final long[] result = new long[sampleIds.length];
+
+    for (int i = 0; i < sampleIds.length; i++) {
+      result[i] = PackedIndexes.pack(sampleIndexes.get(sampleIds[i]));
+    }
+
+    return result;
+  }
+
+  /**
+   * Open the FASTQ files of a sample.
+   * @param fastqSample the sample
+   * @return a SequenceFile object
+   * @throws AozanException if an error occurs while opening the files
+   */
+  private static SequenceFile openSequenceFile(final FastqSample fastqSample)
+      throws AozanException {
+
+    try {
+
+      return SequenceFactory.getSequenceFile(fastqSample.getFastqFiles()
+          .toArray(new File[fastqSample.getFastqFiles().size()]));
+
+    } catch (final IOException | SequenceFormatException e) {
+      throw new AozanException(e);
+    }
+  }
+
   //
   // Public constructor
   //
@@ -1185,11 +1787,21 @@ public class UndeterminedIndexesProcessThread
    * @param fastqSample sample to process
    * @param reportDir output report directory
    * @param undeterminedIndexedXSLFile xsl file use to create report html
+   * @param maxIndexEntries maximal number of distinct indexes to count, 0 or
+   *          less to count all the indexes
+   * @param exactRecount true if the exact counts of the most frequent indexes
+   *          must be computed in a second pass when the counts are approximate
+   * @param topUnknownBarcodes the most frequent undetermined indexes found by
+   *          the demultiplexing, can be null
+   * @param maxReportRows maximal number of indexes in the reports, 0 or less
+   *          to write all the indexes
    * @throws AozanException if sample cannot be processed
    */
   public UndeterminedIndexesProcessThread(final RunData data,
       final FastqSample fastqSample, final File reportDir,
-      final File undeterminedIndexedXSLFile) throws AozanException {
+      final File undeterminedIndexedXSLFile, final int maxIndexEntries,
+      final boolean exactRecount, final TopUnknownBarcodes topUnknownBarcodes,
+      final int maxReportRows) throws AozanException {
 
     super(fastqSample);
 
@@ -1201,19 +1813,16 @@ public class UndeterminedIndexesProcessThread
     this.read = fastqSample.getRead();
     this.reportDir = reportDir;
     this.xslFile = undeterminedIndexedXSLFile;
+    this.undeterminedIndices = new UndeterminedIndexCounter(maxIndexEntries);
+    this.exactRecount = exactRecount;
+    this.topUnknownBarcodes = topUnknownBarcodes;
+    this.maxReportRows = maxReportRows;
 
+    this.dualIndexes = isDualIndexedLane();
     this.sampleIndexes = getSampleIndexes();
+    this.sampleIds = this.sampleIndexes.keySet().stream()
+        .mapToInt(Integer::intValue).toArray();
+    this.packedSampleIndexes = pack(this.sampleIds, this.sampleIndexes);
     this.reverseSampleIndexes = reverse(this.sampleIndexes);
-
-    try {
-
-      this.seqFile = SequenceFactory.getSequenceFile(fastqSample.getFastqFiles()
-          .toArray(new File[fastqSample.getFastqFiles().size()]));
-
-    } catch (final IOException | SequenceFormatException e) {
-      throw new AozanException(e);
-
-    }
-
   }
 }
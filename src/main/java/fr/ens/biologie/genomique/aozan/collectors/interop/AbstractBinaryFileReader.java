@@ -23,32 +23,62 @@
 
 package fr.ens.biologie.genomique.aozan.collectors.interop;
 
+import static java.util.Objects.requireNonNull;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
-import fr.ens.biologie.genomique.kenetre.io.FileUtils;
 
 /**
- * This class define an iterator on Illumina Metrics for reading binary files
- * from the InterOp directory. It allow to parse all records.
+ * This class define a streaming reader of the Illumina binary files of the
+ * InterOp directory. The file is memory-mapped and the fields of each record
+ * are read directly in the mapped buffer by the subclasses that push them as
+ * primitive values to a visitor, so no object is created by record whatever
+ * the size of the file.
  * @author Sandrine Perrin
  * @since 1.1
  */
-abstract class AbstractBinaryFileReader<M> {
+abstract class AbstractBinaryFileReader {
 
   private final File dirInterOpPath;
 
   // 2 bytes: 1 for file version number and 1 for length for each record
   private static final int HEADER_SIZE = 2;
 
+  // Maximal size of a mapped window of the file, a mapping cannot exceed 2 GB
+  private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+  // Minimal number of records of a range when a file is read in parallel
+  private static final long MIN_RANGE_RECORDS = 1L << 16;
+
+  /**
+   * This interface define a factory of readers for the ranges of a file.
+   */
+  interface ReaderFactory {
+
+    /**
+     * Create a new reader.
+     * @return a new reader
+     * @throws AozanException if an error occurs while creating the reader
+     */
+    AbstractBinaryFileReader newReader() throws AozanException;
+  }
+
   /**
    * Gets the name.
    * @return collector name
@@ -83,105 +113,389 @@ abstract class AbstractBinaryFileReader<M> {
   }
 
   /**
-   * Gets the sets the illumina metrics.
-   * @return set Illumina metrics corresponding to one binary InterOp file
-   * @throws AozanException the aozan exception
+   * Test if the metrics file exists and if its version can be read by this
+   * reader.
+   * @return true if the file can be read by this reader
+   * @throws AozanException if an error occurs while reading the version
    */
-  public List<M> readMetrics() throws AozanException {
+  public boolean isReadable() throws AozanException {
 
-    final List<M> collection = new ArrayList<>();
+    final File file = getMetricsFile();
 
-    final ByteBuffer buf;
-    final byte[] header = new byte[HEADER_SIZE];
+    if (!file.isFile() || file.length() < HEADER_SIZE) {
+      return false;
+    }
 
-    try {
-      FileUtils.checkExistingFile(getMetricsFile(),
-          "Error binary file " + getMetricsFile().getAbsolutePath());
+    try (InputStream is = new FileInputStream(file)) {
+      return getExpectedVersions().contains(is.read());
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Read all the records of the metrics file.
+   * @throws AozanException if an error occurs while reading the file or if
+   *           the format of the file is not handled
+   */
+  public void read() throws AozanException {
+
+    readRecords(0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Test if the records of the file can be read by independent ranges. A
+   * reader that aggregates several records before pushing them to its visitor
+   * cannot be split.
+   * @return true if the records of the file can be read by ranges
+   */
+  protected boolean isSplittable() {
+    return true;
+  }
+
+  /**
+   * Get the number of records of the metrics file.
+   * @return the number of records of the file
+   * @throws AozanException if an error occurs while reading the header of the
+   *           file, if the format of the file is not handled or if the last
+   *           record of the file is truncated
+   */
+  public long getRecordCount() throws AozanException {
+
+    try (RandomAccessFile raf = new RandomAccessFile(checkMetricsFile(), "r");
+        FileChannel channel = raf.getChannel()) {
 
-      final FileInputStream is = new FileInputStream(getMetricsFile());
-      final FileChannel channel = is.getChannel();
       final long fileSize = channel.size();
+      final ByteBuffer buf = map(channel, 0, fileSize);
+      final int recordSize = readHeader(buf);
 
-      // Copy binary file in buffer
-      buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
-      buf.order(ByteOrder.LITTLE_ENDIAN);
-      channel.close();
-      is.close();
+      return getRecordCount(fileSize, buf.position(), recordSize, false);
 
-    } catch (final IOException e) {
+    } catch (IOException e) {
       throw new AozanException(e);
     }
+  }
 
-    int version = -1;
+  /**
+   * Read the records appended to the metrics file since a previous read. The
+   * InterOp files of the running runs are append-only, so only the new
+   * complete records are read. An incomplete record at the end of the file is
+   * read by the next call.
+   * @param offset offset in the file returned by the previous call, or 0 to
+   *          read the file from the start
+   * @return the offset in the file after the last record read
+   * @throws AozanException if an error occurs while reading the file or if
+   *           the format of the file is not handled
+   */
+  public long readAppendedRecords(final long offset) throws AozanException {
 
-    // check version file
-    if (HEADER_SIZE > 0) {
-      ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
-      b.order(ByteOrder.LITTLE_ENDIAN);
-      b = buf.get(header);
-      b.position(0);
+    return readRecords(0, Long.MAX_VALUE, offset, true);
+  }
 
-      // Read byte 0: file version number
-      version = uByteToInt(b.get());
+  /**
+   * Read the records of the metrics file in the range [firstRecord,
+   * lastRecord[.
+   * @param firstRecord index of the first record to read
+   * @param lastRecord index of the record after the last record to read
+   * @throws AozanException if an error occurs while reading the file, if the
+   *           format of the file is not handled or if the last record of the
+   *           file is truncated
+   */
+  void readRecords(final long firstRecord, final long lastRecord)
+      throws AozanException {
+
+    readRecords(firstRecord, lastRecord, 0, false);
+  }
+
+  /**
+   * Read the records of the metrics file in the range [firstRecord,
+   * lastRecord[ that start at or after an offset.
+   * @param firstRecord index of the first record to read
+   * @param lastRecord index of the record after the last record to read
+   * @param minOffset minimal offset in the file of the first record to read
+   * @param partialRecordAllowed true if the last record of the file can be
+   *          incomplete, as in a file being written
+   * @return the offset in the file after the last record read
+   * @throws AozanException if an error occurs while reading the file or if
+   *           the format of the file is not handled
+   */
+  private long readRecords(final long firstRecord, final long lastRecord,
+      final long minOffset, final boolean partialRecordAllowed)
+      throws AozanException {
+
+    try (RandomAccessFile raf = new RandomAccessFile(checkMetricsFile(), "r");
+        FileChannel channel = raf.getChannel()) {
+
+      final long fileSize = channel.size();
+
+      // Read the header
+      ByteBuffer buf = map(channel, 0, fileSize);
+      final int recordSize = readHeader(buf);
+      final int version = uByteToInt(buf.get(0));
+
+      final long dataOffset = buf.position();
+      final long recordCount = getRecordCount(fileSize, dataOffset, recordSize,
+          partialRecordAllowed);
+      final long last = Math.min(lastRecord, recordCount);
+
+      // Skip the records before the minimal offset
+      final long first = minOffset > dataOffset
+          ? Math.max(firstRecord,
+              (minOffset - dataOffset + recordSize - 1) / recordSize)
+          : firstRecord;
+
+      // Read the records, the file is mapped by windows
+      long windowOffset = 0;
+      long offset = dataOffset + first * recordSize;
+
+      for (long i = first; i < last; i++) {
+
+        if (offset + recordSize > windowOffset + buf.limit()) {
 
-      // Check version
-      if (!getExpectedVersions().contains(version)) {
-        throw new AozanException(getName()
-            + " expects the version number to be " + getExpectedVersions()
-            + ".  Actual Version in Header(" + version + ")");
+          // Map the next window of the file
+          windowOffset = offset;
+          buf = map(channel, windowOffset, fileSize);
+        }
+
+        buf.position((int) (offset - windowOffset));
+        readMetricRecord(buf, version);
+
+        offset += recordSize;
       }
 
-      // Read byte 1: length of each record
-      final int recordSize = uByteToInt(b.get());
+      endOfFile();
+
+      return Math.max(offset, minOffset);
+
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Read a metrics file by record-aligned ranges in parallel. The first range
+   * is read by the first reader, the factory is called on the current thread
+   * to create the readers of the other ranges, in the order of the ranges. As
+   * the ranges are read concurrently, the visitor of each reader must push the
+   * values in its own accumulator, and the caller must merge the accumulators
+   * after this call.
+   * @param first reader of the first range
+   * @param factory factory of the readers of the other ranges
+   * @param threads maximal number of threads to use
+   * @return the number of ranges that have been read
+   * @throws AozanException if an error occurs while reading the file
+   */
+  static int readRanges(final AbstractBinaryFileReader first,
+      final ReaderFactory factory, final int threads) throws AozanException {
+
+    requireNonNull(first, "first argument cannot be null");
+    requireNonNull(factory, "factory argument cannot be null");
 
-      readOptionalFlag(b, version);
+    final long recordCount = first.getRecordCount();
+    final int rangeCount = first.isSplittable()
+        ? (int) Math.max(1,
+            Math.min(threads, recordCount / MIN_RANGE_RECORDS))
+        : 1;
 
-      // Check the size record needed
-      final int expectedRecordSize = getExpectedRecordSize(version);
-      if (expectedRecordSize != recordSize) {
-        throw new AozanException(getName()
-            + " expects the record size to be " + expectedRecordSize
-            + ". Actual Record Size in Header(" + recordSize + ")");
+    if (rangeCount == 1) {
+      first.read();
+      return 1;
+    }
+
+    final List<AbstractBinaryFileReader> readers = new ArrayList<>();
+    readers.add(first);
+    for (int i = 1; i < rangeCount; i++) {
+      readers.add(factory.newReader());
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(rangeCount);
+
+    try {
+
+      final List<Future<Void>> futures = new ArrayList<>();
+
+      for (int i = 0; i < rangeCount; i++) {
+
+        final AbstractBinaryFileReader reader = readers.get(i);
+        final long firstRecord = recordCount * i / rangeCount;
+        final long lastRecord = recordCount * (i + 1) / rangeCount;
+
+        futures.add(executor.submit(() -> {
+          reader.readRecords(firstRecord, lastRecord);
+          return null;
+        }));
       }
 
-      // checkRecordSize(recordSize);
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof AozanException) {
+        throw (AozanException) e.getCause();
+      }
+      throw new AozanException(e.getCause());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return rangeCount;
+  }
+
+  /**
+   * Get the number of records of the file.
+   * @param fileSize size of the file
+   * @param dataOffset offset of the first record in the file
+   * @param recordSize size of the records
+   * @param partialRecordAllowed true if the last record of the file can be
+   *          incomplete
+   * @return the number of complete records of the file
+   * @throws AozanException if the last record is truncated and this is not
+   *           allowed
+   */
+  private long getRecordCount(final long fileSize, final long dataOffset,
+      final int recordSize, final boolean partialRecordAllowed)
+      throws AozanException {
+
+    final long dataSize = fileSize - dataOffset;
+
+    if (!partialRecordAllowed && dataSize % recordSize != 0) {
+      throw new AozanException(getName()
+          + " truncated record at the end of binary file: "
+          + getMetricsFile().getAbsolutePath() + " (" + dataSize % recordSize
+          + " bytes instead of " + recordSize + ")");
+    }
+
+    return dataSize / recordSize;
+  }
+
+  /**
+   * Check that the metrics file exists.
+   * @return the metrics file
+   * @throws AozanException if the metrics file does not exist
+   */
+  private File checkMetricsFile() throws AozanException {
+
+    final File file = getMetricsFile();
+
+    if (!file.isFile()) {
+      throw new AozanException(
+          "Error binary file " + file.getAbsolutePath() + " not found");
     }
 
-    final int recordSize = getExpectedRecordSize(version);
-    final byte[] element = new byte[recordSize];
-    final ByteBuffer recordBuf = ByteBuffer.wrap(element);
-    recordBuf.order(ByteOrder.LITTLE_ENDIAN);
+    return file;
+  }
+
+  /**
+   * Map a window of the file.
+   * @param channel channel of the file
+   * @param offset offset of the window in the file
+   * @param fileSize size of the file
+   * @return a ByteBuffer
+   * @throws IOException if an error occurs while mapping the file
+   */
+  private static ByteBuffer map(final FileChannel channel, final long offset,
+      final long fileSize) throws IOException {
+
+    final ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY,
+        offset, Math.min(fileSize - offset, MAX_WINDOW_SIZE));
+    result.order(ByteOrder.LITTLE_ENDIAN);
 
-    // Build collection of illumina metrics
-    while (buf.limit() - buf.position() >= recordSize) {
-      recordBuf.position(0);
-      buf.get(element);
-      recordBuf.position(0);
+    return result;
+  }
 
-      // collection.add(new IlluminaMetrics(recordBuf));
-      readMetricRecord(collection, recordBuf, version);
+  /**
+   * Read the header of the file. After this call, the position of the buffer
+   * is the start of the first record.
+   * @param buf buffer with the start of the file
+   * @return the size of the records
+   * @throws AozanException if the header is invalid or if the format of the
+   *           file is not handled
+   */
+  private int readHeader(final ByteBuffer buf) throws AozanException {
+
+    if (buf.remaining() < HEADER_SIZE) {
+      throw new AozanException(getName()
+          + " invalid binary file: " + getMetricsFile().getAbsolutePath());
     }
 
-    return collection;
+    try {
+      return readHeaderFields(buf);
+    } catch (BufferUnderflowException e) {
+
+      // The header of a file being written can be incomplete
+      throw new AozanException(getName()
+          + " truncated header in binary file: "
+          + getMetricsFile().getAbsolutePath());
+    }
+  }
+
+  /**
+   * Read the fields of the header of the file.
+   * @param buf buffer with the start of the file
+   * @return the size of the records
+   * @throws AozanException if the format of the file is not handled
+   */
+  private int readHeaderFields(final ByteBuffer buf) throws AozanException {
+
+    // Read byte 0: file version number
+    final int version = uByteToInt(buf);
+
+    // Check version
+    if (!getExpectedVersions().contains(version)) {
+      throw new AozanException(getName()
+          + " expects the version number to be " + getExpectedVersions()
+          + ".  Actual Version in Header(" + version + ")");
+    }
+
+    // Read byte 1: length of each record
+    final int recordSize = uByteToInt(buf);
+
+    readOptionalFlag(buf, version);
+
+    // Check the size record needed
+    final int expectedRecordSize = getExpectedRecordSize(version);
+    if (expectedRecordSize != recordSize) {
+      throw new AozanException(getName()
+          + " expects the record size to be " + expectedRecordSize
+          + ". Actual Record Size in Header(" + recordSize + ")");
+    }
+
+    return recordSize;
   }
 
   /**
    * Read optional flags.
    * @param bb byte buffer
    * @param version version of the format of the file
+   * @throws AozanException if the header is invalid
+   */
+  protected void readOptionalFlag(ByteBuffer bb, int version)
+      throws AozanException {
+  }
+
+  /**
+   * Method called after the last record of the file, or of the range of the
+   * file when the file is read by ranges.
+   * @throws AozanException if an error occurs while handling the last records
    */
-  protected void readOptionalFlag(ByteBuffer bb, int version) {
+  protected void endOfFile() throws AozanException {
   }
 
   /**
-   * Build a set of a type of illumina metrics (M) according to the interop file
-   * reading.
-   * @param collection list of illumina metrics
-   * @param bb ByteBuffer contains the value corresponding to one record
+   * Read a record and push its values to the visitor of the reader. The
+   * position of the buffer is the start of the record.
+   * @param bb ByteBuffer that contains the record
    * @param version version of the format
+   * @throws AozanException if an error occurs while handling the record
    */
-  protected abstract void readMetricRecord(final List<M> collection,
-      final ByteBuffer bb, int version);
+  protected abstract void readMetricRecord(final ByteBuffer bb, int version)
+      throws AozanException;
 
   //
   // Constructor
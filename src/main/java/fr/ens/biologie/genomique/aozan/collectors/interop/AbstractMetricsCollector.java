@@ -56,6 +56,9 @@ abstract class AbstractMetricsCollector implements Collector {
   /** The reads count. */
   private int readsCount;
 
+  /** The number of threads. */
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+
   /**
    * Get the name of the collectors required to run this collector.
    * @return a list of String with the name of the required collectors
@@ -74,6 +77,9 @@ abstract class AbstractMetricsCollector implements Collector {
     } else {
       this.interOpDir = new File(qc.getBclDir(), "InterOp");
     }
+
+    // Set the number of threads
+    this.threadCount = conf.getThreadCount();
   }
 
   @Override
@@ -99,6 +105,25 @@ abstract class AbstractMetricsCollector implements Collector {
 
   }
 
+  /**
+   * Get the InterOp files read by the collector. The data of the collector
+   * are cached by the InterOpLoader only if the collector reads files.
+   * @return a list with the InterOp files read by the collector
+   */
+  List<File> getInterOpFiles() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Get a key with the configuration of the collector that changes its data.
+   * The data of the collector in the InterOp cache are only reused if this key
+   * has not changed.
+   * @return a String with the configuration of the collector
+   */
+  String getCacheKey() {
+    return "";
+  }
+
   /**
    * Remove temporary files.
    */
@@ -134,6 +159,22 @@ abstract class AbstractMetricsCollector implements Collector {
     return this.readsCount;
   }
 
+  /**
+   * Gets the number of threads to use to read the InterOp files.
+   * @return the number of threads
+   */
+  public int getThreadCount() {
+    return this.threadCount;
+  }
+
+  /**
+   * Sets the number of threads to use to read the InterOp files.
+   * @param threadCount the number of threads
+   */
+  void setThreadCount(final int threadCount) {
+    this.threadCount = Math.max(1, threadCount);
+  }
+
   /**
    * Gets the reads data.
    * @return the reads data
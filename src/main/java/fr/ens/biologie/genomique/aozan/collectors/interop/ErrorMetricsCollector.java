@@ -25,21 +25,17 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
-
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetric;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetricsReader;
@@ -59,6 +55,12 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
   private final Map<Integer, ErrorRatesPerLane> errorRatesMetrics =
       new HashMap<>();
 
+  @Override
+  List<File> getInterOpFiles() {
+    return Collections.singletonList(
+        new File(getInterOpDir(), ErrorMetricsFileReader.METRICS_FILE));
+  }
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -77,15 +79,22 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
       initMetricsMap(data);
 
-      int keyMap;
+      final ErrorMetricsFileReader reader =
+          new ErrorMetricsFileReader(getInterOpDir(), this::addMetric);
 
-      // Distribution of metrics between lane and code
-      for (final ErrorMetric iem : new ErrorMetricsReader(
-          getInterOpDir()).readMetrics()) {
-        keyMap = getKeyMap(iem.getLaneNumber(),
-            getReadFromCycleNumber(iem.getCycleNumber()));
+      if (reader.isReadable()) {
 
-        this.errorRatesMetrics.get(keyMap).addMetric(iem);
+        // Stream the records of the file
+        reader.read();
+      } else {
+
+        // Distribution of metrics between lane and code
+        for (final ErrorMetric iem : new ErrorMetricsReader(
+            getInterOpDir()).readMetrics()) {
+
+          addMetric(iem.getLaneNumber(), iem.getTileNumber(),
+              iem.getCycleNumber(), iem.getErrorRate());
+        }
       }
 
     } catch (final FileNotFoundException e) {
@@ -107,6 +116,22 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
   }
 
+  /**
+   * Add an error metric.
+   * @param lane lane number
+   * @param tile tile number
+   * @param cycle cycle number
+   * @param errorRate error rate
+   * @throws AozanException if the cycle number is invalid
+   */
+  private void addMetric(final int lane, final long tile, final int cycle,
+      final double errorRate) throws AozanException {
+
+    final int keyMap = getKeyMap(lane, getReadFromCycleNumber(cycle));
+
+    this.errorRatesMetrics.get(keyMap).addMetric(tile, cycle, errorRate);
+  }
+
   /**
    * Set unique id for each pair lane-read in a run.
    * @param lane lane number
@@ -200,43 +225,41 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
 
     private boolean dataToCompute = true;
 
-    // Save pair tile-rate error for all cycles for a lane
-    private final ListMultimap<Long, Number> allErrorRates =
-        ArrayListMultimap.create();
+    // Sum of the error rates by tile for all cycles for a lane
+    private final TileValues allErrorRates = new TileValues();
 
-    // Save pair tile-rate error for cycles (1 to 35) for all tiles
-    private final ListMultimap<Long, Number> error35 =
-        ArrayListMultimap.create();
+    // Sum of the error rates by tile for cycles (1 to 35)
+    private final TileValues error35 = new TileValues();
 
-    // Save pair tile-rate error for cycles (1 to 75) for all tiles, for run PE
-    private final ListMultimap<Long, Number> error75 =
-        ArrayListMultimap.create();
+    // Sum of the error rates by tile for cycles (1 to 75), for run PE
+    private final TileValues error75 = new TileValues();
 
-    // Save pair tile-rate error for cycles (1 to 100) for all tiles, for run PE
-    private final ListMultimap<Long, Number> error100 =
-        ArrayListMultimap.create();
+    // Sum of the error rates by tile for cycles (1 to 100), for run PE
+    private final TileValues error100 = new TileValues();
 
     /**
-     * Save a record from TileMetricsOut.bin file.
-     * @param iem Illumina tile metrics
+     * Save a record from ErrorMetricsOut.bin file.
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param errorRate error rate
      */
-    public void addMetric(final ErrorMetric iem) {
+    public void addMetric(final long tile, final int cycle,
+        final double errorRate) {
 
-      this.allErrorRates.put(iem.getTileNumber(), iem.getErrorRate());
-      final int cycle = iem.getCycleNumber();
+      this.allErrorRates.add(tile, errorRate);
 
       if (cycle <= this.threshold35thCycle) {
-        this.error35.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error35.add(tile, errorRate);
       }
 
       // Threshold = 0 in run SR
       if (cycle <= this.threshold75thCycle) {
-        this.error75.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error75.add(tile, errorRate);
       }
 
       // Threshold = 0 in run SR
       if (cycle <= this.threshold100thCycle) {
-        this.error100.put(iem.getTileNumber(), iem.getErrorRate());
+        this.error100.add(tile, errorRate);
       }
     }
 
@@ -246,11 +269,8 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
      */
     public void computeData() {
 
-      List<Number> errorRatePerTile;
-
-      if (this.allErrorRates.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.allErrorRates);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.allErrorRates.isEmpty()) {
+        final RunningStatistics stat = this.allErrorRates.statistics();
 
         this.errorRate = stat.getMean();
         this.errorRateSD = stat.getStandardDeviation();
@@ -258,9 +278,8 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
       }
 
       // Check if number cycle > 35, else values are 0.0
-      if (this.error35.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error35);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error35.isEmpty()) {
+        final RunningStatistics stat = this.error35.statistics();
 
         this.errorRateCycle35 = stat.getMean();
         this.errorRateCycle35SD = stat.getStandardDeviation();
@@ -268,9 +287,8 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
       }
 
       // Check if number cycle > 75, else values are 0.0
-      if (this.error75.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error75);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error75.isEmpty()) {
+        final RunningStatistics stat = this.error75.statistics();
 
         this.errorRateCycle75 = stat.getMean();
         this.errorRateCycle75SD = stat.getStandardDeviation();
@@ -278,9 +296,8 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
       }
 
       // Check if number cycle > 100, else values are 0.0
-      if (this.error100.size() > 0) {
-        errorRatePerTile = computeErrorRatePerTile(this.error100);
-        final StatisticsUtils stat = new StatisticsUtils(errorRatePerTile);
+      if (!this.error100.isEmpty()) {
+        final RunningStatistics stat = this.error100.statistics();
 
         this.errorRateCycle100 = stat.getMean();
         this.errorRateCycle100SD = stat.getStandardDeviation();
@@ -290,35 +307,6 @@ public class ErrorMetricsCollector extends AbstractMetricsCollector {
       this.dataToCompute = false;
     }
 
-    /**
-     * Compute the rate error for each Tiles with the mean by cycle.
-     * @param values of rate error per countTiles, per cycles
-     * @return list of rate error for each number tile
-     */
-    public List<Number> computeErrorRatePerTile(
-        final ListMultimap<Long, Number> values) {
-
-      // Define map : tile and list of rate error, one per cycle to use
-      final Map<Long, Collection<Number>> errorValuePerTile = values.asMap();
-
-      // Save rate error per tile
-      final List<Number> errorRatePerTile = new ArrayList<>();
-
-      for (final Map.Entry<Long, Collection<Number>> entry : errorValuePerTile
-          .entrySet()) {
-
-        final Collection<Number> value = entry.getValue();
-        final List<Number> list =
-            Arrays.asList(value.toArray(new Number[value.size()]));
-
-        final StatisticsUtils stat = new StatisticsUtils(list);
-        errorRatePerTile.add(stat.getMean());
-
-      }
-
-      return errorRatePerTile;
-    }
-
     /**
      * Save data from error metrics for a run in a RunData.
      * @return rundata data from tile metrics for a run
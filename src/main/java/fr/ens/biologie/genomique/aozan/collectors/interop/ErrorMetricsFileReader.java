@@ -0,0 +1,122 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a streaming reader of the ErrorMetricsOut.bin file.
+ * @since 3.1
+ * @author agent
+ */
+class ErrorMetricsFileReader extends AbstractBinaryFileReader {
+
+  /** Name of the metrics file. */
+  static final String METRICS_FILE = "ErrorMetricsOut.bin";
+
+  private static final Set<Integer> VERSIONS = ImmutableSet.of(3, 4);
+
+  private final Visitor visitor;
+
+  /**
+   * This interface define a visitor of the records of the file.
+   */
+  interface Visitor {
+
+    /**
+     * Visit a record.
+     * @param lane lane number
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param errorRate error rate
+     * @throws AozanException if an error occurs while handling the record
+     */
+    void visit(int lane, long tile, int cycle, float errorRate)
+        throws AozanException;
+  }
+
+  @Override
+  public String getName() {
+    return "ErrorMetricsOut";
+  }
+
+  @Override
+  protected File getMetricsFile() {
+    return new File(getDirPathInterOP(), METRICS_FILE);
+  }
+
+  @Override
+  protected int getExpectedRecordSize(final int version) {
+
+    // Version 3: lane (2), tile (2), cycle (2), error rate (4), and the counts
+    // of reads with 0 to 4 errors (5 * 4)
+    // Version 4: lane (2), tile (4), cycle (2), error rate (4)
+    return version == 3 ? 30 : 12;
+  }
+
+  @Override
+  protected Set<Integer> getExpectedVersions() {
+    return VERSIONS;
+  }
+
+  @Override
+  protected void readMetricRecord(final ByteBuffer bb, final int version)
+      throws AozanException {
+
+    final int lane = uShortToInt(bb);
+    final long tile = version == 3 ? uShortToInt(bb) : uIntToLong(bb);
+    final int cycle = uShortToInt(bb);
+
+    this.visitor.visit(lane, tile, cycle, bb.getFloat());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dirPath path to the interop directory for a run
+   * @param visitor visitor of the records
+   * @throws AozanException if the directory does not exist
+   */
+  ErrorMetricsFileReader(final File dirPath, final Visitor visitor)
+      throws AozanException {
+
+    super(dirPath);
+
+    if (visitor == null) {
+      throw new NullPointerException("visitor argument cannot be null");
+    }
+
+    this.visitor = visitor;
+  }
+
+}
@@ -25,17 +25,16 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
+import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-
-import com.google.common.collect.Lists;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.collectors.interop.ReadsData.ReadData;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtractionMetric;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtractionMetricsReader;
@@ -55,6 +54,12 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
   private final Map<Integer, ExtractionMetricsPerLane> intensityMetrics =
       new HashMap<>();
 
+  @Override
+  List<File> getInterOpFiles() {
+    return Collections.singletonList(
+        new File(getInterOpDir(), ExtractionMetricsFileReader.METRICS_FILE));
+  }
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -69,23 +74,39 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
-    int keyMap;
-
     initMetricsMap(data.get("run.info.image.channels"));
 
-    try {
-      // Distribution of metrics between lane and code
-      for (final ExtractionMetric iim : new ExtractionMetricsReader(
-          getInterOpDir()).readMetrics()) {
+    final ExtractionMetricsFileReader.Visitor visitor =
+        (lane, tile, cycle, intensities) -> {
+
+          // key : number read, value(pair:first number cycle, last number
+          // cycle)
+          final int keyMap = getKeyMap(lane, getReadFromCycleNumber(cycle));
+
+          this.intensityMetrics.get(keyMap).addMetric(tile, cycle,
+              intensities);
+        };
 
-        // key : number read, value(pair:first number cycle, last number cycle)
-        keyMap = getKeyMap(iim.getLaneNumber(),
-            getReadFromCycleNumber(iim.getCycleNumber()));
+    final ExtractionMetricsFileReader reader =
+        new ExtractionMetricsFileReader(getInterOpDir(), visitor);
 
-        this.intensityMetrics.get(keyMap).addMetric(iim);
+    if (reader.isReadable()) {
+
+      // Stream the records of the file
+      reader.read();
+    } else {
+
+      try {
+        // Distribution of metrics between lane and code
+        for (final ExtractionMetric iim : new ExtractionMetricsReader(
+            getInterOpDir()).readMetrics()) {
+
+          visitor.visit(iim.getLaneNumber(), iim.getTileNumber(),
+              iim.getCycleNumber(), iim.getIntensities());
+        }
+      } catch (KenetreException e) {
+        throw new AozanException(e);
       }
-    } catch (KenetreException e) {
-      throw new AozanException(e);
     }
 
     // Build runData
@@ -156,8 +177,8 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
     private double ratioIntensityCycle20 = 0.0;
     private double ratioIntensityCycle20SD = 0.0;
 
-    private final Map<Long, Number> intensityCycle1ValuesPerTile;
-    private final Map<Long, Number> intensityCycle20ValuesPerTile;
+    private final TileValues intensityCycle1ValuesPerTile = new TileValues();
+    private final TileValues intensityCycle20ValuesPerTile = new TileValues();
 
     private boolean dataToCompute = true;
     private final int channelIndex;
@@ -165,20 +186,22 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
     /**
      * Save a record from ExtractionMetricsOut.bin file, only for the first and
      * the twentieth cycle.
-     * @param iim illumina tile metrics
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param intensities intensities of the channels
      */
-    public void addMetric(final ExtractionMetric iim) {
-      final int cycle = iim.getCycleNumber();
+    public void addMetric(final long tile, final int cycle,
+        final int[] intensities) {
 
       // here use only the value for base A, like in the Illumina files.
       // TODO Good compute : iim.getAverageIntensities();
       if (cycle == this.firstCycleNumber) {
-        this.intensityCycle1ValuesPerTile.put(iim.getTileNumber(),
-            iim.getIntensities()[channelIndex]);
+        this.intensityCycle1ValuesPerTile.put(tile,
+            intensities[channelIndex]);
 
       } else if (cycle == this.twentiethCycleNumber) {
-        this.intensityCycle20ValuesPerTile.put(iim.getTileNumber(),
-            iim.getIntensities()[channelIndex]);
+        this.intensityCycle20ValuesPerTile.put(tile,
+            intensities[channelIndex]);
 
       }
     }
@@ -189,17 +212,17 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
      */
     public void computeData() {
 
-      final StatisticsUtils statCycle1 =
-          new StatisticsUtils(this.intensityCycle1ValuesPerTile.values());
+      final RunningStatistics statCycle1 =
+          this.intensityCycle1ValuesPerTile.statistics();
 
       // TODO to check, used only intensity for the base A
-      this.intensityCycle1 = statCycle1.getMean().intValue();
+      this.intensityCycle1 = (int) statCycle1.getMean();
 
       // intensityCycle1 somme intensity / compt(tile) / 4
       this.intensityCycle1SD = statCycle1.getStandardDeviation();
 
       // Check if count cycle > 20
-      if (this.intensityCycle20ValuesPerTile.size() > 0) {
+      if (!this.intensityCycle20ValuesPerTile.isEmpty()) {
 
         // Compute intensity statistic at cycle 20 as a percentage of that at
         // the first cycle.
@@ -239,22 +262,17 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
      */
     private void computeRatioIntensityCycle20() {
 
-      final List<Number> intensityCycle1Values =
-          Lists.newArrayList(this.intensityCycle1ValuesPerTile.values());
-
-      final List<Number> intensityCycle20Values =
-          Lists.newArrayList(this.intensityCycle20ValuesPerTile.values());
-
-      final StatisticsUtils stat = new StatisticsUtils();
+      final RunningStatistics stat = new RunningStatistics();
 
       // Compute % intensity C20 / intensity C1 for each tile
-      for (int i = 0; i < intensityCycle1Values.size(); i++) {
+      for (long tile : this.intensityCycle1ValuesPerTile.tiles()) {
 
-        final Double intensityC1 = intensityCycle1Values.get(i).doubleValue();
-        final Double intensityC20 = intensityCycle20Values.get(i).doubleValue();
+        final double intensityC1 = this.intensityCycle1ValuesPerTile.get(tile);
+        final double intensityC20 =
+            this.intensityCycle20ValuesPerTile.get(tile);
 
-        if (intensityC1 > 0) {
-          stat.addValues(intensityC20 / intensityC1 * 100);
+        if (intensityC1 > 0 && !Double.isNaN(intensityC20)) {
+          stat.add(intensityC20 / intensityC1 * 100);
         }
       }
 
@@ -289,9 +307,6 @@ public class ExtractionMetricsCollector extends AbstractMetricsCollector {
 
       this.twentiethCycleNumber = (readData.getNumberCycles() >= 20
           ? this.firstCycleNumber + STEP : -1);
-
-      this.intensityCycle1ValuesPerTile = new TreeMap<>();
-      this.intensityCycle20ValuesPerTile = new TreeMap<>();
     }
   }
 
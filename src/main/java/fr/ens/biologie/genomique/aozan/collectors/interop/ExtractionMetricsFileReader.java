@@ -0,0 +1,142 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a streaming reader of the ExtractionMetricsOut.bin file.
+ * @since 3.1
+ * @author agent
+ */
+class ExtractionMetricsFileReader extends AbstractBinaryFileReader {
+
+  /** Name of the metrics file. */
+  static final String METRICS_FILE = "ExtractionMetricsOut.bin";
+
+  private static final Set<Integer> VERSIONS = ImmutableSet.of(2, 3);
+
+  // Number of channels of the version 2 of the format
+  private static final int DEFAULT_CHANNEL_COUNT = 4;
+
+  private final Visitor visitor;
+  private int[] intensities = new int[DEFAULT_CHANNEL_COUNT];
+
+  /**
+   * This interface define a visitor of the records of the file.
+   */
+  interface Visitor {
+
+    /**
+     * Visit a record.
+     * @param lane lane number
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param intensities intensity of each channel. The array is reused for
+     *          the next record and must not be modified
+     * @throws AozanException if an error occurs while handling the record
+     */
+    void visit(int lane, long tile, int cycle, int[] intensities)
+        throws AozanException;
+  }
+
+  @Override
+  public String getName() {
+    return "ExtractionMetricsOut";
+  }
+
+  @Override
+  protected File getMetricsFile() {
+    return new File(getDirPathInterOP(), METRICS_FILE);
+  }
+
+  @Override
+  protected int getExpectedRecordSize(final int version) {
+
+    // Version 2: lane (2), tile (2), cycle (2), 4 FWHM (4), 4 intensities (2)
+    // and date (8)
+    // Version 3: lane (2), tile (4), cycle (2), FWHM (4) and intensities (2)
+    // for each channel
+    return version == 2 ? 38 : 8 + 6 * this.intensities.length;
+  }
+
+  @Override
+  protected Set<Integer> getExpectedVersions() {
+    return VERSIONS;
+  }
+
+  @Override
+  protected void readOptionalFlag(final ByteBuffer bb, final int version) {
+
+    this.intensities = new int[version == 2
+        ? DEFAULT_CHANNEL_COUNT : uByteToInt(bb)];
+  }
+
+  @Override
+  protected void readMetricRecord(final ByteBuffer bb, final int version)
+      throws AozanException {
+
+    final int lane = uShortToInt(bb);
+    final long tile = version == 2 ? uShortToInt(bb) : uIntToLong(bb);
+    final int cycle = uShortToInt(bb);
+
+    // Skip FWHM values
+    bb.position(bb.position() + 4 * this.intensities.length);
+
+    for (int i = 0; i < this.intensities.length; i++) {
+      this.intensities[i] = uShortToInt(bb);
+    }
+
+    this.visitor.visit(lane, tile, cycle, this.intensities);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dirPath path to the interop directory for a run
+   * @param visitor visitor of the records
+   * @throws AozanException if the directory does not exist
+   */
+  ExtractionMetricsFileReader(final File dirPath, final Visitor visitor)
+      throws AozanException {
+
+    super(dirPath);
+
+    if (visitor == null) {
+      throw new NullPointerException("visitor argument cannot be null");
+    }
+
+    this.visitor = visitor;
+  }
+
+}
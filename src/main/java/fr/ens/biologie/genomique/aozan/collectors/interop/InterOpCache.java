@@ -0,0 +1,209 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+/**
+ * This class define a persistent cache of the data computed by the InterOp
+ * collectors. The cache of a run is stored in the QC output directory of the
+ * run, so the InterOp files are not read again when the QC is computed again
+ * (e.g. after a new demultiplexing). The data of a collector are reused only
+ * if the fingerprint of its input has not changed. The fingerprint contains the
+ * path, the size and the modification time of the InterOp files read by the
+ * collector, the run information and the version of the cache.
+ * @since 3.1
+ * @author agent
+ */
+final class InterOpCache {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Cache filename. */
+  static final String CACHE_FILENAME = "interop.cache";
+
+  // Version of the cache, must be incremented when the data computed by the
+  // InterOp readers or collectors change
+  static final int VERSION = 1;
+
+  private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+  private static final String DATA_INFIX = ".data.";
+  private static final String RUN_INFO_PREFIX = "run.info.";
+
+  private final File file;
+  private final RunData entries;
+  private boolean modified;
+
+  /**
+   * Get the cached data of a collector.
+   * @param collectorName name of the collector
+   * @param fingerprint fingerprint of the input of the collector
+   * @return the cached data or null if the data are not in the cache or if the
+   *         fingerprint has changed
+   */
+  synchronized RunData get(final String collectorName,
+      final String fingerprint) {
+
+    if (!fingerprint
+        .equals(this.entries.get(collectorName + FINGERPRINT_SUFFIX))) {
+      return null;
+    }
+
+    final String prefix = collectorName + DATA_INFIX;
+    final RunData result = new RunData();
+
+    for (Map.Entry<String, String> e : this.entries.getMap().entrySet()) {
+      if (e.getKey().startsWith(prefix)) {
+        result.put(e.getKey().substring(prefix.length()), e.getValue());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Set the data of a collector.
+   * @param collectorName name of the collector
+   * @param fingerprint fingerprint of the input of the collector
+   * @param data data computed by the collector
+   */
+  synchronized void put(final String collectorName, final String fingerprint,
+      final RunData data) {
+
+    final String prefix = collectorName + DATA_INFIX;
+
+    // Remove the previous data of the collector
+    for (String key : new TreeMap<>(this.entries.getMap()).keySet()) {
+      if (key.startsWith(prefix)) {
+        this.entries.remove(key);
+      }
+    }
+
+    this.entries.put(collectorName + FINGERPRINT_SUFFIX, fingerprint);
+    for (Map.Entry<String, String> e : data.getMap().entrySet()) {
+      this.entries.put(prefix + e.getKey(), e.getValue());
+    }
+
+    this.modified = true;
+  }
+
+  /**
+   * Save the cache if it has been modified.
+   */
+  synchronized void save() {
+
+    if (!this.modified) {
+      return;
+    }
+
+    try {
+      this.entries.createRunDataFile(this.file);
+      this.modified = false;
+    } catch (IOException e) {
+      LOGGER.warning("Unable to save the InterOp cache "
+          + this.file + ": " + e.getMessage());
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Compute the fingerprint of the input of a collector.
+   * @param files InterOp files read by the collector
+   * @param cacheKey configuration of the collector that changes its data
+   * @param data run data, only the run information is used
+   * @return a String with the fingerprint
+   */
+  static String fingerprint(final List<File> files, final String cacheKey,
+      final RunData data) {
+
+    final Hasher hasher = Hashing.sha256().newHasher();
+
+    hasher.putInt(VERSION);
+    hasher.putString(cacheKey, StandardCharsets.UTF_8);
+
+    for (File f : files) {
+      hasher.putString(f.getAbsolutePath(), StandardCharsets.UTF_8);
+      hasher.putLong(f.exists() ? f.length() : -1);
+      hasher.putLong(f.lastModified());
+    }
+
+    // The collectors only use the run information
+    for (Map.Entry<String, String> e : new TreeMap<>(data.getMap())
+        .entrySet()) {
+      if (e.getKey().startsWith(RUN_INFO_PREFIX)) {
+        hasher.putString(e.getKey(), StandardCharsets.UTF_8);
+        hasher.putString(e.getValue(), StandardCharsets.UTF_8);
+      }
+    }
+
+    return hasher.hash().toString();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor. The cache is loaded if it exists.
+   * @param dir directory of the cache
+   */
+  InterOpCache(final File dir) {
+
+    requireNonNull(dir, "dir argument cannot be null");
+
+    this.file = new File(dir, CACHE_FILENAME);
+
+    RunData entries = new RunData();
+
+    if (this.file.isFile()) {
+      try {
+        entries = new RunData(this.file);
+      } catch (IOException e) {
+        LOGGER.warning("Unable to read the InterOp cache "
+            + this.file + ": " + e.getMessage());
+      }
+    }
+
+    this.entries = entries;
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.Collector;
+
+/**
+ * This class define a loader that reads the InterOp files concurrently. The
+ * InterOp files are independent, so each collector is run in its own thread
+ * on an overlay of a snapshot of the run data. The changes of the overlays are
+ * then merged in the run data in the order of the collectors, so the result
+ * does not depend on the order of completion of the collectors. The threads
+ * are shared between the collectors that run concurrently and their readers
+ * of file ranges. When a cache directory is set, the data of the collectors
+ * whose InterOp files have not changed are read from the cache.
+ * @since 3.1
+ * @author agent
+ */
+public class InterOpLoader {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  private final List<Collector> collectors;
+  private final int threadCount;
+  private final InterOpCache cache;
+
+  /**
+   * Run the collectors and add their results to the run data.
+   * @param data run data
+   * @throws AozanException if an error occurs while running a collector
+   */
+  public void load(final RunData data) throws AozanException {
+
+    requireNonNull(data, "data argument cannot be null");
+
+    final int count = this.collectors.size();
+    final RunData[] results = new RunData[count];
+    final String[] fingerprints = new String[count];
+
+    // Get the data of the collectors whose input has not changed from the
+    // cache
+    if (this.cache != null) {
+      for (int i = 0; i < count; i++) {
+
+        final Collector collector = this.collectors.get(i);
+        if (!(collector instanceof AbstractMetricsCollector)) {
+          continue;
+        }
+
+        final AbstractMetricsCollector metricsCollector =
+            (AbstractMetricsCollector) collector;
+        fingerprints[i] =
+            InterOpCache.fingerprint(metricsCollector.getInterOpFiles(),
+                metricsCollector.getCacheKey(), data);
+        results[i] = this.cache.get(collector.getName(), fingerprints[i]);
+
+        if (results[i] != null) {
+          LOGGER.info("Use the InterOp cache for " + collector.getName());
+        }
+      }
+    }
+
+    final boolean[] cached = new boolean[count];
+    for (int i = 0; i < count; i++) {
+      cached[i] = results[i] != null;
+    }
+
+    collect(data.snapshot(), results);
+
+    // Merge the data in the order of the collectors
+    for (int i = 0; i < count; i++) {
+
+      data.put(results[i]);
+
+      if (fingerprints[i] != null && !cached[i]) {
+        this.cache.put(this.collectors.get(i).getName(), fingerprints[i],
+            results[i]);
+      }
+    }
+
+    if (this.cache != null) {
+      this.cache.save();
+    }
+  }
+
+  /**
+   * Run the collectors whose data are not in the cache.
+   * @param data read-only run data
+   * @param results the changes of the run data by each collector
+   * @throws AozanException if an error occurs while running a collector
+   */
+  private void collect(final RunData data, final RunData[] results)
+      throws AozanException {
+
+    final List<Integer> toCollect = new ArrayList<>();
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        toCollect.add(i);
+      }
+    }
+
+    if (toCollect.size() < 2 || this.threadCount < 2) {
+
+      for (int i : toCollect) {
+        results[i] = collect(this.collectors.get(i), data, this.threadCount);
+      }
+      return;
+    }
+
+    // The threads are shared between the concurrent collectors, so the
+    // readers of file ranges of a collector cannot use all the threads
+    final int poolSize = Math.min(this.threadCount, toCollect.size());
+    final int rangeThreads = Math.max(1, this.threadCount / poolSize);
+    final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+
+    try {
+
+      final List<Future<RunData>> futures = new ArrayList<>();
+
+      for (int i : toCollect) {
+        final Collector collector = this.collectors.get(i);
+        futures.add(
+            executor.submit(() -> collect(collector, data, rangeThreads)));
+      }
+
+      for (int i = 0; i < toCollect.size(); i++) {
+        results[toCollect.get(i)] = futures.get(i).get();
+      }
+
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof AozanException) {
+        throw (AozanException) e.getCause();
+      }
+      throw new AozanException(e.getCause());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Run a collector on an overlay of the run data.
+   * @param collector the collector
+   * @param data read-only run data
+   * @param threadCount maximal number of threads of the collector
+   * @return an overlay of the run data with the changes of the collector
+   * @throws AozanException if an error occurs while running the collector
+   */
+  private static RunData collect(final Collector collector,
+      final RunData data, final int threadCount) throws AozanException {
+
+    if (collector instanceof AbstractMetricsCollector) {
+      ((AbstractMetricsCollector) collector).setThreadCount(threadCount);
+    }
+
+    // Each collector works on its own overlay of the run data
+    final RunData result = data.overlay();
+    collector.collect(result);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param collectors InterOp collectors to run
+   * @param threadCount maximal number of threads to use
+   */
+  public InterOpLoader(final List<Collector> collectors,
+      final int threadCount) {
+
+    this(collectors, threadCount, null);
+  }
+
+  /**
+   * Constructor.
+   * @param collectors InterOp collectors to run
+   * @param threadCount maximal number of threads to use
+   * @param cacheDir directory of the cache of the data of the collectors, can
+   *          be null to disable the cache
+   */
+  public InterOpLoader(final List<Collector> collectors, final int threadCount,
+      final File cacheDir) {
+
+    requireNonNull(collectors, "collectors argument cannot be null");
+
+    this.collectors = ImmutableList.copyOf(collectors);
+    this.threadCount = threadCount;
+    this.cache = cacheDir != null && cacheDir.isDirectory()
+        ? new InterOpCache(cacheDir) : null;
+  }
+
+}
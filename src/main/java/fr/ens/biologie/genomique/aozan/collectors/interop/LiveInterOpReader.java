@@ -0,0 +1,410 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.util.MathUtils;
+import fr.ens.biologie.genomique.aozan.util.P2Quantile;
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
+
+/**
+ * This class define an incremental reader of the InterOp files of a run in
+ * progress. The error, extraction and quality metrics files are append-only,
+ * so the reader remembers the offset of the last record read in each file and
+ * only reads the new records on each update. The tile metrics file is
+ * rewritten by the sequencer, so it is read again only when its size or its
+ * modification time change. The values are aggregated by lane, so an update is
+ * cheap enough to be polled regularly on many runs. As the error rates are not
+ * kept, their median is estimated with the P² algorithm. An instance of this
+ * class must be used for only one run.
+ * @since 3.1
+ * @author agent
+ */
+public class LiveInterOpReader {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Prefix of the keys of the run data. */
+  public static final String DATA_PREFIX = "live";
+
+  private final File interOpDir;
+
+  private long errorOffset;
+  private long extractionOffset;
+  private long qualityOffset;
+  private long tileFileSize = -1;
+  private long tileFileLastModified = -1;
+
+  private final Map<Integer, LaneMetrics> lanes = new TreeMap<>();
+
+  /**
+   * This class define the aggregated metrics of a lane.
+   */
+  private static final class LaneMetrics {
+
+    private final long[] qualityHistogram =
+        new long[QualityMetricsFileReader.QSCORE_COUNT];
+    private final RunningStatistics errorRates = new RunningStatistics();
+    private final P2Quantile errorRateMedian = new P2Quantile(0.5);
+    private final RunningStatistics firstCycleIntensities =
+        new RunningStatistics();
+    private final RunningStatistics densities = new RunningStatistics();
+    private long clusterCount;
+    private long clusterCountPF;
+    private int extractedCycles;
+    private int qualityCycles;
+    private int errorCycles;
+  }
+
+  /**
+   * Get the metrics of a lane.
+   * @param lane lane number
+   * @return a LaneMetrics object
+   */
+  private LaneMetrics lane(final int lane) {
+
+    return this.lanes.computeIfAbsent(lane, k -> new LaneMetrics());
+  }
+
+  /**
+   * Read the new records of the InterOp files.
+   * @return true if new records have been read
+   * @throws AozanException if an error occurs while reading the files
+   */
+  public synchronized boolean update() throws AozanException {
+
+    if (!this.interOpDir.isDirectory()) {
+      return false;
+    }
+
+    boolean result = updateErrorMetrics();
+    result |= updateExtractionMetrics();
+    result |= updateQualityMetrics();
+    result |= updateTileMetrics();
+
+    return result;
+  }
+
+  /**
+   * Read the new records of the error metrics file.
+   * @return true if new records have been read
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private boolean updateErrorMetrics() throws AozanException {
+
+    final ErrorMetricsFileReader reader = new ErrorMetricsFileReader(
+        this.interOpDir, (lane, tile, cycle, errorRate) -> {
+
+          final LaneMetrics metrics = lane(lane);
+          metrics.errorRates.add(errorRate);
+          metrics.errorRateMedian.add(errorRate);
+          metrics.errorCycles = Math.max(metrics.errorCycles, cycle);
+        });
+
+    if (isRewritten(reader, this.errorOffset)) {
+      for (LaneMetrics metrics : this.lanes.values()) {
+        metrics.errorRates.clear();
+        metrics.errorRateMedian.clear();
+        metrics.errorCycles = 0;
+      }
+      this.errorOffset = 0;
+    }
+
+    final long offset = readAppendedRecords(reader, this.errorOffset);
+    final boolean result = offset != this.errorOffset;
+    this.errorOffset = offset;
+
+    return result;
+  }
+
+  /**
+   * Read the new records of the extraction metrics file.
+   * @return true if new records have been read
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private boolean updateExtractionMetrics() throws AozanException {
+
+    final ExtractionMetricsFileReader reader = new ExtractionMetricsFileReader(
+        this.interOpDir, (lane, tile, cycle, intensities) -> {
+
+          final LaneMetrics metrics = lane(lane);
+          if (cycle == 1) {
+
+            // Mean intensity of the channels
+            long sum = 0;
+            for (int intensity : intensities) {
+              sum += intensity;
+            }
+            metrics.firstCycleIntensities
+                .add((double) sum / intensities.length);
+          }
+          metrics.extractedCycles = Math.max(metrics.extractedCycles, cycle);
+        });
+
+    if (isRewritten(reader, this.extractionOffset)) {
+      for (LaneMetrics metrics : this.lanes.values()) {
+        metrics.firstCycleIntensities.clear();
+        metrics.extractedCycles = 0;
+      }
+      this.extractionOffset = 0;
+    }
+
+    final long offset = readAppendedRecords(reader, this.extractionOffset);
+    final boolean result = offset != this.extractionOffset;
+    this.extractionOffset = offset;
+
+    return result;
+  }
+
+  /**
+   * Read the new records of the quality metrics file.
+   * @return true if new records have been read
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private boolean updateQualityMetrics() throws AozanException {
+
+    final QualityMetricsFileReader reader = new QualityMetricsFileReader(
+        this.interOpDir, (lane, tile, cycle, histogram) -> {
+
+          final LaneMetrics metrics = lane(lane);
+          for (int i = 0; i < histogram.length; i++) {
+            metrics.qualityHistogram[i] += histogram[i];
+          }
+          metrics.qualityCycles = Math.max(metrics.qualityCycles, cycle);
+        });
+
+    if (isRewritten(reader, this.qualityOffset)) {
+      for (LaneMetrics metrics : this.lanes.values()) {
+        Arrays.fill(metrics.qualityHistogram, 0);
+        metrics.qualityCycles = 0;
+      }
+      this.qualityOffset = 0;
+    }
+
+    final long offset = readAppendedRecords(reader, this.qualityOffset);
+    final boolean result = offset != this.qualityOffset;
+    this.qualityOffset = offset;
+
+    return result;
+  }
+
+  /**
+   * Read the tile metrics file if it has changed since the last update.
+   * @return true if the file has been read
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private boolean updateTileMetrics() throws AozanException {
+
+    final File file =
+        new File(this.interOpDir, TileMetricsFileReader.METRICS_FILE);
+    final long size = file.length();
+    final long lastModified = file.lastModified();
+
+    if (size == this.tileFileSize
+        && lastModified == this.tileFileLastModified) {
+      return false;
+    }
+
+    // The values are first read in new objects, so the values of the previous
+    // update are kept if the file cannot be read
+    final Map<Integer, long[]> clusterCounts = new HashMap<>();
+    final Map<Integer, RunningStatistics> densities = new HashMap<>();
+
+    final TileMetricsFileReader reader =
+        new TileMetricsFileReader(this.interOpDir,
+            new TileMetricsFileReader.Visitor() {
+
+              @Override
+              public void visitTile(final int lane, final long tile,
+                  final float clusterCount, final float clusterCountPF,
+                  final float density, final float densityPF) {
+
+                final long[] counts =
+                    clusterCounts.computeIfAbsent(lane, k -> new long[2]);
+                counts[0] += (long) clusterCount;
+                counts[1] += (long) clusterCountPF;
+                densities.computeIfAbsent(lane, k -> new RunningStatistics())
+                    .add(density);
+              }
+
+              @Override
+              public void visitRead(final int lane, final long tile,
+                  final int read, final float percentAligned,
+                  final float percentPhasing, final float percentPrephasing) {
+              }
+            });
+
+    if (!reader.isReadable()) {
+      return false;
+    }
+
+    try {
+      reader.read();
+    } catch (AozanException e) {
+
+      // The file may be rewritten during the reading, it will be read again
+      // on the next update
+      LOGGER.fine("Unable to read " + file + ": " + e.getMessage());
+      return false;
+    }
+
+    for (LaneMetrics metrics : this.lanes.values()) {
+      metrics.clusterCount = 0;
+      metrics.clusterCountPF = 0;
+      metrics.densities.clear();
+    }
+
+    for (Map.Entry<Integer, long[]> e : clusterCounts.entrySet()) {
+
+      final LaneMetrics metrics = lane(e.getKey());
+      metrics.clusterCount = e.getValue()[0];
+      metrics.clusterCountPF = e.getValue()[1];
+      metrics.densities.merge(densities.get(e.getKey()));
+    }
+
+    this.tileFileSize = size;
+    this.tileFileLastModified = lastModified;
+
+    return true;
+  }
+
+  /**
+   * Test if an append-only file has been rewritten since the last update.
+   * @param reader reader of the file
+   * @param offset offset of the last update
+   * @return true if the file is shorter than at the last update
+   */
+  private static boolean isRewritten(final AbstractBinaryFileReader reader,
+      final long offset) {
+
+    return offset > 0 && reader.getMetricsFile().length() < offset;
+  }
+
+  /**
+   * Read the records appended to a file.
+   * @param reader reader of the file
+   * @param offset offset of the last update
+   * @return the new offset
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private static long readAppendedRecords(
+      final AbstractBinaryFileReader reader, final long offset)
+      throws AozanException {
+
+    // The file does not exist yet or its header is not complete
+    if (!reader.isReadable()) {
+      return offset;
+    }
+
+    try {
+      return reader.readAppendedRecords(offset);
+    } catch (AozanException e) {
+
+      // The header of the file may not be complete, the file will be read
+      // again on the next update
+      LOGGER.fine("Unable to read "
+          + reader.getMetricsFile() + ": " + e.getMessage());
+      return offset;
+    }
+  }
+
+  /**
+   * Get the last cycle of the run with metrics.
+   * @return the last cycle with metrics of all the lanes
+   */
+  public synchronized int getLastCycle() {
+
+    int result = 0;
+    for (LaneMetrics metrics : this.lanes.values()) {
+      result = Math.max(result,
+          Math.max(metrics.extractedCycles, metrics.qualityCycles));
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the aggregated metrics in a RunData object.
+   * @return a new RunData object
+   */
+  public synchronized RunData getRunData() {
+
+    final RunData data = new RunData();
+
+    data.put(DATA_PREFIX + ".cycle", getLastCycle());
+    data.put(DATA_PREFIX + ".lane.count", this.lanes.size());
+
+    for (Map.Entry<Integer, LaneMetrics> e : this.lanes.entrySet()) {
+
+      final String key = DATA_PREFIX + ".lane" + e.getKey();
+      final LaneMetrics metrics = e.getValue();
+
+      data.put(key + ".extracted.cycles", metrics.extractedCycles);
+      data.put(key + ".called.cycles", metrics.qualityCycles);
+      data.put(key + ".error.cycles", metrics.errorCycles);
+      data.put(key + ".first.cycle.int",
+          metrics.firstCycleIntensities.getMean());
+      data.put(key + ".err.rate", metrics.errorRates.getMean());
+      data.put(key + ".err.rate.sd",
+          metrics.errorRates.getStandardDeviation());
+      data.put(key + ".err.rate.median",
+          metrics.errorRateMedian.getQuantile());
+      data.put(key + ".prc.q30",
+          MathUtils.computeQ30(metrics.qualityHistogram) * 100.0);
+      data.put(key + ".clusters.raw", metrics.clusterCount);
+      data.put(key + ".clusters.pf", metrics.clusterCountPF);
+      data.put(key + ".density.raw", metrics.densities.getMean());
+    }
+
+    return data;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param interOpDir InterOp directory of the run
+   */
+  public LiveInterOpReader(final File interOpDir) {
+
+    requireNonNull(interOpDir, "interOpDir argument cannot be null");
+
+    this.interOpDir = interOpDir;
+  }
+
+}
@@ -23,7 +23,9 @@
 
 package fr.ens.biologie.genomique.aozan.collectors.interop;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
@@ -47,6 +49,12 @@ public class QualityMetricsCollector extends AbstractMetricsCollector {
   public static final String FORK_VERSION_6 = "2.7.1";
   public static final String FORK_VERSION_7 = "3.0.0";
 
+  @Override
+  List<File> getInterOpFiles() {
+    return Collections.singletonList(
+        new File(getInterOpDir(), QualityMetricsFileReader.METRICS_FILE));
+  }
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -61,54 +69,144 @@ public class QualityMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
-    final long[][][] lanes = new long[data.getLaneCount()][][];
-    final long[] global = new long[50];
-    final List<Integer> readNumberFromCycle = new ArrayList<Integer>();
+    final int laneCount = data.getLaneCount();
     final int maxRead = data.getInt("run.info.read.count");
     final int[] cyclePerReads = new int[maxRead];
 
-    for (int i = 0; i < lanes.length; i++) {
-      lanes[i] = new long[maxRead][];
-      for (int j = 0; j < lanes[i].length; j++) {
-        lanes[i][j] = new long[50];
-      }
-
-    }
-
+    int cycleCount = 0;
     for (int i = 0; i < cyclePerReads.length; i++) {
       cyclePerReads[i] = data.getInt("run.info.read" + (i + 1) + ".cycles");
+      cycleCount += cyclePerReads[i];
+    }
+
+    final int[] readNumberFromCycle = new int[cycleCount];
+    for (int i = 0, cycle = 0; i < cyclePerReads.length; i++) {
       for (int j = 0; j < cyclePerReads[i]; j++) {
-        readNumberFromCycle.add(i + 1);
+        readNumberFromCycle[cycle++] = i + 1;
+      }
+    }
+
+    final Histograms result =
+        new Histograms(laneCount, maxRead, readNumberFromCycle);
+    final QualityMetricsFileReader reader =
+        new QualityMetricsFileReader(getInterOpDir(), result::add);
+
+    if (reader.isReadable()) {
+
+      // Each other range of the file is accumulated in its own histograms
+      final List<Histograms> otherRanges = new ArrayList<>();
+
+      final AbstractBinaryFileReader.ReaderFactory factory = () -> {
+
+        final Histograms histograms =
+            new Histograms(laneCount, maxRead, readNumberFromCycle);
+        otherRanges.add(histograms);
+
+        return new QualityMetricsFileReader(getInterOpDir(), histograms::add);
+      };
+
+      // Stream the records of the file by ranges in parallel
+      AbstractBinaryFileReader.readRanges(reader, factory, getThreadCount());
 
+      for (Histograms histograms : otherRanges) {
+        result.merge(histograms);
       }
 
-    }
+    } else {
 
-    try {
-      for (final QMetric qual : new QMetricsReader(getInterOpDir())
-          .readMetrics()) {
+      try {
+        for (final QMetric qual : new QMetricsReader(getInterOpDir())
+            .readMetrics()) {
 
-        int readSource = readNumberFromCycle.get(qual.getCycleNumber() - 1) - 1;
-        int lane = qual.getLaneNumber() - 1;
-        long[] scores = qual.getClustersScore();
-        for (int i = 0; i < scores.length; i++) {
-          lanes[lane][readSource][i] += scores[i];
-          global[i] += scores[i];
+          result.add(qual.getLaneNumber(), qual.getTileNumber(),
+              qual.getCycleNumber(), qual.getClustersScore());
         }
-
+      } catch (KenetreException e) {
+        throw new AozanException(e);
       }
-    } catch (KenetreException e) {
-      throw new AozanException(e);
     }
 
+    final long[][][] lanes = result.lanes;
+
     for (int i = 0; i < lanes.length; i++) {
       for (int j = 0; j < maxRead; j++) {
         data.put(DATA_PREFIX + ".lane" + (i + 1) + ".read" + (j + 1),
             lanes[i][j]);
       }
     }
-    data.put(DATA_PREFIX + ".global", global);
+    data.put(DATA_PREFIX + ".global", result.global);
+
+  }
+
+  //
+  // Inner class
+  //
+
+  /**
+   * This class define the histograms of the quality scores of the lanes and
+   * reads of a run.
+   */
+  private static final class Histograms {
+
+    private final long[][][] lanes;
+    private final long[] global =
+        new long[QualityMetricsFileReader.QSCORE_COUNT];
+    private final int[] readNumberFromCycle;
+
+    /**
+     * Add the quality scores of a record.
+     * @param lane lane number
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param scores number of clusters for each quality score
+     */
+    void add(final int lane, final long tile, final int cycle,
+        final long[] scores) {
+
+      final int readSource = this.readNumberFromCycle[cycle - 1] - 1;
+      final long[] histogram = this.lanes[lane - 1][readSource];
+
+      for (int i = 0; i < scores.length; i++) {
+        histogram[i] += scores[i];
+        this.global[i] += scores[i];
+      }
+    }
+
+    /**
+     * Add the quality scores of other histograms.
+     * @param histograms histograms to add
+     */
+    void merge(final Histograms histograms) {
+
+      for (int i = 0; i < this.lanes.length; i++) {
+        for (int j = 0; j < this.lanes[i].length; j++) {
+          for (int k = 0; k < this.global.length; k++) {
+            this.lanes[i][j][k] += histograms.lanes[i][j][k];
+          }
+        }
+      }
 
+      for (int k = 0; k < this.global.length; k++) {
+        this.global[k] += histograms.global[k];
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param laneCount number of lanes
+     * @param readCount number of reads
+     * @param readNumberFromCycle read number of each cycle
+     */
+    Histograms(final int laneCount, final int readCount,
+        final int[] readNumberFromCycle) {
+
+      this.lanes = new long[laneCount][readCount][this.global.length];
+      this.readNumberFromCycle = readNumberFromCycle;
+    }
   }
 
 }
@@ -0,0 +1,176 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a streaming reader of the QMetricsOut.bin file. The
+ * counts of the binned files are pushed at the position of the quality score
+ * of their bin, so the visitor always receives an histogram of the 50
+ * quality scores.
+ * @since 3.1
+ * @author agent
+ */
+class QualityMetricsFileReader extends AbstractBinaryFileReader {
+
+  /** Name of the metrics file. */
+  static final String METRICS_FILE = "QMetricsOut.bin";
+
+  /** Number of quality scores of the histograms. */
+  static final int QSCORE_COUNT = 50;
+
+  private static final Set<Integer> VERSIONS = ImmutableSet.of(4, 5, 6, 7);
+
+  private final Visitor visitor;
+  private final long[] histogram = new long[QSCORE_COUNT];
+  private int[] binQScores;
+
+  /**
+   * This interface define a visitor of the records of the file.
+   */
+  interface Visitor {
+
+    /**
+     * Visit a record.
+     * @param lane lane number
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param histogram number of clusters for each quality score, the first
+     *          element is the quality score 1. The array is reused for the next
+     *          record and must not be modified
+     * @throws AozanException if an error occurs while handling the record
+     */
+    void visit(int lane, long tile, int cycle, long[] histogram)
+        throws AozanException;
+  }
+
+  @Override
+  public String getName() {
+    return "QMetricsOut";
+  }
+
+  @Override
+  protected File getMetricsFile() {
+    return new File(getDirPathInterOP(), METRICS_FILE);
+  }
+
+  @Override
+  protected int getExpectedRecordSize(final int version) {
+
+    // Lane (2), tile (2 or 4 since version 7), cycle (2) and the counts (4 by
+    // quality score or by bin since version 6)
+    final int counts = version >= 6 && this.binQScores != null
+        ? this.binQScores.length : QSCORE_COUNT;
+
+    return (version >= 7 ? 8 : 6) + 4 * counts;
+  }
+
+  @Override
+  protected Set<Integer> getExpectedVersions() {
+    return VERSIONS;
+  }
+
+  @Override
+  protected void readOptionalFlag(final ByteBuffer bb, final int version)
+      throws AozanException {
+
+    this.binQScores = null;
+
+    if (version < 5 || uByteToInt(bb) == 0) {
+      return;
+    }
+
+    // Binning: count of bins, lower bounds, upper bounds and quality score of
+    // each bin
+    final int binCount = uByteToInt(bb);
+    bb.get(new byte[2 * binCount]);
+
+    this.binQScores = new int[binCount];
+    for (int i = 0; i < binCount; i++) {
+
+      this.binQScores[i] = uByteToInt(bb);
+
+      if (this.binQScores[i] < 1 || this.binQScores[i] > QSCORE_COUNT) {
+        throw new AozanException(
+            getName() + " invalid quality score for bin: " + this.binQScores[i]);
+      }
+    }
+  }
+
+  @Override
+  protected void readMetricRecord(final ByteBuffer bb, final int version)
+      throws AozanException {
+
+    final int lane = uShortToInt(bb);
+    final long tile = version >= 7 ? uIntToLong(bb) : uShortToInt(bb);
+    final int cycle = uShortToInt(bb);
+
+    if (version >= 6 && this.binQScores != null) {
+
+      Arrays.fill(this.histogram, 0);
+      for (int q : this.binQScores) {
+        this.histogram[q - 1] += uIntToLong(bb);
+      }
+
+    } else {
+
+      for (int i = 0; i < QSCORE_COUNT; i++) {
+        this.histogram[i] = uIntToLong(bb);
+      }
+    }
+
+    this.visitor.visit(lane, tile, cycle, this.histogram);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dirPath path to the interop directory for a run
+   * @param visitor visitor of the records
+   * @throws AozanException if the directory does not exist
+   */
+  QualityMetricsFileReader(final File dirPath, final Visitor visitor)
+      throws AozanException {
+
+    super(dirPath);
+
+    if (visitor == null) {
+      throw new NullPointerException("visitor argument cannot be null");
+    }
+
+    this.visitor = visitor;
+  }
+
+}
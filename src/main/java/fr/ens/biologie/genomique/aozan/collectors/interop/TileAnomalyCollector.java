@@ -0,0 +1,542 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.QC;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.Settings;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+import fr.ens.biologie.genomique.aozan.util.RobustZScore;
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetricsReader;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.QMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.QMetricsReader;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.TileMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.TileMetricsReader;
+
+/**
+ * This class collects the values of the tiles of each lane to find the tiles
+ * and the swaths whose density, percent of PF clusters, error rate or percent
+ * of Q30 are outliers. The values of the tiles and the flags of the outliers
+ * are saved in the run data, so they can be used to draw heatmaps of the
+ * flowcell. The tiles are first read from the TileMetricsOut.bin file, then
+ * the error rates and the quality scores of each tile and cycle are stored in
+ * primitive arrays by the concurrent readers of the ErrorMetricsOut.bin and
+ * QMetricsOut.bin files. These two files are also read by the
+ * ErrorMetricsCollector and the QualityMetricsCollector, so enabling this
+ * collector reads them a second time. This is the main cost of the collector
+ * on runs with many cycles and tiles. The InterOp cache avoids the two
+ * readings when the files and the threshold have not changed.
+ * @since 3.1
+ * @author agent
+ */
+public class TileAnomalyCollector extends AbstractMetricsCollector {
+
+  /** The sub-collector name from ReadCollector. */
+  public static final String COLLECTOR_NAME = "TileAnomalyCollector";
+  public static final String DATA_PREFIX = "tileanomaly";
+
+  private static final String DENSITY = "density";
+  private static final String PF_PERCENT = "prc.pf";
+  private static final String ERROR_RATE = "error.rate";
+  private static final String Q30_PERCENT = "prc.q30";
+
+  // Index of the first quality score >= 30 in the histograms
+  private static final int Q30_INDEX = 29;
+
+  private double threshold = RobustZScore.DEFAULT_THRESHOLD;
+
+  /**
+   * This class define the values of the tiles of a lane.
+   */
+  private static final class LaneTiles {
+
+    private final TileIndex index = new TileIndex();
+    private double[] densities = new double[0];
+    private double[] pfPercents = new double[0];
+
+    // Values by cycle, the values of the tiles of a cycle are contiguous
+    private float[] errorRates;
+    private float[] q30Percents;
+    private int cycleCount;
+
+    /**
+     * Set the values of a tile.
+     * @param tile tile number
+     * @param density density of the clusters
+     * @param pfPercent percent of PF clusters
+     */
+    void addTile(final long tile, final double density,
+        final double pfPercent) {
+
+      final int pos = this.index.add(tile);
+
+      if (pos == this.densities.length) {
+        final int capacity = Math.max(16, 2 * this.densities.length);
+        this.densities = Arrays.copyOf(this.densities, capacity);
+        this.pfPercents = Arrays.copyOf(this.pfPercents, capacity);
+      }
+
+      this.densities[pos] = density;
+      this.pfPercents[pos] = pfPercent;
+    }
+
+    /**
+     * Allocate the arrays of the values by cycle. After this call, no tile can
+     * be added and the values of distinct tiles and cycles can be set
+     * concurrently.
+     * @param cycleCount number of cycles
+     */
+    void allocateCycles(final int cycleCount) {
+
+      this.cycleCount = cycleCount;
+      this.errorRates = new float[cycleCount * this.index.size()];
+      this.q30Percents = new float[cycleCount * this.index.size()];
+      Arrays.fill(this.errorRates, Float.NaN);
+      Arrays.fill(this.q30Percents, Float.NaN);
+    }
+
+    /**
+     * Set the error rate of a tile for a cycle.
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param errorRate error rate
+     */
+    void setErrorRate(final long tile, final int cycle,
+        final float errorRate) {
+
+      set(this.errorRates, tile, cycle, errorRate);
+    }
+
+    /**
+     * Set the percent of Q30 of a tile for a cycle.
+     * @param tile tile number
+     * @param cycle cycle number
+     * @param histogram number of clusters for each quality score
+     */
+    void setQualityScores(final long tile, final int cycle,
+        final long[] histogram) {
+
+      long total = 0;
+      long q30 = 0;
+      for (int i = 0; i < histogram.length; i++) {
+        total += histogram[i];
+        if (i >= Q30_INDEX) {
+          q30 += histogram[i];
+        }
+      }
+
+      if (total > 0) {
+        set(this.q30Percents, tile, cycle, 100.0f * q30 / total);
+      }
+    }
+
+    private void set(final float[] values, final long tile, final int cycle,
+        final float value) {
+
+      final int pos = this.index.indexOf(tile);
+
+      // Ignore the tiles that are not in the tile metrics
+      if (pos == -1 || cycle < 1 || cycle > this.cycleCount) {
+        return;
+      }
+
+      values[(cycle - 1) * this.index.size() + pos] = value;
+    }
+
+    /**
+     * Compute the mean of the values of each tile over the cycles.
+     * @param values values by cycle
+     * @return an array with the mean of each tile, NaN if a tile has no value
+     */
+    private double[] meanByTile(final float[] values) {
+
+      final int tileCount = this.index.size();
+      final double[] sums = new double[tileCount];
+      final int[] counts = new int[tileCount];
+
+      for (int i = 0; i < values.length; i++) {
+        if (!Float.isNaN(values[i])) {
+          sums[i % tileCount] += values[i];
+          counts[i % tileCount]++;
+        }
+      }
+
+      for (int i = 0; i < tileCount; i++) {
+        sums[i] = counts[i] == 0 ? Double.NaN : sums[i] / counts[i];
+      }
+
+      return sums;
+    }
+  }
+
+  @Override
+  List<File> getInterOpFiles() {
+    return Arrays.asList(
+        new File(getInterOpDir(), TileMetricsFileReader.METRICS_FILE),
+        new File(getInterOpDir(), ErrorMetricsFileReader.METRICS_FILE),
+        new File(getInterOpDir(), QualityMetricsFileReader.METRICS_FILE));
+  }
+
+  @Override
+  String getCacheKey() {
+    return "threshold=" + this.threshold;
+  }
+
+  @Override
+  public String getName() {
+    return COLLECTOR_NAME;
+  }
+
+  @Override
+  public void configure(final QC qc, final CollectorConfiguration conf) {
+
+    super.configure(qc, conf);
+
+    final double threshold =
+        conf.getDouble(Settings.QC_CONF_TILE_ANOMALY_THRESHOLD_KEY, -1);
+    if (threshold > 0) {
+      this.threshold = threshold;
+    }
+  }
+
+  /**
+   * Collect the values of the tiles and their anomalies.
+   * @param data result data object
+   */
+  @Override
+  public void collect(final RunData data) throws AozanException {
+
+    super.collect(data);
+
+    final int laneCount = data.getLaneCount();
+    final LaneTiles[] lanes = new LaneTiles[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] = new LaneTiles();
+    }
+
+    // The tiles of each lane
+    readTileMetrics(lanes);
+
+    int cycleCount = 0;
+    for (int read = 1; read <= data.getReadCount(); read++) {
+      cycleCount += data.getInt("run.info.read" + read + ".cycles");
+    }
+
+    for (LaneTiles lane : lanes) {
+      lane.allocateCycles(cycleCount);
+    }
+
+    // The values of each tile and cycle
+    readErrorMetrics(lanes);
+    readQualityMetrics(lanes);
+
+    final TileAnomalyDetector detector =
+        new TileAnomalyDetector(this.threshold);
+
+    data.put(DATA_PREFIX + ".threshold", this.threshold);
+
+    for (int i = 0; i < laneCount; i++) {
+      data.put(getRunData(i + 1, lanes[i], detector));
+    }
+  }
+
+  /**
+   * Read the tiles of the lanes.
+   * @param lanes the tiles of the lanes
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private void readTileMetrics(final LaneTiles[] lanes) throws AozanException {
+
+    final TileMetricsFileReader.Visitor visitor =
+        new TileMetricsFileReader.Visitor() {
+
+          @Override
+          public void visitTile(final int lane, final long tile,
+              final float clusterCount, final float clusterCountPF,
+              final float density, final float densityPF) {
+
+            if (lane >= 1 && lane <= lanes.length) {
+              lanes[lane - 1].addTile(tile, density,
+                  clusterCountPF / clusterCount * 100.0);
+            }
+          }
+
+          @Override
+          public void visitRead(final int lane, final long tile,
+              final int read, final float percentAligned,
+              final float percentPhasing, final float percentPrephasing) {
+          }
+        };
+
+    final TileMetricsFileReader reader =
+        new TileMetricsFileReader(getInterOpDir(), visitor);
+
+    if (reader.isReadable()) {
+      reader.read();
+      return;
+    }
+
+    try {
+      for (TileMetric tm : new TileMetricsReader(getInterOpDir())
+          .readMetrics()) {
+
+        visitor.visitTile(tm.getLaneNumber(), tm.getTileNumber(),
+            tm.getClusterCount(), tm.getClusterCountPF(),
+            tm.getClusterDensity(), tm.getClusterDensityPF());
+      }
+    } catch (KenetreException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Read the error rates of the tiles. The file does not exist if the lanes
+   * are not spiked with PhiX.
+   * @param lanes the tiles of the lanes
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private void readErrorMetrics(final LaneTiles[] lanes)
+      throws AozanException {
+
+    final ErrorMetricsFileReader.Visitor visitor =
+        (lane, tile, cycle, errorRate) -> {
+          if (lane >= 1 && lane <= lanes.length) {
+            lanes[lane - 1].setErrorRate(tile, cycle, errorRate);
+          }
+        };
+
+    final ErrorMetricsFileReader reader =
+        new ErrorMetricsFileReader(getInterOpDir(), visitor);
+
+    if (reader.isReadable()) {
+
+      // The records of distinct tiles and cycles can be read concurrently
+      AbstractBinaryFileReader.readRanges(reader,
+          () -> new ErrorMetricsFileReader(getInterOpDir(), visitor),
+          getThreadCount());
+      return;
+    }
+
+    if (!new File(getInterOpDir(), ErrorMetricsFileReader.METRICS_FILE)
+        .exists()) {
+      return;
+    }
+
+    try {
+      for (ErrorMetric em : new ErrorMetricsReader(getInterOpDir())
+          .readMetrics()) {
+
+        visitor.visit(em.getLaneNumber(), em.getTileNumber(),
+            em.getCycleNumber(), (float) em.getErrorRate());
+      }
+    } catch (KenetreException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Read the quality scores of the tiles.
+   * @param lanes the tiles of the lanes
+   * @throws AozanException if an error occurs while reading the file
+   */
+  private void readQualityMetrics(final LaneTiles[] lanes)
+      throws AozanException {
+
+    final QualityMetricsFileReader.Visitor visitor =
+        (lane, tile, cycle, histogram) -> {
+          if (lane >= 1 && lane <= lanes.length) {
+            lanes[lane - 1].setQualityScores(tile, cycle, histogram);
+          }
+        };
+
+    final QualityMetricsFileReader reader =
+        new QualityMetricsFileReader(getInterOpDir(), visitor);
+
+    if (reader.isReadable()) {
+
+      // The records of distinct tiles and cycles can be read concurrently
+      AbstractBinaryFileReader.readRanges(reader,
+          () -> new QualityMetricsFileReader(getInterOpDir(), visitor),
+          getThreadCount());
+      return;
+    }
+
+    if (!new File(getInterOpDir(), QualityMetricsFileReader.METRICS_FILE)
+        .exists()) {
+      return;
+    }
+
+    try {
+      for (QMetric qm : new QMetricsReader(getInterOpDir()).readMetrics()) {
+
+        visitor.visit(qm.getLaneNumber(), qm.getTileNumber(),
+            qm.getCycleNumber(), qm.getClustersScore());
+      }
+    } catch (KenetreException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Create the run data of a lane.
+   * @param laneNumber lane number
+   * @param lane the tiles of the lane
+   * @param detector the anomaly detector
+   * @return a new RunData object
+   */
+  private static RunData getRunData(final int laneNumber,
+      final LaneTiles lane, final TileAnomalyDetector detector) {
+
+    final RunData data = new RunData();
+    final String prefix = DATA_PREFIX + ".lane" + laneNumber;
+    final int tileCount = lane.index.size();
+
+    // Sort the tiles, the heatmap data are in the order of the tile numbers
+    final long[] tiles = lane.index.tiles();
+    Arrays.sort(tiles);
+    final int[] order = new int[tileCount];
+    for (int i = 0; i < tileCount; i++) {
+      order[i] = lane.index.indexOf(tiles[i]);
+    }
+
+    data.put(prefix + ".tiles", tiles);
+    data.put(prefix + ".tile.count", tileCount);
+
+    final int[] flags = new int[tileCount];
+
+    addMetric(data, prefix + '.' + DENSITY, tiles,
+        sort(lane.densities, order), null, detector, flags);
+    addMetric(data, prefix + '.' + PF_PERCENT, tiles,
+        sort(lane.pfPercents, order), null, detector, flags);
+    addMetric(data, prefix + '.' + ERROR_RATE, tiles,
+        sort(lane.meanByTile(lane.errorRates), order),
+        sort(detector.countCycleOutliers(lane.errorRates, tileCount,
+            lane.cycleCount), order),
+        detector, flags);
+    addMetric(data, prefix + '.' + Q30_PERCENT, tiles,
+        sort(lane.meanByTile(lane.q30Percents), order),
+        sort(detector.countCycleOutliers(lane.q30Percents, tileCount,
+            lane.cycleCount), order),
+        detector, flags);
+
+    final long[] outliers = outliers(tiles, flags);
+    data.put(prefix + ".outliers", outliers);
+    data.put(prefix + ".outlier.count", outliers.length);
+
+    return data;
+  }
+
+  /**
+   * Add the values and the anomalies of a metric to the run data.
+   * @param data run data
+   * @param key key of the metric
+   * @param tiles the tile numbers in ascending order
+   * @param values the values of the tiles
+   * @param cycleOutliers the number of cycles where each tile is an outlier,
+   *          can be null
+   * @param detector the anomaly detector
+   * @param flags the flags of all the metrics of the tiles, updated by this
+   *          method
+   */
+  private static void addMetric(final RunData data, final String key,
+      final long[] tiles, final double[] values, final int[] cycleOutliers,
+      final TileAnomalyDetector detector, final int[] flags) {
+
+    // No value for this metric (e.g. no PhiX for the error rate)
+    if (RobustZScore.of(values).getCount() == 0) {
+      return;
+    }
+
+    final TileAnomalyDetector.Anomalies anomalies =
+        detector.detect(tiles, values);
+    final int[] metricFlags = anomalies.getFlags();
+
+    final String[] formattedValues = new String[values.length];
+    final long[] formattedFlags = new long[values.length];
+    final long[] counts = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      formattedValues[i] = Float.toString((float) values[i]);
+      formattedFlags[i] = metricFlags[i];
+      flags[i] |= metricFlags[i];
+      counts[i] = cycleOutliers == null ? 0 : cycleOutliers[i];
+    }
+
+    data.put(key, formattedValues);
+    data.put(key + ".median", anomalies.getLaneStatistics().getMedian());
+    data.put(key + ".mad",
+        anomalies.getLaneStatistics().getMedianAbsoluteDeviation());
+    data.put(key + ".flags", formattedFlags);
+    data.put(key + ".outliers", outliers(tiles, metricFlags));
+    data.put(key + ".swath.outliers", anomalies.getSwathOutliers());
+
+    if (cycleOutliers != null) {
+      data.put(key + ".outlier.cycles", counts);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static double[] sort(final double[] values, final int[] order) {
+
+    final double[] result = new double[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = values[order[i]];
+    }
+
+    return result;
+  }
+
+  private static int[] sort(final int[] values, final int[] order) {
+
+    final int[] result = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      result[i] = values[order[i]];
+    }
+
+    return result;
+  }
+
+  private static long[] outliers(final long[] tiles, final int[] flags) {
+
+    int count = 0;
+    final long[] result = new long[tiles.length];
+    for (int i = 0; i < tiles.length; i++) {
+      if (flags[i] != 0) {
+        result[count++] = tiles[i];
+      }
+    }
+
+    return Arrays.copyOf(result, count);
+  }
+
+}
@@ -0,0 +1,363 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import fr.ens.biologie.genomique.aozan.util.Quantiles;
+import fr.ens.biologie.genomique.aozan.util.RobustZScore;
+
+/**
+ * This class define a detector of the spatial anomalies of the values of a
+ * metric on the tiles of a lane. The values are compared with modified
+ * z-scores at three levels:
+ * <ul>
+ * <li>the value of each tile with the values of all the tiles of the
+ * lane;</li>
+ * <li>the value of each tile with the value predicted from its nearest
+ * neighbours in the same swath, to find local defects like bubbles that are
+ * hidden by the gradients of the flowcell;</li>
+ * <li>the median of each swath with the medians of the other swaths of the
+ * lane, to find a failing swath.</li>
+ * </ul>
+ * The swath of a tile is defined by all the digits of the tile number but the
+ * last two (surface and swath, and also camera for the NextSeq), and the last
+ * two digits give the position of the tile in its swath.
+ * @since 3.1
+ * @author agent
+ */
+final class TileAnomalyDetector {
+
+  /** Flag of a tile whose value is an outlier in its lane. */
+  static final int LANE_OUTLIER = 1;
+
+  /** Flag of a tile whose value is an outlier compared to its neighbours. */
+  static final int LOCAL_OUTLIER = 2;
+
+  /** Flag of a tile whose swath is an outlier in its lane. */
+  static final int SWATH_OUTLIER = 4;
+
+  // Number of neighbours on each side of a tile in a swath
+  private static final int NEIGHBOUR_RADIUS = 2;
+
+  // Minimal number of swaths required to compare the swaths
+  private static final int MIN_SWATH_COUNT = 3;
+
+  // Ratio between the standard error of the median and the standard error of
+  // the mean of a normal distribution
+  private static final double MEDIAN_STANDARD_ERROR_FACTOR = 1.2533;
+
+  private final double threshold;
+
+  /**
+   * This class define the anomalies of the values of a metric on the tiles of
+   * a lane.
+   */
+  static final class Anomalies {
+
+    private final RobustZScore lane;
+    private final int[] flags;
+    private final long[] swathOutliers;
+
+    /**
+     * Get the median and the MAD of the values of the lane.
+     * @return a RobustZScore object
+     */
+    RobustZScore getLaneStatistics() {
+      return this.lane;
+    }
+
+    /**
+     * Get the flags of the tiles.
+     * @return an array with the flags of each tile
+     */
+    int[] getFlags() {
+      return this.flags;
+    }
+
+    /**
+     * Get the swaths that are outliers.
+     * @return an array with the swath numbers
+     */
+    long[] getSwathOutliers() {
+      return this.swathOutliers;
+    }
+
+    private Anomalies(final RobustZScore lane, final int[] flags,
+        final long[] swathOutliers) {
+
+      this.lane = lane;
+      this.flags = flags;
+      this.swathOutliers = swathOutliers;
+    }
+  }
+
+  /**
+   * Detect the anomalies of the values of the tiles of a lane.
+   * @param tiles the tile numbers, in ascending order
+   * @param values the values of the tiles, NaN if a tile has no value
+   * @return a new Anomalies object
+   */
+  Anomalies detect(final long[] tiles, final double[] values) {
+
+    requireNonNull(tiles, "tiles argument cannot be null");
+    requireNonNull(values, "values argument cannot be null");
+
+    if (tiles.length != values.length) {
+      throw new IllegalArgumentException(
+          "tiles and values must have the same length");
+    }
+
+    final int count = tiles.length;
+    final int[] flags = new int[count];
+
+    // Lane level
+    final RobustZScore lane = RobustZScore.of(values);
+    for (int i = 0; i < count; i++) {
+      if (lane.isOutlier(values[i], this.threshold)) {
+        flags[i] |= LANE_OUTLIER;
+      }
+    }
+
+    // Neighbours level, the residual of each tile is its difference with the
+    // value predicted from its neighbours
+    final double[] residuals = new double[count];
+    final double[] neighbourValues = new double[2 * NEIGHBOUR_RADIUS];
+    final int[] neighbourPositions = new int[2 * NEIGHBOUR_RADIUS];
+    final double[] slopes =
+        new double[NEIGHBOUR_RADIUS * (2 * NEIGHBOUR_RADIUS - 1)];
+
+    // Swath level
+    final double[] swathMedians = new double[count];
+    final long[] swaths = new long[count];
+    final int[] swathStarts = new int[count + 1];
+    int swathCount = 0;
+
+    for (int start = 0; start < count;) {
+
+      final long swath = swath(tiles[start]);
+      int end = start + 1;
+      while (end < count && swath(tiles[end]) == swath) {
+        end++;
+      }
+
+      for (int i = start; i < end; i++) {
+
+        // The window of the neighbours is shifted at the ends of the swath to
+        // keep the same number of neighbours
+        int first = i - NEIGHBOUR_RADIUS;
+        int last = i + NEIGHBOUR_RADIUS;
+        if (first < start) {
+          last += start - first;
+          first = start;
+        }
+        if (last >= end) {
+          first = Math.max(start, first - (last - end + 1));
+          last = end - 1;
+        }
+
+        int n = 0;
+        for (int j = first; j <= last; j++) {
+          if (j != i && !Double.isNaN(values[j])) {
+            neighbourValues[n] = values[j];
+            neighbourPositions[n++] = position(tiles[j]);
+          }
+        }
+
+        residuals[i] = n == 0
+            ? Double.NaN
+            : values[i] - predict(neighbourValues, neighbourPositions, n,
+                position(tiles[i]), slopes);
+      }
+
+      final RobustZScore swathValues =
+          RobustZScore.of(Arrays.copyOfRange(values, start, end));
+      if (swathValues.getCount() > 0) {
+        swathMedians[swathCount] = swathValues.getMedian();
+        swaths[swathCount] = swath;
+        swathStarts[swathCount++] = start;
+        swathStarts[swathCount] = end;
+      }
+
+      start = end;
+    }
+
+    final RobustZScore local = RobustZScore.of(residuals);
+    for (int i = 0; i < count; i++) {
+      if (local.isOutlier(residuals[i], this.threshold)) {
+        flags[i] |= LOCAL_OUTLIER;
+      }
+    }
+
+    long[] swathOutliers = new long[0];
+
+    if (swathCount >= MIN_SWATH_COUNT) {
+
+      final RobustZScore swath = RobustZScore.of(swathMedians, swathCount);
+
+      for (int s = 0; s < swathCount; s++) {
+
+        // The medians of the swaths are close if there is no anomaly, so the
+        // difference with the lane must also be greater than the standard
+        // error of the median of the swath
+        final int swathTiles = swathStarts[s + 1] - swathStarts[s];
+        final double standardError = MEDIAN_STANDARD_ERROR_FACTOR
+            * lane.getStandardDeviation() / Math.sqrt(swathTiles);
+        final double delta = Math.abs(swathMedians[s] - lane.getMedian());
+
+        if (swath.isOutlier(swathMedians[s], this.threshold)
+            && delta > this.threshold * standardError) {
+
+          swathOutliers =
+              Arrays.copyOf(swathOutliers, swathOutliers.length + 1);
+          swathOutliers[swathOutliers.length - 1] = swaths[s];
+
+          for (int i = swathStarts[s]; i < swathStarts[s + 1]; i++) {
+            flags[i] |= SWATH_OUTLIER;
+          }
+        }
+      }
+    }
+
+    return new Anomalies(lane, flags, swathOutliers);
+  }
+
+  /**
+   * Count for each tile the number of cycles where its value is an outlier in
+   * its lane. The values are stored by cycle, the values of the tiles of a
+   * cycle are contiguous.
+   * @param values the values of the tiles for each cycle, NaN if a tile has no
+   *          value for a cycle
+   * @param tileCount number of tiles
+   * @param cycleCount number of cycles
+   * @return an array with the number of cycles where each tile is an outlier
+   */
+  int[] countCycleOutliers(final float[] values, final int tileCount,
+      final int cycleCount) {
+
+    requireNonNull(values, "values argument cannot be null");
+
+    final int[] result = new int[tileCount];
+    final double[] cycleValues = new double[tileCount];
+
+    for (int cycle = 0; cycle < cycleCount; cycle++) {
+
+      final int offset = cycle * tileCount;
+      for (int i = 0; i < tileCount; i++) {
+        cycleValues[i] = values[offset + i];
+      }
+
+      final RobustZScore z = RobustZScore.of(cycleValues);
+      for (int i = 0; i < tileCount; i++) {
+        if (z.isOutlier(cycleValues[i], this.threshold)) {
+          result[i]++;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Predict the value of a tile from the values of its neighbours with a
+   * Theil-Sen estimator, a robust linear fit. Unlike the median of the
+   * neighbours, the prediction follows the gradients along the swath, so the
+   * tiles at the ends of a swath are not flagged because they have neighbours
+   * on a single side.
+   * @param values the values of the neighbours, reordered by this method
+   * @param positions the positions of the neighbours in the swath
+   * @param n number of neighbours
+   * @param position position of the tile in the swath
+   * @param slopes buffer for the slopes
+   * @return the predicted value
+   */
+  private static double predict(final double[] values, final int[] positions,
+      final int n, final int position, final double[] slopes) {
+
+    int slopeCount = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (positions[i] != positions[j]) {
+          slopes[slopeCount++] =
+              (values[j] - values[i]) / (positions[j] - positions[i]);
+        }
+      }
+    }
+
+    final double slope =
+        slopeCount == 0 ? 0.0 : Quantiles.median(slopes, slopeCount);
+
+    for (int i = 0; i < n; i++) {
+      values[i] -= slope * (positions[i] - position);
+    }
+
+    return Quantiles.median(values, n);
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the swath of a tile.
+   * @param tile tile number
+   * @return the swath number
+   */
+  static long swath(final long tile) {
+
+    return tile / 100;
+  }
+
+  /**
+   * Get the position of a tile in its swath.
+   * @param tile tile number
+   * @return the position of the tile
+   */
+  static int position(final long tile) {
+
+    return (int) (tile % 100);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threshold threshold of the absolute value of the modified z-score
+   *          of the outliers
+   */
+  TileAnomalyDetector(final double threshold) {
+
+    if (!(threshold > 0.0)) {
+      throw new IllegalArgumentException(
+          "threshold must be greater than 0: " + threshold);
+    }
+
+    this.threshold = threshold;
+  }
+
+}
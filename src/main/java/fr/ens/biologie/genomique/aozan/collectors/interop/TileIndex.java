@@ -0,0 +1,150 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.util.Arrays;
+
+/**
+ * This class define an index of the tile numbers. Each new tile gets the next
+ * position, so the values of the tiles can be stored in primitive arrays in
+ * the order of the first occurrence of the tiles.
+ * @since 3.1
+ * @author agent
+ */
+final class TileIndex {
+
+  private static final int DEFAULT_CAPACITY = 64;
+
+  // Open addressing index of the tiles, a slot contains the position of the
+  // tile + 1 or 0 if empty
+  private int[] slots = new int[2 * DEFAULT_CAPACITY];
+  private long[] tiles = new long[DEFAULT_CAPACITY];
+  private int size;
+
+  /**
+   * Get the number of tiles.
+   * @return the number of tiles
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Get the position of a tile, the tile is added if it is not in the index.
+   * @param tile the tile number
+   * @return the position of the tile
+   */
+  int add(final long tile) {
+
+    int slot = slot(tile);
+
+    while (this.slots[slot] != 0) {
+
+      final int pos = this.slots[slot] - 1;
+      if (this.tiles[pos] == tile) {
+        return pos;
+      }
+      slot = (slot + 1) & (this.slots.length - 1);
+    }
+
+    // New tile
+    if (this.size == this.tiles.length) {
+      grow();
+      return add(tile);
+    }
+
+    final int pos = this.size++;
+    this.tiles[pos] = tile;
+    this.slots[slot] = pos + 1;
+
+    return pos;
+  }
+
+  /**
+   * Get the position of a tile. This method does not modify the index, so it
+   * can be called concurrently if no tile is added.
+   * @param tile the tile number
+   * @return the position of the tile or -1 if the tile is not in the index
+   */
+  int indexOf(final long tile) {
+
+    int slot = slot(tile);
+
+    while (this.slots[slot] != 0) {
+
+      final int pos = this.slots[slot] - 1;
+      if (this.tiles[pos] == tile) {
+        return pos;
+      }
+      slot = (slot + 1) & (this.slots.length - 1);
+    }
+
+    return -1;
+  }
+
+  /**
+   * Get the tile number at a position.
+   * @param position the position of the tile
+   * @return the tile number
+   */
+  long tile(final int position) {
+
+    return this.tiles[position];
+  }
+
+  /**
+   * Get the tile numbers.
+   * @return an array with the tile numbers in the order of the positions
+   */
+  long[] tiles() {
+
+    return Arrays.copyOf(this.tiles, this.size);
+  }
+
+  private void grow() {
+
+    final int capacity = this.tiles.length * 2;
+
+    this.tiles = Arrays.copyOf(this.tiles, capacity);
+    this.slots = new int[2 * capacity];
+
+    for (int pos = 0; pos < this.size; pos++) {
+
+      int slot = slot(this.tiles[pos]);
+      while (this.slots[slot] != 0) {
+        slot = (slot + 1) & (this.slots.length - 1);
+      }
+      this.slots[slot] = pos + 1;
+    }
+  }
+
+  private int slot(final long tile) {
+
+    long h = tile * 0x9e3779b97f4a7c15L;
+    h ^= h >>> 32;
+
+    return (int) h & (this.slots.length - 1);
+  }
+
+}
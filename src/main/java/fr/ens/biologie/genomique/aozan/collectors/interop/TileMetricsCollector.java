@@ -26,15 +26,14 @@ package fr.ens.biologie.genomique.aozan.collectors.interop;
 import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.RunData;
-import fr.ens.biologie.genomique.aozan.util.StatisticsUtils;
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtendedTileMetric;
 import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtendedTileMetricsReader;
@@ -60,73 +59,75 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
     private final int tileCount;
     private final int readCount;
 
-    private final Map<Long, Float> clusterCountMap = new HashMap<>();
-    private final List<Float> clusterCountPFList = new ArrayList<>();
-    private final List<Float> clusterCountPFRatioList = new ArrayList<>();
-    private final List<Float> densityList = new ArrayList<>();
-    private final List<Float> densityPFList = new ArrayList<>();
-    private final List<Float> densityPFRatioList = new ArrayList<>();
-    private final Map<Integer, List<Float>> alignedMap = new HashMap<>();
-    private final Map<Integer, List<Float>> prephasingMap = new HashMap<>();
-    private final Map<Integer, List<Float>> phasingMap = new HashMap<>();
-    private final List<Float> percentOccupiedList = new ArrayList<>();
-
-    void addMetric(TileMetric tm) {
-
-      this.clusterCountMap.put(tm.getTileNumber(), tm.getClusterCount());
-      this.clusterCountPFList.add(tm.getClusterCountPF());
-      this.clusterCountPFRatioList
-          .add(tm.getClusterCountPF() / tm.getClusterCount() * 100.0f);
-      this.densityList.add(tm.getClusterDensity());
-      this.densityPFList.add(tm.getClusterDensityPF());
-      this.densityPFRatioList
-          .add(tm.getClusterDensityPF() / tm.getClusterDensity());
-
-      for (int readNumber = 1; readNumber <= tm.getReadCount(); readNumber++) {
-
-        if (!this.alignedMap.containsKey(readNumber)) {
-          this.alignedMap.put(readNumber, new ArrayList<>());
-          this.prephasingMap.put(readNumber, new ArrayList<>());
-          this.phasingMap.put(readNumber, new ArrayList<>());
-        }
+    private final TileValues clusterCountMap = new TileValues();
+    private final TileValues clusterCountPFList = new TileValues();
+    private final TileValues clusterCountPFRatioList = new TileValues();
+    private final TileValues densityList = new TileValues();
+    private final TileValues densityPFList = new TileValues();
+    private final TileValues densityPFRatioList = new TileValues();
+    private final Map<Integer, TileValues> alignedMap = new HashMap<>();
+    private final Map<Integer, TileValues> prephasingMap = new HashMap<>();
+    private final Map<Integer, TileValues> phasingMap = new HashMap<>();
+    private final TileValues percentOccupiedList = new TileValues();
+
+    void addTileMetric(final long tile, final float clusterCount,
+        final float clusterCountPF, final float density,
+        final float densityPF) {
+
+      this.clusterCountMap.put(tile, clusterCount);
+      this.clusterCountPFList.add(tile, clusterCountPF);
+      this.clusterCountPFRatioList.add(tile,
+          clusterCountPF / clusterCount * 100.0f);
+      this.densityList.add(tile, density);
+      this.densityPFList.add(tile, densityPF);
+      this.densityPFRatioList.add(tile, densityPF / density);
+    }
 
-        int i = readNumber - 1;
+    void addReadMetric(final long tile, final int readNumber,
+        final float percentAligned, final float percentPhasing,
+        final float percentPrephasing) {
 
-        this.alignedMap.get(readNumber).add(tm.getPercentAligned(i));
-        this.prephasingMap.get(readNumber).add(tm.getPercentPrephasing(i));
-        this.phasingMap.get(readNumber).add(tm.getPercentPhasing(i));
+      if (!this.alignedMap.containsKey(readNumber)) {
+        this.alignedMap.put(readNumber, new TileValues());
+        this.prephasingMap.put(readNumber, new TileValues());
+        this.phasingMap.put(readNumber, new TileValues());
       }
+
+      this.alignedMap.get(readNumber).add(tile, percentAligned);
+      this.prephasingMap.get(readNumber).add(tile, percentPrephasing);
+      this.phasingMap.get(readNumber).add(tile, percentPhasing);
     }
 
     void addMetric(ExtendedTileMetric etm) {
 
-      float clusterCount = this.clusterCountMap.get(etm.getTileNumber());
+      float clusterCount =
+          (float) this.clusterCountMap.get(etm.getTileNumber());
       float clusterCountOccupied = etm.getClusterCountOccupied();
 
-      this.percentOccupiedList.add(clusterCountOccupied / clusterCount);
+      this.percentOccupiedList.add(etm.getTileNumber(),
+          clusterCountOccupied / clusterCount);
     }
 
-    private void meanAndSD(String key, Collection<Float> c, RunData data) {
+    private void meanAndSD(String key, TileValues c, RunData data) {
       meanAndSD(key, c, data, false);
     }
 
-    private void meanAndSD(String key, Collection<Float> c, RunData data,
+    private void meanAndSD(String key, TileValues c, RunData data,
         boolean intValue) {
 
-      StatisticsUtils stat = new StatisticsUtils(c);
+      final RunningStatistics stat = c.statistics();
 
       if (intValue) {
-        data.put(key, stat.getMean().longValue());
+        data.put(key, (long) stat.getMean());
       } else {
         data.put(key, stat.getMean());
       }
       data.put(key + ".sd", stat.getStandardDeviation());
     }
 
-    private void mean(String key, Collection<Float> c, RunData data) {
+    private void mean(String key, TileValues c, RunData data) {
 
-      StatisticsUtils stat = new StatisticsUtils(c);
-      data.put(key, stat.getMean());
+      data.put(key, c.statistics().getMean());
     }
 
     /**
@@ -143,8 +144,7 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
             READ_DATA_PREFIX + ".read" + readNumber + ".lane" + this.laneNumber;
 
         // Same values for all read in a lane, values for one tile
-        meanAndSD(key + ".clusters.raw", this.clusterCountMap.values(), data,
-            true);
+        meanAndSD(key + ".clusters.raw", this.clusterCountMap, data, true);
         meanAndSD(key + ".clusters.pf", this.clusterCountPFList, data, true);
         meanAndSD(key + ".prc.pf.clusters", this.clusterCountPFRatioList, data);
 
@@ -192,6 +192,13 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
 
   }
 
+  @Override
+  List<File> getInterOpFiles() {
+    return Arrays.asList(
+        new File(getInterOpDir(), TileMetricsFileReader.METRICS_FILE),
+        new File(getInterOpDir(), ExtendedTileMetricsReader.METRICS_FILE));
+  }
+
   @Override
   public String getName() {
     return COLLECTOR_NAME;
@@ -206,24 +213,67 @@ public class TileMetricsCollector extends AbstractMetricsCollector {
 
     super.collect(data);
 
-    Map<Integer, TileMetricsPerLaneStatistics> tileMetrics = null;
-    boolean first = true;
+    final Map<Integer, TileMetricsPerLaneStatistics> tileMetrics =
+        initMetricsMap(data);
+    final boolean[] first = {true};
+
+    final TileMetricsFileReader.Visitor visitor =
+        new TileMetricsFileReader.Visitor() {
+
+          @Override
+          public void visitTile(final int lane, final long tile,
+              final float clusterCount, final float clusterCountPF,
+              final float density, final float densityPF) {
+
+            if (first[0]) {
+              densityRatio = density;
+              first[0] = false;
+            }
+
+            tileMetrics.get(lane).addTileMetric(tile, clusterCount,
+                clusterCountPF, density, densityPF);
+          }
+
+          @Override
+          public void visitRead(final int lane, final long tile,
+              final int read, final float percentAligned,
+              final float percentPhasing, final float percentPrephasing) {
+
+            tileMetrics.get(lane).addReadMetric(tile, read, percentAligned,
+                percentPhasing, percentPrephasing);
+          }
+        };
 
     // Parse TileMetrics file
-    try {
-      for (TileMetric tm : new TileMetricsReader(getInterOpDir())
-          .readMetrics()) {
-
-        if (first) {
-          this.densityRatio = tm.getClusterDensity();
-          tileMetrics = initMetricsMap(data);
-          first = false;
-        }
+    final TileMetricsFileReader reader =
+        new TileMetricsFileReader(getInterOpDir(), visitor);
+
+    if (reader.isReadable()) {
+
+      // Stream the records of the file
+      reader.read();
+    } else {
+
+      try {
+        for (TileMetric tm : new TileMetricsReader(getInterOpDir())
+            .readMetrics()) {
 
-        tileMetrics.get(tm.getLaneNumber()).addMetric(tm);
+          visitor.visitTile(tm.getLaneNumber(), tm.getTileNumber(),
+              tm.getClusterCount(), tm.getClusterCountPF(),
+              tm.getClusterDensity(), tm.getClusterDensityPF());
+
+          for (int readNumber = 1; readNumber <= tm
+              .getReadCount(); readNumber++) {
+
+            final int i = readNumber - 1;
+            visitor.visitRead(tm.getLaneNumber(), tm.getTileNumber(),
+                readNumber, tm.getPercentAligned(i), tm.getPercentPhasing(i),
+                tm.getPercentPrephasing(i));
+          }
+        }
+      } catch (KenetreException e) {
+        throw new AozanException(e);
       }
-    } catch (KenetreException e) {
-      throw new AozanException(e);
     }
 
     // Parse ExtendedTileMetrics
@@ -0,0 +1,269 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a streaming reader of the TileMetricsOut.bin file. In the
+ * version 2 of the format, each record contains only one metric of a tile, so
+ * the metrics are gathered by tile and pushed to the visitor at the end of the
+ * file. The memory used only depends on the number of tiles.
+ * @since 3.1
+ * @author agent
+ */
+class TileMetricsFileReader extends AbstractBinaryFileReader {
+
+  /** Name of the metrics file. */
+  static final String METRICS_FILE = "TileMetricsOut.bin";
+
+  private static final Set<Integer> VERSIONS = ImmutableSet.of(2, 3);
+
+  // Codes of the metrics of the version 2
+  private static final int DENSITY_CODE = 100;
+  private static final int CLUSTER_COUNT_PF_CODE = 103;
+  private static final int FIRST_PHASING_CODE = 200;
+  private static final int FIRST_ALIGNED_CODE = 300;
+  private static final int LAST_ALIGNED_CODE = 399;
+
+  // Codes of the records of the version 3
+  private static final int TILE_RECORD_CODE = 't';
+  private static final int READ_RECORD_CODE = 'r';
+
+  // Metrics by read in the values of a tile
+  private static final int TILE_VALUES = 4;
+  private static final int READ_VALUES = 3;
+
+  private final Visitor visitor;
+  private final Map<Long, float[]> tiles = new LinkedHashMap<>();
+  private float tileArea;
+
+  /**
+   * This interface define a visitor of the metrics of the tiles.
+   */
+  interface Visitor {
+
+    /**
+     * Visit the cluster metrics of a tile.
+     * @param lane lane number
+     * @param tile tile number
+     * @param clusterCount cluster count
+     * @param clusterCountPF passing filter cluster count
+     * @param density cluster density
+     * @param densityPF passing filter cluster density
+     * @throws AozanException if an error occurs while handling the metrics
+     */
+    void visitTile(int lane, long tile, float clusterCount,
+        float clusterCountPF, float density, float densityPF)
+        throws AozanException;
+
+    /**
+     * Visit the metrics of a read of a tile.
+     * @param lane lane number
+     * @param tile tile number
+     * @param read read number
+     * @param percentAligned percent of clusters aligned on PhiX
+     * @param percentPhasing percent of phasing or NaN if not available
+     * @param percentPrephasing percent of prephasing or NaN if not available
+     * @throws AozanException if an error occurs while handling the metrics
+     */
+    void visitRead(int lane, long tile, int read, float percentAligned,
+        float percentPhasing, float percentPrephasing) throws AozanException;
+  }
+
+  @Override
+  public String getName() {
+    return "TileMetricsOut";
+  }
+
+  @Override
+  protected File getMetricsFile() {
+    return new File(getDirPathInterOP(), METRICS_FILE);
+  }
+
+  @Override
+  protected int getExpectedRecordSize(final int version) {
+
+    // Version 2: lane (2), tile (2), code (2) and value (4)
+    // Version 3: lane (2), tile (4), code (1) and two values (4)
+    return version == 2 ? 10 : 15;
+  }
+
+  @Override
+  protected Set<Integer> getExpectedVersions() {
+    return VERSIONS;
+  }
+
+  @Override
+  protected void readOptionalFlag(final ByteBuffer bb, final int version) {
+
+    this.tiles.clear();
+
+    // The header of the version 3 contains the area of the tiles
+    this.tileArea = version == 3 ? bb.getFloat() : Float.NaN;
+  }
+
+  @Override
+  protected void readMetricRecord(final ByteBuffer bb, final int version)
+      throws AozanException {
+
+    final int lane = uShortToInt(bb);
+
+    if (version == 2) {
+      readRecordV2(lane, uShortToInt(bb), uShortToInt(bb), bb.getFloat());
+      return;
+    }
+
+    final long tile = uIntToLong(bb);
+    final int code = uByteToInt(bb);
+
+    switch (code) {
+
+    case TILE_RECORD_CODE:
+      final float clusterCount = bb.getFloat();
+      final float clusterCountPF = bb.getFloat();
+      this.visitor.visitTile(lane, tile, clusterCount, clusterCountPF,
+          clusterCount / this.tileArea, clusterCountPF / this.tileArea);
+      break;
+
+    case READ_RECORD_CODE:
+      final int read = (int) uIntToLong(bb);
+      this.visitor.visitRead(lane, tile, read, bb.getFloat(), Float.NaN,
+          Float.NaN);
+      break;
+
+    default:
+      // Ignore the other records
+      break;
+    }
+  }
+
+  /**
+   * Gather a metric of a record of the version 2.
+   * @param lane lane number
+   * @param tile tile number
+   * @param code code of the metric
+   * @param value value of the metric
+   */
+  private void readRecordV2(final int lane, final int tile, final int code,
+      final float value) {
+
+    final int pos;
+
+    if (code >= DENSITY_CODE && code <= CLUSTER_COUNT_PF_CODE) {
+      pos = code - DENSITY_CODE;
+    } else if (code >= FIRST_PHASING_CODE && code < FIRST_ALIGNED_CODE) {
+      // Phasing and prephasing of each read
+      final int read = (code - FIRST_PHASING_CODE) / 2;
+      pos = TILE_VALUES
+          + read * READ_VALUES + 1 + (code - FIRST_PHASING_CODE) % 2;
+    } else if (code >= FIRST_ALIGNED_CODE && code <= LAST_ALIGNED_CODE) {
+      pos = TILE_VALUES + (code - FIRST_ALIGNED_CODE) * READ_VALUES;
+    } else {
+      // Ignore the other metrics (e.g. control lane)
+      return;
+    }
+
+    final long key = (long) lane << 32 | tile;
+    float[] values = this.tiles.get(key);
+
+    if (values == null) {
+      values = new float[TILE_VALUES];
+      this.tiles.put(key, values);
+    }
+
+    if (pos >= values.length) {
+      values = Arrays.copyOf(values,
+          TILE_VALUES + ((pos - TILE_VALUES) / READ_VALUES + 1) * READ_VALUES);
+      this.tiles.put(key, values);
+    }
+
+    values[pos] = value;
+  }
+
+  @Override
+  protected boolean isSplittable() {
+
+    // The values of a tile are gathered from several records
+    return false;
+  }
+
+  @Override
+  protected void endOfFile() throws AozanException {
+
+    for (Map.Entry<Long, float[]> e : this.tiles.entrySet()) {
+
+      final int lane = (int) (e.getKey() >>> 32);
+      final long tile = e.getKey() & 0xFFFFFFFFL;
+      final float[] values = e.getValue();
+
+      // The tile metrics are stored in the order of their codes
+      this.visitor.visitTile(lane, tile, values[2], values[3], values[0],
+          values[1]);
+
+      // The phasing values are fractions in the file
+      final int readCount = (values.length - TILE_VALUES) / READ_VALUES;
+      for (int i = 0; i < readCount; i++) {
+
+        final int pos = TILE_VALUES + i * READ_VALUES;
+        this.visitor.visitRead(lane, tile, i + 1, values[pos],
+            values[pos + 1] * 100.0f, values[pos + 2] * 100.0f);
+      }
+    }
+
+    this.tiles.clear();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param dirPath path to the interop directory for a run
+   * @param visitor visitor of the metrics
+   * @throws AozanException if the directory does not exist
+   */
+  TileMetricsFileReader(final File dirPath, final Visitor visitor)
+      throws AozanException {
+
+    super(dirPath);
+
+    if (visitor == null) {
+      throw new NullPointerException("visitor argument cannot be null");
+    }
+
+    this.visitor = visitor;
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.util.Arrays;
+
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
+
+/**
+ * This class define an accumulator of the values of a metric by tile. The sum
+ * and the count of the values of each tile are stored in primitive arrays in
+ * the order of the first value of the tiles, so the memory used only depends
+ * on the number of tiles and not on the number of records.
+ * @since 3.1
+ * @author agent
+ */
+final class TileValues {
+
+  private final TileIndex index = new TileIndex();
+  private double[] sums = new double[0];
+  private int[] counts = new int[0];
+
+  /**
+   * Get the number of tiles.
+   * @return the number of tiles
+   */
+  int size() {
+    return this.index.size();
+  }
+
+  /**
+   * Test if there is no value.
+   * @return true if there is no value
+   */
+  boolean isEmpty() {
+    return this.index.size() == 0;
+  }
+
+  /**
+   * Add a value to a tile.
+   * @param tile the tile number
+   * @param value the value to add
+   */
+  void add(final long tile, final double value) {
+
+    final int pos = position(tile);
+    this.sums[pos] += value;
+    this.counts[pos]++;
+  }
+
+  /**
+   * Set the value of a tile, the previous values of the tile are discarded.
+   * @param tile the tile number
+   * @param value the value
+   */
+  void put(final long tile, final double value) {
+
+    final int pos = position(tile);
+    this.sums[pos] = value;
+    this.counts[pos] = 1;
+  }
+
+  /**
+   * Get the mean of the values of a tile.
+   * @param tile the tile number
+   * @return the mean of the values of the tile or NaN if the tile has no value
+   */
+  double get(final long tile) {
+
+    final int pos = this.index.indexOf(tile);
+
+    return pos == -1 ? Double.NaN : this.sums[pos] / this.counts[pos];
+  }
+
+  /**
+   * Compute the statistics of the means of the tiles, in a single pass without
+   * copying the values.
+   * @return a new RunningStatistics object
+   */
+  RunningStatistics statistics() {
+
+    final RunningStatistics result = new RunningStatistics();
+
+    for (int i = 0; i < this.index.size(); i++) {
+      result.add(this.sums[i] / this.counts[i]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the tile numbers.
+   * @return an array with the tile numbers
+   */
+  long[] tiles() {
+
+    return this.index.tiles();
+  }
+
+  private int position(final long tile) {
+
+    final int pos = this.index.add(tile);
+
+    // New tile
+    if (pos == this.sums.length) {
+      final int capacity = Math.max(16, 2 * this.sums.length);
+      this.sums = Arrays.copyOf(this.sums, capacity);
+      this.counts = Arrays.copyOf(this.counts, capacity);
+    }
+
+    return pos;
+  }
+
+}
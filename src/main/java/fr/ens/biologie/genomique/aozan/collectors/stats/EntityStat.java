@@ -101,6 +101,9 @@ public class EntityStat {
   /** Cluster recovery sum. */
   private int pfClusterRecoverySum = 0;
 
+  /** True if the raw cluster recovery counts of all the samples are known. */
+  private boolean rawClusterRecoveryAvailable = true;
+
   /** Data compile in run data. */
   private boolean compiledData = false;
 
@@ -141,8 +144,10 @@ public class EntityStat {
     if (this.data
         .isCollectorEnabled(UndeterminedIndexesCollector.COLLECTOR_NAME)) {
       // Compile data on recoverable cluster
-      this.data.put(prefix + ".raw.cluster.recovery.sum",
-          rawClusterRecoverySum);
+      if (this.rawClusterRecoveryAvailable) {
+        this.data.put(prefix + ".raw.cluster.recovery.sum",
+            rawClusterRecoverySum);
+      }
       this.data.put(prefix + ".pf.cluster.recovery.sum", pfClusterRecoverySum);
     }
 
@@ -206,25 +211,35 @@ public class EntityStat {
     final int lane = this.data.getSampleLane(sampleId);
 
     // Check collector is selected
-    // TODO Handle dual indexing
     if (this.data
         .isCollectorEnabled(UndeterminedIndexesCollector.COLLECTOR_NAME)
         && this.data.isUndeterminedInLane(lane)
-        && this.data.getIndexedReadCount() == 1) {
+        && this.data.getIndexedReadCount() >= 1) {
 
       // Check if lane is indexed
       if (this.data.isLaneIndexed(lane)) {
 
+        // The raw counts are not available with the demultiplexing summary
+        final boolean rawAvailable =
+            this.data.isLaneRawClusterRecoveryCountAvailable(lane);
+        if (!rawAvailable) {
+          this.rawClusterRecoveryAvailable = false;
+        }
+
         if (!this.data.isUndeterminedSample(sampleId)) {
-          this.rawClusterRecoverySum +=
-              this.data.getSampleRawClusterRecoveryCount(sampleId);
+          if (rawAvailable) {
+            this.rawClusterRecoverySum +=
+                this.data.getSampleRawClusterRecoveryCount(sampleId);
+          }
 
           this.pfClusterRecoverySum +=
               this.data.getSamplePFClusterRecoveryCount(sampleId);
 
         } else {
-          this.rawClusterRecoverySum +=
-              this.data.getLaneRawClusterRecoveryCount(lane);
+          if (rawAvailable) {
+            this.rawClusterRecoverySum +=
+                this.data.getLaneRawClusterRecoveryCount(lane);
+          }
 
           this.pfClusterRecoverySum +=
               this.data.getLanePFClusterRecoveryCount(lane);
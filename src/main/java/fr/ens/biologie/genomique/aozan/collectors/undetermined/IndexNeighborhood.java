@@ -0,0 +1,350 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class define an index of the neighborhood of the sample indexes. For
+ * each sample index, all the indexes at a distance lower or equal to a maximal
+ * number of mismatches are precomputed, so the samples near an undetermined
+ * index are found with a single hash lookup instead of comparing the
+ * undetermined index with all the sample indexes. The neighborhood of two
+ * samples may overlap: in this case the lookup returns all the samples.
+ * @since 3.1
+ * @author agent
+ */
+public class IndexNeighborhood {
+
+  /** Maximal number of mismatches handled by the index. */
+  public static final int MAX_MISMATCHES = 2;
+
+  private static final long EMPTY = 0L;
+
+  private final int maxMismatches;
+
+  // Open addressing hash table. A value greater or equal to 0 encodes a
+  // single candidate (sample ordinal and distance), a negative value is the
+  // position of the candidates in the overflow list
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+  private final List<int[]> overflow = new ArrayList<>();
+
+  /**
+   * This interface define a consumer of the candidates of a lookup.
+   */
+  public interface CandidateConsumer {
+
+    /**
+     * Consume a candidate.
+     * @param sampleOrdinal the ordinal of the sample
+     * @param mismatches the number of mismatches between the index and the
+     *          index of the sample
+     */
+    void accept(int sampleOrdinal, int mismatches);
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the maximal number of mismatches of the index.
+   * @return the maximal number of mismatches
+   */
+  public int getMaxMismatches() {
+    return this.maxMismatches;
+  }
+
+  /**
+   * Get the number of indexes in the neighborhood of the samples.
+   * @return the number of indexes
+   */
+  public int size() {
+    return this.size;
+  }
+
+  //
+  // Lookup
+  //
+
+  /**
+   * Get the samples near an index. The candidates are provided in the order of
+   * the sample ordinals.
+   * @param packedIndex the packed index
+   * @param consumer the consumer of the candidates
+   * @return the number of candidates
+   */
+  public int lookup(final long packedIndex, final CandidateConsumer consumer) {
+
+    if (packedIndex == PackedIndexes.NOT_PACKED || packedIndex == EMPTY) {
+      return 0;
+    }
+
+    final int slot = find(packedIndex);
+
+    if (slot == -1) {
+      return 0;
+    }
+
+    final int value = this.values[slot];
+
+    if (value >= 0) {
+      consumer.accept(value >>> 2, value & 3);
+      return 1;
+    }
+
+    final int[] candidates = this.overflow.get(-value - 1);
+    for (int c : candidates) {
+      consumer.accept(c >>> 2, c & 3);
+    }
+
+    return candidates.length;
+  }
+
+  //
+  // Build
+  //
+
+  private void addNeighborhood(final int sampleOrdinal,
+      final long packedIndex) {
+
+    final int length =
+        PackedIndexes.i7Length(packedIndex) + PackedIndexes.i5Length(packedIndex);
+
+    put(packedIndex, encode(sampleOrdinal, 0));
+
+    if (this.maxMismatches < 1) {
+      return;
+    }
+
+    for (int i = 0; i < length; i++) {
+
+      final int shiftI = 2 * i;
+      final long baseI = packedIndex >>> shiftI & 3;
+
+      for (long b = 0; b < 4; b++) {
+
+        if (b == baseI) {
+          continue;
+        }
+
+        final long variant1 = packedIndex & ~(3L << shiftI) | b << shiftI;
+        put(variant1, encode(sampleOrdinal, 1));
+
+        if (this.maxMismatches < 2) {
+          continue;
+        }
+
+        for (int j = i + 1; j < length; j++) {
+
+          final int shiftJ = 2 * j;
+          final long baseJ = packedIndex >>> shiftJ & 3;
+
+          for (long c = 0; c < 4; c++) {
+
+            if (c != baseJ) {
+              put(variant1 & ~(3L << shiftJ) | c << shiftJ,
+                  encode(sampleOrdinal, 2));
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the number of indexes at a distance lower or equal to a number of
+   * mismatches of an index.
+   * @param packedIndex the packed index
+   * @param maxMismatches the maximal number of mismatches
+   * @return the number of indexes in the neighborhood
+   */
+  static long neighborhoodSize(final long packedIndex,
+      final int maxMismatches) {
+
+    final long length =
+        PackedIndexes.i7Length(packedIndex) + PackedIndexes.i5Length(packedIndex);
+
+    long result = 1;
+    if (maxMismatches >= 1) {
+      result += 3 * length;
+    }
+    if (maxMismatches >= 2) {
+      result += 9 * length * (length - 1) / 2;
+    }
+
+    return result;
+  }
+
+  private static int encode(final int sampleOrdinal, final int mismatches) {
+
+    return sampleOrdinal << 2 | mismatches;
+  }
+
+  private void put(final long key, final int candidate) {
+
+    int slot = slot(key);
+
+    while (this.keys[slot] != EMPTY) {
+
+      if (this.keys[slot] == key) {
+        addCandidate(slot, candidate);
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+
+    this.keys[slot] = key;
+    this.values[slot] = candidate;
+
+    // Keep the load factor under 0.5
+    if (++this.size > this.keys.length >>> 1) {
+      resize(this.keys.length << 1);
+    }
+  }
+
+  private void addCandidate(final int slot, final int candidate) {
+
+    final int value = this.values[slot];
+
+    if (value >= 0) {
+
+      // The same sample cannot be added twice as the variants of an index are
+      // all distinct
+      final int[] candidates = new int[] {value, candidate};
+      Arrays.sort(candidates);
+      this.overflow.add(candidates);
+      this.values[slot] = -this.overflow.size();
+      return;
+    }
+
+    final int pos = -value - 1;
+    final int[] candidates = Arrays.copyOf(this.overflow.get(pos),
+        this.overflow.get(pos).length + 1);
+    candidates[candidates.length - 1] = candidate;
+    Arrays.sort(candidates);
+    this.overflow.set(pos, candidates);
+  }
+
+  private int find(final long key) {
+
+    int slot = slot(key);
+
+    while (this.keys[slot] != EMPTY) {
+
+      if (this.keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+
+    return -1;
+  }
+
+  private int slot(final long key) {
+
+    long h = key * 0x9e3779b97f4a7c15L;
+    h ^= h >>> 32;
+
+    return (int) h & this.mask;
+  }
+
+  private void resize(final int capacity) {
+
+    final long[] oldKeys = this.keys;
+    final int[] oldValues = this.values;
+
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+
+      if (oldKeys[i] == EMPTY) {
+        continue;
+      }
+
+      int slot = slot(oldKeys[i]);
+      while (this.keys[slot] != EMPTY) {
+        slot = (slot + 1) & this.mask;
+      }
+
+      this.keys[slot] = oldKeys[i];
+      this.values[slot] = oldValues[i];
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param packedSampleIndexes the packed indexes of the samples. The position
+   *          of an index in the array is the ordinal of the sample. Indexes
+   *          that are not packed are ignored
+   * @param maxMismatches maximal number of mismatches
+   */
+  public IndexNeighborhood(final long[] packedSampleIndexes,
+      final int maxMismatches) {
+
+    requireNonNull(packedSampleIndexes,
+        "packedSampleIndexes argument cannot be null");
+    checkArgument(maxMismatches >= 0 && maxMismatches <= MAX_MISMATCHES,
+        "maxMismatches must be in [0, " + MAX_MISMATCHES + "]: " + maxMismatches);
+
+    this.maxMismatches = maxMismatches;
+
+    // Size the table for the variants of all the indexes, the table is
+    // resized if the neighborhoods of the samples overlap less than expected
+    long variants = 0;
+    for (long packedIndex : packedSampleIndexes) {
+      if (packedIndex != PackedIndexes.NOT_PACKED) {
+        variants += neighborhoodSize(packedIndex, maxMismatches);
+      }
+    }
+
+    final int capacity = Integer.highestOneBit(
+        (int) Math.min(1 << 28, Math.max(8, variants))) << 1;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+
+    for (int i = 0; i < packedSampleIndexes.length; i++) {
+
+      if (packedSampleIndexes[i] != PackedIndexes.NOT_PACKED) {
+        addNeighborhood(i, packedSampleIndexes[i]);
+      }
+    }
+  }
+
+}
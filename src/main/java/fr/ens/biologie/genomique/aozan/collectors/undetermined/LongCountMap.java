@@ -0,0 +1,220 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * This class define an open addressing hash map that associate to non zero
+ * long keys a raw count and a passing filter count. Keys and counts are stored
+ * in primitive arrays, so an entry only requires 16 bytes.
+ * @since 3.1
+ * @author agent
+ */
+class LongCountMap {
+
+  private static final long EMPTY = 0L;
+  private static final int DEFAULT_CAPACITY = 1 << 10;
+
+  private long[] keys;
+  private int[] rawCounts;
+  private int[] pfCounts;
+  private int size;
+  private int mask;
+
+  /**
+   * This interface define a consumer of the entries of the map.
+   */
+  interface EntryConsumer {
+
+    /**
+     * Consume an entry.
+     * @param key the key
+     * @param rawCount the raw count
+     * @param pfCount the passing filter count
+     */
+    void accept(long key, int rawCount, int pfCount);
+  }
+
+  /**
+   * Get the number of entries.
+   * @return the number of entries
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Increment the counts of a key.
+   * @param key the key
+   * @param rawCount the value to add to the raw count
+   * @param pfCount the value to add to the passing filter count
+   */
+  void add(final long key, final int rawCount, final int pfCount) {
+
+    checkArgument(key != EMPTY, "key cannot be 0");
+
+    int slot = slot(key);
+
+    while (this.keys[slot] != EMPTY) {
+
+      if (this.keys[slot] == key) {
+        this.rawCounts[slot] += rawCount;
+        this.pfCounts[slot] += pfCount;
+        return;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+
+    this.keys[slot] = key;
+    this.rawCounts[slot] = rawCount;
+    this.pfCounts[slot] = pfCount;
+
+    // Keep the load factor under 0.5
+    if (++this.size > this.keys.length >>> 1) {
+      resize(this.keys.length << 1);
+    }
+  }
+
+  /**
+   * Get the raw count of a key.
+   * @param key the key
+   * @return the raw count or 0 if the key is not in the map
+   */
+  int getRawCount(final long key) {
+
+    final int slot = find(key);
+    return slot == -1 ? 0 : this.rawCounts[slot];
+  }
+
+  /**
+   * Get the passing filter count of a key.
+   * @param key the key
+   * @return the passing filter count or 0 if the key is not in the map
+   */
+  int getPFCount(final long key) {
+
+    final int slot = find(key);
+    return slot == -1 ? 0 : this.pfCounts[slot];
+  }
+
+  /**
+   * Process all the entries of the map.
+   * @param consumer the consumer of the entries
+   */
+  void forEach(final EntryConsumer consumer) {
+
+    for (int i = 0; i < this.keys.length; i++) {
+      if (this.keys[i] != EMPTY) {
+        consumer.accept(this.keys[i], this.rawCounts[i], this.pfCounts[i]);
+      }
+    }
+  }
+
+  /**
+   * Remove all the entries of the map.
+   */
+  void clear() {
+
+    Arrays.fill(this.keys, EMPTY);
+    Arrays.fill(this.rawCounts, 0);
+    Arrays.fill(this.pfCounts, 0);
+    this.size = 0;
+  }
+
+  private int find(final long key) {
+
+    if (key == EMPTY) {
+      return -1;
+    }
+
+    int slot = slot(key);
+
+    while (this.keys[slot] != EMPTY) {
+
+      if (this.keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & this.mask;
+    }
+
+    return -1;
+  }
+
+  private int slot(final long key) {
+
+    // Mix the bits of the key, the low bits of packed indexes are not random
+    long h = key * 0x9e3779b97f4a7c15L;
+    h ^= h >>> 32;
+
+    return (int) h & this.mask;
+  }
+
+  private void resize(final int capacity) {
+
+    final long[] oldKeys = this.keys;
+    final int[] oldRawCounts = this.rawCounts;
+    final int[] oldPFCounts = this.pfCounts;
+
+    this.keys = new long[capacity];
+    this.rawCounts = new int[capacity];
+    this.pfCounts = new int[capacity];
+    this.mask = capacity - 1;
+
+    for (int i = 0; i < oldKeys.length; i++) {
+
+      final long key = oldKeys[i];
+      if (key == EMPTY) {
+        continue;
+      }
+
+      int slot = slot(key);
+      while (this.keys[slot] != EMPTY) {
+        slot = (slot + 1) & this.mask;
+      }
+
+      this.keys[slot] = key;
+      this.rawCounts[slot] = oldRawCounts[i];
+      this.pfCounts[slot] = oldPFCounts[i];
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   */
+  LongCountMap() {
+
+    this.keys = new long[DEFAULT_CAPACITY];
+    this.rawCounts = new int[DEFAULT_CAPACITY];
+    this.pfCounts = new int[DEFAULT_CAPACITY];
+    this.mask = DEFAULT_CAPACITY - 1;
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+/**
+ * This class define methods to pack the indexes of a cluster (i7 and optional
+ * i5) in a long. Each base is encoded on 2 bits and the lengths of the two
+ * indexes are stored in the upper bits, so two packed indexes can be compared
+ * and their mismatches counted without creating any object.
+ * @since 3.1
+ * @author agent
+ */
+public final class PackedIndexes {
+
+  /** Value returned for the indexes that cannot be packed. */
+  public static final long NOT_PACKED = -1L;
+
+  /** Maximal number of bases of the two indexes. */
+  public static final int MAX_BASES = 27;
+
+  /** Separator of the indexes in the string representation. */
+  public static final char SEPARATOR = '+';
+
+  private static final int LENGTH_BITS = 5;
+  private static final int I5_LENGTH_SHIFT = 2 * MAX_BASES;
+  private static final int I7_LENGTH_SHIFT = I5_LENGTH_SHIFT + LENGTH_BITS;
+  private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+  private static final long BASES_MASK = (1L << I5_LENGTH_SHIFT) - 1;
+  private static final long LOW_BITS_MASK = 0x5555555555555555L & BASES_MASK;
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  /**
+   * Pack indexes.
+   * @param i7 first index
+   * @param i5 second index, can be null
+   * @return the packed indexes or NOT_PACKED if the indexes contains other
+   *         bases than A, C, G and T, are empty or are too long
+   */
+  public static long pack(final CharSequence i7, final CharSequence i5) {
+
+    if (i7 == null) {
+      return NOT_PACKED;
+    }
+
+    final int len7 = i7.length();
+    final int len5 = i5 == null ? 0 : i5.length();
+
+    if (len7 == 0 || len7 + len5 > MAX_BASES) {
+      return NOT_PACKED;
+    }
+
+    long result = 0;
+    int shift = 0;
+
+    for (int i = 0; i < len7; i++) {
+      final int code = code(i7.charAt(i));
+      if (code < 0) {
+        return NOT_PACKED;
+      }
+      result |= (long) code << shift;
+      shift += 2;
+    }
+
+    for (int i = 0; i < len5; i++) {
+      final int code = code(i5.charAt(i));
+      if (code < 0) {
+        return NOT_PACKED;
+      }
+      result |= (long) code << shift;
+      shift += 2;
+    }
+
+    return result
+        | (long) len7 << I7_LENGTH_SHIFT | (long) len5 << I5_LENGTH_SHIFT;
+  }
+
+  /**
+   * Pack indexes in their string representation ("i7" or "i7+i5").
+   * @param indexes the indexes
+   * @return the packed indexes or NOT_PACKED if the indexes cannot be packed
+   */
+  public static long pack(final String indexes) {
+
+    if (indexes == null) {
+      return NOT_PACKED;
+    }
+
+    final int pos = indexes.indexOf(SEPARATOR);
+
+    if (pos == -1) {
+      return pack(indexes, null);
+    }
+
+    return pack(indexes.substring(0, pos), indexes.substring(pos + 1));
+  }
+
+  /**
+   * Get the string representation of packed indexes.
+   * @param packed packed indexes
+   * @return a String with the indexes ("i7" or "i7+i5")
+   */
+  public static String unpack(final long packed) {
+
+    final int len7 = i7Length(packed);
+    final int len5 = i5Length(packed);
+
+    final StringBuilder sb = new StringBuilder(len7 + len5 + 1);
+
+    for (int i = 0; i < len7 + len5; i++) {
+
+      if (i == len7) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(BASES[(int) (packed >>> (2 * i)) & 3]);
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Count the mismatches between two packed indexes.
+   * @param a first packed indexes
+   * @param b second packed indexes
+   * @return the number of mismatches or -1 if the lengths of the indexes are
+   *         not the same
+   */
+  public static int mismatches(final long a, final long b) {
+
+    if (a >>> I5_LENGTH_SHIFT != b >>> I5_LENGTH_SHIFT) {
+      return -1;
+    }
+
+    final long x = (a ^ b) & BASES_MASK;
+
+    return Long.bitCount((x | x >>> 1) & LOW_BITS_MASK);
+  }
+
+  /**
+   * Get the length of the first index.
+   * @param packed packed indexes
+   * @return the length of the first index
+   */
+  public static int i7Length(final long packed) {
+
+    return (int) (packed >>> I7_LENGTH_SHIFT & LENGTH_MASK);
+  }
+
+  /**
+   * Get the length of the second index.
+   * @param packed packed indexes
+   * @return the length of the second index
+   */
+  public static int i5Length(final long packed) {
+
+    return (int) (packed >>> I5_LENGTH_SHIFT & LENGTH_MASK);
+  }
+
+  private static int code(final char c) {
+
+    switch (c) {
+    case 'A':
+    case 'a':
+      return 0;
+    case 'C':
+    case 'c':
+      return 1;
+    case 'G':
+    case 'g':
+      return 2;
+    case 'T':
+    case 't':
+      return 3;
+    default:
+      return -1;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   */
+  private PackedIndexes() {
+  }
+
+}
@@ -0,0 +1,393 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class define a counter of the most frequent indexes that use a bounded
+ * amount of memory. It implements the Space-Saving algorithm (Metwally et al.,
+ * 2005): when the counter is full, the least counted index is replaced by the
+ * new index, that inherits its count. The count of an index is overestimated
+ * by at most its error, and an index that is not in the counter has a count
+ * lower or equal to the minimal count of the counter. The entries are kept in a
+ * binary min heap ordered by raw count.
+ * @since 3.1
+ * @author agent
+ */
+class SpaceSavingCounter {
+
+  private static final long EMPTY = 0L;
+
+  private final int capacity;
+
+  // Entries
+  private final long[] packedKeys;
+  private final String[] otherKeys;
+  private final int[] rawCounts;
+  private final int[] pfCounts;
+  private final int[] errors;
+  private int size;
+
+  // Min heap of the entries
+  private final int[] heap;
+  private final int[] heapPositions;
+
+  // Position of the entries from their keys
+  private final long[] tableKeys;
+  private final int[] tableEntries;
+  private final int mask;
+  private final Map<String, Integer> otherEntries = new HashMap<>();
+
+  private boolean evicted;
+  private boolean frozen;
+
+  /**
+   * This interface define a consumer of the entries of the counter.
+   */
+  interface EntryConsumer {
+
+    /**
+     * Consume an entry.
+     * @param packedKey the packed index or PackedIndexes.NOT_PACKED
+     * @param otherKey the index if the index is not packed
+     * @param rawCount the raw count
+     * @param pfCount the passing filter count
+     * @param error the maximal overestimation of the counts
+     */
+    void accept(long packedKey, String otherKey, int rawCount, int pfCount,
+        int error);
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of entries.
+   * @return the number of entries
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Test if entries has been evicted from the counter. If not, the counts are
+   * exact.
+   * @return true if entries has been evicted
+   */
+  boolean isEvicted() {
+    return this.evicted;
+  }
+
+  /**
+   * Get the minimal raw count of the counter. This is the maximal raw count of
+   * an index that is not in the counter.
+   * @return the minimal raw count if the counter is full or 0
+   */
+  int getMinRawCount() {
+
+    return this.size < this.capacity ? 0 : this.rawCounts[this.heap[0]];
+  }
+
+  /**
+   * Get the raw count of an index.
+   * @param packedKey the packed index or PackedIndexes.NOT_PACKED
+   * @param otherKey the index if the index is not packed
+   * @return the raw count or 0 if the index is not in the counter
+   */
+  int getRawCount(final long packedKey, final String otherKey) {
+
+    final int entry = find(packedKey, otherKey);
+    return entry == -1 ? 0 : this.rawCounts[entry];
+  }
+
+  /**
+   * Get the passing filter count of an index.
+   * @param packedKey the packed index or PackedIndexes.NOT_PACKED
+   * @param otherKey the index if the index is not packed
+   * @return the passing filter count or 0 if the index is not in the counter
+   */
+  int getPFCount(final long packedKey, final String otherKey) {
+
+    final int entry = find(packedKey, otherKey);
+    return entry == -1 ? 0 : this.pfCounts[entry];
+  }
+
+  //
+  // Counting
+  //
+
+  /**
+   * Increment the counts of an index.
+   * @param packedKey the packed index or PackedIndexes.NOT_PACKED
+   * @param otherKey the index if the index is not packed
+   * @param rawCount the value to add to the raw count
+   * @param pfCount the value to add to the passing filter count
+   */
+  void add(final long packedKey, final String otherKey, final int rawCount,
+      final int pfCount) {
+
+    int entry = find(packedKey, otherKey);
+
+    if (entry != -1) {
+      this.rawCounts[entry] += rawCount;
+      this.pfCounts[entry] += pfCount;
+      siftDown(this.heapPositions[entry]);
+      return;
+    }
+
+    // Only the counts of the indexes of the counter are updated
+    if (this.frozen) {
+      return;
+    }
+
+    if (this.size < this.capacity) {
+
+      entry = this.size++;
+      this.heap[entry] = entry;
+      this.heapPositions[entry] = entry;
+      setEntry(entry, packedKey, otherKey, rawCount, pfCount, 0);
+      siftUp(entry);
+      return;
+    }
+
+    // Replace the entry with the lowest count
+    entry = this.heap[0];
+    final int minCount = this.rawCounts[entry];
+    removeKey(entry);
+    setEntry(entry, packedKey, otherKey, minCount + rawCount, pfCount,
+        minCount);
+    siftDown(0);
+    this.evicted = true;
+  }
+
+  /**
+   * Reset the counts of the entries and stop adding new indexes to the
+   * counter. This allow to compute the exact counts of the indexes of the
+   * counter in a second pass.
+   */
+  void freeze() {
+
+    for (int i = 0; i < this.size; i++) {
+      this.rawCounts[i] = 0;
+      this.pfCounts[i] = 0;
+      this.errors[i] = 0;
+    }
+    this.frozen = true;
+  }
+
+  /**
+   * Process all the entries of the counter.
+   * @param consumer the consumer of the entries
+   */
+  void forEach(final EntryConsumer consumer) {
+
+    for (int i = 0; i < this.size; i++) {
+      consumer.accept(this.packedKeys[i], this.otherKeys[i], this.rawCounts[i],
+          this.pfCounts[i], this.errors[i]);
+    }
+  }
+
+  private void setEntry(final int entry, final long packedKey,
+      final String otherKey, final int rawCount, final int pfCount,
+      final int error) {
+
+    this.packedKeys[entry] = packedKey;
+    this.otherKeys[entry] = otherKey;
+    this.rawCounts[entry] = rawCount;
+    this.pfCounts[entry] = pfCount;
+    this.errors[entry] = error;
+
+    if (packedKey != PackedIndexes.NOT_PACKED) {
+
+      int slot = slot(packedKey);
+      while (this.tableKeys[slot] != EMPTY) {
+        slot = (slot + 1) & this.mask;
+      }
+      this.tableKeys[slot] = packedKey;
+      this.tableEntries[slot] = entry;
+
+    } else {
+      this.otherEntries.put(otherKey, entry);
+    }
+  }
+
+  //
+  // Heap
+  //
+
+  private void siftUp(final int position) {
+
+    int pos = position;
+    final int entry = this.heap[pos];
+
+    while (pos > 0) {
+
+      final int parent = (pos - 1) >>> 1;
+      if (this.rawCounts[this.heap[parent]] <= this.rawCounts[entry]) {
+        break;
+      }
+      setHeap(pos, this.heap[parent]);
+      pos = parent;
+    }
+
+    setHeap(pos, entry);
+  }
+
+  private void siftDown(final int position) {
+
+    int pos = position;
+    final int entry = this.heap[pos];
+
+    while (true) {
+
+      int child = 2 * pos + 1;
+      if (child >= this.size) {
+        break;
+      }
+
+      if (child + 1 < this.size && this.rawCounts[this.heap[child
+          + 1]] < this.rawCounts[this.heap[child]]) {
+        child++;
+      }
+
+      if (this.rawCounts[entry] <= this.rawCounts[this.heap[child]]) {
+        break;
+      }
+
+      setHeap(pos, this.heap[child]);
+      pos = child;
+    }
+
+    setHeap(pos, entry);
+  }
+
+  private void setHeap(final int position, final int entry) {
+
+    this.heap[position] = entry;
+    this.heapPositions[entry] = position;
+  }
+
+  //
+  // Hash table
+  //
+
+  private int find(final long packedKey, final String otherKey) {
+
+    if (packedKey == PackedIndexes.NOT_PACKED) {
+
+      final Integer entry = this.otherEntries.get(otherKey);
+      return entry == null ? -1 : entry;
+    }
+
+    int slot = slot(packedKey);
+
+    while (this.tableKeys[slot] != EMPTY) {
+
+      if (this.tableKeys[slot] == packedKey) {
+        return this.tableEntries[slot];
+      }
+      slot = (slot + 1) & this.mask;
+    }
+
+    return -1;
+  }
+
+  private void removeKey(final int entry) {
+
+    final long packedKey = this.packedKeys[entry];
+
+    if (packedKey == PackedIndexes.NOT_PACKED) {
+      this.otherEntries.remove(this.otherKeys[entry]);
+      return;
+    }
+
+    int slot = slot(packedKey);
+    while (this.tableKeys[slot] != packedKey) {
+      slot = (slot + 1) & this.mask;
+    }
+
+    // Shift back the following keys of the cluster to keep the lookups valid
+    int free = slot;
+    int next = (free + 1) & this.mask;
+
+    while (this.tableKeys[next] != EMPTY) {
+
+      final int home = slot(this.tableKeys[next]);
+
+      // Move the key if its home slot is not between the free slot and its
+      // current slot
+      if (((next - home) & this.mask) >= ((next - free) & this.mask)) {
+        this.tableKeys[free] = this.tableKeys[next];
+        this.tableEntries[free] = this.tableEntries[next];
+        free = next;
+      }
+      next = (next + 1) & this.mask;
+    }
+
+    this.tableKeys[free] = EMPTY;
+  }
+
+  private int slot(final long key) {
+
+    long h = key * 0x9e3779b97f4a7c15L;
+    h ^= h >>> 32;
+
+    return (int) h & this.mask;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param capacity maximal number of indexes in the counter
+   */
+  SpaceSavingCounter(final int capacity) {
+
+    checkArgument(capacity > 0 && capacity <= 1 << 28,
+        "capacity must be in [1, 2^28]: " + capacity);
+
+    this.capacity = capacity;
+    this.packedKeys = new long[capacity];
+    this.otherKeys = new String[capacity];
+    this.rawCounts = new int[capacity];
+    this.pfCounts = new int[capacity];
+    this.errors = new int[capacity];
+    this.heap = new int[capacity];
+    this.heapPositions = new int[capacity];
+
+    // Load factor under 0.5
+    final int tableSize = Integer.highestOneBit(capacity) << 2;
+    this.tableKeys = new long[tableSize];
+    this.tableEntries = new int[tableSize];
+    this.mask = tableSize - 1;
+  }
+
+}
@@ -0,0 +1,245 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.aozan.Globals;
+
+/**
+ * This class define a parser for the Top_Unknown_Barcodes.csv file written by
+ * bcl-convert. This file contains for each lane the most frequent indexes of
+ * the undetermined clusters, and allow to analyze the undetermined indexes
+ * without reading the undetermined FASTQ files.
+ * @since 3.1
+ * @author agent
+ */
+public class TopUnknownBarcodes {
+
+  /** Name of the file in the reports directory of bcl-convert. */
+  public static final String FILENAME = "Top_Unknown_Barcodes.csv";
+
+  private static final String LANE_COLUMN = "Lane";
+  private static final String INDEX_COLUMN = "index";
+  private static final String INDEX2_COLUMN = "index2";
+  private static final String READS_COLUMN = "# Reads";
+
+  private final Map<Integer, List<Barcode>> lanes = new HashMap<>();
+
+  /**
+   * This class define an entry of the file.
+   */
+  private static final class Barcode {
+
+    private final String index;
+    private final String index2;
+    private final int count;
+
+    private Barcode(final String index, final String index2, final int count) {
+
+      this.index = index;
+      this.index2 = index2;
+      this.count = count;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Test if the file contains the barcodes of a lane.
+   * @param lane the lane
+   * @return true if the file contains the barcodes of the lane
+   */
+  public boolean containsLane(final int lane) {
+
+    return this.lanes.containsKey(lane);
+  }
+
+  /**
+   * Get the number of barcodes of a lane.
+   * @param lane the lane
+   * @return the number of barcodes of the lane
+   */
+  public int getBarcodeCount(final int lane) {
+
+    final List<Barcode> barcodes = this.lanes.get(lane);
+
+    return barcodes == null ? 0 : barcodes.size();
+  }
+
+  /**
+   * Count the barcodes of a lane. The file only contains the reads that pass
+   * filters, so the raw counts of the counter are set as not available. As the
+   * file only contains the most frequent barcodes, the counter is set as
+   * truncated with the count of the least frequent barcode as bound, and the
+   * total passing filter count of the counter is set to the count of all the
+   * undetermined clusters of the lane.
+   * @param lane the lane
+   * @param dualIndexes true if the second index must be counted
+   * @param totalPFCount the passing filter cluster count of all the
+   *          undetermined clusters of the lane (e.g. from the
+   *          Demultiplex_Stats.csv file)
+   * @param counter the counter
+   * @return false if the file does not contains the barcodes of the lane or if
+   *         the second index is missing
+   */
+  public boolean count(final int lane, final boolean dualIndexes,
+      final int totalPFCount, final UndeterminedIndexCounter counter) {
+
+    requireNonNull(counter, "counter argument cannot be null");
+    if (totalPFCount < 0) {
+      throw new IllegalArgumentException(
+          "totalPFCount argument cannot be negative: " + totalPFCount);
+    }
+
+    final List<Barcode> barcodes = this.lanes.get(lane);
+
+    if (barcodes == null) {
+      return false;
+    }
+
+    int minCount = Integer.MAX_VALUE;
+
+    for (Barcode barcode : barcodes) {
+
+      if (dualIndexes
+          && (barcode.index2 == null || barcode.index2.isEmpty())) {
+        return false;
+      }
+      minCount = Math.min(minCount, barcode.count);
+    }
+
+    // The raw counts are only used by the counter to rank the barcodes
+    for (Barcode barcode : barcodes) {
+      counter.add(barcode.index, dualIndexes ? barcode.index2 : null,
+          barcode.count, barcode.count);
+    }
+
+    counter.setSummaryCounts(totalPFCount, barcodes.isEmpty() ? 0 : minCount);
+
+    return true;
+  }
+
+  //
+  // Parsing
+  //
+
+  private void parse(final File file) throws IOException {
+
+    try (BufferedReader reader =
+        Files.newBufferedReader(file.toPath(), Globals.DEFAULT_FILE_ENCODING)) {
+
+      final String header = reader.readLine();
+
+      if (header == null) {
+        throw new IOException("Empty file: " + file);
+      }
+
+      final List<String> columns = Arrays.asList(split(header));
+      final int laneColumn = columns.indexOf(LANE_COLUMN);
+      final int indexColumn = columns.indexOf(INDEX_COLUMN);
+      final int index2Column = columns.indexOf(INDEX2_COLUMN);
+      final int readsColumn = columns.indexOf(READS_COLUMN);
+
+      if (laneColumn == -1 || indexColumn == -1 || readsColumn == -1) {
+        throw new IOException("Invalid header in file " + file + ": " + header);
+      }
+
+      String line;
+      int lineNumber = 1;
+
+      while ((line = reader.readLine()) != null) {
+
+        lineNumber++;
+
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String[] fields = split(line);
+
+        // A truncated line
+        if (fields.length != columns.size()) {
+          throw new IOException("Invalid number of fields in line "
+              + lineNumber + " of file " + file + ": " + line);
+        }
+
+        try {
+
+          final int lane = Integer.parseInt(fields[laneColumn]);
+          final int count = Integer.parseInt(fields[readsColumn]);
+
+          this.lanes.computeIfAbsent(lane, k -> new ArrayList<>())
+              .add(new Barcode(fields[indexColumn],
+                  index2Column == -1 ? null : fields[index2Column], count));
+
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid value in line "
+              + lineNumber + " of file " + file + ": " + line);
+        }
+      }
+    }
+  }
+
+  private static String[] split(final String line) {
+
+    final String[] result = line.split(",", -1);
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = result[i].trim();
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param file the Top_Unknown_Barcodes.csv file
+   * @throws IOException if an error occurs while reading the file or if the
+   *           file is truncated
+   */
+  public TopUnknownBarcodes(final File file) throws IOException {
+
+    requireNonNull(file, "file argument cannot be null");
+
+    parse(file);
+  }
+
+}
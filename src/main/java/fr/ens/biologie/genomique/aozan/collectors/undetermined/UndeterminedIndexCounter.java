@@ -0,0 +1,463 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class count the raw and passing filter clusters of each distinct index
+ * (i7 and optional i5) found in the undetermined clusters of a lane. The
+ * indexes only made of A, C, G and T bases are packed in longs and counted in a
+ * primitive hash map. The other indexes (e.g. with N bases) are counted in a
+ * standard map. When a maximal number of entries is set, only the most
+ * frequent indexes are counted with a bounded amount of memory, and the counts
+ * are overestimated by at most the error of each entry. The exact counts of
+ * these indexes can then be computed in a second pass with recount(). When
+ * the counts come from a summary of the demultiplexing that only contains the
+ * passing filter clusters, the raw counts are not available and the getters
+ * return -1 for them.
+ * @since 3.1
+ * @author agent
+ */
+public class UndeterminedIndexCounter {
+
+  /** Approximate memory used by an entry of a bounded counter in bytes. */
+  public static final int BOUNDED_ENTRY_SIZE = 96;
+
+  private final LongCountMap packedCounts;
+  private final Map<String, int[]> otherCounts;
+  private final SpaceSavingCounter topCounts;
+  private final Entry entry = new Entry();
+
+  private int totalRawCount;
+  private int totalPFCount;
+  private int maxUncountedRawCount;
+  private boolean recounted;
+  private boolean truncated;
+  private boolean rawCountAvailable = true;
+
+  /**
+   * This class define an entry of the counter. The same object is reused for
+   * all the entries while iterating over the counter.
+   */
+  public static final class Entry {
+
+    private long packedIndex;
+    private String index;
+    private int rawCount;
+    private int pfCount;
+    private int error;
+
+    /**
+     * Get the index of the entry.
+     * @return the index in its string representation ("i7" or "i7+i5")
+     */
+    public String getIndex() {
+
+      if (this.index == null) {
+        this.index = PackedIndexes.unpack(this.packedIndex);
+      }
+
+      return this.index;
+    }
+
+    /**
+     * Get the packed index of the entry.
+     * @return the packed index or PackedIndexes.NOT_PACKED if the index cannot
+     *         be packed
+     */
+    public long getPackedIndex() {
+      return this.packedIndex;
+    }
+
+    /**
+     * Get the raw cluster count of the entry.
+     * @return the raw cluster count or -1 if the raw counts are not available
+     */
+    public int getRawCount() {
+      return this.rawCount;
+    }
+
+    /**
+     * Get the passing filter cluster count of the entry.
+     * @return the passing filter cluster count
+     */
+    public int getPFCount() {
+      return this.pfCount;
+    }
+
+    /**
+     * Get the maximal overestimation of the counts of the entry.
+     * @return the maximal error of the counts, always 0 if the counts are exact
+     */
+    public int getError() {
+      return this.error;
+    }
+
+    /**
+     * Count the mismatches between the index of the entry and another index.
+     * @param otherIndex the other index
+     * @param otherPackedIndex the other index packed
+     * @return the number of mismatches or -1 if the indexes have not the same
+     *         length
+     */
+    public int mismatches(final String otherIndex,
+        final long otherPackedIndex) {
+
+      if (this.packedIndex != PackedIndexes.NOT_PACKED
+          && otherPackedIndex != PackedIndexes.NOT_PACKED) {
+        return PackedIndexes.mismatches(this.packedIndex, otherPackedIndex);
+      }
+
+      return UndeterminedIndexCounter.mismatches(getIndex(), otherIndex);
+    }
+
+    private void set(final long packedIndex, final String index,
+        final int rawCount, final int pfCount, final int error) {
+
+      this.packedIndex = packedIndex;
+      this.index = index;
+      this.rawCount = rawCount;
+      this.pfCount = pfCount;
+      this.error = error;
+    }
+  }
+
+  /**
+   * This interface define a consumer of the entries of the counter.
+   */
+  public interface EntryConsumer {
+
+    /**
+     * Consume an entry.
+     * @param entry the entry
+     */
+    void accept(Entry entry);
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of distinct indexes.
+   * @return the number of distinct indexes
+   */
+  public int size() {
+
+    if (this.topCounts != null) {
+      return this.topCounts.size();
+    }
+
+    return this.packedCounts.size() + this.otherCounts.size();
+  }
+
+  /**
+   * Test if the counts are approximate. This is only the case for a bounded
+   * counter where indexes have been evicted and that has not been recounted.
+   * @return true if the counts are approximate
+   */
+  public boolean isApproximate() {
+
+    return this.topCounts != null
+        && this.topCounts.isEvicted() && !this.recounted;
+  }
+
+  /**
+   * Test if some indexes are not counted. This is the case for a bounded
+   * counter where indexes have been evicted or when the counts come from a
+   * summary that only contains the most frequent indexes.
+   * @return true if some indexes are not counted
+   */
+  public boolean isTruncated() {
+
+    return this.truncated
+        || this.topCounts != null && this.topCounts.isEvicted();
+  }
+
+  /**
+   * Test if the raw cluster counts are available. They are not available when
+   * the counts come from a summary that only contains the passing filter
+   * clusters.
+   * @return true if the raw cluster counts are available
+   */
+  public boolean isRawCountAvailable() {
+
+    return this.rawCountAvailable;
+  }
+
+  /**
+   * Get the maximal raw count of an index that is not in the counter. When the
+   * raw counts are not available, this is the maximal passing filter count.
+   * @return the maximal raw count of an index that is not in the counter
+   */
+  public int getMaxUncountedRawCount() {
+
+    if (this.topCounts == null || this.recounted) {
+      return this.maxUncountedRawCount;
+    }
+
+    return Math.max(this.maxUncountedRawCount,
+        this.topCounts.getMinRawCount());
+  }
+
+  /**
+   * Set that the counts come from a summary of the demultiplexing that only
+   * contains the passing filter clusters of the most frequent indexes. The
+   * passing filter counts must have been added as raw counts too, as the raw
+   * counts are used to rank the indexes. After this call, the raw counts are
+   * no more available and the total passing filter count is the count of all
+   * the undetermined clusters, including the indexes not in the summary.
+   * @param totalPFCount the passing filter cluster count of all the
+   *          undetermined clusters
+   * @param maxUncountedPFCount the maximal passing filter count of an index
+   *          that is not in the counter
+   */
+  public void setSummaryCounts(final int totalPFCount,
+      final int maxUncountedPFCount) {
+
+    this.truncated = true;
+    this.rawCountAvailable = false;
+    this.maxUncountedRawCount =
+        Math.max(this.maxUncountedRawCount, maxUncountedPFCount);
+    this.totalRawCount = -1;
+    this.totalPFCount = Math.max(this.totalPFCount, totalPFCount);
+  }
+
+  /**
+   * Get the total raw cluster count.
+   * @return the total raw cluster count or -1 if the raw counts are not
+   *         available
+   */
+  public int getTotalRawCount() {
+    return this.totalRawCount;
+  }
+
+  /**
+   * Get the total passing filter cluster count.
+   * @return the total passing filter cluster count
+   */
+  public int getTotalPFCount() {
+    return this.totalPFCount;
+  }
+
+  /**
+   * Get the raw cluster count of an index.
+   * @param index the index ("i7" or "i7+i5")
+   * @return the raw cluster count or -1 if the raw counts are not available
+   */
+  public int getRawCount(final String index) {
+
+    if (!this.rawCountAvailable) {
+      return -1;
+    }
+
+    final long packed = PackedIndexes.pack(index);
+
+    if (this.topCounts != null) {
+      return this.topCounts.getRawCount(packed,
+          packed == PackedIndexes.NOT_PACKED ? index : null);
+    }
+
+    if (packed != PackedIndexes.NOT_PACKED) {
+      return this.packedCounts.getRawCount(packed);
+    }
+
+    final int[] counts = this.otherCounts.get(index);
+    return counts == null ? 0 : counts[0];
+  }
+
+  /**
+   * Get the passing filter cluster count of an index.
+   * @param index the index ("i7" or "i7+i5")
+   * @return the passing filter cluster count
+   */
+  public int getPFCount(final String index) {
+
+    final long packed = PackedIndexes.pack(index);
+
+    if (this.topCounts != null) {
+      return this.topCounts.getPFCount(packed,
+          packed == PackedIndexes.NOT_PACKED ? index : null);
+    }
+
+    if (packed != PackedIndexes.NOT_PACKED) {
+      return this.packedCounts.getPFCount(packed);
+    }
+
+    final int[] counts = this.otherCounts.get(index);
+    return counts == null ? 0 : counts[1];
+  }
+
+  //
+  // Counting
+  //
+
+  /**
+   * Add a cluster.
+   * @param i7 first index
+   * @param i5 second index, can be null
+   * @param pf true if the cluster is passing filter
+   */
+  public void add(final String i7, final String i5, final boolean pf) {
+
+    add(i7, i5, 1, pf ? 1 : 0);
+  }
+
+  /**
+   * Add clusters.
+   * @param i7 first index
+   * @param i5 second index, can be null
+   * @param rawCount raw cluster count
+   * @param pfCount passing filter cluster count
+   */
+  public void add(final String i7, final String i5, final int rawCount,
+      final int pfCount) {
+
+    final long packed = PackedIndexes.pack(i7, i5);
+
+    if (this.topCounts != null) {
+      this.topCounts.add(packed, packed == PackedIndexes.NOT_PACKED
+          ? (i5 == null ? i7 : i7 + PackedIndexes.SEPARATOR + i5)
+          : null, rawCount, pfCount);
+    } else if (packed != PackedIndexes.NOT_PACKED) {
+      this.packedCounts.add(packed, rawCount, pfCount);
+    } else {
+
+      final String index =
+          i5 == null ? i7 : i7 + PackedIndexes.SEPARATOR + i5;
+      final int[] counts =
+          this.otherCounts.computeIfAbsent(index, k -> new int[2]);
+      counts[0] += rawCount;
+      counts[1] += pfCount;
+    }
+
+    this.totalRawCount += rawCount;
+    this.totalPFCount += pfCount;
+  }
+
+  /**
+   * Prepare a second pass that compute the exact counts of the indexes of a
+   * bounded counter. The counts are reset and only the indexes already in the
+   * counter will be counted.
+   */
+  public void recount() {
+
+    if (this.topCounts == null || this.recounted) {
+      return;
+    }
+
+    this.maxUncountedRawCount =
+        Math.max(this.maxUncountedRawCount, this.topCounts.getMinRawCount());
+    this.topCounts.freeze();
+    this.totalRawCount = 0;
+    this.totalPFCount = 0;
+    this.recounted = true;
+  }
+
+  /**
+   * Process all the entries of the counter.
+   * @param consumer the consumer of the entries
+   */
+  public void forEach(final EntryConsumer consumer) {
+
+    if (this.topCounts != null) {
+      this.topCounts.forEach((packedKey, otherKey, rawCount, pfCount, error) -> {
+        this.entry.set(packedKey, otherKey,
+            this.rawCountAvailable ? rawCount : -1, pfCount, error);
+        consumer.accept(this.entry);
+      });
+      return;
+    }
+
+    this.packedCounts.forEach((key, rawCount, pfCount) -> {
+      this.entry.set(key, null, this.rawCountAvailable ? rawCount : -1,
+          pfCount, 0);
+      consumer.accept(this.entry);
+    });
+
+    for (Map.Entry<String, int[]> e : this.otherCounts.entrySet()) {
+      this.entry.set(PackedIndexes.NOT_PACKED, e.getKey(),
+          this.rawCountAvailable ? e.getValue()[0] : -1, e.getValue()[1], 0);
+      consumer.accept(this.entry);
+    }
+  }
+
+  /**
+   * Get the number of mismatches of two indexes.
+   * @param a the first index
+   * @param b the second index
+   * @return the number of mismatches or -1 if the indexes have not the same
+   *         length
+   */
+  public static int mismatches(final String a, final String b) {
+
+    if (a == null || b == null || a.length() != b.length()) {
+      return -1;
+    }
+
+    final int len = a.length();
+    int result = 0;
+
+    for (int i = 0; i < len; i++) {
+      if (a.charAt(i) != b.charAt(i)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor for a counter of all the indexes.
+   */
+  public UndeterminedIndexCounter() {
+
+    this(0);
+  }
+
+  /**
+   * Constructor.
+   * @param maxEntries maximal number of indexes to count, 0 or less to count
+   *          all the indexes
+   */
+  public UndeterminedIndexCounter(final int maxEntries) {
+
+    if (maxEntries > 0) {
+      this.packedCounts = null;
+      this.otherCounts = null;
+      this.topCounts = new SpaceSavingCounter(maxEntries);
+    } else {
+      this.packedCounts = new LongCountMap();
+      this.otherCounts = new HashMap<>();
+      this.topCounts = null;
+    }
+  }
+
+}
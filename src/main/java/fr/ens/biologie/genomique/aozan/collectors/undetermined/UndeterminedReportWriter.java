@@ -0,0 +1,353 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.escape.Escaper;
+import com.google.common.html.HtmlEscapers;
+
+import fr.ens.biologie.genomique.aozan.Globals;
+
+/**
+ * This class write the HTML report of the undetermined indexes of a lane or a
+ * sample. The report is written from an HTML template while the entries are
+ * added, so unlike an XSL transformation, the rows of the report are never
+ * all in memory.
+ * @since 3.1
+ * @author agent
+ */
+public class UndeterminedReportWriter implements Closeable {
+
+  private static final Pattern VARIABLE_PATTERN =
+      Pattern.compile("\\$\\{(\\w+)\\}");
+
+  private static final String START_SECTION = "<!--START_SECTION";
+  private static final String END_SECTION = "<!--END_SECTION";
+  private static final String SAMPLES_MARKER = "<!--SAMPLES-->";
+  private static final String ENTRIES_MARKER = "<!--ENTRIES-->";
+
+  private static final Escaper ESCAPER = HtmlEscapers.htmlEscaper();
+
+  private final Writer writer;
+  private final Map<String, String> values;
+  private final List<String> columnTypes;
+  private final List<String> template;
+  private int templatePos;
+  private boolean closed;
+
+  //
+  // Writer methods
+  //
+
+  /**
+   * Write an entry of the report.
+   * @param classValue the class of the row, used to filter the rows
+   * @param entryValues the values of the columns of the entry
+   * @throws IOException if an error occurs while writing the entry
+   */
+  public void writeEntry(final String classValue,
+      final List<String> entryValues) throws IOException {
+
+    requireNonNull(classValue, "classValue argument cannot be null");
+    requireNonNull(entryValues, "entryValues argument cannot be null");
+    checkArgument(entryValues.size() == this.columnTypes.size(),
+        "Invalid number of values: " + entryValues.size());
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<tr class=\"");
+    sb.append(ESCAPER.escape(classValue));
+    sb.append("\">");
+
+    for (int i = 0; i < entryValues.size(); i++) {
+
+      final String value = entryValues.get(i);
+
+      sb.append("<td>");
+      sb.append(ESCAPER.escape("int".equals(this.columnTypes.get(i))
+          ? formatInteger(value) : value));
+      sb.append("</td>");
+    }
+
+    sb.append("</tr>\n");
+
+    this.writer.write(sb.toString());
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    try {
+      // Write the end of the template after the entries
+      writeTemplate(null, null);
+    } finally {
+      this.writer.close();
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Write the template until the entries marker or until the end of the
+   * template.
+   * @param sampleNames sample names of the filter of the rows
+   * @param columnNames names of the columns of the report
+   * @throws IOException if an error occurs while writing the template
+   */
+  private void writeTemplate(final List<String> sampleNames,
+      final List<String> columnNames) throws IOException {
+
+    boolean inSection = false;
+    boolean printSection = false;
+
+    while (this.templatePos < this.template.size()) {
+
+      final String line = this.template.get(this.templatePos++);
+
+      if (line.startsWith(START_SECTION)) {
+        inSection = true;
+
+        final List<String> fields =
+            Splitter.on(' ').omitEmptyStrings().splitToList(line);
+        printSection =
+            fields.size() > 1 && isSectionEnabled(fields.get(1), sampleNames);
+        continue;
+
+      } else if (line.startsWith(END_SECTION)) {
+        inSection = false;
+        continue;
+      }
+
+      if (inSection && !printSection) {
+        continue;
+      }
+
+      if (line.startsWith(SAMPLES_MARKER)) {
+        writeSampleFilters(sampleNames);
+      } else if (line.startsWith(ENTRIES_MARKER)) {
+        writeColumns(columnNames);
+        return;
+      } else {
+        this.writer.write(replaceVariables(line));
+        this.writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * Test if a section of the template must be written.
+   * @param section the name of the section
+   * @param sampleNames sample names of the filter of the rows
+   * @return true if the section must be written
+   */
+  private boolean isSectionEnabled(final String section,
+      final List<String> sampleNames) {
+
+    switch (section) {
+
+    case "project":
+      return this.values.get("projectName") != null;
+
+    case "samples":
+      return sampleNames != null && !sampleNames.isEmpty();
+
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Write the links to filter the rows of the report by sample.
+   * @param sampleNames sample names
+   * @throws IOException if an error occurs while writing the links
+   */
+  private void writeSampleFilters(final List<String> sampleNames)
+      throws IOException {
+
+    final List<String> quotedNames = new ArrayList<>();
+    for (final String sampleName : sampleNames) {
+      final String quotedName = "'" + sampleName + "'";
+      quotedNames.add(quotedName);
+      writeSampleFilter(quotedName, sampleName);
+    }
+
+    writeSampleFilter(Joiner.on(',').join(quotedNames), "All samples");
+  }
+
+  /**
+   * Write a link to filter the rows of the report.
+   * @param command the argument of the filter JavaScript function
+   * @param text the text of the link
+   * @throws IOException if an error occurs while writing the link
+   */
+  private void writeSampleFilter(final String command, final String text)
+      throws IOException {
+
+    this.writer.write("<td><a href=\"javascript:void(0);\" "
+        + "class=\"linkFilterInactivate\" onclick=\"javascript:filterRow(["
+        + ESCAPER.escape(command) + "], this);\">" + ESCAPER.escape(text)
+        + "</a></td>\n");
+  }
+
+  /**
+   * Write the header row of the table of the entries.
+   * @param columnNames the names of the columns
+   * @throws IOException if an error occurs while writing the header
+   */
+  private void writeColumns(final List<String> columnNames)
+      throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<tr class=\"headerColumns\">");
+    for (final String name : columnNames) {
+      sb.append("<th>");
+      sb.append(ESCAPER.escape(name));
+      sb.append("</th>");
+    }
+    sb.append("</tr>\n");
+
+    this.writer.write(sb.toString());
+  }
+
+  /**
+   * Replace the variables of a line of the template by their escaped values.
+   * The unknown variables are replaced by an empty string.
+   * @param line the line
+   * @return the line with the variables replaced
+   */
+  private String replaceVariables(final String line) {
+
+    final Matcher m = VARIABLE_PATTERN.matcher(line);
+    final StringBuilder sb = new StringBuilder();
+
+    while (m.find()) {
+      final String value = this.values.get(m.group(1));
+      m.appendReplacement(sb,
+          Matcher.quoteReplacement(value == null ? "" : ESCAPER.escape(value)));
+    }
+    m.appendTail(sb);
+
+    return sb.toString();
+  }
+
+  /**
+   * Format an integer with a space as grouping separator.
+   * @param value the integer as a string
+   * @return the formatted integer or the value if it is not an integer
+   */
+  static String formatInteger(final String value) {
+
+    try {
+      return String.format(Globals.DEFAULT_LOCALE, "%,d", Long.parseLong(value))
+          .replace(',', ' ');
+    } catch (NumberFormatException e) {
+      return value;
+    }
+  }
+
+  /**
+   * Read the lines of the template.
+   * @return a list with the lines of the template
+   * @throws IOException if an error occurs while reading the template
+   */
+  private static List<String> readTemplate() throws IOException {
+
+    final InputStream is = UndeterminedReportWriter.class
+        .getResourceAsStream(Globals.UNDETERMINED_HTML_TEMPLATE_FILENAME);
+
+    if (is == null) {
+      throw new IOException("Unable to find the template of the report: "
+          + Globals.UNDETERMINED_HTML_TEMPLATE_FILENAME);
+    }
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(is, StandardCharsets.UTF_8))) {
+      return reader.lines().collect(Collectors.toList());
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor. The beginning of the report is written until the table of
+   * the entries.
+   * @param writer the writer of the report
+   * @param values the values of the variables of the template, like the
+   *          common tags of the reports, sampleName, projectName, description
+   *          and condition. The null values are ignored
+   * @param sampleNames names of the samples used to filter the rows of the
+   *          report, can be empty
+   * @param columnNames the names of the columns of the report
+   * @param columnTypes the types of the columns of the report ("int" or
+   *          "string")
+   * @throws IOException if an error occurs while writing the report
+   */
+  public UndeterminedReportWriter(final Writer writer,
+      final Map<String, String> values, final List<String> sampleNames,
+      final List<String> columnNames, final List<String> columnTypes)
+      throws IOException {
+
+    requireNonNull(writer, "writer argument cannot be null");
+    requireNonNull(values, "values argument cannot be null");
+    requireNonNull(sampleNames, "sampleNames argument cannot be null");
+    requireNonNull(columnNames, "columnNames argument cannot be null");
+    requireNonNull(columnTypes, "columnTypes argument cannot be null");
+    checkArgument(columnNames.size() == columnTypes.size(),
+        "The number of column names and types must be equal");
+
+    this.writer = writer;
+    this.values = values;
+    this.columnTypes = new ArrayList<>(columnTypes);
+    this.template = readTemplate();
+
+    writeTemplate(sampleNames, columnNames);
+  }
+
+}
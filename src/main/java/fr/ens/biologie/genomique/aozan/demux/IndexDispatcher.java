@@ -0,0 +1,281 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.IndexNeighborhood;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.PackedIndexes;
+
+/**
+ * This class define the dispatcher of the reads of the re-demultiplexing. The
+ * index of a read ("i7" or "i7+i5") is packed and searched in the precomputed
+ * neighborhood of the indexes to re-demultiplex, so the output of a read is
+ * found with a single hash lookup whatever the number of indexes and the
+ * number of mismatches allowed. The indexes that cannot be packed (e.g. with
+ * '.' wildcards or 'N' bases) are compared one by one with the index of the
+ * read. An instance of this class is immutable and can be shared by several
+ * threads.
+ * @since 3.1
+ * @author agent
+ */
+public class IndexDispatcher {
+
+  /** Value returned for the reads that must not be written. */
+  public static final int NO_OUTPUT = -1;
+
+  /** Wildcard character of the indexes. */
+  public static final char WILDCARD = '.';
+
+  private final boolean dualIndexes;
+  private final int maxMismatches;
+
+  // Indexes in the neighborhood and their outputs, by ordinal
+  private final String[] neighborhoodIndexes;
+  private final int[] neighborhoodOutputs;
+  private final IndexNeighborhood neighborhood;
+
+  // Indexes that cannot be packed
+  private final String[] patterns;
+  private final int[] patternOutputs;
+
+  /**
+   * This class define the best match of a read index.
+   */
+  private final class Match implements IndexNeighborhood.CandidateConsumer {
+
+    private int mismatches = Integer.MAX_VALUE;
+    private int output = NO_OUTPUT;
+
+    @Override
+    public void accept(final int ordinal, final int mismatches) {
+      add(neighborhoodOutputs[ordinal], mismatches);
+    }
+
+    void add(final int output, final int mismatches) {
+
+      if (mismatches < this.mismatches) {
+        this.mismatches = mismatches;
+        this.output = output;
+      } else if (mismatches == this.mismatches && output != this.output) {
+        // Ambiguous index
+        this.output = NO_OUTPUT;
+      }
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Test if the indexes to re-demultiplex are dual indexes.
+   * @return true if the indexes are dual indexes
+   */
+  public boolean isDualIndexes() {
+    return this.dualIndexes;
+  }
+
+  /**
+   * Get the maximal number of mismatches allowed.
+   * @return the maximal number of mismatches
+   */
+  public int getMaxMismatches() {
+    return this.maxMismatches;
+  }
+
+  //
+  // Dispatch
+  //
+
+  /**
+   * Get the output of a read.
+   * @param readName the name of the read. The index of the read is the last
+   *          field of the name
+   * @return the ordinal of the output or NO_OUTPUT if the index of the read is
+   *         too far from the indexes to re-demultiplex or is ambiguous
+   */
+  public int dispatchRead(final String readName) {
+
+    requireNonNull(readName, "readName argument cannot be null");
+
+    return dispatch(readName.substring(readName.lastIndexOf(':') + 1));
+  }
+
+  /**
+   * Get the output of an index.
+   * @param index the index ("i7" or "i7+i5")
+   * @return the ordinal of the output or NO_OUTPUT if the index is too far
+   *         from the indexes to re-demultiplex or is ambiguous
+   */
+  public int dispatch(final String index) {
+
+    requireNonNull(index, "index argument cannot be null");
+
+    // Ignore the second index if only the first index is re-demultiplexed
+    final int separator = index.indexOf(PackedIndexes.SEPARATOR);
+    final String readIndex = separator != -1 && !this.dualIndexes
+        ? index.substring(0, separator) : index;
+
+    final Match match = new Match();
+
+    final long packedIndex = PackedIndexes.pack(readIndex);
+
+    if (packedIndex != PackedIndexes.NOT_PACKED) {
+
+      if (this.neighborhood != null) {
+        this.neighborhood.lookup(packedIndex, match);
+      }
+    } else {
+
+      // The index of the read contains other bases than A, C, G and T
+      for (int i = 0; i < this.neighborhoodIndexes.length; i++) {
+
+        final int mismatches =
+            mismatches(this.neighborhoodIndexes[i], readIndex);
+
+        if (mismatches >= 0 && mismatches <= this.maxMismatches) {
+          match.add(this.neighborhoodOutputs[i], mismatches);
+        }
+      }
+    }
+
+    for (int i = 0; i < this.patterns.length; i++) {
+
+      final int mismatches = mismatches(this.patterns[i], readIndex);
+
+      if (mismatches >= 0 && mismatches <= this.maxMismatches) {
+        match.add(this.patternOutputs[i], mismatches);
+      }
+    }
+
+    return match.output;
+  }
+
+  /**
+   * Count the mismatches between an index that may contains wildcards and
+   * another index. The wildcards match with any base.
+   * @param pattern the index with wildcards
+   * @param index the other index
+   * @return the number of mismatches or -1 if the length of the indexes are
+   *         not the same
+   */
+  static int mismatches(final String pattern, final String index) {
+
+    final int len = pattern.length();
+
+    if (len != index.length()) {
+      return -1;
+    }
+
+    int result = 0;
+
+    for (int i = 0; i < len; i++) {
+
+      final char c = pattern.charAt(i);
+
+      if (c != WILDCARD && c != index.charAt(i)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param indexes the indexes to re-demultiplex ("i7" or "i7+i5"). All the
+   *          indexes must be single indexes or dual indexes
+   * @param outputs the ordinal of the output of each index
+   * @param maxMismatches maximal number of mismatches between the index of a
+   *          read and an index to re-demultiplex
+   */
+  public IndexDispatcher(final List<String> indexes, final int[] outputs,
+      final int maxMismatches) {
+
+    requireNonNull(indexes, "indexes argument cannot be null");
+    requireNonNull(outputs, "outputs argument cannot be null");
+    checkArgument(indexes.size() == outputs.length,
+        "indexes and outputs must have the same size");
+    checkArgument(
+        maxMismatches >= 0 && maxMismatches <= IndexNeighborhood.MAX_MISMATCHES,
+        "maxMismatches must be in [0, "
+            + IndexNeighborhood.MAX_MISMATCHES + "]: " + maxMismatches);
+
+    this.maxMismatches = maxMismatches;
+    this.dualIndexes = !indexes.isEmpty()
+        && indexes.get(0).indexOf(PackedIndexes.SEPARATOR) != -1;
+
+    final List<Long> packed = new ArrayList<>();
+    final List<String> packedIndexes = new ArrayList<>();
+    final List<Integer> packedOutputs = new ArrayList<>();
+    final List<String> patterns = new ArrayList<>();
+    final List<Integer> patternOutputs = new ArrayList<>();
+
+    for (int i = 0; i < outputs.length; i++) {
+
+      final String index = requireNonNull(indexes.get(i));
+
+      checkArgument(
+          (index.indexOf(PackedIndexes.SEPARATOR) != -1) == this.dualIndexes,
+          "Single and dual indexes cannot be mixed: " + index);
+
+      final long p = PackedIndexes.pack(index);
+
+      if (p != PackedIndexes.NOT_PACKED) {
+        packed.add(p);
+        packedIndexes.add(index);
+        packedOutputs.add(outputs[i]);
+      } else {
+        patterns.add(index);
+        patternOutputs.add(outputs[i]);
+      }
+    }
+
+    this.neighborhoodIndexes = packedIndexes.toArray(new String[0]);
+    this.neighborhoodOutputs = new int[packed.size()];
+    final long[] packedArray = new long[packed.size()];
+    for (int i = 0; i < packedArray.length; i++) {
+      packedArray[i] = packed.get(i);
+      this.neighborhoodOutputs[i] = packedOutputs.get(i);
+    }
+    this.neighborhood = packed.isEmpty()
+        ? null : new IndexNeighborhood(packedArray, maxMismatches);
+
+    this.patterns = patterns.toArray(new String[0]);
+    this.patternOutputs = new int[patternOutputs.size()];
+    for (int i = 0; i < this.patternOutputs.length; i++) {
+      this.patternOutputs[i] = patternOutputs.get(i);
+    }
+  }
+
+}
@@ -0,0 +1,240 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class define the writing of batches of entries in several outputs. The
+ * batches of an output are written in the order of their submission, the
+ * outputs are written in parallel. The number of batches waiting to be written
+ * is bounded, so the caller is blocked while the writers are late. When a write
+ * fails, the next batches of the output are not written and the next calls to
+ * write() fail.
+ * @param <E> type of the entries
+ * @since 3.1
+ * @author agent
+ */
+class OrderedBatchWriter<E> implements Closeable {
+
+  private final List<Output<E>> outputs;
+  private final Executor executor;
+  private final Semaphore pendingBatches;
+
+  /**
+   * This interface define the writer of an output.
+   * @param <E> type of the entries
+   */
+  interface EntryWriter<E> extends Closeable {
+
+    /**
+     * Write an entry.
+     * @param entry the entry to write
+     * @throws IOException if an error occurs while writing the entry
+     */
+    void write(E entry) throws IOException;
+  }
+
+  /**
+   * This class define an output. The writes of the output are chained, so they
+   * are performed in the order of the batches.
+   */
+  private static final class Output<E> {
+
+    private final EntryWriter<E> writer;
+    private volatile CompletableFuture<Void> tail =
+        CompletableFuture.completedFuture(null);
+
+    Output(final EntryWriter<E> writer) {
+      this.writer = writer;
+    }
+  }
+
+  /**
+   * Write a batch of entries for each output. This method returns once the
+   * batches have been queued.
+   * @param batches the batches to write, in the order of the outputs
+   * @throws IOException if a previous write has failed or if the thread is
+   *           interrupted
+   */
+  void write(final List<List<E>> batches) throws IOException {
+
+    requireNonNull(batches, "batches argument cannot be null");
+
+    // Fail fast if a previous write has failed
+    for (Output<E> output : this.outputs) {
+      if (output.tail.isCompletedExceptionally()) {
+        waitFor(output.tail);
+      }
+    }
+
+    for (int i = 0; i < batches.size(); i++) {
+
+      final List<E> batch = batches.get(i);
+
+      if (batch.isEmpty()) {
+        continue;
+      }
+
+      try {
+        this.pendingBatches.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Writing interrupted", e);
+      }
+
+      // The permit is released whether the write succeeds, fails or is not
+      // performed because a previous write of the output has failed
+      final Output<E> output = this.outputs.get(i);
+      output.tail = output.tail.thenRunAsync(() -> {
+
+        try {
+          for (E e : batch) {
+            output.writer.write(e);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, this.executor).whenComplete((r, e) -> this.pendingBatches.release());
+    }
+  }
+
+  /**
+   * Wait the end of the writes of all the outputs.
+   * @throws IOException if a write has failed or if the thread is interrupted
+   */
+  void await() throws IOException {
+
+    for (Output<E> output : this.outputs) {
+      waitFor(output.tail);
+    }
+  }
+
+  /**
+   * Wait the end of the pending writes and close the writers of all the
+   * outputs. The errors of the writes are not reported by this method.
+   * @throws IOException if an error occurs while closing a writer
+   */
+  @Override
+  public void close() throws IOException {
+
+    IOException exception = null;
+
+    for (Output<E> output : this.outputs) {
+      try {
+        output.tail.exceptionally(e -> null).join();
+        output.writer.close();
+      } catch (IOException e) {
+        exception = e;
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Wait the end of a write.
+   * @param future the write
+   * @throws IOException if an error occurs in the write
+   */
+  private static void waitFor(final CompletableFuture<Void> future)
+      throws IOException {
+
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Writing interrupted", e);
+    } catch (ExecutionException e) {
+      throw toIOException(e.getCause());
+    }
+  }
+
+  /**
+   * Get the IOException that caused an error.
+   * @param t the error
+   * @return an IOException
+   */
+  static IOException toIOException(final Throwable t) {
+
+    Throwable cause = t;
+    while ((cause instanceof CompletionException
+        || cause instanceof ExecutionException
+        || cause instanceof UncheckedIOException)
+        && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+
+    return new IOException(cause);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param writers the writers of the outputs
+   * @param executor executor of the writes
+   * @param maxPendingBatches maximal number of batches waiting to be written
+   */
+  OrderedBatchWriter(final List<? extends EntryWriter<E>> writers,
+      final Executor executor, final int maxPendingBatches) {
+
+    requireNonNull(writers, "writers argument cannot be null");
+    requireNonNull(executor, "executor argument cannot be null");
+    checkArgument(maxPendingBatches > 0,
+        "maxPendingBatches must be greater than 0: " + maxPendingBatches);
+
+    this.outputs = new ArrayList<>(writers.size());
+    for (EntryWriter<E> writer : writers) {
+      this.outputs.add(new Output<>(writer));
+    }
+    this.executor = executor;
+    this.pendingBatches = new Semaphore(maxPendingBatches);
+  }
+
+}
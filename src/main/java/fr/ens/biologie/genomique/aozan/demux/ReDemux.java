@@ -34,17 +34,28 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.IndexNeighborhood;
+import fr.ens.biologie.genomique.aozan.collectors.undetermined.PackedIndexes;
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
@@ -58,17 +69,34 @@ import fr.ens.biologie.genomique.kenetre.illumina.samplesheet.io.SampleSheetRead
 import fr.ens.biologie.genomique.kenetre.io.CompressionType;
 
 /**
- * This class allow to retrieve index from undetermined indices.
+ * This class allow to retrieve index from undetermined indices. The reads of
+ * the undetermined files are read by blocks, the blocks are dispatched on the
+ * samples by worker threads and the reads of each sample are written and
+ * compressed in parallel of the other samples.
  * @author Laurent Jourdren
  */
 public class ReDemux {
 
-  private static final int INDEX_LENGTH = 6;
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Default maximal number of mismatches. */
+  public static final int DEFAULT_MAX_MISMATCHES = 0;
+
+  // Number of reads of a block
+  private static final int BLOCK_SIZE = 10000;
+
+  // Maximal number of blocks and sample batches waiting for a thread by
+  // thread, this limits the memory used when the writers are slower than the
+  // reader
+  private static final int MAX_PENDING_BY_THREAD = 4;
 
   private final File inputDir;
   private final File outputDir;
   private final SampleSheet sampleSheet;
   private final Map<Integer, ReDemuxLane> lanesToRedemux = new HashMap<>();
+  private int maxMismatches = DEFAULT_MAX_MISMATCHES;
+  private int threadCount = Runtime.getRuntime().availableProcessors();
 
   @SuppressWarnings("unused")
   private String bcl2fastqVersion;
@@ -83,11 +111,11 @@ public class ReDemux {
     private final List<Integer> reads;
     private final File inputDir;
     private final File outputDir;
-    private final Map<Pattern, Sample> newIndexes = new HashMap<>();
+    private final Map<String, Sample> newIndexes = new LinkedHashMap<>();
 
     /**
      * Add an index for the re-demultiplexing.
-     * @param index the index
+     * @param index the index ("i7" or "i7+i5")
      * @throws AozanException if the index is invalid
      */
     public void addIndex(final String index) throws AozanException {
@@ -95,10 +123,16 @@ public class ReDemux {
       requireNonNull(index, "index cannot be null");
 
       final String upperIndex = index.trim().toUpperCase();
+      final int separator = upperIndex.indexOf(PackedIndexes.SEPARATOR);
 
-      checkArgument(upperIndex.length() == INDEX_LENGTH,
-          "Invalid index, the length of the index must be "
-              + INDEX_LENGTH + " : " + index);
+      checkArgument(
+          !upperIndex.isEmpty()
+              && upperIndex.length() <= PackedIndexes.MAX_BASES + 1
+              && separator != 0 && separator != upperIndex.length() - 1
+              && upperIndex.indexOf(PackedIndexes.SEPARATOR,
+                  separator + 1) == -1,
+          "Invalid index, the length of the index must be between 1 and "
+              + PackedIndexes.MAX_BASES + " : " + index);
 
       final char[] array = upperIndex.toCharArray();
 
@@ -111,17 +145,27 @@ public class ReDemux {
         case 'G':
         case 'C':
         case 'N':
-        case '.':
+        case IndexDispatcher.WILDCARD:
+        case PackedIndexes.SEPARATOR:
           break;
 
         default:
           throw new IllegalArgumentException(
-              "Invalid character found for index, 'A', 'T', 'G', 'C', 'N' and '.' are only allowed: "
+              "Invalid character found for index, 'A', 'T', 'G', 'C', 'N', '.' and '+' are only allowed: "
                   + index);
         }
       }
 
-      if (index.indexOf('.') != -1) {
+      // Single and dual indexes cannot be mixed in a lane
+      if (!this.newIndexes.isEmpty()
+          && isDualIndex(this.newIndexes.keySet().iterator().next()) != isDualIndex(
+              upperIndex)) {
+        throw new AozanException(
+            "Single and dual indexes cannot be mixed on lane "
+                + this.lane + ": " + index);
+      }
+
+      if (index.indexOf(IndexDispatcher.WILDCARD) != -1) {
         addIndexRegex(upperIndex);
       } else {
         addIndexSequence(upperIndex);
@@ -130,7 +174,7 @@ public class ReDemux {
     }
 
     /**
-     * Add a regular expression index for the re-demultiplexing.
+     * Add an index with wildcards for the re-demultiplexing.
      * @param index the index
      * @throws AozanException if the index is invalid
      */
@@ -138,7 +182,6 @@ public class ReDemux {
 
       requireNonNull(index, "Index argument cannot be null");
 
-      final Pattern pattern = Pattern.compile(index);
       Sample sample = null;
 
       try {
@@ -146,7 +189,10 @@ public class ReDemux {
             .getCheckedDemuxTableSection(samplesheet)
             .getSampleInLane(this.lane)) {
 
-          if (pattern.matcher(s.getIndex1()).matches()) {
+          final String sampleIndex = getSampleIndex(s, isDualIndex(index));
+
+          if (sampleIndex != null
+              && IndexDispatcher.mismatches(index, sampleIndex) == 0) {
 
             // Check if the index matches with more than one sample
             if (sample != null)
@@ -165,7 +211,7 @@ public class ReDemux {
         throw new AozanException(
             "No sample matches with index on lane " + this.lane + ": " + index);
       }
-      this.newIndexes.put(pattern, sample);
+      this.newIndexes.put(index, sample);
     }
 
     /**
@@ -186,10 +232,18 @@ public class ReDemux {
             .getCheckedDemuxTableSection(samplesheet)
             .getSampleInLane(this.lane)) {
 
-          final String sampleIndex = s.getIndex1();
+          final String sampleIndex = getSampleIndex(s, isDualIndex(index));
 
-          // TODO instead call mismatches method from Undetermined Thread
-          final int mismatches = mismatches(index, sampleIndex);
+          if (sampleIndex == null) {
+            continue;
+          }
+
+          final int mismatches = IndexDispatcher.mismatches(index, sampleIndex);
+
+          // Ignore the samples with an index of another length
+          if (mismatches < 0) {
+            continue;
+          }
 
           if (mismatches < bestScore) {
 
@@ -211,8 +265,9 @@ public class ReDemux {
       }
 
       // Check the number of mismatches of the best score
-      if (bestScore > 2) {
-        throw new AozanException("Cannot allow more than 2 mismatches on lane "
+      if (bestScore > IndexNeighborhood.MAX_MISMATCHES) {
+        throw new AozanException("Cannot allow more than "
+            + IndexNeighborhood.MAX_MISMATCHES + " mismatches on lane "
             + this.lane + ": " + index);
       }
 
@@ -223,15 +278,18 @@ public class ReDemux {
                 + this.lane + ": " + index);
       }
 
-      this.newIndexes.put(Pattern.compile(index), sample);
+      this.newIndexes.put(index, sample);
     }
 
     /**
-     * Re-demultiplex all the reads.
+     * Re-demultiplex all the reads. The reads are processed in parallel.
+     * @param maxMismatches maximal number of mismatches
+     * @param threadCount number of threads of the workers and of the writers
      * @throws IOException if an error occurs while re-demultiplexing
      * @throws BadBioEntryException if FASTQ entry read is invalid
      */
-    private void reDemux() throws IOException, BadBioEntryException {
+    private void reDemux(final int maxMismatches, final int threadCount)
+        throws IOException, BadBioEntryException {
 
       if (this.reads.isEmpty()) {
         throw new IOException("No undetermined file found");
@@ -250,19 +308,77 @@ public class ReDemux {
               "The read for the undetermined file cannot be greater than 2 in lane "
                   + this.lane + ": " + i);
         }
+      }
+
+      // Create the dispatcher of the reads, there is an output by sample
+      final List<String> indexes = new ArrayList<>(this.newIndexes.keySet());
+      final List<Sample> samples = new ArrayList<>();
+      final int[] outputs = new int[indexes.size()];
 
-        // Launch demultiplexing for the lane
-        reDemux(i);
+      for (int i = 0; i < outputs.length; i++) {
+
+        final Sample sample = this.newIndexes.get(indexes.get(i));
+        int output = samples.indexOf(sample);
+        if (output == -1) {
+          output = samples.size();
+          samples.add(sample);
+        }
+        outputs[i] = output;
+      }
+
+      final IndexDispatcher dispatcher =
+          new IndexDispatcher(indexes, outputs, maxMismatches);
+
+      LOGGER.info("REDEMUX: re-demultiplex lane "
+          + this.lane + ", " + indexes.size() + " index(es) for "
+          + samples.size() + " sample(s), " + maxMismatches
+          + " mismatch(es) allowed, " + threadCount + " thread(s)");
+
+      final ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+      final ExecutorService writers = Executors.newFixedThreadPool(threadCount);
+      final ExecutorService readers =
+          Executors.newFixedThreadPool(this.reads.size());
+
+      try {
+
+        // The reads are processed in parallel, the order of the reads in the
+        // files of a read is kept, so the pairs remain synchronized
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int read : this.reads) {
+          futures.add(readers.submit(() -> {
+            reDemux(read, dispatcher, samples, workers, writers,
+                threadCount * MAX_PENDING_BY_THREAD);
+            return null;
+          }));
+        }
+
+        for (Future<Void> f : futures) {
+          waitFor(f);
+        }
+
+      } finally {
+        readers.shutdownNow();
+        workers.shutdownNow();
+        writers.shutdownNow();
       }
     }
 
     /**
      * Re-demultiplex a read.
      * @param read read index
-     * @throws IOException
-     * @throws BadBioEntryException
+     * @param dispatcher dispatcher of the reads
+     * @param samples the samples of the outputs
+     * @param workers executor of the dispatch of the blocks
+     * @param writers executor of the writes
+     * @param maxPending maximal number of blocks and batches waiting for a
+     *          thread
+     * @throws IOException if an error occurs while re-demultiplexing
+     * @throws BadBioEntryException if FASTQ entry read is invalid
      */
-    private void reDemux(int read) throws IOException, BadBioEntryException {
+    private void reDemux(final int read, final IndexDispatcher dispatcher,
+        final List<Sample> samples, final ExecutorService workers,
+        final ExecutorService writers, final int maxPending)
+        throws IOException, BadBioEntryException {
 
       // Check if directory exists
       if (!inputDir.isDirectory())
@@ -282,57 +398,118 @@ public class ReDemux {
           .getCompressionTypeByFilename(undeterminedFiles.get(0).getName());
 
       // Create the writers
-      // final Map<Pattern, FastqWriter> writers =
-      // createWriters(read, compression);
-
-      final Map<String, Entity> writers = createWriters2(read, compression);
+      final List<OrderedBatchWriter.EntryWriter<ReadSequence>> sampleWriters =
+          createWriters(read, compression, samples);
 
-      System.out
-          .println("reDemux method, nupmber index retrieve from command line "
-              + this.newIndexes.size() + " with " + writers.size()
-              + " create on fastq.");
+      final Deque<Future<List<List<ReadSequence>>>> blocks =
+          new ArrayDeque<>();
 
-      // Create an array with the pattern. An array is faster than a collection.
-      final List<Pattern> patterns = new ArrayList<>();
-      for (Map.Entry<String, Entity> e : writers.entrySet()) {
-        patterns.addAll(e.getValue().getPatterns());
-      }
+      try (OrderedBatchWriter<ReadSequence> outputs =
+          new OrderedBatchWriter<>(sampleWriters, writers, maxPending)) {
 
-      for (File file : undeterminedFiles) {
+        for (File file : undeterminedFiles) {
 
-        final FastqReader reader = new FastqReader(createInputStream(file));
+          final FastqReader reader = new FastqReader(createInputStream(file));
 
-        for (ReadSequence rs : reader) {
+          try {
 
-          // Do not use IlluminaReadId class because manual parsing is faster
-          final String seqName = rs.getName();
-          final String index = seqName.substring(seqName.lastIndexOf(':') + 1);
+            List<ReadSequence> block = new ArrayList<>(BLOCK_SIZE);
 
-          for (Pattern p : patterns) {
-            if (p.matcher(index).matches()) {
+            for (ReadSequence rs : reader) {
 
-              for (Map.Entry<String, Entity> e : writers.entrySet()) {
+              block.add(rs);
 
-                if (e.getValue().getPatterns().contains(p)) {
-                  e.getValue().getFw().write(rs);
-                  // writers.get(p).write(rs);
-                  // status.add(p);
-                  break;
-                }
+              if (block.size() == BLOCK_SIZE) {
+                submitBlock(block, dispatcher, sampleWriters.size(), workers,
+                    blocks, maxPending, outputs);
+                block = new ArrayList<>(BLOCK_SIZE);
               }
             }
+            reader.throwException();
+
+            if (!block.isEmpty()) {
+              submitBlock(block, dispatcher, sampleWriters.size(), workers,
+                  blocks, maxPending, outputs);
+            }
+
+          } finally {
+            reader.close();
           }
         }
-        reader.throwException();
-        reader.close();
 
-        // Close writers
-        for (Entity e : writers.values()) {
-          e.getFw().close();
+        // Write the remaining blocks
+        while (!blocks.isEmpty()) {
+          outputs.write(waitFor(blocks.poll()));
         }
 
+        // The writers are closed once all the files have been processed
+        outputs.await();
       }
+    }
+
+    /**
+     * Submit a block of reads to the workers. If too many blocks are waiting,
+     * the oldest block is written before.
+     */
+    private static void submitBlock(final List<ReadSequence> block,
+        final IndexDispatcher dispatcher, final int outputCount,
+        final ExecutorService workers,
+        final Deque<Future<List<List<ReadSequence>>>> blocks,
+        final int maxPending, final OrderedBatchWriter<ReadSequence> outputs)
+        throws IOException {
 
+      if (blocks.size() >= maxPending) {
+        outputs.write(waitFor(blocks.poll()));
+      }
+
+      blocks.add(
+          workers.submit(() -> dispatchBlock(block, dispatcher, outputCount)));
+    }
+
+    /**
+     * Dispatch the reads of a block on the outputs.
+     * @param block the block of reads
+     * @param dispatcher the dispatcher
+     * @param outputCount the number of outputs
+     * @return a list with the reads of each output
+     */
+    private static List<List<ReadSequence>> dispatchBlock(
+        final List<ReadSequence> block, final IndexDispatcher dispatcher,
+        final int outputCount) {
+
+      final List<List<ReadSequence>> result = new ArrayList<>(outputCount);
+      for (int i = 0; i < outputCount; i++) {
+        result.add(new ArrayList<>());
+      }
+
+      for (ReadSequence rs : block) {
+
+        final int output = dispatcher.dispatchRead(rs.getName());
+
+        if (output != IndexDispatcher.NO_OUTPUT) {
+          result.get(output).add(rs);
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Wait the end of a task.
+     * @param future the task
+     * @return the result of the task
+     * @throws IOException if an error occurs in the task
+     */
+    private static <V> V waitFor(final Future<V> future) throws IOException {
+
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Re-demultiplexing interrupted", e);
+      } catch (ExecutionException e) {
+        throw OrderedBatchWriter.toIOException(e.getCause());
+      }
     }
 
     /**
@@ -354,89 +531,84 @@ public class ReDemux {
      * Create writers that compress output if needed.
      * @param read read to re-demultiplex
      * @param compression compression of the writers
-     * @return a map with the writers
+     * @param samples samples of the outputs
+     * @return a list with the writers
      * @throws FileNotFoundException if one of the output files cannot be
      *           created
      * @throws IOException if one of the output files cannot be created
      */
-    private Map<Pattern, FastqWriter> createWriters(final int read,
-        final CompressionType compression)
+    private List<OrderedBatchWriter.EntryWriter<ReadSequence>> createWriters(
+        final int read, final CompressionType compression,
+        final List<Sample> samples)
         throws FileNotFoundException, IOException {
 
-      final Map<Pattern, FastqWriter> result = new HashMap<>();
-
-      for (Map.Entry<Pattern, Sample> e : this.newIndexes.entrySet()) {
-
-        final String sampleProject = e.getValue().getSampleProject();
-        final String sampleName = e.getValue().getDemultiplexingName();
-        final String sampleIndex = e.getValue().getIndex1();
+      final List<OrderedBatchWriter.EntryWriter<ReadSequence>> result =
+          new ArrayList<>();
 
-        // Define the output directory
-        final File subdir = new File(this.outputDir, "Project_"
-            + sampleProject + File.separator + "Sample_" + sampleName);
+      try {
 
-        // Create output directory if not exists
-        if (!subdir.isDirectory()) {
+        for (Sample sample : samples) {
 
-          if (!subdir.mkdirs()) {
-            throw new IOException("Cannot create output directory: " + subdir);
-          }
-        }
+          final String sampleProject = sample.getSampleProject();
+          final String sampleName = sample.getDemultiplexingName();
+          final String sampleIndex = sample.getIndex1();
 
-        // Define the output file
-        final File file = new File(subdir,
-            sampleName
-                + "_" + sampleIndex + "_L00" + lane + "_R" + read + "_redemux_"
-                + e.getKey().pattern() + ".fastq" + compression.getExtension());
+          // Define the output directory
+          final File subdir = new File(this.outputDir, "Project_"
+              + sampleProject + File.separator + "Sample_" + sampleName);
 
-        final OutputStream out =
-            compression.createOutputStream(new FileOutputStream(file));
-
-        result.put(e.getKey(), new FastqWriter(out));
-      }
+          // Create output directory if not exists
+          if (!subdir.isDirectory()) {
 
-      return result;
-    }
-
-    private Map<String, Entity> createWriters2(final int read,
-        final CompressionType compression)
-        throws FileNotFoundException, IOException {
-
-      final Map<String, Entity> result = new HashMap<>();
+            if (!subdir.mkdirs()) {
+              throw new IOException(
+                  "Cannot create output directory: " + subdir);
+            }
+          }
 
-      for (Map.Entry<Pattern, Sample> e : this.newIndexes.entrySet()) {
+          // Define the output file
+          final File file = new File(subdir,
+              sampleName
+                  + "_" + sampleIndex + "_L00" + lane + "_R" + read
+                  + "_redemux_.fastq" + compression.getExtension());
+
+          final FileOutputStream fos = new FileOutputStream(file);
+          final OutputStream out;
+          try {
+            out = compression.createOutputStream(fos);
+          } catch (IOException | RuntimeException e) {
+            fos.close();
+            throw e;
+          }
 
-        final String sampleProject = e.getValue().getSampleProject();
-        final String sampleName = e.getValue().getDemultiplexingName();
-        final String sampleIndex = e.getValue().getIndex1();
+          final FastqWriter writer = new FastqWriter(out);
 
-        // Define the output directory
-        final File subdir = new File(this.outputDir, "Project_"
-            + sampleProject + File.separator + "Sample_" + sampleName);
+          result.add(new OrderedBatchWriter.EntryWriter<ReadSequence>() {
 
-        // Create output directory if not exists
-        if (!subdir.isDirectory()) {
+            @Override
+            public void write(final ReadSequence entry) throws IOException {
+              writer.write(entry);
+            }
 
-          if (!subdir.mkdirs()) {
-            throw new IOException("Cannot create output directory: " + subdir);
-          }
+            @Override
+            public void close() throws IOException {
+              writer.close();
+            }
+          });
         }
 
-        // Define the output file
-        final File file = new File(subdir,
-            sampleName
-                + "_" + sampleIndex + "_L00" + lane + "_R" + read
-                + "_redemux_.fastq" + compression.getExtension());
-
-        final OutputStream out =
-            compression.createOutputStream(new FileOutputStream(file));
+      } catch (IOException | RuntimeException e) {
 
-        if (!result.containsKey(sampleName)) {
-          result.put(sampleName,
-              new Entity(new FastqWriter(out), e.getValue()));
+        // Close the writers already created
+        for (OrderedBatchWriter.EntryWriter<ReadSequence> writer : result) {
+          try {
+            writer.close();
+          } catch (IOException e2) {
+            e.addSuppressed(e2);
+          }
         }
 
-        result.get(sampleName).addPattern(e.getKey());
+        throw e;
       }
 
       return result;
@@ -445,37 +617,36 @@ public class ReDemux {
     //
     // Internal Class
     //
-    static final class Entity {
-
-      private FastqWriter fw;
-      private List<Pattern> patterns;
-      private Sample cs;
 
-      void addPattern(final Pattern p) {
+    /**
+     * Test if an index is a dual index.
+     * @param index the index
+     * @return true if the index is a dual index
+     */
+    private static boolean isDualIndex(final String index) {
 
-        if (patterns.contains(p))
-          throw new RuntimeException();
+      return index.indexOf(PackedIndexes.SEPARATOR) != -1;
+    }
 
-        this.patterns.add(p);
-      }
+    /**
+     * Get the index of a sample.
+     * @param sample the sample
+     * @param dualIndex true if the second index must be added
+     * @return the index of the sample ("i7" or "i7+i5") or null if the sample
+     *         has no index
+     */
+    private static String getSampleIndex(final Sample sample,
+        final boolean dualIndex) {
 
-      public FastqWriter getFw() {
-        return fw;
-      }
+      final String index1 = Strings.emptyToNull(sample.getIndex1());
 
-      public List<Pattern> getPatterns() {
-        return patterns;
+      if (index1 == null || !dualIndex) {
+        return index1;
       }
 
-      public Sample getCs() {
-        return cs;
-      }
+      final String index2 = Strings.emptyToNull(sample.getIndex2());
 
-      Entity(final FastqWriter fw, final Sample cs) {
-        this.fw = fw;
-        this.patterns = new ArrayList<>();
-        this.cs = cs;
-      }
+      return index2 == null ? null : index1 + PackedIndexes.SEPARATOR + index2;
     }
 
     /**
@@ -488,15 +659,22 @@ public class ReDemux {
     private static List<File> findUndeterminedFiles(final File baseDir,
         final int lane, final int read) {
 
-      return Arrays.asList(baseDir.listFiles(new FileFilter() {
+      final List<File> result =
+          new ArrayList<>(Arrays.asList(baseDir.listFiles(new FileFilter() {
 
-        @Override
-        public boolean accept(File arg0) {
+            @Override
+            public boolean accept(File arg0) {
 
-          return arg0.getName().startsWith(
-              "lane" + lane + "_Undetermined_L00" + lane + "_R" + read + "_");
-        }
-      }));
+              return arg0.getName().startsWith(
+                  "lane" + lane + "_Undetermined_L00" + lane + "_R" + read
+                      + "_");
+            }
+          })));
+
+      // Keep the order of the reads in the pairs
+      Collections.sort(result);
+
+      return result;
     }
 
     /**
@@ -582,41 +760,42 @@ public class ReDemux {
   }
 
   /**
-   * Launch the re-demultiplexing.
-   * @throws IOException if an IO error occurs while re-demultiplexing
-   * @throws BadBioEntryException if an FASTQ entry read is invald
-   * @throws IOException
-   * @throws BadBioEntryException
+   * Set the maximal number of mismatches between the index of a read and an
+   * index to re-demultiplex.
+   * @param maxMismatches the maximal number of mismatches
    */
-  public void redmux() throws IOException, BadBioEntryException {
+  public void setMaxMismatches(final int maxMismatches) {
 
-    for (ReDemuxLane rdl : this.lanesToRedemux.values())
-      rdl.reDemux();
+    Preconditions.checkArgument(
+        maxMismatches >= 0 && maxMismatches <= IndexNeighborhood.MAX_MISMATCHES,
+        "Invalid number of mismatches: " + maxMismatches);
+
+    this.maxMismatches = maxMismatches;
   }
 
   /**
-   * Get the number of mismatches of two string of the same length.
-   * @param a the first string
-   * @param b the second string
-   * @return the number of mismatches
+   * Set the number of threads used to dispatch and to write the reads.
+   * @param threadCount the number of threads
    */
-  private static int mismatches(final String a, final String b) {
+  public void setThreadCount(final int threadCount) {
 
-    requireNonNull(a, "a cannot be null");
-    requireNonNull(b, "b cannot be null");
-    Preconditions.checkArgument(a.length() == b.length(),
-        "The length of the 2 String must be equals");
+    Preconditions.checkArgument(threadCount > 0,
+        "Invalid number of threads: " + threadCount);
 
-    final int len = a.length();
-    int result = 0;
+    this.threadCount = threadCount;
+  }
 
-    for (int i = 0; i < len; i++) {
-      if (a.charAt(i) != b.charAt(i)) {
-        result++;
-      }
-    }
+  /**
+   * Launch the re-demultiplexing.
+   * @throws IOException if an IO error occurs while re-demultiplexing
+   * @throws BadBioEntryException if an FASTQ entry read is invald
+   * @throws IOException
+   * @throws BadBioEntryException
+   */
+  public void redmux() throws IOException, BadBioEntryException {
 
-    return result;
+    for (ReDemuxLane rdl : this.lanesToRedemux.values())
+      rdl.reDemux(this.maxMismatches, this.threadCount);
   }
 
   //
@@ -648,6 +827,16 @@ public class ReDemux {
       final File outputDir) throws FileNotFoundException, IOException,
       AozanException, BadBioEntryException {
 
+    redemultiplex(samplesheetFile, bcl2fastqVersion, lanesAndIndex, outputDir,
+        DEFAULT_MAX_MISMATCHES, Runtime.getRuntime().availableProcessors());
+  }
+
+  public static void redemultiplex(final File samplesheetFile,
+      final String bcl2fastqVersion, final List<String> lanesAndIndex,
+      final File outputDir, final int maxMismatches, final int threadCount)
+      throws FileNotFoundException, IOException, AozanException,
+      BadBioEntryException {
+
     requireNonNull(samplesheetFile, "samplesheetFile cannot be null");
     requireNonNull(lanesAndIndex, "laneAndIndex cannot be null");
     requireNonNull(outputDir, "output directory cannot be null");
@@ -662,6 +851,8 @@ public class ReDemux {
     // Create ReDemux object
     ReDemux rd =
         new ReDemux(samplesheetFile.getParentFile(), samplesheet, outputDir);
+    rd.setMaxMismatches(maxMismatches);
+    rd.setThreadCount(threadCount);
 
     for (String s : lanesAndIndex) {
 
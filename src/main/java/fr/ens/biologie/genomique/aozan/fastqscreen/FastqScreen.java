@@ -51,10 +51,18 @@ public class FastqScreen {
   /** Logger. */
   private static final Logger LOGGER = Aozan2Logger.getLogger();
 
+  /** Name of the engine that use a mapper. */
+  public static final String MAPPER_ENGINE = "mapper";
+  /** Name of the engine that use the minimizers of the genomes. */
+  public static final String MINIMIZERS_ENGINE = "minimizers";
+
   private final File tmpDir;
   private final int confThreads;
   private final String mapperName;
   private final String mapperArgument;
+  private final String engine;
+  private final double minHitFraction;
+  private final double preScreenThreshold;
 
   // Fields for delayed initialization of fastqScreenGenomes
   private FastqScreenGenomes fastqScreenGenomes;
@@ -114,6 +122,21 @@ public class FastqScreen {
       requireNonNull(fastqRead2, "fastqRead2 argument cannot be null");
     }
 
+    // Do not compute the cache entries concurrently with the warm tasks
+    if (FastqScreenIndexCache.isInstance()) {
+      FastqScreenIndexCache.getInstance().awaitPrewarm();
+    }
+
+    // Classify the reads without mapper
+    if (MINIMIZERS_ENGINE.equals(this.engine)) {
+
+      final FastqScreenKmerClassifier classifier =
+          new FastqScreenKmerClassifier(this.minHitFraction, this.confThreads);
+
+      return classifier.classify(fastqRead1, isPairedMode ? fastqRead2 : null,
+          genomes, sampleGenome);
+    }
+
     // Timer
     final Stopwatch timer = Stopwatch.createStarted();
 
@@ -122,11 +145,22 @@ public class FastqScreen {
 
     try {
 
+      // Skip the genomes without evidence of contamination
+      final FastqScreenPreScreen preScreen = this.preScreenThreshold < 0.0
+          ? null : new FastqScreenPreScreen(this.preScreenThreshold / 100.0);
+      final List<String> genomesToMap = preScreen == null
+          ? genomes : preScreen.selectGenomes(fastqRead1, genomes, sampleGenome);
+
       if (isPairedMode) {
-        pmr.doMap(fastqRead1, fastqRead2, genomes, sampleGenome,
+        pmr.doMap(fastqRead1, fastqRead2, genomesToMap, sampleGenome,
             this.confThreads);
       } else {
-        pmr.doMap(fastqRead1, genomes, sampleGenome, this.confThreads);
+        pmr.doMap(fastqRead1, genomesToMap, sampleGenome, this.confThreads);
+      }
+
+      if (preScreen != null) {
+        pmr.addSkippedGenomes(preScreen.getSkippedGenomes(), sampleGenome,
+            preScreen.getReadCount());
       }
 
       LOGGER.fine("FASTQSCREEN: step map for "
@@ -191,5 +225,24 @@ public class FastqScreen {
     this.mapperArgument =
         conf.get(Settings.QC_CONF_FASTQSCREEN_MAPPER_ARGUMENTS_KEY);
 
+    // Engine used to screen the reads
+    final String engine =
+        conf.getTrimmedLowerCase(Settings.QC_CONF_FASTQSCREEN_ENGINE_KEY);
+    this.engine = engine == null || engine.isEmpty() ? MAPPER_ENGINE : engine;
+
+    if (!MAPPER_ENGINE.equals(this.engine)
+        && !MINIMIZERS_ENGINE.equals(this.engine)) {
+      LOGGER.warning("FASTQSCREEN: unknown engine \""
+          + engine + "\", use the " + MAPPER_ENGINE + " engine");
+    }
+
+    this.minHitFraction = conf.getDouble(
+        Settings.QC_CONF_FASTQSCREEN_MINIMIZERS_MIN_HIT_FRACTION_KEY,
+        FastqScreenKmerClassifier.DEFAULT_MIN_HIT_FRACTION);
+
+    // Pre-screen is disabled if the threshold is negative
+    this.preScreenThreshold = conf.getDouble(
+        Settings.QC_CONF_FASTQSCREEN_PRESCREEN_PERCENT_THRESHOLD_KEY, -1.0);
+
   }
 }
\ No newline at end of file
@@ -27,6 +27,7 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -143,7 +144,9 @@ public class FastqScreenGenomes {
         return false;
       }
 
-      GenomeDescription gdesc = storages.createGenomeDescription(genomeFile);
+      GenomeDescription gdesc = FastqScreenIndexCache.isInstance()
+          ? FastqScreenIndexCache.getInstance().getGenomeDescription(genomeFile)
+          : storages.createGenomeDescription(genomeFile);
 
       return gdesc != null;
 
@@ -160,7 +163,23 @@ public class FastqScreenGenomes {
   private Set<String> createSampleRefsFromSamplesheetFile(
       final SampleSheet samplesheet) {
 
-    final Set<String> genomesFromSamplesheet = new HashSet<>();
+    final Set<String> genomesFromSamplesheet = getSampleRefs(samplesheet);
+
+    // TODO
+    LOGGER.warning("FQS-genomeMapper: list genome names found in samplesheet: "
+        + Joiner.on(", ").join(genomesFromSamplesheet));
+
+    return genomesFromSamplesheet;
+  }
+
+  /**
+   * Get the genome reference names of the samples of a samplesheet.
+   * @param samplesheet samplesheet
+   * @return a set with the genomes reference names of the samples
+   */
+  private static Set<String> getSampleRefs(final SampleSheet samplesheet) {
+
+    final Set<String> result = new HashSet<>();
 
     // Retrieve all genome sample included in Bcl2fastq samplesheet file
     for (final Sample sample : samplesheet) {
@@ -172,21 +191,51 @@ public class FastqScreenGenomes {
         // Replace all symbols not letters or numbers by space
         genomeSample = PATTERN.matcher(genomeSample).replaceAll(" ");
 
-        genomesFromSamplesheet.add(genomeSample.trim());
+        result.add(genomeSample.trim());
       }
     }
 
-    // TODO
-    LOGGER.warning("FQS-genomeMapper: list genome names found in samplesheet: "
-        + Joiner.on(", ").join(genomesFromSamplesheet));
-
-    return genomesFromSamplesheet;
+    return result;
   }
 
   private static List<String> splitComtaminantString(String s) {
     return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(s);
   }
 
+  /**
+   * Get the names of the contaminant genomes and of the genomes of the samples
+   * with the aliases resolved. Unlike the constructor, this method does not
+   * check that the genomes are available, so it does not need to read the
+   * genome files.
+   * @param samplesheet samplesheet
+   * @param contaminantGenomeNames a string with the list of the contaminant
+   *          genomes
+   * @return a set with the genome names
+   */
+  public static Set<String> getGenomeNames(final SampleSheet samplesheet,
+      final String contaminantGenomeNames) {
+
+    requireNonNull(samplesheet, "sampleSheet argument cannot be null");
+    requireNonNull(contaminantGenomeNames,
+        "contaminantGenomeNames argument cannot be null");
+
+    final List<String> genomeNames =
+        new ArrayList<>(splitComtaminantString(contaminantGenomeNames));
+    genomeNames.addAll(getSampleRefs(samplesheet));
+
+    final GenomeAliases genomeAliases = GenomeAliases.getInstance();
+    final Set<String> result = new LinkedHashSet<>();
+
+    for (final String genomeName : genomeNames) {
+
+      final String key = genomeName.toLowerCase();
+      result.add(genomeAliases.contains(key) ? genomeAliases.get(key)
+          : genomeName);
+    }
+
+    return result;
+  }
+
   /**
    * Get the collection genomes name can be used for the mapping.
    * @return collection genomes name for mapping
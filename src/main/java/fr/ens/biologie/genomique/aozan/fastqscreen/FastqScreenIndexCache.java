@@ -0,0 +1,1067 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static fr.ens.biologie.genomique.kenetre.util.StringUtils.toTimeHumanReadable;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Globals;
+import fr.ens.biologie.genomique.aozan.Storages;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.BowtieMapperProvider;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.Mapper;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperBuilder;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperIndex;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperInstance;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperInstanceBuilder;
+import fr.ens.biologie.genomique.kenetre.storage.FileGenomeMapperIndexer;
+import fr.ens.biologie.genomique.kenetre.io.CompressionType;
+
+/**
+ * This class define a host level cache for the genome descriptions and the
+ * unpacked mapper indexes used by FastQ Screen. Entries are keyed by the
+ * checksum of the genome file and the name and the version of the mapper. The
+ * cache directory can be shared by several Aozan processes: each entry is
+ * created under a file lock, so only one copy of an index is unpacked on the
+ * host.
+ * @since 3.1
+ * @author agent
+ */
+public class FastqScreenIndexCache {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Default name of the cache directory in the temporary directory. */
+  public static final String DEFAULT_CACHE_DIRNAME = "aozan-fastqscreen-cache";
+
+  private static final String CHECKSUMS_DIRNAME = "checksums";
+  private static final String DESCS_DIRNAME = "descs";
+  private static final String ARCHIVES_DIRNAME = "archives";
+  private static final String INDEXES_DIRNAME = "indexes";
+  private static final String LOCKS_DIRNAME = "locks";
+  private static final String MINIMIZERS_DIRNAME = "minimizers";
+  private static final String FILTERS_DIRNAME = "filters";
+
+  // False positive probability of the Bloom filters
+  private static final double FILTER_FPP = 0.01;
+  private static final String COMPLETE_SUFFIX = ".complete";
+  private static final String PARTIAL_SUFFIX = ".partial";
+
+  // Suffixes of the files of the entries, the longest suffixes first
+  private static final String[] ENTRY_SUFFIXES = {
+      COMPLETE_SUFFIX + PARTIAL_SUFFIX, COMPLETE_SUFFIX, ".txt" + PARTIAL_SUFFIX,
+      ".txt", PARTIAL_SUFFIX + ".zip", ".zip", PARTIAL_SUFFIX + ".idx", ".idx",
+      PARTIAL_SUFFIX + ".bloom", ".bloom", PARTIAL_SUFFIX};
+
+  private static final Object syncObject = new Object();
+  private static FastqScreenIndexCache instance = null;
+
+  private final File cacheDir;
+  private final File tmpDir;
+
+  private final Map<String, String> checksums = new ConcurrentHashMap<>();
+  private final Map<String, GenomeDescription> descs =
+      new ConcurrentHashMap<>();
+  private final Map<String, Object> keyLocks = new ConcurrentHashMap<>();
+  private final Map<String, MinimizerIndex> minimizerIndexes =
+      new ConcurrentHashMap<>();
+  private final Map<String, BloomFilter<Long>> filters =
+      new ConcurrentHashMap<>();
+  private volatile CompletableFuture<Void> prewarmTasks;
+
+  /**
+   * Get the cache directory.
+   * @return the cache directory
+   */
+  public File getCacheDirectory() {
+    return this.cacheDir;
+  }
+
+  /**
+   * Get the description of a genome. The description is first searched in
+   * memory, then in the cache directory and at last computed using the genome
+   * description storage.
+   * @param genomeFile genome file
+   * @return a GenomeDescription object
+   * @throws BadBioEntryException if an error occurs while parsing the genome
+   * @throws IOException if an error occurs while reading or writing the cache
+   */
+  public GenomeDescription getGenomeDescription(final File genomeFile)
+      throws BadBioEntryException, IOException {
+
+    requireNonNull(genomeFile, "genomeFile argument cannot be null");
+
+    final String key = "genome-" + getChecksum(genomeFile);
+
+    final GenomeDescription cached = this.descs.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    final File descFile = new File(new File(this.cacheDir, DESCS_DIRNAME),
+        key + ".txt");
+
+    synchronized (getKeyLock(key)) {
+      try (FileLock lock = lockEntry(key)) {
+
+        GenomeDescription desc = null;
+
+        if (descFile.isFile()) {
+          try (InputStream is = new FileInputStream(descFile)) {
+            desc = GenomeDescription.load(is);
+          }
+          touch(descFile);
+        }
+
+        if (desc == null) {
+
+          desc = Storages.getInstance().createGenomeDescription(genomeFile);
+
+          if (desc != null) {
+            final File partialFile = new File(descFile.getPath() + ".partial");
+            try (OutputStream os = new FileOutputStream(partialFile)) {
+              desc.save(os);
+            }
+            Files.move(partialFile.toPath(), descFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+          }
+        }
+
+        if (desc != null) {
+          this.descs.put(key, desc);
+        }
+
+        return desc;
+      }
+    }
+  }
+
+  /**
+   * Get the archive of the index of a genome for a mapper. If the archive does
+   * not exist in the cache, it is retrieved from the genome index storage or
+   * computed.
+   * @param mapperInstance mapper instance
+   * @param genomeFile genome file
+   * @param desc genome description
+   * @return the archive file of the index
+   * @throws IOException if an error occurs while creating the archive
+   */
+  public File getIndexArchive(final MapperInstance mapperInstance,
+      final File genomeFile, final GenomeDescription desc) throws IOException {
+
+    requireNonNull(mapperInstance, "mapperInstance argument cannot be null");
+    requireNonNull(genomeFile, "genomeFile argument cannot be null");
+    requireNonNull(desc, "desc argument cannot be null");
+
+    final String key = createIndexKey(mapperInstance, genomeFile);
+    final File archiveFile =
+        new File(new File(this.cacheDir, ARCHIVES_DIRNAME), key + ".zip");
+
+    if (archiveFile.isFile()) {
+      touch(archiveFile);
+      return archiveFile;
+    }
+
+    synchronized (getKeyLock(key)) {
+      try (FileLock lock = lockEntry(key)) {
+
+        // Another process may have created the archive while waiting the lock
+        if (archiveFile.isFile()) {
+          return archiveFile;
+        }
+
+        final Stopwatch timer = Stopwatch.createStarted();
+
+        final File partialFile =
+            new File(archiveFile.getParentFile(), key + ".partial.zip");
+        final Map<String, String> additionnalArgument = Collections.emptyMap();
+
+        final FileGenomeMapperIndexer indexer =
+            new FileGenomeMapperIndexer(mapperInstance, "",
+                additionnalArgument, 1,
+                Storages.getInstance().getGenomeIndexStorage(), this.tmpDir,
+                Aozan2Logger.getGenericLogger());
+
+        indexer.createIndex(genomeFile, desc, partialFile);
+        Files.move(partialFile.toPath(), archiveFile.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+
+        LOGGER.fine("FASTQSCREEN: create/retrieve index archive for "
+            + genomeFile.getName() + " in cache in "
+            + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+        return archiveFile;
+      }
+    }
+  }
+
+  /**
+   * Create a mapper index object that use an unpacked index from the cache. The
+   * archive is unpacked only once per host for a genome and a version of the
+   * mapper. As the index directory already exists, the mapper index does not
+   * unpack the archive again.
+   * @param mapperInstance mapper instance
+   * @param genomeFile genome file
+   * @param archiveIndexFile archive file of the index
+   * @return a MapperIndex object
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  public MapperIndex newMapperIndex(final MapperInstance mapperInstance,
+      final File genomeFile, final File archiveIndexFile) throws IOException {
+
+    requireNonNull(mapperInstance, "mapperInstance argument cannot be null");
+    requireNonNull(genomeFile, "genomeFile argument cannot be null");
+    requireNonNull(archiveIndexFile,
+        "archiveIndexFile argument cannot be null");
+
+    final File indexDir = unpackIndex(archiveIndexFile,
+        createIndexKey(mapperInstance, genomeFile));
+
+    return mapperInstance.newMapperIndex(archiveIndexFile, indexDir);
+  }
+
+  /**
+   * Unpack the archive of an index in the cache. The archive is unpacked in a
+   * partial directory that is renamed once all the files have been written.
+   * Then the complete marker, that contains the number of files of the index,
+   * is created by renaming a partial file. An index is only used if its marker
+   * exists and its directory contains the expected number of files, otherwise
+   * it is unpacked again.
+   * @param archiveIndexFile archive file of the index
+   * @param key key of the index
+   * @return the directory of the unpacked index
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  File unpackIndex(final File archiveIndexFile, final String key)
+      throws IOException {
+
+    final File indexesDir = new File(this.cacheDir, INDEXES_DIRNAME);
+    final File indexDir = new File(indexesDir, key);
+    final File completeFile = new File(indexesDir, key + COMPLETE_SUFFIX);
+
+    if (isIndexComplete(indexDir, completeFile)) {
+      touch(completeFile);
+      return indexDir;
+    }
+
+    synchronized (getKeyLock(key)) {
+      try (FileLock lock = lockEntry(key)) {
+
+        // Another process may have unpacked the index while waiting the lock
+        if (isIndexComplete(indexDir, completeFile)) {
+          return indexDir;
+        }
+
+        final Stopwatch timer = Stopwatch.createStarted();
+
+        // Remove a partially unpacked index
+        final File partialDir = new File(indexesDir, key + PARTIAL_SUFFIX);
+        Files.deleteIfExists(completeFile.toPath());
+        for (File dir : new File[] {indexDir, partialDir}) {
+          if (dir.exists()) {
+            deleteDirectory(dir);
+          }
+        }
+
+        final int fileCount = unzip(archiveIndexFile, partialDir);
+        if (fileCount == 0) {
+          deleteDirectory(partialDir);
+          throw new IOException("Empty index archive: " + archiveIndexFile);
+        }
+        Files.move(partialDir.toPath(), indexDir.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+
+        final File partialFile =
+            new File(indexesDir, key + COMPLETE_SUFFIX + PARTIAL_SUFFIX);
+        Files.write(partialFile.toPath(),
+            (fileCount + "\n").getBytes(Globals.DEFAULT_FILE_ENCODING));
+        Files.move(partialFile.toPath(), completeFile.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+
+        LOGGER.fine("FASTQSCREEN: unpack index "
+            + key + " in cache in "
+            + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+        return indexDir;
+      }
+    }
+  }
+
+  /**
+   * Test if an unpacked index is complete.
+   * @param indexDir directory of the index
+   * @param completeFile complete marker of the index
+   * @return true if the marker exists and the directory contains the number of
+   *         files of the marker
+   * @throws IOException if an error occurs while reading the index
+   */
+  private static boolean isIndexComplete(final File indexDir,
+      final File completeFile) throws IOException {
+
+    if (!completeFile.isFile() || !indexDir.isDirectory()) {
+      return false;
+    }
+
+    final String content = new String(Files.readAllBytes(completeFile.toPath()),
+        Globals.DEFAULT_FILE_ENCODING).trim();
+
+    try (Stream<Path> stream = Files.walk(indexDir.toPath())) {
+      return Long.toString(stream.filter(Files::isRegularFile).count())
+          .equals(content);
+    }
+  }
+
+  /**
+   * Unzip an archive in a directory.
+   * @param archiveFile archive file
+   * @param outputDir output directory
+   * @return the number of files unpacked
+   * @throws IOException if an error occurs while unpacking the archive
+   */
+  private static int unzip(final File archiveFile, final File outputDir)
+      throws IOException {
+
+    final Path outputPath = outputDir.toPath().toAbsolutePath().normalize();
+    Files.createDirectories(outputPath);
+
+    int result = 0;
+
+    try (ZipInputStream in = new ZipInputStream(
+        new BufferedInputStream(new FileInputStream(archiveFile)))) {
+
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+
+        final Path path = outputPath.resolve(entry.getName()).normalize();
+        if (!path.startsWith(outputPath)) {
+          throw new IOException("Invalid entry "
+              + entry.getName() + " in index archive: " + archiveFile);
+        }
+
+        if (entry.isDirectory()) {
+          Files.createDirectories(path);
+        } else {
+          Files.createDirectories(path.getParent());
+          Files.copy(in, path);
+          result++;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the minimizer index of a genome. The index is built once per host and
+   * opened once per process, the returned object is shared by all the threads.
+   * @param genomeFile genome file
+   * @param k k-mer length
+   * @param w window length in k-mers
+   * @return a MinimizerIndex object
+   * @throws IOException if an error occurs while building or opening the index
+   */
+  public MinimizerIndex getMinimizerIndex(final File genomeFile, final int k,
+      final int w) throws IOException {
+
+    requireNonNull(genomeFile, "genomeFile argument cannot be null");
+
+    final String key =
+        "minimizers-k" + k + "-w" + w + '-' + getChecksum(genomeFile);
+
+    final MinimizerIndex cached = this.minimizerIndexes.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    final File indexFile =
+        new File(new File(this.cacheDir, MINIMIZERS_DIRNAME), key + ".idx");
+
+    synchronized (getKeyLock(key)) {
+
+      // Another thread may have opened the index while waiting the lock
+      final MinimizerIndex opened = this.minimizerIndexes.get(key);
+      if (opened != null) {
+        return opened;
+      }
+
+      try (FileLock lock = lockEntry(key)) {
+
+        if (!indexFile.isFile()) {
+
+          final Stopwatch timer = Stopwatch.createStarted();
+          final File partialFile =
+              new File(indexFile.getParentFile(), key + ".partial.idx");
+
+          MinimizerIndex.build(CompressionType.open(genomeFile), partialFile,
+              k, w, this.tmpDir);
+          Files.move(partialFile.toPath(), indexFile.toPath(),
+              StandardCopyOption.ATOMIC_MOVE);
+
+          LOGGER.fine("FASTQSCREEN: create minimizer index for "
+              + genomeFile.getName() + " in cache in "
+              + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+        }
+      }
+
+      touch(indexFile);
+      final MinimizerIndex result = new MinimizerIndex(indexFile);
+      this.minimizerIndexes.put(key, result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Get the Bloom filter of the minimizers of a genome. The filter is built
+   * once per host and loaded once per process.
+   * @param genomeFile genome file
+   * @return a BloomFilter object or null if the genome cannot be described
+   * @throws BadBioEntryException if an error occurs while parsing the genome
+   * @throws IOException if an error occurs while building or loading the filter
+   */
+  public BloomFilter<Long> getBloomFilter(final File genomeFile)
+      throws BadBioEntryException, IOException {
+
+    requireNonNull(genomeFile, "genomeFile argument cannot be null");
+
+    final String key = "bloom-k"
+        + MinimizerSketcher.DEFAULT_K + "-w" + MinimizerSketcher.DEFAULT_W
+        + '-' + getChecksum(genomeFile);
+
+    final BloomFilter<Long> cached = this.filters.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    final GenomeDescription desc = getGenomeDescription(genomeFile);
+    if (desc == null) {
+      return null;
+    }
+
+    final File filterFile =
+        new File(new File(this.cacheDir, FILTERS_DIRNAME), key + ".bloom");
+
+    synchronized (getKeyLock(key)) {
+
+      final BloomFilter<Long> loaded = this.filters.get(key);
+      if (loaded != null) {
+        return loaded;
+      }
+
+      BloomFilter<Long> result = null;
+
+      try (FileLock lock = lockEntry(key)) {
+
+        if (filterFile.isFile()) {
+          try (InputStream is =
+              new BufferedInputStream(new FileInputStream(filterFile))) {
+            result = BloomFilter.readFrom(is, Funnels.longFunnel());
+          }
+          touch(filterFile);
+        } else {
+
+          final Stopwatch timer = Stopwatch.createStarted();
+
+          // A window contains in average 2 / (w + 1) minimizers per base
+          final long expectedInsertions = Math.max(1000,
+              2 * desc.getGenomeLength() / (MinimizerSketcher.DEFAULT_W + 1));
+          final BloomFilter<Long> filter = BloomFilter
+              .create(Funnels.longFunnel(), expectedInsertions, FILTER_FPP);
+
+          final MinimizerSketcher sketcher =
+              new MinimizerSketcher(MinimizerSketcher.DEFAULT_K,
+                  MinimizerSketcher.DEFAULT_W, filter::put);
+          MinimizerIndex.sketchFasta(CompressionType.open(genomeFile),
+              sketcher);
+
+          final File partialFile =
+              new File(filterFile.getParentFile(), key + ".partial.bloom");
+          try (OutputStream os =
+              new BufferedOutputStream(new FileOutputStream(partialFile))) {
+            filter.writeTo(os);
+          }
+          Files.move(partialFile.toPath(), filterFile.toPath(),
+              StandardCopyOption.ATOMIC_MOVE);
+
+          LOGGER.fine("FASTQSCREEN: create Bloom filter for "
+              + genomeFile.getName() + " in cache in "
+              + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+          result = filter;
+        }
+      }
+
+      this.filters.put(key, result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Warm the cache for a list of genomes in background. The genome
+   * descriptions, the index archives and the unpacked indexes are created in
+   * parallel. This method does not wait the end of the tasks, the screen must
+   * call awaitPrewarm() before using the cache. The genome names are not
+   * checked, the genomes without file in the genome storage are ignored by the
+   * tasks. The failure of a task is logged and does not fail the other tasks.
+   * @param genomes genomes to process
+   * @param mapperName name of the mapper
+   * @param threads number of threads to use
+   * @param minimizers true if the minimizer indexes must be created instead of
+   *          the mapper indexes
+   * @return a future that completes when all the tasks are done
+   */
+  public CompletableFuture<Void> prewarm(final Collection<String> genomes,
+      final String mapperName, final int threads, final boolean minimizers) {
+
+    requireNonNull(genomes, "genomes argument cannot be null");
+
+    if (genomes.isEmpty() || !Storages.getInstance().isGenomeStorage()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final String name = mapperName == null || mapperName.isEmpty()
+        ? new BowtieMapperProvider().getName() : mapperName;
+
+    final int threadCount = Math.min(genomes.size(),
+        threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("fastqscreen-cache-%d").build());
+
+    LOGGER.info("FASTQSCREEN: warm index cache for genomes "
+        + genomes + " with " + threadCount + " thread(s)");
+
+    final Stopwatch timer = Stopwatch.createStarted();
+    final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+    for (final String genome : genomes) {
+
+      tasks.add(CompletableFuture.runAsync(() -> {
+        try {
+          prewarmGenome(genome, name, minimizers);
+        } catch (IOException | BadBioEntryException e) {
+          throw new CompletionException(e);
+        }
+      }, executor).whenComplete((r, e) -> {
+        if (e != null) {
+          final Throwable cause =
+              e instanceof CompletionException && e.getCause() != null
+                  ? e.getCause() : e;
+          LOGGER.warning("FASTQSCREEN: unable to warm index cache for "
+              + genome + ": " + cause.getMessage());
+        }
+      }));
+    }
+
+    // No new task will be submitted, the threads will stop once idle
+    executor.shutdown();
+
+    final CompletableFuture<Void> result = CompletableFuture
+        .allOf(tasks.toArray(new CompletableFuture<?>[0]))
+        .whenComplete((r, e) -> LOGGER.info("FASTQSCREEN: index cache warmed "
+            + (e == null ? "" : "with errors ") + "in "
+            + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS))));
+
+    this.prewarmTasks = result;
+
+    return result;
+  }
+
+  /**
+   * Wait the end of the tasks launched by prewarm(), to not compute the same
+   * entries concurrently with the screen. The failures of the tasks have
+   * already been logged and are ignored, the screen creates the missing
+   * entries.
+   */
+  public void awaitPrewarm() {
+
+    final CompletableFuture<Void> tasks = this.prewarmTasks;
+
+    if (tasks == null) {
+      return;
+    }
+
+    try {
+      tasks.join();
+    } catch (CompletionException | CancellationException e) {
+      // The failures have been logged by the tasks
+    }
+  }
+
+  /**
+   * Warm the cache for a genome.
+   * @param genome genome name
+   * @param mapperName mapper name
+   * @param minimizers true if the minimizer index must be created instead of
+   *          the mapper index
+   * @throws IOException if an error occurs while creating an entry
+   * @throws BadBioEntryException if an error occurs while parsing the genome
+   */
+  private void prewarmGenome(final String genome, final String mapperName,
+      final boolean minimizers) throws IOException, BadBioEntryException {
+
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    final File genomeFile =
+        Storages.getInstance().getGenomeStorage().getFile(genome);
+
+    if (genomeFile == null) {
+      return;
+    }
+
+    if (minimizers) {
+      getMinimizerIndex(genomeFile, MinimizerSketcher.DEFAULT_K,
+          MinimizerSketcher.DEFAULT_W);
+      LOGGER.fine("FASTQSCREEN: minimizer cache warmed for "
+          + genome + " in "
+          + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+      return;
+    }
+
+    final GenomeDescription desc = getGenomeDescription(genomeFile);
+
+    if (desc == null) {
+      return;
+    }
+
+    final Mapper mapper = new MapperBuilder(mapperName)
+        .withTempDirectory(this.tmpDir)
+        .withLogger(Aozan2Logger.getGenericLogger()).build();
+
+    final MapperInstance mapperInstance =
+        new MapperInstanceBuilder(mapper).withUseBundledBinaries(true).build();
+
+    final File archiveIndexFile =
+        getIndexArchive(mapperInstance, genomeFile, desc);
+    newMapperIndex(mapperInstance, genomeFile, archiveIndexFile);
+
+    LOGGER.fine("FASTQSCREEN: index cache warmed for "
+        + genome + " in "
+        + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+  }
+
+  //
+  // Eviction
+  //
+
+  /**
+   * Remove the entries of the cache that have not been used since a duration.
+   * The date of the last use of an entry is the modification date of its file,
+   * or of the complete marker for the unpacked indexes. The partial entries
+   * left by an interrupted process are removed too.
+   * @param maxAge maximal duration without use in milliseconds
+   * @return the number of entries removed
+   * @throws IOException if an error occurs while removing an entry
+   */
+  public int evict(final long maxAge) throws IOException {
+
+    checkArgument(maxAge >= 0, "maxAge argument cannot be negative: " + maxAge);
+
+    final long limit = System.currentTimeMillis() - maxAge;
+    int result = 0;
+
+    for (String dirname : new String[] {DESCS_DIRNAME, ARCHIVES_DIRNAME,
+        INDEXES_DIRNAME, MINIMIZERS_DIRNAME, FILTERS_DIRNAME}) {
+
+      final File[] files = new File(this.cacheDir, dirname).listFiles();
+      if (files == null) {
+        continue;
+      }
+
+      for (File file : files) {
+
+        final String key = getEntryKey(file.getName());
+
+        // An unpacked index with a marker is evicted with its marker
+        if (file.isDirectory() && key.equals(file.getName())
+            && new File(file.getParentFile(), key + COMPLETE_SUFFIX)
+                .exists()) {
+          continue;
+        }
+
+        synchronized (getKeyLock(key)) {
+          try (FileLock lock = lockEntry(key)) {
+
+            if (!file.exists() || file.lastModified() >= limit) {
+              continue;
+            }
+
+            // Remove the marker before the index
+            if (file.getName().equals(key + COMPLETE_SUFFIX)) {
+              Files.delete(file.toPath());
+              final File indexDir = new File(file.getParentFile(), key);
+              if (indexDir.exists()) {
+                deleteDirectory(indexDir);
+              }
+            } else if (file.isDirectory()) {
+              deleteDirectory(file);
+            } else {
+              Files.delete(file.toPath());
+            }
+
+            this.descs.remove(key);
+            this.minimizerIndexes.remove(key);
+            this.filters.remove(key);
+
+            LOGGER.fine("FASTQSCREEN: evict " + file.getName() + " from cache");
+            result++;
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the key of the entry of a file of the cache.
+   * @param filename name of the file
+   * @return the key of the entry
+   */
+  static String getEntryKey(final String filename) {
+
+    for (String suffix : ENTRY_SUFFIXES) {
+      if (filename.endsWith(suffix)) {
+        return filename.substring(0, filename.length() - suffix.length());
+      }
+    }
+
+    return filename;
+  }
+
+  /**
+   * Update the date of the last use of an entry.
+   * @param file the file of the entry
+   */
+  private static void touch(final File file) {
+
+    if (!file.setLastModified(System.currentTimeMillis())) {
+      LOGGER.fine("FASTQSCREEN: unable to update the date of " + file);
+    }
+  }
+
+  /**
+   * Delete a directory and its content.
+   * @param dir directory to delete
+   * @throws IOException if an error occurs while deleting the directory
+   */
+  private static void deleteDirectory(final File dir) throws IOException {
+
+    final List<Path> paths;
+    try (Stream<Path> stream = Files.walk(dir.toPath())) {
+      paths = stream.sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList());
+    }
+
+    for (Path p : paths) {
+      Files.delete(p);
+    }
+  }
+
+  //
+  // Cache keys and locks
+  //
+
+  /**
+   * Get the checksum of a genome file. As computing the checksum of a genome
+   * requires to read the whole file, the result is saved in the cache
+   * directory with the size and the modification date of the file.
+   * @param genomeFile genome file
+   * @return the checksum of the file as a String
+   * @throws IOException if an error occurs while computing the checksum
+   */
+  String getChecksum(final File genomeFile) throws IOException {
+
+    final String fileKey = genomeFile.getAbsolutePath()
+        + '\t' + genomeFile.length() + '\t' + genomeFile.lastModified();
+
+    final String cached = this.checksums.get(fileKey);
+    if (cached != null) {
+      return cached;
+    }
+
+    final String pathHash = Hashing.murmur3_128()
+        .hashString(genomeFile.getAbsolutePath(), Globals.DEFAULT_FILE_ENCODING)
+        .toString();
+    final File checksumFile = new File(
+        new File(this.cacheDir, CHECKSUMS_DIRNAME), pathHash + ".txt");
+
+    // Reuse the checksum if the file has not been modified
+    if (checksumFile.isFile()) {
+
+      final List<String> fields = Splitter.on('\t').splitToList(new String(
+          Files.readAllBytes(checksumFile.toPath()),
+          Globals.DEFAULT_FILE_ENCODING).trim());
+
+      if (fields.size() == 4
+          && fileKey.equals(fields.get(0)
+              + '\t' + fields.get(1) + '\t' + fields.get(2))) {
+        this.checksums.put(fileKey, fields.get(3));
+        return fields.get(3);
+      }
+    }
+
+    final String checksum = com.google.common.io.Files.asByteSource(genomeFile)
+        .hash(Hashing.murmur3_128()).toString();
+
+    final File partialFile = new File(checksumFile.getPath()
+        + '.' + Thread.currentThread().getId() + ".partial");
+    Files.write(partialFile.toPath(), (fileKey + '\t' + checksum + '\n')
+        .getBytes(Globals.DEFAULT_FILE_ENCODING));
+    Files.move(partialFile.toPath(), checksumFile.toPath(),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+    this.checksums.put(fileKey, checksum);
+
+    return checksum;
+  }
+
+  /**
+   * Create the key of an index in the cache.
+   * @param mapperInstance the mapper instance
+   * @param genomeFile the genome file
+   * @return a String with the key
+   * @throws IOException if an error occurs while computing the checksum of the
+   *           genome
+   */
+  private String createIndexKey(final MapperInstance mapperInstance,
+      final File genomeFile) throws IOException {
+
+    return createIndexKey(mapperInstance.getName(),
+        mapperInstance.getVersion(), getChecksum(genomeFile));
+  }
+
+  /**
+   * Create the key of an index in the cache.
+   * @param mapperName the name of the mapper
+   * @param mapperVersion the version of the mapper, can be null
+   * @param checksum the checksum of the genome
+   * @return a String with the key
+   */
+  static String createIndexKey(final String mapperName,
+      final String mapperVersion, final String checksum) {
+
+    return (mapperName
+        + '-' + (mapperVersion == null ? "unknown" : mapperVersion.trim())
+        + '-' + checksum).toLowerCase(Globals.DEFAULT_LOCALE)
+            .replaceAll("[^a-z0-9.\\-]", "_");
+  }
+
+  /**
+   * Get the object to use to synchronize the threads of the current process on
+   * a cache entry. File locks are held by the whole JVM and cannot be used to
+   * synchronize threads.
+   * @param key entry key
+   * @return an object to synchronize on
+   */
+  private Object getKeyLock(final String key) {
+
+    return this.keyLocks.computeIfAbsent(key, k -> new Object());
+  }
+
+  /**
+   * Lock a cache entry for all the processes of the host.
+   * @param key entry key
+   * @return a FileLock object
+   * @throws IOException if an error occurs while locking the entry
+   */
+  FileLock lockEntry(final String key) throws IOException {
+
+    final File lockFile =
+        new File(new File(this.cacheDir, LOCKS_DIRNAME), key + ".lock");
+
+    @SuppressWarnings("resource")
+    final FileChannel channel =
+        new RandomAccessFile(lockFile, "rw").getChannel();
+
+    try {
+      return new ChannelFileLock(channel, channel.lock());
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * This class define a file lock that close its channel when released.
+   */
+  private static final class ChannelFileLock extends FileLock {
+
+    private final FileLock lock;
+
+    @Override
+    public boolean isValid() {
+      return this.lock.isValid();
+    }
+
+    @Override
+    public void release() throws IOException {
+
+      try {
+        if (this.lock.isValid()) {
+          this.lock.release();
+        }
+      } finally {
+        channel().close();
+      }
+    }
+
+    ChannelFileLock(final FileChannel channel, final FileLock lock) {
+      super(channel, lock.position(), lock.size(), lock.isShared());
+      this.lock = lock;
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Test if the instance of the singleton has been initialized.
+   * @return true if the instance of the singleton has been initialized
+   */
+  public static boolean isInstance() {
+
+    synchronized (syncObject) {
+      return instance != null;
+    }
+  }
+
+  /**
+   * Initialize the singleton.
+   * @param cacheDir cache directory
+   * @param tmpDir temporary directory
+   * @throws AozanException if the cache directory cannot be created
+   */
+  public static void init(final File cacheDir, final File tmpDir)
+      throws AozanException {
+
+    synchronized (syncObject) {
+
+      if (instance != null) {
+        throw new IllegalStateException(
+            "FastqScreenIndexCache has been already initialized");
+      }
+
+      instance = new FastqScreenIndexCache(cacheDir, tmpDir);
+    }
+  }
+
+  /**
+   * Get the instance of the singleton.
+   * @return the instance of the singleton or an exception if the instance has
+   *         not been initialized
+   */
+  public static FastqScreenIndexCache getInstance() {
+
+    synchronized (syncObject) {
+
+      if (instance == null) {
+        throw new IllegalStateException(
+            "FastqScreenIndexCache has not been initialized");
+      }
+
+      return instance;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Package constructor, only used by the tests outside of init().
+   * @param cacheDir cache directory
+   * @param tmpDir temporary directory
+   * @throws AozanException if the cache directory cannot be created
+   */
+  FastqScreenIndexCache(final File cacheDir, final File tmpDir)
+      throws AozanException {
+
+    requireNonNull(cacheDir, "cacheDir argument cannot be null");
+    requireNonNull(tmpDir, "tmpDir argument cannot be null");
+
+    this.cacheDir = cacheDir;
+    this.tmpDir = tmpDir;
+
+    for (String dirname : new String[] {CHECKSUMS_DIRNAME, DESCS_DIRNAME,
+        ARCHIVES_DIRNAME, INDEXES_DIRNAME, LOCKS_DIRNAME, MINIMIZERS_DIRNAME,
+        FILTERS_DIRNAME}) {
+
+      final File dir = new File(cacheDir, dirname);
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new AozanException(
+            "Cannot create FastQ Screen cache directory: " + dir);
+      }
+    }
+  }
+
+}
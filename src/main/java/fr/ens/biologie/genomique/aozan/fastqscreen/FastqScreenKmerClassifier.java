@@ -0,0 +1,504 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static fr.ens.biologie.genomique.kenetre.util.StringUtils.toTimeHumanReadable;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.common.base.Stopwatch;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Globals;
+import fr.ens.biologie.genomique.aozan.Storages;
+import fr.ens.biologie.genomique.kenetre.io.CompressionType;
+
+/**
+ * This class define a FastQ Screen engine that classify the reads in the JVM
+ * using the minimizers of the genomes instead of launching a mapper. A read
+ * hits a genome if a minimal fraction of its minimizers is found in the index
+ * of the genome. A read has one hit on a genome if none of the minimizers found
+ * are repeated in the genome.
+ * @since 3.1
+ * @author agent
+ */
+public class FastqScreenKmerClassifier {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Name of the engine in the results. */
+  public static final String ENGINE_NAME = "minimizers";
+
+  /** Default minimal fraction of the minimizers of a read found in a genome. */
+  public static final double DEFAULT_MIN_HIT_FRACTION = 0.5;
+
+  private static final int BATCH_SIZE = 10000;
+
+  // Fields of the counts array of a genome
+  private static final int ONE_HIT_ONE_GENOME = 0;
+  private static final int MULTIPLE_HITS_ONE_GENOME = 1;
+  private static final int ONE_HIT_MULTIPLE_GENOMES = 2;
+  private static final int MULTIPLE_HITS_MULTIPLE_GENOMES = 3;
+  private static final int FIELD_COUNT = 4;
+
+  private final double minHitFraction;
+  private final int threads;
+
+  /**
+   * This class define the counts of a batch of reads.
+   */
+  private static final class BatchCounts {
+
+    private final long[] counts;
+    private long readsMapped;
+    private long readsProcessed;
+
+    BatchCounts(final int genomeCount) {
+      this.counts = new long[genomeCount * FIELD_COUNT];
+    }
+  }
+
+  /**
+   * This class define a growable buffer of minimizer hashes.
+   */
+  private static final class HashBuffer {
+
+    private long[] values = new long[256];
+    private int size;
+
+    void add(final long value) {
+
+      if (this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+      this.values[this.size++] = value;
+    }
+
+    void clear() {
+      this.size = 0;
+    }
+  }
+
+  /**
+   * Classify the reads of a FASTQ file or a pair of FASTQ files.
+   * @param fastqRead1 FASTQ file of the first reads
+   * @param fastqRead2 FASTQ file of the second reads, can be null
+   * @param genomes genomes to screen
+   * @param sampleGenome genome of the sample, can be null
+   * @return a FastqScreenResult object
+   * @throws AozanException if an error occurs while classifying the reads
+   */
+  public FastqScreenResult classify(final File fastqRead1,
+      final File fastqRead2, final List<String> genomes,
+      final String sampleGenome) throws AozanException {
+
+    requireNonNull(fastqRead1, "fastqRead1 argument cannot be null");
+    requireNonNull(genomes, "genomes argument cannot be null");
+
+    if (!FastqScreenIndexCache.isInstance()) {
+      throw new AozanException(
+          "The FastQ Screen cache is required by the minimizers engine");
+    }
+
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    final List<String> genomeNames = new ArrayList<>();
+    final List<MinimizerIndex> indexes = new ArrayList<>();
+
+    try {
+
+      // Open the indexes of the genomes
+      for (String genome : genomes) {
+
+        final File genomeFile = !Storages.getInstance().isGenomeStorage()
+            ? null : Storages.getInstance().getGenomeStorage().getFile(genome);
+
+        if (genomeFile == null) {
+          LOGGER.warning("FASTQSCREEN: genome file not found for " + genome);
+          continue;
+        }
+
+        indexes.add(FastqScreenIndexCache.getInstance().getMinimizerIndex(
+            genomeFile, MinimizerSketcher.DEFAULT_K,
+            MinimizerSketcher.DEFAULT_W));
+        genomeNames.add(genome);
+      }
+
+    } catch (IOException e) {
+      throw new AozanException(e);
+    } finally {
+      timer.stop();
+    }
+
+    LOGGER.fine("FASTQSCREEN: minimizer indexes of genome(s) "
+        + genomeNames + " loaded in "
+        + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+    return classify(fastqRead1, fastqRead2, genomeNames, indexes,
+        sampleGenome);
+  }
+
+  /**
+   * Classify the reads of a FASTQ file or a pair of FASTQ files with the
+   * indexes of the genomes.
+   * @param fastqRead1 FASTQ file of the first reads
+   * @param fastqRead2 FASTQ file of the second reads, can be null
+   * @param genomeNames names of the genomes
+   * @param indexes indexes of the genomes
+   * @param sampleGenome genome of the sample, can be null
+   * @return a FastqScreenResult object
+   * @throws AozanException if an error occurs while classifying the reads
+   */
+  FastqScreenResult classify(final File fastqRead1, final File fastqRead2,
+      final List<String> genomeNames, final List<MinimizerIndex> indexes,
+      final String sampleGenome) throws AozanException {
+
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    final FastqScreenResult result = new FastqScreenResult(ENGINE_NAME);
+    for (String genome : genomeNames) {
+      result.addGenome(genome, sampleGenome);
+    }
+
+    try {
+
+      final BatchCounts total = classifyReads(fastqRead1, fastqRead2, indexes);
+
+      // Fill the result
+      for (int i = 0; i < genomeNames.size(); i++) {
+
+        final String genome = genomeNames.get(i);
+        final int offset = i * FIELD_COUNT;
+
+        result.countHitPerGenome(genome, true, true,
+            total.counts[offset + ONE_HIT_ONE_GENOME]);
+        result.countHitPerGenome(genome, false, true,
+            total.counts[offset + MULTIPLE_HITS_ONE_GENOME]);
+        result.countHitPerGenome(genome, true, false,
+            total.counts[offset + ONE_HIT_MULTIPLE_GENOMES]);
+        result.countHitPerGenome(genome, false, false,
+            total.counts[offset + MULTIPLE_HITS_MULTIPLE_GENOMES]);
+      }
+
+      LOGGER.fine("FASTQSCREEN: result of minimizers classification: nb read "
+          + "mapped " + total.readsMapped + " / nb read "
+          + total.readsProcessed + " in "
+          + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+      result.countPercentValue(Math.toIntExact(total.readsMapped),
+          Math.toIntExact(total.readsProcessed));
+
+      return result;
+
+    } catch (IOException e) {
+      throw new AozanException(e);
+    } finally {
+      timer.stop();
+    }
+  }
+
+  /**
+   * Read the FASTQ files and classify the reads by batches.
+   * @param fastqRead1 FASTQ file of the first reads
+   * @param fastqRead2 FASTQ file of the second reads, can be null
+   * @param indexes the indexes of the genomes
+   * @return the counts of all the reads
+   * @throws IOException if an error occurs while reading the FASTQ files
+   * @throws AozanException if an error occurs while classifying the reads
+   */
+  private BatchCounts classifyReads(final File fastqRead1,
+      final File fastqRead2, final List<MinimizerIndex> indexes)
+      throws IOException, AozanException {
+
+    final BatchCounts total = new BatchCounts(indexes.size());
+
+    if (indexes.isEmpty() || fastqRead1.length() == 0) {
+      return total;
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+    final Deque<Future<BatchCounts>> futures = new ArrayDeque<>();
+
+    try (BufferedReader reader1 = newReader(fastqRead1);
+        BufferedReader reader2 =
+            fastqRead2 == null ? null : newReader(fastqRead2)) {
+
+      List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+      String[] entry;
+
+      while ((entry = nextSequences(reader1, reader2)) != null) {
+
+        batch.add(entry);
+
+        if (batch.size() == BATCH_SIZE) {
+
+          final List<String[]> task = batch;
+          futures.add(executor.submit(() -> classifyBatch(task, indexes)));
+          batch = new ArrayList<>(BATCH_SIZE);
+
+          // Limit the number of batches in memory
+          while (futures.size() > 2 * this.threads) {
+            add(total, futures.removeFirst());
+          }
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        final List<String[]> task = batch;
+        futures.add(executor.submit(() -> classifyBatch(task, indexes)));
+      }
+
+      while (!futures.isEmpty()) {
+        add(total, futures.removeFirst());
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return total;
+  }
+
+  private static void add(final BatchCounts total,
+      final Future<BatchCounts> future) throws AozanException {
+
+    try {
+
+      final BatchCounts counts = future.get();
+
+      for (int i = 0; i < total.counts.length; i++) {
+        total.counts[i] += counts.counts[i];
+      }
+      total.readsMapped += counts.readsMapped;
+      total.readsProcessed += counts.readsProcessed;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AozanException(e);
+    } catch (ExecutionException e) {
+      throw new AozanException(e.getCause());
+    }
+  }
+
+  /**
+   * Classify a batch of reads.
+   * @param batch the batch of reads
+   * @param indexes the indexes of the genomes
+   * @return the counts of the batch
+   */
+  private BatchCounts classifyBatch(final List<String[]> batch,
+      final List<MinimizerIndex> indexes) {
+
+    final int genomeCount = indexes.size();
+    final BatchCounts result = new BatchCounts(genomeCount);
+    final HashBuffer buffer = new HashBuffer();
+    final MinimizerSketcher sketcher = new MinimizerSketcher(
+        MinimizerSketcher.DEFAULT_K, MinimizerSketcher.DEFAULT_W, buffer::add);
+
+    final boolean[] hits = new boolean[genomeCount];
+    final boolean[] oneHits = new boolean[genomeCount];
+
+    for (String[] sequences : batch) {
+
+      result.readsProcessed++;
+      buffer.clear();
+
+      for (String sequence : sequences) {
+        sketcher.reset();
+        sketcher.add(sequence);
+      }
+
+      if (buffer.size == 0) {
+        continue;
+      }
+
+      int hitGenomes = 0;
+
+      for (int i = 0; i < genomeCount; i++) {
+
+        final MinimizerIndex index = indexes.get(i);
+        int found = 0;
+        boolean repeated = false;
+
+        for (int j = 0; j < buffer.size; j++) {
+
+          final int lookup = index.lookup(buffer.values[j]);
+          if (lookup != MinimizerIndex.ABSENT) {
+            found++;
+            repeated |= lookup == MinimizerIndex.REPEATED;
+          }
+        }
+
+        hits[i] = found > 0 && found >= this.minHitFraction * buffer.size;
+        oneHits[i] = !repeated;
+
+        if (hits[i]) {
+          hitGenomes++;
+        }
+      }
+
+      if (hitGenomes == 0) {
+        continue;
+      }
+
+      result.readsMapped++;
+
+      final boolean oneGenome = hitGenomes == 1;
+
+      for (int i = 0; i < genomeCount; i++) {
+
+        if (!hits[i]) {
+          continue;
+        }
+
+        final int field;
+        if (oneHits[i]) {
+          field = oneGenome ? ONE_HIT_ONE_GENOME : ONE_HIT_MULTIPLE_GENOMES;
+        } else {
+          field = oneGenome
+              ? MULTIPLE_HITS_ONE_GENOME : MULTIPLE_HITS_MULTIPLE_GENOMES;
+        }
+
+        result.counts[i * FIELD_COUNT + field]++;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // FASTQ reading
+  //
+
+  /**
+   * Create a reader of a FASTQ file. The compressed files are uncompressed
+   * according to the extension of their name.
+   * @param file the FASTQ file
+   * @return a BufferedReader object
+   * @throws IOException if an error occurs while opening the file
+   */
+  static BufferedReader newReader(final File file) throws IOException {
+
+    return new BufferedReader(new InputStreamReader(CompressionType.open(file),
+        Globals.DEFAULT_FILE_ENCODING), 1 << 16);
+  }
+
+  /**
+   * Get the sequences of the next read.
+   * @param reader1 reader of the first reads
+   * @param reader2 reader of the second reads, can be null
+   * @return an array with the sequences of the read or null if there is no
+   *         more read
+   * @throws IOException if an error occurs while reading the files
+   */
+  private static String[] nextSequences(final BufferedReader reader1,
+      final BufferedReader reader2) throws IOException {
+
+    final String sequence1 = nextSequence(reader1);
+
+    if (sequence1 == null) {
+      return null;
+    }
+
+    if (reader2 == null) {
+      return new String[] {sequence1};
+    }
+
+    final String sequence2 = nextSequence(reader2);
+
+    if (sequence2 == null) {
+      throw new IOException(
+          "The FASTQ files of the paired reads have not the same read count");
+    }
+
+    return new String[] {sequence1, sequence2};
+  }
+
+  /**
+   * Get the sequence of the next FASTQ entry.
+   * @param reader the reader
+   * @return the sequence or null if there is no more entry
+   * @throws IOException if an error occurs while reading the file
+   */
+  static String nextSequence(final BufferedReader reader)
+      throws IOException {
+
+    String header;
+    do {
+      header = reader.readLine();
+      if (header == null) {
+        return null;
+      }
+    } while (header.isEmpty());
+
+    final String sequence = reader.readLine();
+    final String separator = reader.readLine();
+    final String quality = reader.readLine();
+
+    if (header.charAt(0) != '@'
+        || sequence == null || separator == null || quality == null) {
+      throw new IOException("Invalid FASTQ entry: " + header);
+    }
+
+    return sequence;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param minHitFraction minimal fraction of the minimizers of a read that
+   *          must be found in a genome to consider the read hits the genome
+   * @param threads number of threads to use
+   */
+  public FastqScreenKmerClassifier(final double minHitFraction,
+      final int threads) {
+
+    this.minHitFraction =
+        minHitFraction > 0.0 && minHitFraction <= 1.0
+            ? minHitFraction : DEFAULT_MIN_HIT_FRACTION;
+    this.threads =
+        threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static fr.ens.biologie.genomique.kenetre.util.StringUtils.toTimeHumanReadable;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.BloomFilter;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.Globals;
+import fr.ens.biologie.genomique.aozan.Storages;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+
+/**
+ * This class define a pre-screen that select the genomes on which the reads
+ * must be mapped. The minimizers of the reads are searched in a Bloom filter of
+ * the minimizers of each contaminant genome, and the mapping is only performed
+ * on the genomes where the fraction of matching reads exceeds a threshold. The
+ * genome of the sample is never skipped.
+ * @since 3.1
+ * @author agent
+ */
+public class FastqScreenPreScreen {
+
+  /** Logger. */
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  // Minimal fraction of the minimizers of a read found in a filter to count
+  // the read as a hit, this limits the effect of the false positives
+  private static final double MIN_READ_HIT_FRACTION = 0.5;
+
+  private final double threshold;
+  private final List<String> skippedGenomes = new ArrayList<>();
+  private int readCount;
+
+  /**
+   * Get the genomes skipped by the last call to selectGenomes().
+   * @return a list with the skipped genomes
+   */
+  public List<String> getSkippedGenomes() {
+    return this.skippedGenomes;
+  }
+
+  /**
+   * Get the number of reads processed by the last call to selectGenomes().
+   * @return the number of reads processed
+   */
+  public int getReadCount() {
+    return this.readCount;
+  }
+
+  /**
+   * Select the genomes on which the reads must be mapped.
+   * @param fastqRead FASTQ file of the reads
+   * @param genomes genomes to screen
+   * @param sampleGenome genome of the sample, can be null
+   * @return a list with the genomes to map
+   */
+  public List<String> selectGenomes(final File fastqRead,
+      final List<String> genomes, final String sampleGenome) {
+
+    requireNonNull(fastqRead, "fastqRead argument cannot be null");
+    requireNonNull(genomes, "genomes argument cannot be null");
+
+    if (!FastqScreenIndexCache.isInstance()
+        || !Storages.getInstance().isGenomeStorage()) {
+
+      this.skippedGenomes.clear();
+      this.readCount = 0;
+
+      return genomes;
+    }
+
+    return selectGenomes(fastqRead, genomes, sampleGenome,
+        FastqScreenPreScreen::getFilter);
+  }
+
+  /**
+   * Select the genomes on which the reads must be mapped. The reads are
+   * streamed once and matched against the filters of all the genomes, so the
+   * memory used does not depend on the number of reads.
+   * @param fastqRead FASTQ file of the reads
+   * @param genomes genomes to screen
+   * @param sampleGenome genome of the sample, can be null
+   * @param filters function that returns the Bloom filter of a genome or null
+   *          if the filter is not available
+   * @return a list with the genomes to map
+   */
+  List<String> selectGenomes(final File fastqRead, final List<String> genomes,
+      final String sampleGenome,
+      final Function<String, BloomFilter<Long>> filters) {
+
+    this.skippedGenomes.clear();
+    this.readCount = 0;
+
+    if (fastqRead.length() == 0) {
+      return genomes;
+    }
+
+    final Stopwatch timer = Stopwatch.createStarted();
+
+    // Get the filters of the genomes that can be skipped
+    final List<String> candidates = new ArrayList<>();
+    final List<BloomFilter<Long>> candidateFilters = new ArrayList<>();
+
+    for (String genome : genomes) {
+
+      final BloomFilter<Long> filter =
+          genome.equals(sampleGenome) ? null : filters.apply(genome);
+
+      if (filter != null) {
+        candidates.add(genome);
+        candidateFilters.add(filter);
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      return genomes;
+    }
+
+    final long[] hits;
+    try {
+      hits = countHits(fastqRead, candidateFilters);
+    } catch (IOException e) {
+      LOGGER.warning("FASTQSCREEN: pre-screen disabled, unable to read "
+          + fastqRead + ": " + e.getMessage());
+      return genomes;
+    }
+
+    final List<String> result = new ArrayList<>();
+
+    for (String genome : genomes) {
+
+      final int index = candidates.indexOf(genome);
+
+      if (index == -1) {
+        result.add(genome);
+        continue;
+      }
+
+      final double hitRate =
+          this.readCount == 0 ? 0.0 : (double) hits[index] / this.readCount;
+
+      if (hitRate > this.threshold) {
+        result.add(genome);
+      } else {
+        this.skippedGenomes.add(genome);
+      }
+
+      LOGGER.fine("FASTQSCREEN: pre-screen of "
+          + fastqRead.getName() + " on " + genome + ": "
+          + String.format(Globals.DEFAULT_LOCALE, "%.4f", hitRate * 100.0)
+          + "% of the reads match");
+    }
+
+    LOGGER.info("FASTQSCREEN: pre-screen of "
+        + fastqRead.getName() + " skips genome(s) " + this.skippedGenomes
+        + " in " + toTimeHumanReadable(timer.elapsed(TimeUnit.MILLISECONDS)));
+
+    return result;
+  }
+
+  /**
+   * Get the Bloom filter of a genome.
+   * @param genome genome name
+   * @return a BloomFilter or null if the filter is not available
+   */
+  private static BloomFilter<Long> getFilter(final String genome) {
+
+    try {
+
+      final File genomeFile =
+          Storages.getInstance().getGenomeStorage().getFile(genome);
+
+      if (genomeFile == null) {
+        return null;
+      }
+
+      return FastqScreenIndexCache.getInstance().getBloomFilter(genomeFile);
+
+    } catch (IOException | BadBioEntryException e) {
+      LOGGER.warning("FASTQSCREEN: pre-screen disabled for "
+          + genome + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Count the reads of a FASTQ file that match each filter. The number of
+   * reads read is set in the readCount field.
+   * @param fastqRead FASTQ file
+   * @param filters the filters
+   * @return an array with the number of reads that match each filter
+   * @throws IOException if an error occurs while reading the file
+   */
+  private long[] countHits(final File fastqRead,
+      final List<BloomFilter<Long>> filters) throws IOException {
+
+    final long[] result = new long[filters.size()];
+    final long[][] buffer = {new long[256]};
+    final int[] size = new int[1];
+
+    final MinimizerSketcher sketcher = new MinimizerSketcher(
+        MinimizerSketcher.DEFAULT_K, MinimizerSketcher.DEFAULT_W, h -> {
+          if (size[0] == buffer[0].length) {
+            buffer[0] = Arrays.copyOf(buffer[0], size[0] * 2);
+          }
+          buffer[0][size[0]++] = h;
+        });
+
+    try (BufferedReader reader =
+        FastqScreenKmerClassifier.newReader(fastqRead)) {
+
+      String sequence;
+      while ((sequence =
+          FastqScreenKmerClassifier.nextSequence(reader)) != null) {
+
+        this.readCount++;
+        size[0] = 0;
+        sketcher.reset();
+        sketcher.add(sequence);
+
+        if (size[0] == 0) {
+          continue;
+        }
+
+        for (int i = 0; i < result.length; i++) {
+          if (isHit(buffer[0], size[0], filters.get(i))) {
+            result[i]++;
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Test if the minimizers of a read match a filter.
+   * @param minimizers the minimizers of the read
+   * @param count the number of minimizers of the read
+   * @param filter the filter
+   * @return true if a minimal fraction of the minimizers is in the filter
+   */
+  private static boolean isHit(final long[] minimizers, final int count,
+      final BloomFilter<Long> filter) {
+
+    int found = 0;
+    for (int i = 0; i < count; i++) {
+      if (filter.mightContain(minimizers[i])) {
+        found++;
+      }
+    }
+
+    return found >= MIN_READ_HIT_FRACTION * count;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threshold minimal fraction of the reads that must match a genome to
+   *          map the reads on the genome
+   */
+  public FastqScreenPreScreen(final double threshold) {
+
+    this.threshold = threshold;
+  }
+
+}
@@ -26,9 +26,7 @@ package fr.ens.biologie.genomique.aozan.fastqscreen;
 import static java.util.Objects.requireNonNull;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +34,7 @@ import java.util.List;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -48,6 +47,7 @@ import com.google.common.base.Joiner;
 import fr.ens.biologie.genomique.aozan.AozanException;
 import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLTemplatesCache;
 
 /**
  * The class set a project HTML report file on detection contamination by
@@ -78,24 +78,18 @@ public class FastqScreenProjectReport {
       return;
     }
 
-    // Call stylesheet file for report
-    InputStream is = null;
-    if (fastqscreenXSLFile == null) {
-
-      // Use default stylesheet file
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_FASTQSCREEN_PROJECT_XSL);
-    } else {
-      // Use specific stylesheet from properties
-      is = new FileInputStream(fastqscreenXSLFile);
-    }
+    // Get the compiled stylesheet file for report
+    final Templates templates = fastqscreenXSLFile == null
+        ? XSLTemplatesCache
+            .getResource(Globals.EMBEDDED_FASTQSCREEN_PROJECT_XSL)
+        : XSLTemplatesCache.get(fastqscreenXSLFile);
 
     // Build document instance
     final Document doc = buildDoc();
 
     XMLUtilsWriter.createXMLFileContent(doc);
 
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
+    XMLUtilsWriter.createHTMLFileFromXSL(doc, templates, reportHtml);
   }
 
   /**
@@ -183,9 +183,6 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
           continue;
         }
 
-        final File indexDir = new File(
-            StringUtils.filenameWithoutExtension(archiveIndexFile.getPath()));
-
         final FastqScreenSAMParser parser = new FastqScreenSAMParser(
             this.getMapOutputTempFile(), genome, this.pairedMode, this.desc);
 
@@ -199,7 +196,7 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
 
           // Create the MapperIndex object
           final MapperIndex mapperIndex =
-              mapperInstance.newMapperIndex(archiveIndexFile, indexDir);
+              newMapperIndex(mapperInstance, genomeFile, archiveIndexFile);
 
           // Create the mapping object
           FileMapping mapping = mapperIndex.newFileMapping(
@@ -238,6 +235,27 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
     }
   }
 
+  /**
+   * Add the genomes skipped by the pre-screen to the result.
+   * @param skippedGenomes genomes skipped by the pre-screen
+   * @param sampleGenome genome reference corresponding to sample, can be null
+   * @param readCount number of reads processed by the pre-screen
+   */
+  public void addSkippedGenomes(final List<String> skippedGenomes,
+      final String sampleGenome, final int readCount) {
+
+    requireNonNull(skippedGenomes, "skippedGenomes argument cannot be null");
+
+    for (String genome : skippedGenomes) {
+      this.fastqScreenResult.addSkippedGenome(genome, sampleGenome);
+    }
+
+    // No mapping has been performed if all the genomes have been skipped
+    if (this.readsProcessed == 0) {
+      this.readsProcessed = readCount;
+    }
+  }
+
   /**
    * Create a index with bowtie from the fasta file genome.
    * @param bowtie mapper
@@ -255,15 +273,12 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
 
     final Storages storages = Storages.getInstance();
 
-    // final DataFile tempDir = new DataFile(this.tmpDir);
-    final File result = new File(this.tmpDir,
-        "aozan-"
-            + bowtie.getName().toLowerCase() + "-index-"
-            + genomeDataFile.getName() + ".zip");
-
     // Create genome description
     try {
-      this.desc = storages.createGenomeDescription(genomeDataFile);
+      this.desc = FastqScreenIndexCache.isInstance()
+          ? FastqScreenIndexCache.getInstance()
+              .getGenomeDescription(genomeDataFile)
+          : storages.createGenomeDescription(genomeDataFile);
     } catch (final BadBioEntryException e) {
       throw new AozanException(e);
     }
@@ -272,6 +287,18 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
       return null;
     }
 
+    // Use the host cache if available
+    if (FastqScreenIndexCache.isInstance()) {
+      return FastqScreenIndexCache.getInstance().getIndexArchive(bowtie,
+          genomeDataFile, this.desc);
+    }
+
+    // final DataFile tempDir = new DataFile(this.tmpDir);
+    final File result = new File(this.tmpDir,
+        "aozan-"
+            + bowtie.getName().toLowerCase() + "-index-"
+            + genomeDataFile.getName() + ".zip");
+
     // Check if the index has already been created/retrieved
     if (result.exists()) {
       return result;
@@ -294,6 +321,31 @@ public class FastqScreenPseudoMapReduce extends PseudoMapReduce {
     return result;
   }
 
+  /**
+   * Create the mapper index object. If the host cache is available, the index
+   * is unpacked only once in the cache, otherwise it is unpacked in the
+   * temporary directory.
+   * @param mapperInstance mapper instance
+   * @param genomeFile genome file
+   * @param archiveIndexFile archive of the index
+   * @return a MapperIndex object
+   * @throws IOException if an error occurs while unpacking the index
+   */
+  private static MapperIndex newMapperIndex(
+      final MapperInstance mapperInstance, final File genomeFile,
+      final File archiveIndexFile) throws IOException {
+
+    if (FastqScreenIndexCache.isInstance()) {
+      return FastqScreenIndexCache.getInstance().newMapperIndex(mapperInstance,
+          genomeFile, archiveIndexFile);
+    }
+
+    final File indexDir = new File(
+        StringUtils.filenameWithoutExtension(archiveIndexFile.getPath()));
+
+    return mapperInstance.newMapperIndex(archiveIndexFile, indexDir);
+  }
+
   /**
    * Mapper Receive value in SAM format, only the read mapped are added in
    * output with reference genome.
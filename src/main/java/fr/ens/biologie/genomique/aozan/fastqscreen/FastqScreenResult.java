@@ -23,22 +23,25 @@
 
 package fr.ens.biologie.genomique.aozan.fastqscreen;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 
 import fr.ens.biologie.genomique.aozan.AozanException;
@@ -46,6 +49,7 @@ import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.aozan.RunData;
 import fr.ens.biologie.genomique.aozan.io.FastqSample;
 import fr.ens.biologie.genomique.aozan.util.XMLUtilsWriter;
+import fr.ens.biologie.genomique.aozan.util.XSLTemplatesCache;
 import fr.ens.biologie.genomique.kenetre.util.XMLUtils;
 
 /**
@@ -131,6 +135,20 @@ public class FastqScreenResult {
     s.append("%Hit_no_libraries: ");
     s.append(DataPerGenome.roundDouble(this.percentUnmappedNoneGenome));
     s.append('\n');
+
+    // add the genomes skipped by the pre-screen
+    final List<String> skippedGenomes = new ArrayList<>();
+    for (final DataPerGenome d : this.resultsPerGenome.values()) {
+      if (d.skipped) {
+        skippedGenomes.add(d.genome);
+      }
+    }
+
+    if (!skippedGenomes.isEmpty()) {
+      s.append("#Genomes skipped by pre-screen: ");
+      s.append(Joiner.on(", ").join(skippedGenomes));
+      s.append('\n');
+    }
     return s.toString();
   }
 
@@ -162,14 +180,10 @@ public class FastqScreenResult {
     final File reportXML =
         new File(reportHtml.getAbsolutePath().replaceAll(".html$", ".xml"));
 
-    // Call stylesheet file for report
-    InputStream is = null;
-    if (fastqscreenXSLFile == null) {
-      is = this.getClass()
-          .getResourceAsStream(Globals.EMBEDDED_FASTQSCREEN_XSL);
-    } else {
-      is = new FileInputStream(fastqscreenXSLFile);
-    }
+    // Get the compiled stylesheet file for report
+    final Templates templates = fastqscreenXSLFile == null
+        ? XSLTemplatesCache.getResource(Globals.EMBEDDED_FASTQSCREEN_XSL)
+        : XSLTemplatesCache.get(fastqscreenXSLFile);
 
     // Create document XML
     final Document doc = createDocumentXML(fastqSample, data, genomeSample);
@@ -178,7 +192,7 @@ public class FastqScreenResult {
     XMLUtilsWriter.createXMLFile(doc, reportXML);
 
     // Create html report from xml with xsl file
-    XMLUtilsWriter.createHTMLFileFromXSL(doc, is, reportHtml);
+    XMLUtilsWriter.createHTMLFileFromXSL(doc, templates, reportHtml);
 
   }
 
@@ -259,6 +273,10 @@ public class FastqScreenResult {
       final Element genome = doc.createElement("Genome");
       genomes.appendChild(genome);
 
+      if (e.getValue().skipped) {
+        genome.setAttribute("skipped", "true");
+      }
+
       boolean first = true;
 
       for (final String value : Splitter.on('\t').split(val)) {
@@ -326,6 +344,23 @@ public class FastqScreenResult {
     }
   }
 
+  /**
+   * Add a reference genome that has been skipped by the pre-screen. No read is
+   * counted for this genome.
+   * @param genome name of the skipped reference genome
+   * @param genomeSample genome reference corresponding to sample
+   */
+  public void addSkippedGenome(final String genome,
+      final String genomeSample) {
+
+    if (genome == null) {
+      return;
+    }
+
+    addGenome(genome, genomeSample);
+    this.resultsPerGenome.get(genome).skipped = true;
+  }
+
   /**
    * Count for each read number of hit per reference genome.
    * @param genome genome name
@@ -334,7 +369,23 @@ public class FastqScreenResult {
    */
   public void countHitPerGenome(final String genome, final boolean oneHit,
       final boolean oneGenome) {
-    this.resultsPerGenome.get(genome).countHitPerGenome(oneHit, oneGenome);
+    this.resultsPerGenome.get(genome).countHitPerGenome(oneHit, oneGenome, 1);
+  }
+
+  /**
+   * Count several reads with the same number of hits on a reference genome.
+   * @param genome genome name
+   * @param oneHit true if the reads mapped one time on genome else false
+   * @param oneGenome true if the reads mapped on several genome else false
+   * @param count number of reads
+   */
+  public void countHitPerGenome(final String genome, final boolean oneHit,
+      final boolean oneGenome, final long count) {
+
+    checkArgument(count >= 0, "count argument cannot be negative: " + count);
+
+    this.resultsPerGenome.get(genome).countHitPerGenome(oneHit, oneGenome,
+        Math.toIntExact(count));
   }
 
   /**
@@ -439,6 +490,7 @@ public class FastqScreenResult {
 
     private final String genome;
     private boolean isGenomeSample;
+    private boolean skipped;
 
     // Specific legend : represent key in rundata
     private static final String UN_MAPPED_LEGEND = "unmapped";
@@ -471,20 +523,26 @@ public class FastqScreenResult {
      * Count for each read number of hit per reference genome.
      * @param oneHit true if read mapped one time on genome else false
      * @param oneGenome true if read mapped on several genome else false
+     * @param count number of reads
      */
-    void countHitPerGenome(final boolean oneHit, final boolean oneGenome) {
+    void countHitPerGenome(final boolean oneHit, final boolean oneGenome,
+        final int count) {
 
       if (oneHit && oneGenome) {
-        this.oneHitOneLibraryCount++;
+        this.oneHitOneLibraryCount =
+            Math.addExact(this.oneHitOneLibraryCount, count);
 
       } else if (!oneHit && oneGenome) {
-        this.multipleHitsOneLibraryCount++;
+        this.multipleHitsOneLibraryCount =
+            Math.addExact(this.multipleHitsOneLibraryCount, count);
 
       } else if (oneHit && !oneGenome) {
-        this.oneHitMultipleLibrariesCount++;
+        this.oneHitMultipleLibrariesCount =
+            Math.addExact(this.oneHitMultipleLibrariesCount, count);
 
       } else if (!oneHit && !oneGenome) {
-        this.multipleHitsMultipleLibrariesCount++;
+        this.multipleHitsMultipleLibrariesCount =
+            Math.addExact(this.multipleHitsMultipleLibrariesCount, count);
       }
     }
 
@@ -586,6 +644,10 @@ public class FastqScreenResult {
               + MULTIPLE_HITS_MULTIPLE_LIBRARIES_LEGEND + ".percent",
           this.multipleHitsMultipleLibrariesPercent);
 
+      // Like the XML report, only the skipped genomes are flagged
+      if (this.skipped) {
+        data.put(prefix + "." + this.genome + ".skipped", true);
+      }
     }
 
     /**
@@ -23,46 +23,44 @@
 
 package fr.ens.biologie.genomique.aozan.fastqscreen;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-
-import htsjdk.samtools.SAMLineParser;
-import htsjdk.samtools.SAMRecord;
-
-import com.google.common.io.Files;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 import fr.ens.biologie.genomique.aozan.Globals;
 import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
-import fr.ens.biologie.genomique.kenetre.bio.SAMUtils;
-import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.MultiReadAlignmentFilter;
-import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilter;
-import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilterBuffer;
-import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.RemoveUnmappedReadAlignmentFilter;
 
 /**
  * This class ensures alignment fastqScreen treating the output format BAM of
- * mapper.
+ * mapper. Only the name and the flag of the alignments are required, so the
+ * SAM lines are scanned in place in the bytes of the mapper output without
+ * creating any object for each alignment.
  * @since 1.0
  * @author Sandrine Perrin
  */
 public class FastqScreenSAMParser {
 
-  // private File mapOutputFile = null;
-  private final String genome;
-  private final Writer fw;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // Flags of the unmapped alignments and of the alignments of unmapped mates
+  private static final int UNMAPPED_FLAG = 0x4;
+  private static final int MATE_UNMAPPED_FLAG = 0x8;
+
+  private final byte[] genome;
+  private final OutputStream out;
 
-  private final SAMLineParser parser;
   private boolean headerParsed = false;
   private final boolean pairedMode;
 
-  private final ReadAlignmentFilterBuffer buffer;
+  // Name of the current read and count of its alignments
+  private byte[] readName = new byte[256];
+  private int readNameLength = -1;
+  private int alignmentCount;
+  private int mappedAlignmentCount;
 
   private int readsprocessed = 0;
 
@@ -76,17 +74,43 @@ public class FastqScreenSAMParser {
    */
   public void parseLines(final InputStream is) throws IOException {
 
-    final BufferedReader br = new BufferedReader(
-        new InputStreamReader(is, StandardCharsets.ISO_8859_1));
-
-    String line = null;
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int start = 0;
+    int end = 0;
+
+    try (InputStream in = is) {
+
+      int n;
+      while ((n = in.read(buffer, end, buffer.length - end)) != -1) {
+
+        end += n;
+
+        // Parse all the complete lines of the buffer
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+          if (buffer[i] == '\n') {
+            parseLine(buffer, lineStart, i);
+            lineStart = i + 1;
+          }
+        }
+
+        // Move the incomplete line at the beginning of the buffer
+        final int remaining = end - lineStart;
+        if (remaining == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else if (lineStart > 0) {
+          System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+        }
+        start = 0;
+        end = remaining;
+      }
 
-    while ((line = br.readLine()) != null) {
-      parseLine(line);
+      // Last line without end of line
+      if (end > start) {
+        parseLine(buffer, start, end);
+      }
     }
 
-    br.close();
-
     closeMapOutputFile();
   }
 
@@ -95,36 +119,104 @@ public class FastqScreenSAMParser {
    * line for each read mapped with her name and mapping data : first character
    * represent the number of hits for a read : 1 or 2 (for several hits) and the
    * end represent the name of reference genome.
-   * @param SAMline parse SAM line
+   * @param line bytes of the SAM output
+   * @param start start of the line
+   * @param end end of the line (exclusive)
    * @throws IOException if an error occurs while writing in mapOutputFile
    */
-  private void parseLine(final String SAMline) throws IOException {
+  private void parseLine(final byte[] line, final int start, int end)
+      throws IOException {
 
-    if (SAMline == null || SAMline.length() == 0) {
+    // Remove the carriage return
+    if (end > start && line[end - 1] == '\r') {
+      end--;
+    }
+
+    if (end == start) {
       return;
     }
 
     if (!this.headerParsed) {
 
-      if (SAMline.charAt(0) == '@') {
+      if (line[start] == '@') {
         return;
-
-      } else {
-        // Set the chromosomes sizes in the parser
-        this.headerParsed = true;
       }
+
+      this.headerParsed = true;
+    }
+
+    // QNAME field
+    int nameEnd = start;
+    while (nameEnd < end && line[nameEnd] != '\t') {
+      nameEnd++;
+    }
+
+    if (nameEnd == end) {
+      throw new IOException("Invalid SAM line: "
+          + new String(line, start, end - start, Globals.DEFAULT_FILE_ENCODING));
     }
 
-    final SAMRecord samRecord = this.parser.parseLine(SAMline);
-    final boolean result = this.buffer.addAlignment(samRecord);
+    // FLAG field
+    int flag = 0;
+    int i = nameEnd + 1;
+    for (; i < end && line[i] != '\t'; i++) {
+
+      final int digit = line[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IOException("Invalid SAM flag: " + new String(line, start,
+            end - start, Globals.DEFAULT_FILE_ENCODING));
+      }
+      flag = flag * 10 + digit;
+    }
 
     // Add a new read
-    if (!result) {
+    if (!isCurrentRead(line, start, nameEnd)) {
       parseBuffered();
-      this.buffer.addAlignment(samRecord);
+      setCurrentRead(line, start, nameEnd);
+    }
+
+    // In paired mode, the alignments of a pair with an unmapped mate are
+    // ignored like the unmapped alignments
+    final int unmappedFlags =
+        this.pairedMode ? UNMAPPED_FLAG | MATE_UNMAPPED_FLAG : UNMAPPED_FLAG;
+
+    this.alignmentCount++;
+    if ((flag & unmappedFlags) == 0) {
+      this.mappedAlignmentCount++;
     }
   }
 
+  private boolean isCurrentRead(final byte[] line, final int start,
+      final int end) {
+
+    final int length = end - start;
+
+    if (length != this.readNameLength) {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++) {
+      if (this.readName[i] != line[start + i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void setCurrentRead(final byte[] line, final int start,
+      final int end) {
+
+    final int length = end - start;
+
+    if (length > this.readName.length) {
+      this.readName = new byte[length * 2];
+    }
+
+    System.arraycopy(line, start, this.readName, 0, length);
+    this.readNameLength = length;
+  }
+
   /**
    * Write last record and close file mapOutputFile.
    */
@@ -135,34 +227,43 @@ public class FastqScreenSAMParser {
       parseBuffered();
     }
 
-    this.fw.close();
+    this.out.close();
   }
 
   private void parseBuffered() throws IOException {
 
-    final List<SAMRecord> records = this.buffer.getFilteredAlignments();
+    // No read
+    if (this.alignmentCount == 0) {
+      return;
+    }
+
+    final int records = this.mappedAlignmentCount;
 
-    if (records != null && records.size() > 0) {
-      final String nameRead = records.get(0).getReadName();
+    // In paired mode, a pair is only counted if its two mates are mapped
+    final boolean mapped = this.pairedMode
+        ? records >= 2 && records % 2 == 0 : records > 0;
+
+    if (mapped) {
 
       int nbHits;
       // mode paired : records contains an event number of reads
       if (this.pairedMode) {
-        nbHits = records.size() == 2 ? 1 : 2;
+        nbHits = records == 2 ? 1 : 2;
       } else {
-        nbHits = records.size() == 1 ? 1 : 2;
+        nbHits = records == 1 ? 1 : 2;
       }
 
       // write in SAMmapOutputFile
-      if (nameRead != null) {
-        this.fw.write(nameRead + "\t" + nbHits + this.genome);
-        this.fw.write("\n");
-      }
+      this.out.write(this.readName, 0, this.readNameLength);
+      this.out.write('\t');
+      this.out.write('0' + nbHits);
+      this.out.write(this.genome);
+      this.out.write('\n');
     }
 
-    if (records != null) {
-      records.clear();
-    }
+    this.alignmentCount = 0;
+    this.mappedAlignmentCount = 0;
+    this.readNameLength = -1;
 
     this.readsprocessed++;
   }
@@ -181,8 +282,7 @@ public class FastqScreenSAMParser {
   //
 
   /**
-   * Initialize FastqScreenSAMParser : create the mapOutputFile and the list
-   * filters used for parsing SAM file.
+   * Initialize FastqScreenSAMParser : create the mapOutputFile.
    * @param mapOutputFile file result from mapping
    * @param genome name genome
    * @param genomeDescription description of the genome
@@ -194,21 +294,10 @@ public class FastqScreenSAMParser {
       final boolean pairedMode, final GenomeDescription genomeDescription)
       throws IOException {
 
-    this.genome = genome;
+    this.genome = genome.getBytes(Globals.DEFAULT_FILE_ENCODING);
     this.pairedMode = pairedMode;
 
-    // Create parser object
-    this.parser =
-        new SAMLineParser(SAMUtils.newSAMFileHeader(genomeDescription));
-
-    // object used for the Sam read alignments filter
-    final List<ReadAlignmentFilter> listFilters = new ArrayList<>();
-    listFilters.add(new RemoveUnmappedReadAlignmentFilter());
-
-    final ReadAlignmentFilter filter =
-        new MultiReadAlignmentFilter(listFilters);
-    this.buffer = new ReadAlignmentFilterBuffer(filter);
-
-    this.fw = Files.newWriter(mapOutputFile, Globals.DEFAULT_FILE_ENCODING);
+    this.out = new BufferedOutputStream(new FileOutputStream(mapOutputFile),
+        BUFFER_SIZE);
   }
 }
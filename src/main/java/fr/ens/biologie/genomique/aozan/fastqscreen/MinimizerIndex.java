@@ -0,0 +1,459 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class define a memory-mapped index of the minimizers of a genome. The
+ * index file contains a header and a sorted array of the hashes of the
+ * minimizers. The lowest bit of each entry is used to store if the minimizer
+ * occurs more than once in the genome. As the index is memory-mapped, it can be
+ * shared by all the threads and processes that screen reads on the same host.
+ * @since 3.1
+ * @author agent
+ */
+public class MinimizerIndex implements Closeable {
+
+  private static final long MAGIC = 0x414f5a4d494e3031L; // "AOZMIN01"
+  private static final int HEADER_SIZE = 32;
+
+  // Entries are mapped by segments as a mapping cannot exceed 2 GB
+  private static final int SEGMENT_SHIFT = 27;
+  private static final long SEGMENT_ENTRIES = 1L << SEGMENT_SHIFT;
+  private static final long SEGMENT_MASK = SEGMENT_ENTRIES - 1;
+
+  // Number of minimizers sorted in memory by run when building the index
+  private static final int RUN_ENTRIES = 1 << 24;
+
+  private static final long MULTI_FLAG = 1L;
+  private static final long KEY_MASK = ~MULTI_FLAG;
+
+  /** Result of a lookup for a minimizer absent from the genome. */
+  public static final int ABSENT = 0;
+  /** Result of a lookup for a minimizer present once in the genome. */
+  public static final int UNIQUE = 1;
+  /** Result of a lookup for a minimizer present several times in the genome. */
+  public static final int REPEATED = 2;
+
+  private final int k;
+  private final int w;
+  private final long size;
+  private final RandomAccessFile file;
+  private final MappedByteBuffer[] segments;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the k-mer length used to build the index.
+   * @return the k-mer length
+   */
+  public int getK() {
+    return this.k;
+  }
+
+  /**
+   * Get the window length used to build the index.
+   * @return the window length in k-mers
+   */
+  public int getW() {
+    return this.w;
+  }
+
+  /**
+   * Get the number of distinct minimizers in the index.
+   * @return the number of distinct minimizers
+   */
+  public long size() {
+    return this.size;
+  }
+
+  //
+  // Lookup
+  //
+
+  /**
+   * Lookup a minimizer in the index.
+   * @param minimizerHash the hash of the minimizer
+   * @return ABSENT, UNIQUE or REPEATED
+   */
+  public int lookup(final long minimizerHash) {
+
+    final long key = minimizerHash & KEY_MASK;
+
+    long low = 0;
+    long high = this.size - 1;
+
+    while (low <= high) {
+
+      final long mid = (low + high) >>> 1;
+      final long entry = get(mid);
+      final long entryKey = entry & KEY_MASK;
+
+      if (entryKey < key) {
+        low = mid + 1;
+      } else if (entryKey > key) {
+        high = mid - 1;
+      } else {
+        return (entry & MULTI_FLAG) != 0 ? REPEATED : UNIQUE;
+      }
+    }
+
+    return ABSENT;
+  }
+
+  private long get(final long i) {
+
+    return this.segments[(int) (i >>> SEGMENT_SHIFT)]
+        .getLong((int) ((i & SEGMENT_MASK) << 3));
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.file.close();
+  }
+
+  //
+  // Build
+  //
+
+  /**
+   * Build an index from a FASTA input stream.
+   * @param fastaInputStream FASTA input stream
+   * @param indexFile output file
+   * @param k k-mer length
+   * @param w window length in k-mers
+   * @param tmpDir temporary directory for the sorted runs
+   * @throws IOException if an error occurs while building the index
+   */
+  public static void build(final InputStream fastaInputStream,
+      final File indexFile, final int k, final int w, final File tmpDir)
+      throws IOException {
+
+    requireNonNull(fastaInputStream, "fastaInputStream argument cannot be null");
+    requireNonNull(indexFile, "indexFile argument cannot be null");
+    requireNonNull(tmpDir, "tmpDir argument cannot be null");
+
+    final List<File> runs = new ArrayList<>();
+    final long[] buffer = new long[RUN_ENTRIES];
+    final int[] count = new int[1];
+
+    try {
+
+      final MinimizerSketcher sketcher = new MinimizerSketcher(k, w, h -> {
+
+        if (count[0] == buffer.length) {
+          try {
+            runs.add(writeRun(buffer, count[0], tmpDir));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          count[0] = 0;
+        }
+        // The multi flag is unset, duplicates will be detected when sorting
+        buffer[count[0]++] = h & KEY_MASK;
+      });
+
+      try {
+        sketchFasta(fastaInputStream, sketcher);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+
+      if (count[0] > 0 || runs.isEmpty()) {
+        runs.add(writeRun(buffer, count[0], tmpDir));
+      }
+
+      mergeRuns(runs, indexFile, k, w);
+
+    } finally {
+      for (File run : runs) {
+        if (!run.delete()) {
+          run.deleteOnExit();
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute the minimizers of all the sequences of a FASTA input stream.
+   * @param fastaInputStream FASTA input stream
+   * @param sketcher the sketcher that will receive the bases
+   * @throws IOException if an error occurs while reading the FASTA stream
+   */
+  static void sketchFasta(final InputStream fastaInputStream,
+      final MinimizerSketcher sketcher) throws IOException {
+
+    try (InputStream is = new BufferedInputStream(fastaInputStream)) {
+
+      final byte[] buf = new byte[1 << 16];
+      boolean header = false;
+      boolean lineStart = true;
+      int n;
+
+      while ((n = is.read(buf)) != -1) {
+        for (int i = 0; i < n; i++) {
+
+          final byte b = buf[i];
+
+          if (b == '\n' || b == '\r') {
+            header = false;
+            lineStart = true;
+            continue;
+          }
+
+          if (lineStart && b == '>') {
+            // New sequence
+            sketcher.reset();
+            header = true;
+          }
+          lineStart = false;
+
+          if (!header) {
+            sketcher.add(b);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Sort, merge duplicates and write a run of minimizers.
+   * @param buffer buffer with the minimizers
+   * @param length number of minimizers in the buffer
+   * @param tmpDir temporary directory
+   * @return the run file
+   * @throws IOException if an error occurs while writing the run
+   */
+  private static File writeRun(final long[] buffer, final int length,
+      final File tmpDir) throws IOException {
+
+    Arrays.sort(buffer, 0, length);
+
+    final File runFile = File.createTempFile("aozan-minimizers-", ".run", tmpDir);
+
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+
+      int i = 0;
+      while (i < length) {
+
+        final long key = buffer[i] & KEY_MASK;
+        boolean multi = false;
+        int j = i + 1;
+
+        while (j < length && (buffer[j] & KEY_MASK) == key) {
+          multi = true;
+          j++;
+        }
+
+        out.writeLong(multi ? key | MULTI_FLAG : key);
+        i = j;
+      }
+    }
+
+    return runFile;
+  }
+
+  /**
+   * Merge the sorted runs in the final index file.
+   * @param runs the run files
+   * @param indexFile the output index file
+   * @param k k-mer length
+   * @param w window length
+   * @throws IOException if an error occurs while merging the runs
+   */
+  private static void mergeRuns(final List<File> runs, final File indexFile,
+      final int k, final int w) throws IOException {
+
+    final PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+        (a, b) -> Long.compare(a.current & KEY_MASK, b.current & KEY_MASK));
+
+    try {
+
+      for (File run : runs) {
+        final RunReader reader = new RunReader(run);
+        if (reader.next()) {
+          queue.add(reader);
+        } else {
+          reader.close();
+        }
+      }
+
+      long size = 0;
+
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(indexFile), 1 << 16))) {
+
+        // Header, the size is written at the end
+        out.writeLong(MAGIC);
+        out.writeInt(k);
+        out.writeInt(w);
+        out.writeLong(0);
+        out.writeLong(0);
+
+        while (!queue.isEmpty()) {
+
+          final RunReader first = queue.poll();
+          final long key = first.current & KEY_MASK;
+          long entry = first.current;
+          advance(first, queue);
+
+          while (!queue.isEmpty() && (queue.peek().current & KEY_MASK) == key) {
+            final RunReader other = queue.poll();
+            entry = key | MULTI_FLAG;
+            advance(other, queue);
+          }
+
+          out.writeLong(entry);
+          size++;
+        }
+      }
+
+      try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+        raf.seek(16);
+        raf.writeLong(size);
+      }
+
+    } finally {
+      for (RunReader reader : queue) {
+        reader.close();
+      }
+    }
+  }
+
+  private static void advance(final RunReader reader,
+      final PriorityQueue<RunReader> queue) throws IOException {
+
+    if (reader.next()) {
+      queue.add(reader);
+    } else {
+      reader.close();
+    }
+  }
+
+  /**
+   * This class define a reader of a run file.
+   */
+  private static final class RunReader implements Closeable {
+
+    private final DataInputStream in;
+    private long current;
+
+    boolean next() throws IOException {
+
+      try {
+        this.current = this.in.readLong();
+        return true;
+      } catch (EOFException e) {
+        return false;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.in.close();
+    }
+
+    RunReader(final File file) throws IOException {
+      this.in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Open an index file.
+   * @param indexFile the index file
+   * @throws IOException if an error occurs while opening the index
+   */
+  public MinimizerIndex(final File indexFile) throws IOException {
+
+    requireNonNull(indexFile, "indexFile argument cannot be null");
+
+    this.file = new RandomAccessFile(indexFile, "r");
+
+    try {
+
+      if (this.file.readLong() != MAGIC) {
+        throw new IOException("Invalid minimizer index file: " + indexFile);
+      }
+
+      this.k = this.file.readInt();
+      this.w = this.file.readInt();
+      this.size = this.file.readLong();
+
+      if (this.file.length() != HEADER_SIZE + this.size * Long.BYTES) {
+        throw new IOException("Truncated minimizer index file: " + indexFile);
+      }
+
+      final FileChannel channel = this.file.getChannel();
+      final int segmentCount =
+          (int) ((this.size + SEGMENT_ENTRIES - 1) >>> SEGMENT_SHIFT);
+      this.segments = new MappedByteBuffer[segmentCount];
+
+      for (int i = 0; i < segmentCount; i++) {
+
+        final long first = i * SEGMENT_ENTRIES;
+        final long entries = Math.min(SEGMENT_ENTRIES, this.size - first);
+
+        this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+            HEADER_SIZE + first * Long.BYTES, entries * Long.BYTES);
+        this.segments[i].order(ByteOrder.BIG_ENDIAN);
+      }
+
+    } catch (IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * This class compute the (w,k)-minimizers of a DNA sequence. The k-mers are
+ * canonical (the smallest of the k-mer and its reverse complement) and are
+ * ordered using a hash function to avoid the bias of the lexicographic order.
+ * The sequence is provided base after base, so a sequence split on several
+ * lines (e.g. FASTA files) can be processed without being copied. An instance
+ * of this class is not thread safe.
+ * @since 3.1
+ * @author agent
+ */
+public class MinimizerSketcher {
+
+  /** Default k-mer length. */
+  public static final int DEFAULT_K = 21;
+
+  /** Default window length in k-mers. */
+  public static final int DEFAULT_W = 11;
+
+  private static final byte[] BASE_CODES = new byte[256];
+
+  static {
+    Arrays.fill(BASE_CODES, (byte) -1);
+    BASE_CODES['A'] = 0;
+    BASE_CODES['a'] = 0;
+    BASE_CODES['C'] = 1;
+    BASE_CODES['c'] = 1;
+    BASE_CODES['G'] = 2;
+    BASE_CODES['g'] = 2;
+    BASE_CODES['T'] = 3;
+    BASE_CODES['t'] = 3;
+  }
+
+  private final int k;
+  private final int w;
+  private final long mask;
+  private final int revShift;
+  private final long[] windowHashes;
+  private final LongConsumer consumer;
+
+  private long forward;
+  private long reverse;
+  private int validBases;
+  private long kmerCount;
+  private long minHash;
+  private long minIndex;
+
+  /**
+   * Get the k-mer length.
+   * @return the k-mer length
+   */
+  public int getK() {
+    return this.k;
+  }
+
+  /**
+   * Get the window length.
+   * @return the window length in k-mers
+   */
+  public int getW() {
+    return this.w;
+  }
+
+  /**
+   * Reset the sketcher before processing a new sequence.
+   */
+  public void reset() {
+
+    this.forward = 0;
+    this.reverse = 0;
+    this.validBases = 0;
+    this.kmerCount = 0;
+    this.minIndex = -1;
+  }
+
+  /**
+   * Add the bases of a sequence.
+   * @param bases array with the bases
+   * @param offset offset of the first base in the array
+   * @param length number of bases to add
+   */
+  public void add(final byte[] bases, final int offset, final int length) {
+
+    final int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      add(bases[i]);
+    }
+  }
+
+  /**
+   * Add the bases of a sequence.
+   * @param bases the bases
+   */
+  public void add(final CharSequence bases) {
+
+    final int len = bases.length();
+    for (int i = 0; i < len; i++) {
+      add((byte) bases.charAt(i));
+    }
+  }
+
+  /**
+   * Add a base. Ambiguous bases break the current k-mer, the minimizers are
+   * computed again from the next valid k-mer.
+   * @param base the base to add
+   */
+  public void add(final byte base) {
+
+    final int code = BASE_CODES[base & 0xff];
+
+    if (code < 0) {
+      reset();
+      return;
+    }
+
+    this.forward = ((this.forward << 2) | code) & this.mask;
+    this.reverse =
+        (this.reverse >>> 2) | ((long) (3 - code) << this.revShift);
+
+    if (++this.validBases < this.k) {
+      return;
+    }
+
+    final long hash = hash(Math.min(this.forward, this.reverse));
+    final long index = this.kmerCount++;
+    this.windowHashes[(int) (index % this.w)] = hash;
+
+    // The first window is not complete
+    if (index + 1 < this.w) {
+
+      if (this.minIndex < 0 || hash < this.minHash) {
+        this.minHash = hash;
+        this.minIndex = index;
+      }
+      return;
+    }
+
+    // First complete window
+    if (index + 1 == this.w) {
+
+      if (this.minIndex < 0 || hash < this.minHash) {
+        this.minHash = hash;
+        this.minIndex = index;
+      }
+      this.consumer.accept(this.minHash);
+      return;
+    }
+
+    if (hash < this.minHash) {
+
+      // The new k-mer is the new minimizer
+      this.minHash = hash;
+      this.minIndex = index;
+      this.consumer.accept(this.minHash);
+
+    } else if (this.minIndex <= index - this.w) {
+
+      // The minimizer has left the window, search the new one
+      final long windowStart = index - this.w + 1;
+      this.minIndex = -1;
+      for (long i = windowStart; i <= index; i++) {
+        final long h = this.windowHashes[(int) (i % this.w)];
+        if (this.minIndex < 0 || h < this.minHash) {
+          this.minHash = h;
+          this.minIndex = i;
+        }
+      }
+      this.consumer.accept(this.minHash);
+    }
+  }
+
+  /**
+   * Hash a 2-bit encoded k-mer. This function is a bijection, so two k-mers
+   * never share the same hash.
+   * @param kmer the k-mer
+   * @return the hash of the k-mer
+   */
+  static long hash(final long kmer) {
+
+    // Finalizer of MurmurHash3
+    long h = kmer;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+
+    return h;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param k k-mer length
+   * @param w window length in k-mers
+   * @param consumer consumer of the minimizer hashes
+   */
+  public MinimizerSketcher(final int k, final int w,
+      final LongConsumer consumer) {
+
+    checkArgument(k > 0 && k <= 31, "k must be in [1, 31]: " + k);
+    checkArgument(w > 0, "w must be greater than 0: " + w);
+
+    if (consumer == null) {
+      throw new NullPointerException("consumer argument cannot be null");
+    }
+
+    this.k = k;
+    this.w = w;
+    this.mask = (1L << (2 * k)) - 1;
+    this.revShift = 2 * (k - 1);
+    this.windowHashes = new long[w];
+    this.consumer = consumer;
+
+    reset();
+  }
+
+}
@@ -0,0 +1,911 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.history;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Splitter;
+
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.AozanCollector;
+import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
+import fr.ens.biologie.genomique.aozan.collectors.SamplesheetCollector;
+import fr.ens.biologie.genomique.aozan.util.RobustZScore;
+import fr.ens.biologie.genomique.aozan.util.RunningStatistics;
+
+/**
+ * This class define a store of the QC metrics of the runs, to compare a run
+ * with the previous runs of the same instrument without reading the data files
+ * of the old runs. The numeric values of the run data of a run are appended in
+ * a single block at the end of the log file of the instrument. In a block, the
+ * values are stored in columns and grouped by metric, and each value is
+ * indexed by lane, project and sample. The name of a metric is the key of the
+ * run data where the lane, sample and project numbers have been removed (e.g.
+ * "reads.read1.lane.prc.align"). The blocks of a log file are read only once,
+ * the next queries only read the blocks appended since. When the metrics of a
+ * run are added again, the log file is compacted to remove the previous block
+ * of the run.
+ * @since 3.1
+ * @author agent
+ */
+public class MetricsStore {
+
+  /** Extension of the log files of the instruments. */
+  public static final String EXTENSION = ".metrics";
+
+  /** Instrument used when the run data does not define the instrument. */
+  public static final String UNKNOWN_INSTRUMENT = "unknown";
+
+  private static final String INSTRUMENT_KEY =
+      RunInfoCollector.PREFIX + ".instrument";
+  private static final String SAMPLESHEET_PREFIX =
+      SamplesheetCollector.SAMPLESHEET_DATA_PREFIX;
+
+  // Prefixes of the keys that do not contain metrics
+  private static final String[] IGNORED_PREFIXES = {SAMPLESHEET_PREFIX + '.',
+      AozanCollector.PREFIX + '.', RunInfoCollector.PREFIX + '.'};
+
+  private static final Splitter DOT_SPLITTER = Splitter.on('.');
+  private static final Pattern ENTITY_PATTERN =
+      Pattern.compile("(lane|sample|project|pooledsample)(\\d{1,9})");
+  private static final Pattern NUMBER_PATTERN =
+      Pattern.compile("-?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?");
+
+  // Magic number at the start of each block ("AQM1")
+  private static final int MAGIC = 0x41514d31;
+
+  // Magic number and size of the content
+  private static final int HEADER_SIZE = 8;
+
+  // CRC32 of the content
+  private static final int FOOTER_SIZE = 4;
+
+  private final File directory;
+  private final Map<String, Log> logs = new HashMap<>();
+
+  /**
+   * This class define the criteria of a query on a metric of an instrument.
+   * By default, the query selects the values of all the lanes, projects and
+   * samples in all the runs.
+   */
+  public static final class Query {
+
+    private final String instrument;
+    private final String metric;
+    private int lane;
+    private String project;
+    private String sample;
+    private int lastRuns = Integer.MAX_VALUE;
+    private String excludedRunId;
+
+    /**
+     * Select only the values of a lane.
+     * @param lane the lane, 0 for all the lanes
+     * @return this object
+     */
+    public Query lane(final int lane) {
+
+      if (lane < 0) {
+        throw new IllegalArgumentException("Invalid lane: " + lane);
+      }
+
+      this.lane = lane;
+      return this;
+    }
+
+    /**
+     * Select only the values of a project.
+     * @param project the name of the project, null for all the projects
+     * @return this object
+     */
+    public Query project(final String project) {
+
+      this.project = project;
+      return this;
+    }
+
+    /**
+     * Select only the values of a sample.
+     * @param sample the identifier of the sample, null for all the samples
+     * @return this object
+     */
+    public Query sample(final String sample) {
+
+      this.sample = sample;
+      return this;
+    }
+
+    /**
+     * Select only the values of the last runs that contain selected values.
+     * @param count the maximal number of runs
+     * @return this object
+     */
+    public Query lastRuns(final int count) {
+
+      if (count < 1) {
+        throw new IllegalArgumentException("Invalid run count: " + count);
+      }
+
+      this.lastRuns = count;
+      return this;
+    }
+
+    /**
+     * Ignore the values of a run, e.g. the run to compare with the previous
+     * runs.
+     * @param runId the identifier of the run, null to use all the runs
+     * @return this object
+     */
+    public Query excludeRun(final String runId) {
+
+      this.excludedRunId = runId;
+      return this;
+    }
+
+    private boolean matches(final Block block, final int i) {
+
+      return (this.lane == 0 || this.lane == block.lanes[i])
+          && matches(this.project, block, block.projects[i])
+          && matches(this.sample, block, block.samples[i]);
+    }
+
+    private static boolean matches(final String expected, final Block block,
+        final int index) {
+
+      return expected == null
+          || (index != -1 && expected.equals(block.strings[index]));
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Public constructor.
+     * @param instrument the instrument
+     * @param metric the name of the metric
+     */
+    public Query(final String instrument, final String metric) {
+
+      requireNonNull(instrument, "instrument argument cannot be null");
+      requireNonNull(metric, "metric argument cannot be null");
+
+      this.instrument = instrument;
+      this.metric = metric.toLowerCase().trim();
+    }
+  }
+
+  /**
+   * This class define the metrics of a run. The values are stored in columns
+   * and the records of a metric are contiguous.
+   */
+  private static final class Block {
+
+    private final String runId;
+    private final String[] strings;
+    private final int[] metrics;
+    private final int[] lanes;
+    private final int[] projects;
+    private final int[] samples;
+    private final double[] values;
+    private final Map<String, int[]> ranges = new HashMap<>();
+
+    /**
+     * Get the position of the first and after the last record of a metric.
+     * @param metric the name of the metric
+     * @return an array with the two positions or null if the metric is not
+     *         in the block
+     */
+    int[] range(final String metric) {
+      return this.ranges.get(metric);
+    }
+
+    /**
+     * Convert the block to bytes.
+     * @return an array of bytes
+     * @throws IOException if an error occurs while writing the block
+     */
+    byte[] toBytes() throws IOException {
+
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+      try (DataOutputStream out = new DataOutputStream(baos)) {
+
+        out.writeUTF(this.runId);
+        out.writeInt(this.strings.length);
+        for (String s : this.strings) {
+          out.writeUTF(s);
+        }
+
+        out.writeInt(this.values.length);
+        for (int[] column : new int[][] {this.metrics, this.lanes,
+            this.projects, this.samples}) {
+          for (int v : column) {
+            out.writeInt(v);
+          }
+        }
+        for (double v : this.values) {
+          out.writeDouble(v);
+        }
+      }
+
+      return baos.toByteArray();
+    }
+
+    /**
+     * Read a block from bytes.
+     * @param bytes the bytes
+     * @return a new Block object
+     * @throws IOException if the bytes are not a valid block
+     */
+    static Block fromBytes(final byte[] bytes) throws IOException {
+
+      try (DataInputStream in =
+          new DataInputStream(new ByteArrayInputStream(bytes))) {
+
+        final String runId = in.readUTF();
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+          strings[i] = in.readUTF();
+        }
+
+        final int count = in.readInt();
+        final int[][] columns = new int[4][count];
+        for (int[] column : columns) {
+          for (int i = 0; i < count; i++) {
+            column[i] = in.readInt();
+          }
+        }
+        final double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+          values[i] = in.readDouble();
+        }
+
+        return new Block(runId, strings, columns[0], columns[1], columns[2],
+            columns[3], values);
+      } catch (IndexOutOfBoundsException | NegativeArraySizeException
+          | IllegalArgumentException e) {
+        throw new IOException("Invalid block of metrics", e);
+      }
+    }
+
+    /**
+     * Create a block from the run data of a run.
+     * @param runId the identifier of the run
+     * @param data the run data
+     * @return a new Block object
+     */
+    static Block of(final String runId, final RunData data) {
+
+      final Map<String, Integer> dictionary = new LinkedHashMap<>();
+      final Map<String, List<double[]>> records = new TreeMap<>();
+      int count = 0;
+
+      for (Map.Entry<String, String> e : data.getMap().entrySet()) {
+
+        final String key = e.getKey();
+        final String value = e.getValue();
+
+        if (isIgnoredKey(key) || !NUMBER_PATTERN.matcher(value).matches()) {
+          continue;
+        }
+
+        final double v = Double.parseDouble(value);
+        if (Double.isInfinite(v)) {
+          continue;
+        }
+
+        int lane = 0;
+        String project = null;
+        String sample = null;
+
+        for (String segment : DOT_SPLITTER.split(key)) {
+
+          final Matcher m = ENTITY_PATTERN.matcher(segment);
+          if (!m.matches()) {
+            continue;
+          }
+
+          final int id = Integer.parseInt(m.group(2));
+          switch (m.group(1)) {
+
+          case "lane":
+            lane = id;
+            break;
+
+          case "sample":
+            final String samplePrefix = SAMPLESHEET_PREFIX + ".sample" + id;
+            sample = data.get(samplePrefix + ".id", segment);
+            project = data.get(samplePrefix + ".project", project);
+            if (lane == 0) {
+              lane = data.getInt(samplePrefix + ".lane", 0);
+            }
+            break;
+
+          case "pooledsample":
+            final String pooledPrefix =
+                SAMPLESHEET_PREFIX + ".pooledsample" + id;
+            sample = data.get(pooledPrefix + ".demux.name", segment);
+            project = data.get(pooledPrefix + ".project.name", project);
+            break;
+
+          default:
+            // Project
+            project = data.get(
+                SAMPLESHEET_PREFIX + ".project" + id + ".name", segment);
+            break;
+          }
+        }
+
+        records.computeIfAbsent(getMetricName(key), k -> new ArrayList<>())
+            .add(new double[] {lane, index(dictionary, project),
+                index(dictionary, sample), v});
+        count++;
+      }
+
+      final int[] metrics = new int[count];
+      final int[] lanes = new int[count];
+      final int[] projects = new int[count];
+      final int[] samples = new int[count];
+      final double[] values = new double[count];
+
+      int i = 0;
+      for (Map.Entry<String, List<double[]>> e : records.entrySet()) {
+
+        final int metric = index(dictionary, e.getKey());
+        for (double[] r : e.getValue()) {
+          metrics[i] = metric;
+          lanes[i] = (int) r[0];
+          projects[i] = (int) r[1];
+          samples[i] = (int) r[2];
+          values[i] = r[3];
+          i++;
+        }
+      }
+
+      return new Block(runId, dictionary.keySet().toArray(new String[0]),
+          metrics, lanes, projects, samples, values);
+    }
+
+    private static int index(final Map<String, Integer> dictionary,
+        final String s) {
+
+      return s == null
+          ? -1 : dictionary.computeIfAbsent(s, k -> dictionary.size());
+    }
+
+    //
+    // Constructor
+    //
+
+    private Block(final String runId, final String[] strings,
+        final int[] metrics, final int[] lanes, final int[] projects,
+        final int[] samples, final double[] values) {
+
+      this.runId = runId;
+      this.strings = strings;
+      this.metrics = metrics;
+      this.lanes = lanes;
+      this.projects = projects;
+      this.samples = samples;
+      this.values = values;
+
+      for (int i = 0; i < metrics.length; i++) {
+
+        final int[] range =
+            this.ranges.computeIfAbsent(strings[metrics[i]], k -> new int[2]);
+        if (range[1] == 0) {
+          range[0] = i;
+        } else if (range[1] != i) {
+          throw new IllegalArgumentException(
+              "The records of a metric are not contiguous");
+        }
+        range[1] = i + 1;
+      }
+    }
+  }
+
+  /**
+   * This class define the log file of an instrument and the blocks already
+   * read from this file. The last block of each run is kept in memory, so the
+   * memory used by a log grows with the number of runs of the instrument.
+   * When the metrics of a run are added again, the log is compacted: the file
+   * is rewritten without the previous block of the run, and the new file
+   * replaces the old one. As the file can be replaced, the writers lock a
+   * distinct lock file.
+   */
+  private static final class Log {
+
+    private final File file;
+    private final File lockFile;
+    private final Map<String, Block> blocks = new LinkedHashMap<>();
+    private Object fileKey;
+    private long length;
+
+    /**
+     * Read the blocks appended since the last call.
+     * @throws IOException if an error occurs while reading the file
+     */
+    synchronized void refresh() throws IOException {
+
+      if (!this.file.exists()) {
+        this.blocks.clear();
+        this.length = 0;
+        return;
+      }
+
+      // Retry if the file has been replaced while opening it
+      while (true) {
+
+        final Object key = fileKey(this.file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "r")) {
+          if (key.equals(fileKey(this.file))) {
+            read(raf, key);
+            return;
+          }
+        }
+      }
+    }
+
+    private void read(final RandomAccessFile raf, final Object key)
+        throws IOException {
+
+      final long fileLength = raf.length();
+
+      // The file has been replaced
+      if (fileLength < this.length || !key.equals(this.fileKey)) {
+        this.blocks.clear();
+        this.length = 0;
+        this.fileKey = key;
+      }
+
+      raf.seek(this.length);
+
+      // An incomplete block at the end of the file is a block being written
+      while (fileLength - this.length >= HEADER_SIZE) {
+
+        final int magic = raf.readInt();
+        final int size = raf.readInt();
+
+        if (magic != MAGIC || size < 0) {
+          throw new IOException("Invalid block at position "
+              + this.length + " in metrics file: " + this.file);
+        }
+
+        if (fileLength - this.length < HEADER_SIZE + size + FOOTER_SIZE) {
+          break;
+        }
+
+        final byte[] content = new byte[size];
+        raf.readFully(content);
+
+        if (raf.readInt() != crc(content)) {
+          throw new IOException("Corrupted block at position "
+              + this.length + " in metrics file: " + this.file);
+        }
+
+        final Block block = Block.fromBytes(content);
+        this.blocks.remove(block.runId);
+        this.blocks.put(block.runId, block);
+        this.length = raf.getFilePointer();
+      }
+    }
+
+    /**
+     * Append a block at the end of the file. The lock file is locked while
+     * writing, and an incomplete block left by an interrupted write is
+     * removed. If the file already contains a block of the run, the file is
+     * compacted instead.
+     * @param block the block to append
+     * @throws IOException if an error occurs while writing the file
+     */
+    synchronized void append(final Block block) throws IOException {
+
+      try (FileChannel lockChannel = FileChannel.open(this.lockFile.toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = lockChannel.lock()) {
+
+        refresh();
+
+        if (this.blocks.containsKey(block.runId)) {
+          compact(block);
+          return;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(toRecord(block));
+
+        try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+            FileChannel channel = raf.getChannel()) {
+
+          if (channel.size() > this.length) {
+            channel.truncate(this.length);
+          }
+
+          channel.position(this.length);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          channel.force(false);
+        }
+
+        refresh();
+      }
+    }
+
+    /**
+     * Rewrite the file without the previous block of a run and with the new
+     * block of the run at the end. The new file is written in a temporary
+     * file that replaces atomically the log file, so the readers always read
+     * a complete file.
+     * @param block the new block of the run
+     * @throws IOException if an error occurs while writing the file
+     */
+    private void compact(final Block block) throws IOException {
+
+      final File tmpFile = new File(this.file.getPath() + ".tmp");
+
+      try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+
+        for (Block b : this.blocks.values()) {
+          if (!b.runId.equals(block.runId)) {
+            out.write(toRecord(b));
+          }
+        }
+        out.write(toRecord(block));
+        out.getFD().sync();
+      }
+
+      Files.move(tmpFile.toPath(), this.file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      refresh();
+    }
+
+    /**
+     * Get the selected values of each run.
+     * @param query the query
+     * @return a map with the selected values of each run, from the oldest to
+     *         the most recent run
+     * @throws IOException if an error occurs while reading the file
+     */
+    synchronized Map<String, double[]> select(final Query query)
+        throws IOException {
+
+      refresh();
+
+      final List<Block> list = new ArrayList<>(this.blocks.values());
+      final List<Map.Entry<String, double[]>> selected = new ArrayList<>();
+
+      for (int i = list.size() - 1; i >= 0
+          && selected.size() < query.lastRuns; i--) {
+
+        final Block block = list.get(i);
+        final int[] range = block.range(query.metric);
+
+        if (range == null || block.runId.equals(query.excludedRunId)) {
+          continue;
+        }
+
+        final double[] values = new double[range[1] - range[0]];
+        int count = 0;
+        for (int j = range[0]; j < range[1]; j++) {
+          if (query.matches(block, j)) {
+            values[count++] = block.values[j];
+          }
+        }
+
+        if (count > 0) {
+          selected.add(Map.entry(block.runId,
+              count == values.length ? values : Arrays.copyOf(values, count)));
+        }
+      }
+
+      final Map<String, double[]> result = new LinkedHashMap<>();
+      for (int i = selected.size() - 1; i >= 0; i--) {
+        result.put(selected.get(i).getKey(), selected.get(i).getValue());
+      }
+
+      return result;
+    }
+
+    /**
+     * Get the identifiers of the runs.
+     * @return a list with the identifiers of the runs in the order of their
+     *         addition
+     * @throws IOException if an error occurs while reading the file
+     */
+    synchronized List<String> getRunIds() throws IOException {
+
+      refresh();
+      return new ArrayList<>(this.blocks.keySet());
+    }
+
+    //
+    // Constructor
+    //
+
+    private Log(final File file) {
+      this.file = file;
+      this.lockFile = new File(file.getPath() + ".lock");
+    }
+  }
+
+  //
+  // Store methods
+  //
+
+  /**
+   * Add the metrics of a run to the store. The instrument of the run is the
+   * "run.info.instrument" entry of the run data.
+   * @param runId the identifier of the run
+   * @param data the run data
+   * @throws IOException if an error occurs while writing the store
+   */
+  public void add(final String runId, final RunData data) throws IOException {
+
+    requireNonNull(runId, "runId argument cannot be null");
+    requireNonNull(data, "data argument cannot be null");
+
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IOException(
+          "Unable to create the metrics store directory: " + this.directory);
+    }
+
+    getLog(data.get(INSTRUMENT_KEY, UNKNOWN_INSTRUMENT))
+        .append(Block.of(runId, data));
+  }
+
+  /**
+   * Get the instruments of the store. The characters of the names of the
+   * instruments that cannot be used in a file name are replaced by '_'.
+   * @return a sorted list with the instruments
+   */
+  public List<String> getInstruments() {
+
+    final List<String> result = new ArrayList<>();
+    final File[] files = this.directory.listFiles();
+
+    if (files != null) {
+      for (File f : files) {
+        final String name = f.getName();
+        if (f.isFile() && name.endsWith(EXTENSION)) {
+          result.add(name.substring(0, name.length() - EXTENSION.length()));
+        }
+      }
+    }
+
+    Collections.sort(result);
+
+    return result;
+  }
+
+  /**
+   * Get the runs of an instrument.
+   * @param instrument the instrument
+   * @return a list with the identifiers of the runs in the order of their
+   *         addition
+   * @throws IOException if an error occurs while reading the store
+   */
+  public List<String> getRunIds(final String instrument) throws IOException {
+
+    requireNonNull(instrument, "instrument argument cannot be null");
+
+    return getLog(instrument).getRunIds();
+  }
+
+  /**
+   * Get the values selected by a query.
+   * @param query the query
+   * @return an array with the values, from the oldest to the most recent run
+   * @throws IOException if an error occurs while reading the store
+   */
+  public double[] getValues(final Query query) throws IOException {
+
+    final Map<String, double[]> selected = select(query);
+
+    int count = 0;
+    for (double[] values : selected.values()) {
+      count += values.length;
+    }
+
+    final double[] result = new double[count];
+    int i = 0;
+    for (double[] values : selected.values()) {
+      System.arraycopy(values, 0, result, i, values.length);
+      i += values.length;
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the statistics of the values selected by a query.
+   * @param query the query
+   * @return a RunningStatistics object
+   * @throws IOException if an error occurs while reading the store
+   */
+  public RunningStatistics getStatistics(final Query query)
+      throws IOException {
+
+    final RunningStatistics result = new RunningStatistics();
+
+    for (double[] values : select(query).values()) {
+      result.addAll(values);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the baseline of the values selected by a query, to test if a value of
+   * a new run is an outlier compared to the previous runs.
+   * @param query the query
+   * @return a RobustZScore object
+   * @throws IOException if an error occurs while reading the store
+   */
+  public RobustZScore getBaseline(final Query query) throws IOException {
+
+    return RobustZScore.of(getValues(query));
+  }
+
+  private Map<String, double[]> select(final Query query) throws IOException {
+
+    requireNonNull(query, "query argument cannot be null");
+
+    return getLog(query.instrument).select(query);
+  }
+
+  private synchronized Log getLog(final String instrument) {
+
+    final String name = instrument.replaceAll("[^A-Za-z0-9._-]", "_");
+
+    return this.logs.computeIfAbsent(name,
+        k -> new Log(new File(this.directory, k + EXTENSION)));
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the name of the metric of a key of the run data. The lane, sample,
+   * pooled sample and project numbers are removed from the key.
+   * @param key the key
+   * @return the name of the metric
+   */
+  public static String getMetricName(final String key) {
+
+    requireNonNull(key, "key argument cannot be null");
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (String segment : DOT_SPLITTER.split(key.toLowerCase().trim())) {
+
+      if (sb.length() > 0) {
+        sb.append('.');
+      }
+
+      final Matcher m = ENTITY_PATTERN.matcher(segment);
+      sb.append(m.matches() ? m.group(1) : segment);
+    }
+
+    return sb.toString();
+  }
+
+  private static boolean isIgnoredKey(final String key) {
+
+    for (String prefix : IGNORED_PREFIXES) {
+      if (key.startsWith(prefix)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Convert a block to a record of a log file.
+   * @param block the block
+   * @return an array of bytes with the header, the content and the footer of
+   *         the record
+   * @throws IOException if an error occurs while writing the block
+   */
+  private static byte[] toRecord(final Block block) throws IOException {
+
+    final byte[] content = block.toBytes();
+
+    return ByteBuffer.allocate(HEADER_SIZE + content.length + FOOTER_SIZE)
+        .putInt(MAGIC).putInt(content.length).put(content)
+        .putInt(crc(content)).array();
+  }
+
+  /**
+   * Get an object that identify a file, to detect that a file has been
+   * replaced.
+   * @param file the file
+   * @return the key of the file if available, otherwise its creation time
+   * @throws IOException if an error occurs while reading the attributes of
+   *           the file
+   */
+  private static Object fileKey(final File file) throws IOException {
+
+    final BasicFileAttributes attributes =
+        Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+
+    return attributes.fileKey() != null
+        ? attributes.fileKey() : attributes.creationTime();
+  }
+
+  private static int crc(final byte[] content) {
+
+    final CRC32 crc = new CRC32();
+    crc.update(content);
+
+    return (int) crc.getValue();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param directory the directory of the store
+   */
+  public MetricsStore(final File directory) {
+
+    requireNonNull(directory, "directory argument cannot be null");
+
+    this.directory = directory;
+  }
+
+}
@@ -0,0 +1,255 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.tests;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.ens.biologie.genomique.aozan.RunData;
+
+/**
+ * This class define a cache for the results of the tests. Each result is
+ * stored with the keys of the run data read by the test. When the run data
+ * change, only the results that depend of a modified key are removed from the
+ * cache. A test is identified by its instance, so a test configured with new
+ * thresholds is always evaluated again.
+ * @since 3.1
+ * @author agent
+ */
+public class TestResultCache {
+
+  private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+  private RunData data;
+
+  /**
+   * This class define the key of a result: the test instance and the
+   * arguments of the test.
+   */
+  private static final class Key {
+
+    private final AozanTest test;
+    private final String arguments;
+
+    @Override
+    public int hashCode() {
+
+      return Objects.hash(System.identityHashCode(this.test), this.arguments);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+
+      if (o == this) {
+        return true;
+      }
+
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      final Key that = (Key) o;
+
+      return this.test == that.test && this.arguments.equals(that.arguments);
+    }
+
+    private Key(final AozanTest test, final String arguments) {
+
+      this.test = requireNonNull(test);
+      this.arguments = requireNonNull(arguments);
+    }
+  }
+
+  /**
+   * This class define a result and the keys read to compute it.
+   */
+  private static final class Entry {
+
+    private final TestResult result;
+    private final Set<String> keys;
+
+    private Entry(final TestResult result, final Set<String> keys) {
+
+      this.result = result;
+      this.keys = keys;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of results in the cache.
+   * @return the number of results in the cache
+   */
+  public int size() {
+
+    return this.entries.size();
+  }
+
+  /**
+   * Get a result from the cache.
+   * @param test the test
+   * @param arguments the arguments of the test
+   * @return the result or null if the result is not in the cache
+   */
+  public TestResult get(final AozanTest test, final String arguments) {
+
+    final Entry entry = this.entries.get(new Key(test, arguments));
+
+    return entry == null ? null : entry.result;
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Update the run data of the cache. The results that depend of a key that
+   * has been added, removed or modified since the previous update are removed
+   * from the cache.
+   * @param data the new run data
+   * @return a read-only copy of the run data to use to evaluate the tests
+   */
+  public synchronized RunData update(final RunData data) {
+
+    requireNonNull(data);
+
+    final RunData snapshot = data.snapshot();
+
+    if (this.data != null) {
+
+      final Set<String> changedKeys =
+          changedKeys(this.data.getMap(), snapshot.getMap());
+
+      if (!changedKeys.isEmpty()) {
+
+        final Iterator<Entry> it = this.entries.values().iterator();
+        while (it.hasNext()) {
+          if (!Collections.disjoint(it.next().keys, changedKeys)) {
+            it.remove();
+          }
+        }
+      }
+    }
+
+    this.data = snapshot;
+
+    return snapshot;
+  }
+
+  /**
+   * Evaluate a test or get its result from the cache.
+   * @param test the test
+   * @param arguments the arguments of the test
+   * @param data the run data returned by the last call of update()
+   * @param evaluation the evaluation of the test
+   * @return the result of the test
+   */
+  public TestResult evaluate(final AozanTest test, final String arguments,
+      final RunData data, final Evaluation evaluation) {
+
+    requireNonNull(data);
+    requireNonNull(evaluation);
+
+    final Key key = new Key(test, arguments);
+    final Entry entry = this.entries.get(key);
+
+    if (entry != null) {
+      return entry.result;
+    }
+
+    final Set<String> keys = new HashSet<>();
+    final TestResult result = evaluation.test(data.recordingView(keys));
+
+    // Do not keep a result computed from an outdated run data
+    synchronized (this) {
+      if (data == this.data) {
+        this.entries.put(key, new Entry(result, keys));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Remove all the results from the cache.
+   */
+  public synchronized void clear() {
+
+    this.entries.clear();
+    this.data = null;
+  }
+
+  /**
+   * Get the keys that differ between two maps.
+   * @param previous the previous map
+   * @param current the current map
+   * @return a set with the added, removed and modified keys
+   */
+  private static Set<String> changedKeys(final Map<String, String> previous,
+      final Map<String, String> current) {
+
+    final Set<String> result = new HashSet<>();
+
+    for (Map.Entry<String, String> e : current.entrySet()) {
+      if (!Objects.equals(e.getValue(), previous.get(e.getKey()))) {
+        result.add(e.getKey());
+      }
+    }
+
+    for (String key : previous.keySet()) {
+      if (!current.containsKey(key)) {
+        result.add(key);
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Evaluation interface
+  //
+
+  /**
+   * This interface define the evaluation of a test on run data.
+   */
+  public interface Evaluation {
+
+    /**
+     * Evaluate the test.
+     * @param data the run data
+     * @return the result of the test
+     */
+    TestResult test(RunData data);
+  }
+
+}
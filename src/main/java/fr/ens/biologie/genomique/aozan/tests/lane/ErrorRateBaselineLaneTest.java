@@ -0,0 +1,193 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.tests.lane;
+
+import static fr.ens.biologie.genomique.aozan.collectors.ReadCollector.READ_DATA_PREFIX;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+
+import fr.ens.biologie.genomique.aozan.Aozan2Logger;
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.Settings;
+import fr.ens.biologie.genomique.aozan.collectors.ReadCollector;
+import fr.ens.biologie.genomique.aozan.collectors.RunInfoCollector;
+import fr.ens.biologie.genomique.aozan.history.MetricsStore;
+import fr.ens.biologie.genomique.aozan.history.MetricsStore.Query;
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.util.RobustZScore;
+import fr.ens.biologie.genomique.aozan.util.ScoreInterval;
+
+/**
+ * This class define a lane test that compares the error rate of a lane with
+ * the error rates of the same lane in the previous runs of the instrument. The
+ * value of the test is the modified z-score of the error rate of the lane
+ * against the baseline of the metrics store.
+ * @since 3.1
+ * @author agent
+ */
+public class ErrorRateBaselineLaneTest extends AbstractLaneTest {
+
+  private static final Logger LOGGER = Aozan2Logger.getLogger();
+
+  /** Key of the maximal number of previous runs of the baseline. */
+  public static final String RUN_COUNT_KEY = "run.count";
+
+  /** Key of the minimal number of previous values of the baseline. */
+  public static final String MIN_VALUES_KEY = "min.values";
+
+  private static final int DEFAULT_RUN_COUNT = 50;
+  private static final int DEFAULT_MIN_VALUES = 5;
+
+  private final ScoreInterval interval = new ScoreInterval();
+  private MetricsStore store;
+  private int runCount = DEFAULT_RUN_COUNT;
+  private int minValues = DEFAULT_MIN_VALUES;
+
+  @Override
+  public List<String> getCollectorsNamesRequiered() {
+
+    return ImmutableList.of(ReadCollector.COLLECTOR_NAME,
+        RunInfoCollector.COLLECTOR_NAME);
+  }
+
+  @Override
+  public TestResult test(final RunData data, final int read,
+      final boolean indexedRead, final int lane) {
+
+    final String key =
+        READ_DATA_PREFIX + ".read" + read + ".lane" + lane + ".err.rate.phix";
+
+    if (this.store == null || !data.contains(key)) {
+      return new TestResult("NA");
+    }
+
+    try {
+
+      final double value = data.getDouble(key);
+
+      // The run is already in the store, it must not be in its baseline
+      final Query query = new Query(
+          data.get(RunInfoCollector.PREFIX + ".instrument",
+              MetricsStore.UNKNOWN_INSTRUMENT),
+          MetricsStore.getMetricName(key)).lane(lane)
+              .excludeRun(data.get(RunInfoCollector.PREFIX + ".run.id"))
+              .lastRuns(this.runCount);
+
+      final RobustZScore baseline = this.store.getBaseline(query);
+
+      if (baseline.getCount() < this.minValues) {
+        return new TestResult("NA");
+      }
+
+      final double zScore = baseline.zScore(value);
+
+      // No score for indexed read
+      if (indexedRead) {
+        return new TestResult(zScore, false);
+      }
+
+      return new TestResult(this.interval.getScore(zScore), zScore, false);
+
+    } catch (NumberFormatException e) {
+
+      return new TestResult("NA");
+    } catch (IOException e) {
+
+      LOGGER.warning("Unable to read the metrics store: " + e.getMessage());
+      return new TestResult("NA");
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  @Override
+  public List<AozanTest> configure(final TestConfiguration conf)
+      throws AozanException {
+
+    if (conf == null) {
+      throw new NullPointerException("The conf object is null");
+    }
+
+    this.interval.configureDoubleInterval(conf);
+
+    // Without store, the test has no value
+    final String storePath = conf.get(Settings.QC_CONF_METRICS_STORE_PATH_KEY);
+    if (storePath != null && !storePath.trim().isEmpty()) {
+      this.store = new MetricsStore(new File(storePath.trim()));
+    }
+
+    this.runCount = getPositiveInt(conf, RUN_COUNT_KEY, DEFAULT_RUN_COUNT);
+    this.minValues = getPositiveInt(conf, MIN_VALUES_KEY, DEFAULT_MIN_VALUES);
+
+    return Collections.singletonList((AozanTest) this);
+  }
+
+  private static int getPositiveInt(final TestConfiguration conf,
+      final String key, final int defaultValue) throws AozanException {
+
+    final String value = conf.get(key);
+
+    if (value == null) {
+      return defaultValue;
+    }
+
+    try {
+
+      final int result = Integer.parseInt(value.trim());
+      if (result > 0) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // The error is thrown below
+    }
+
+    throw new AozanException(
+        "Invalid value for " + key + " in test configuration: " + value);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   */
+  public ErrorRateBaselineLaneTest() {
+
+    super("lane.err.rate.baseline", "Error rate vs previous runs",
+        "Error rate z-score");
+  }
+
+}
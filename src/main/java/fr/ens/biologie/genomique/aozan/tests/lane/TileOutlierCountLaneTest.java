@@ -0,0 +1,73 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.tests.lane;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+import fr.ens.biologie.genomique.aozan.collectors.ReadCollector;
+import fr.ens.biologie.genomique.aozan.collectors.interop.TileAnomalyCollector;
+
+/**
+ * This class define a lane test on the number of tiles whose density, percent
+ * of PF clusters, error rate or percent of Q30 are outliers.
+ * @since 3.1
+ * @author agent
+ */
+public class TileOutlierCountLaneTest extends AbstractSimpleLaneTest {
+
+  @Override
+  public List<String> getCollectorsNamesRequiered() {
+
+    return ImmutableList.of(ReadCollector.COLLECTOR_NAME);
+  }
+
+  @Override
+  protected String getKey(final int read, final boolean indexedRead,
+      final int lane) {
+
+    // Same value for all the reads of a lane
+    return TileAnomalyCollector.DATA_PREFIX + ".lane" + lane + ".outlier.count";
+  }
+
+  @Override
+  protected Class<?> getValueType() {
+
+    return Integer.class;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   */
+  public TileOutlierCountLaneTest() {
+
+    super("lane.tile.outlier.count", "Outlier tiles", "Outlier tiles");
+  }
+
+}
@@ -66,6 +66,11 @@ public class RecoverableRawClusterPercentPooledSampleTest
     final String rawClusterSumKey = COLLECTOR_PREFIX
         + ".pooledsample" + pooledSampleId + ".raw.cluster.sum";
 
+    // The raw counts are not available with the demultiplexing summary
+    if (!data.contains(recoveryCountKey)) {
+      return new TestResult("NA");
+    }
+
     try {
       // Set raw cluster sum for a project
       final long rawClusterCount = data.getLong(rawClusterSumKey);
@@ -70,15 +70,14 @@ public class RecoverableRawClusterPercentProjectTest
       // Set raw cluster sum for a project
       final long rawClusterCount = data.getLong(rawClusterSumKey);
 
-      // Set recoverable raw cluster sum for a project
-      final long recoveryCount;
-
+      // Set recoverable raw cluster sum for a project, not available with the
+      // demultiplexing summary
       if (data.get(recoveryCountKey) == null) {
-        recoveryCount = 0;
-      } else {
-        recoveryCount = data.getLong(recoveryCountKey);
+        return new TestResult("NA");
       }
 
+      final long recoveryCount = data.getLong(recoveryCountKey);
+
       // Compute percent
       final double percent = (double) recoveryCount / (double) rawClusterCount;
 
@@ -64,7 +64,8 @@ public class RecoverableRawClusterPercentSampleTest extends AbstractSampleTest {
     String recoveryCountKey;
     String sampleCountKey;
 
-    if (!data.isLaneIndexed(lane)) {
+    if (!data.isLaneIndexed(lane)
+        || !data.isLaneRawClusterRecoveryCountAvailable(lane)) {
       return new TestResult("NA");
     }
 
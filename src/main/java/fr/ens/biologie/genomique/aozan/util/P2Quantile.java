@@ -0,0 +1,216 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * This class define a streaming estimator of a quantile with the P² algorithm
+ * (Jain and Chlamtac, 1985). Only five markers are stored whatever the number
+ * of values, so this estimator can be used on streams of values that cannot be
+ * stored. The quantile is exact until five values have been added, then it is
+ * an approximation. Use the Quantiles class when the values are available in
+ * an array.
+ * @since 3.1
+ * @author agent
+ */
+public class P2Quantile {
+
+  private static final int MARKERS = 5;
+
+  private final double p;
+
+  // Heights and positions of the markers
+  private final double[] heights = new double[MARKERS];
+  private final double[] positions = new double[MARKERS];
+  private final double[] desiredPositions = new double[MARKERS];
+  private final double[] increments = new double[MARKERS];
+
+  private long count;
+
+  /**
+   * Get the quantile estimated by this object.
+   * @return the quantile in ]0, 1[
+   */
+  public double getP() {
+    return this.p;
+  }
+
+  /**
+   * Get the number of values.
+   * @return the number of values
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Add a value. NaN and infinite values are ignored.
+   * @param value the value to add
+   */
+  public void add(final double value) {
+
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return;
+    }
+
+    // Initialization with the first values
+    if (this.count < MARKERS) {
+
+      this.heights[(int) this.count++] = value;
+
+      if (this.count == MARKERS) {
+        Arrays.sort(this.heights);
+      }
+      return;
+    }
+
+    this.count++;
+
+    // Find the cell of the value and update the extreme markers
+    final int k;
+    if (value < this.heights[0]) {
+      this.heights[0] = value;
+      k = 0;
+    } else if (value >= this.heights[MARKERS - 1]) {
+      this.heights[MARKERS - 1] = value;
+      k = MARKERS - 2;
+    } else {
+      int i = 1;
+      while (value >= this.heights[i]) {
+        i++;
+      }
+      k = i - 1;
+    }
+
+    for (int i = k + 1; i < MARKERS; i++) {
+      this.positions[i]++;
+    }
+    for (int i = 0; i < MARKERS; i++) {
+      this.desiredPositions[i] += this.increments[i];
+    }
+
+    // Adjust the heights of the middle markers
+    for (int i = 1; i < MARKERS - 1; i++) {
+
+      final double d = this.desiredPositions[i] - this.positions[i];
+
+      if ((d >= 1 && this.positions[i + 1] - this.positions[i] > 1)
+          || (d <= -1 && this.positions[i - 1] - this.positions[i] < -1)) {
+
+        final int sign = d >= 0 ? 1 : -1;
+        final double h = parabolic(i, sign);
+
+        if (this.heights[i - 1] < h && h < this.heights[i + 1]) {
+          this.heights[i] = h;
+        } else {
+          this.heights[i] = linear(i, sign);
+        }
+        this.positions[i] += sign;
+      }
+    }
+  }
+
+  /**
+   * Get the estimation of the quantile.
+   * @return the estimation of the quantile or NaN if no value has been added
+   */
+  public double getQuantile() {
+
+    if (this.count == 0) {
+      return Double.NaN;
+    }
+
+    if (this.count < MARKERS) {
+
+      final int n = (int) this.count;
+      final double[] values = Arrays.copyOf(this.heights, n);
+
+      return Quantiles.quantile(values, n, this.p);
+    }
+
+    return this.heights[2];
+  }
+
+  /**
+   * Remove all the values.
+   */
+  public void clear() {
+
+    this.count = 0;
+    for (int i = 0; i < MARKERS; i++) {
+      this.heights[i] = 0.0;
+      this.positions[i] = i + 1;
+    }
+
+    this.desiredPositions[0] = 1;
+    this.desiredPositions[1] = 1 + 2 * this.p;
+    this.desiredPositions[2] = 1 + 4 * this.p;
+    this.desiredPositions[3] = 3 + 2 * this.p;
+    this.desiredPositions[4] = 5;
+  }
+
+  private double parabolic(final int i, final int sign) {
+
+    final double[] q = this.heights;
+    final double[] n = this.positions;
+
+    return q[i] + sign / (n[i + 1] - n[i - 1])
+        * ((n[i] - n[i - 1] + sign) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+            + (n[i + 1] - n[i] - sign) * (q[i] - q[i - 1])
+                / (n[i] - n[i - 1]));
+  }
+
+  private double linear(final int i, final int sign) {
+
+    return this.heights[i] + sign * (this.heights[i + sign] - this.heights[i])
+        / (this.positions[i + sign] - this.positions[i]);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param p the quantile to estimate in ]0, 1[
+   */
+  public P2Quantile(final double p) {
+
+    checkArgument(p > 0.0 && p < 1.0, "p must be in ]0, 1[: " + p);
+
+    this.p = p;
+
+    this.increments[0] = 0;
+    this.increments[1] = p / 2;
+    this.increments[2] = p;
+    this.increments[3] = (1 + p) / 2;
+    this.increments[4] = 1;
+
+    clear();
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * This class contains methods to compute exact quantiles on arrays of
+ * primitive values. The order statistics are selected with the quickselect
+ * algorithm in linear time, without sorting and without boxing. The methods
+ * reorder the values of the array, so the caller can reuse the same buffer for
+ * each computation. The quantiles are estimated like the default estimation of
+ * the Percentile class of commons-math, so the median of an even number of
+ * values is the mean of the two middle values.
+ * @since 3.1
+ * @author agent
+ */
+public final class Quantiles {
+
+  /**
+   * Compute the median of the first values of an array. The values are
+   * reordered.
+   * @param values the values
+   * @param length number of values to use
+   * @return the median or NaN if there is no value
+   */
+  public static double median(final double[] values, final int length) {
+
+    return quantile(values, length, 0.5);
+  }
+
+  /**
+   * Compute a quantile of the first values of an array. The values are
+   * reordered.
+   * @param values the values
+   * @param length number of values to use
+   * @param p the quantile in ]0, 1]
+   * @return the quantile or NaN if there is no value
+   */
+  public static double quantile(final double[] values, final int length,
+      final double p) {
+
+    checkArgument(p > 0.0 && p <= 1.0, "p must be in ]0, 1]: " + p);
+    checkArgument(length >= 0 && length <= values.length,
+        "invalid length: " + length);
+
+    if (length == 0) {
+      return Double.NaN;
+    }
+
+    if (length == 1) {
+      return values[0];
+    }
+
+    final double pos = p * (length + 1);
+
+    if (pos < 1) {
+      return select(values, 0, length, 0);
+    }
+
+    if (pos >= length) {
+      return select(values, 0, length, length - 1);
+    }
+
+    final int k = (int) Math.floor(pos);
+    final double d = pos - k;
+
+    final double lower = select(values, 0, length, k - 1);
+
+    if (d == 0.0) {
+      return lower;
+    }
+
+    // The values after the k-1th element are greater or equal to it, so the
+    // kth element is their minimum
+    double upper = values[k];
+    for (int i = k + 1; i < length; i++) {
+      if (values[i] < upper) {
+        upper = values[i];
+      }
+    }
+
+    return lower + d * (upper - lower);
+  }
+
+  /**
+   * Select the kth smallest value in a range of an array. After the call, the
+   * values before k in the range are lower or equal to the kth value and the
+   * values after k are greater or equal.
+   * @param values the values
+   * @param from first index of the range
+   * @param to index after the last index of the range
+   * @param k index of the value to select
+   * @return the kth smallest value
+   */
+  static double select(final double[] values, final int from, final int to,
+      final int k) {
+
+    int left = from;
+    int right = to - 1;
+
+    while (right > left) {
+
+      // Median of three pivot
+      final int mid = (left + right) >>> 1;
+      if (values[mid] < values[left]) {
+        swap(values, left, mid);
+      }
+      if (values[right] < values[left]) {
+        swap(values, left, right);
+      }
+      if (values[right] < values[mid]) {
+        swap(values, mid, right);
+      }
+      final double pivot = values[mid];
+
+      // Hoare partition
+      int i = left;
+      int j = right;
+      while (i <= j) {
+
+        while (values[i] < pivot) {
+          i++;
+        }
+        while (values[j] > pivot) {
+          j--;
+        }
+
+        if (i <= j) {
+          swap(values, i, j);
+          i++;
+          j--;
+        }
+      }
+
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return values[k];
+      }
+    }
+
+    return values[k];
+  }
+
+  private static void swap(final double[] values, final int i, final int j) {
+
+    final double tmp = values[i];
+    values[i] = values[j];
+    values[j] = tmp;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   */
+  private Quantiles() {
+  }
+
+}
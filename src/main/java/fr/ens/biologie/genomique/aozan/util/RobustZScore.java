@@ -0,0 +1,189 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * This class define the modified z-score of Iglewicz and Hoaglin, a z-score
+ * computed with the median and the median absolute deviation (MAD) instead of
+ * the mean and the standard deviation. Unlike the z-score, the modified
+ * z-score is not biased by the outliers themselves, so it can detect them in
+ * small samples like the tiles of a lane. If the MAD is null, the mean
+ * absolute deviation is used instead.
+ * @since 3.1
+ * @author agent
+ */
+public final class RobustZScore {
+
+  /**
+   * Threshold of the modified z-score recommended by Iglewicz and Hoaglin to
+   * label a value as an outlier.
+   */
+  public static final double DEFAULT_THRESHOLD = 3.5;
+
+  // Ratio between the MAD and the standard deviation of a normal distribution
+  private static final double MAD_FACTOR = 0.6745;
+
+  // Ratio between the standard deviation and the mean absolute deviation of a
+  // normal distribution
+  private static final double MEAN_AD_FACTOR = 1.253314;
+
+  private final int count;
+  private final double median;
+  private final double mad;
+  private final double scale;
+
+  /**
+   * Get the number of values used to compute the median and the MAD.
+   * @return the number of values
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Get the median of the values.
+   * @return the median of the values or NaN if there is no value
+   */
+  public double getMedian() {
+    return this.median;
+  }
+
+  /**
+   * Get the median absolute deviation of the values.
+   * @return the median absolute deviation or NaN if there is no value
+   */
+  public double getMedianAbsoluteDeviation() {
+    return this.mad;
+  }
+
+  /**
+   * Get the robust estimate of the standard deviation of the values, used to
+   * compute the modified z-scores.
+   * @return the robust estimate of the standard deviation or NaN if there is no
+   *         value
+   */
+  public double getStandardDeviation() {
+    return this.count == 0 ? Double.NaN : this.scale;
+  }
+
+  /**
+   * Compute the modified z-score of a value.
+   * @param value the value
+   * @return the modified z-score of the value or NaN if the value is NaN or
+   *         if there is no value
+   */
+  public double zScore(final double value) {
+
+    if (Double.isNaN(value) || this.count == 0) {
+      return Double.NaN;
+    }
+
+    final double delta = value - this.median;
+
+    // All the values are equal to the median
+    if (this.scale == 0.0) {
+      return delta == 0.0 ? 0.0 : Math.copySign(Double.POSITIVE_INFINITY, delta);
+    }
+
+    return delta / this.scale;
+  }
+
+  /**
+   * Test if a value is an outlier.
+   * @param value the value
+   * @param threshold threshold of the absolute value of the modified z-score
+   * @return true if the value is an outlier
+   */
+  public boolean isOutlier(final double value, final double threshold) {
+
+    return Math.abs(zScore(value)) > threshold;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Compute the median and the MAD of the first values of an array. NaN values
+   * are ignored and the array is not modified.
+   * @param values the values
+   * @param length number of values to use
+   * @return a new RobustZScore object
+   */
+  public static RobustZScore of(final double[] values, final int length) {
+
+    requireNonNull(values, "values argument cannot be null");
+
+    final double[] buffer = new double[length];
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      if (!Double.isNaN(values[i])) {
+        buffer[count++] = values[i];
+      }
+    }
+
+    final double median = Quantiles.median(buffer, count);
+
+    double sum = 0.0;
+    for (int i = 0; i < count; i++) {
+      buffer[i] = Math.abs(buffer[i] - median);
+      sum += buffer[i];
+    }
+
+    final double mad = Quantiles.median(buffer, count);
+    final double scale = mad > 0.0
+        ? mad / MAD_FACTOR : count == 0 ? 0.0 : MEAN_AD_FACTOR * sum / count;
+
+    return new RobustZScore(count, median, mad, scale);
+  }
+
+  /**
+   * Compute the median and the MAD of the values of an array. NaN values are
+   * ignored and the array is not modified.
+   * @param values the values
+   * @return a new RobustZScore object
+   */
+  public static RobustZScore of(final double... values) {
+
+    requireNonNull(values, "values argument cannot be null");
+
+    return of(values, values.length);
+  }
+
+  //
+  // Constructor
+  //
+
+  private RobustZScore(final int count, final double median,
+      final double mad, final double scale) {
+
+    this.count = count;
+    this.median = median;
+    this.mad = mad;
+    this.scale = scale;
+  }
+
+}
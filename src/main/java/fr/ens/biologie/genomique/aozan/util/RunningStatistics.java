@@ -0,0 +1,233 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+/**
+ * This class define an accumulator of the statistics of a variable. The mean
+ * and the variance are updated for each value with the Welford algorithm, so
+ * the values are never stored and the statistics are computed in a single
+ * pass. Infinite values are ignored, like in StatisticsUtils. An instance of
+ * this class is not thread safe, but the accumulators of several threads can
+ * be merged.
+ * @since 3.1
+ * @author agent
+ */
+public class RunningStatistics {
+
+  private long count;
+  private double mean;
+  private double m2;
+  private double sum;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /**
+   * Add a value.
+   * @param value the value to add
+   */
+  public void add(final double value) {
+
+    if (Double.isInfinite(value)) {
+      return;
+    }
+
+    this.count++;
+
+    final double delta = value - this.mean;
+    this.mean += delta / this.count;
+    this.m2 += delta * (value - this.mean);
+    this.sum += value;
+
+    if (this.count == 1) {
+      this.min = value;
+      this.max = value;
+    } else {
+      this.min = Math.min(this.min, value);
+      this.max = Math.max(this.max, value);
+    }
+  }
+
+  /**
+   * Add values.
+   * @param values the values to add
+   */
+  public void addAll(final double[] values) {
+
+    for (double value : values) {
+      add(value);
+    }
+  }
+
+  /**
+   * Add the values of another accumulator.
+   * @param statistics the accumulator to merge
+   */
+  public void merge(final RunningStatistics statistics) {
+
+    if (statistics == null || statistics.count == 0) {
+      return;
+    }
+
+    if (this.count == 0) {
+      this.count = statistics.count;
+      this.mean = statistics.mean;
+      this.m2 = statistics.m2;
+      this.sum = statistics.sum;
+      this.min = statistics.min;
+      this.max = statistics.max;
+      return;
+    }
+
+    final long n = this.count + statistics.count;
+    final double delta = statistics.mean - this.mean;
+
+    this.mean += delta * statistics.count / n;
+    this.m2 += statistics.m2
+        + delta * delta * ((double) this.count * statistics.count / n);
+    this.count = n;
+    this.sum += statistics.sum;
+    this.min = Math.min(this.min, statistics.min);
+    this.max = Math.max(this.max, statistics.max);
+  }
+
+  /**
+   * Remove all the values.
+   */
+  public void clear() {
+
+    this.count = 0;
+    this.mean = 0.0;
+    this.m2 = 0.0;
+    this.sum = 0.0;
+    this.min = Double.NaN;
+    this.max = Double.NaN;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of values.
+   * @return the number of values
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * Get the mean of the values.
+   * @return the mean or NaN if no values have been added
+   */
+  public double getMean() {
+    return this.count == 0 ? Double.NaN : this.mean;
+  }
+
+  /**
+   * Get the sum of the values.
+   * @return the sum of the values
+   */
+  public double getSum() {
+    return this.sum;
+  }
+
+  /**
+   * Get the minimal value.
+   * @return the minimal value or NaN if no values have been added
+   */
+  public double getMin() {
+    return this.min;
+  }
+
+  /**
+   * Get the maximal value.
+   * @return the maximal value or NaN if no values have been added
+   */
+  public double getMax() {
+    return this.max;
+  }
+
+  /**
+   * Get the variance of the values.
+   * @param isBiasCorrected true to divide by the number of values - 1
+   * @return the variance or NaN if no values have been added, or 0.0 for a
+   *         single value set
+   */
+  public double getVariance(final boolean isBiasCorrected) {
+
+    if (this.count == 0) {
+      return Double.NaN;
+    }
+
+    if (this.count == 1) {
+      return 0.0;
+    }
+
+    return this.m2 / (isBiasCorrected ? this.count - 1 : this.count);
+  }
+
+  /**
+   * Get the population standard deviation of the values, like
+   * StatisticsUtils.getStandardDeviation().
+   * @return the standard deviation or NaN if no values have been added, or
+   *         0.0 for a single value set
+   */
+  public double getStandardDeviation() {
+    return getStandardDeviation(false);
+  }
+
+  /**
+   * Get the standard deviation of the values.
+   * @param isBiasCorrected true to divide by the number of values - 1
+   * @return the standard deviation or NaN if no values have been added, or
+   *         0.0 for a single value set
+   */
+  public double getStandardDeviation(final boolean isBiasCorrected) {
+    return Math.sqrt(getVariance(isBiasCorrected));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n %d\tmean %.4f\tsd %.4f\tmin %.4f\tmax %.4f",
+        this.count, getMean(), getStandardDeviation(), this.min, this.max);
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Compute the statistics of an array of values.
+   * @param values the values
+   * @return a new RunningStatistics object
+   */
+  public static RunningStatistics of(final double[] values) {
+
+    final RunningStatistics result = new RunningStatistics();
+    result.addAll(values);
+
+    return result;
+  }
+
+}
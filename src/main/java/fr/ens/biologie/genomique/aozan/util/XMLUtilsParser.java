@@ -23,8 +23,13 @@
 
 package fr.ens.biologie.genomique.aozan.util;
 
+import java.io.InputStream;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -202,4 +207,22 @@ public final class XMLUtilsParser {
       final String tagName) {
     return extractValueToString(doc, tagName, 0);
   }
+
+  /**
+   * Create a streaming reader on a XML document. The DTD and the external
+   * entities are not resolved.
+   * @param in input stream of the document
+   * @return a new XMLStreamReader object
+   * @throws XMLStreamException if an error occurs while creating the reader
+   */
+  public static XMLStreamReader createXMLStreamReader(final InputStream in)
+      throws XMLStreamException {
+
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        false);
+
+    return factory.createXMLStreamReader(in);
+  }
 }
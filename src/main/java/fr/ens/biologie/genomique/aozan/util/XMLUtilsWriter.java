@@ -25,30 +25,34 @@ package fr.ens.biologie.genomique.aozan.util;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 import com.google.common.base.Strings;
 
@@ -136,6 +140,100 @@ public final class XMLUtilsWriter {
     }
   }
 
+  /**
+   * Add common tag in a XML stream to describe Aozan and if data exists on
+   * run.
+   * @param writer XML stream writer
+   * @param data instance of run data
+   * @throws XMLStreamException if an error occurs while writing the tags
+   */
+  public static void buildXMLCommonTagHeader(final XMLStreamWriter writer,
+      final RunData data) throws XMLStreamException {
+
+    requireNonNull(writer, "writer argument cannot be null");
+
+    for (final Map.Entry<String, String> e : getCommonTagHeaderValues(data)
+        .entrySet()) {
+      addTagValue(writer, e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * Get the values of the common tags that describe Aozan and if data exists
+   * the run, in the order of the header of the reports.
+   * @param data instance of run data, can be null
+   * @return a map with the names of the tags as keys. The values of the tags
+   *         can be null
+   */
+  public static Map<String, String> getCommonTagHeaderValues(
+      final RunData data) {
+
+    /** Default locale date format in the application. */
+    final DateFormat dateFormatter =
+        new SimpleDateFormat("EEE dd MMM yyyy", Globals.DEFAULT_LOCALE);
+
+    final Map<String, String> result = new LinkedHashMap<>();
+
+    result.put("GeneratorName", Globals.APP_NAME);
+    result.put("GeneratorVersion", Globals.APP_VERSION_STRING);
+    result.put("GeneratorWebsite", Globals.WEBSITE_URL);
+    result.put("GeneratorRevision", Globals.APP_BUILD_COMMIT);
+
+    if (data != null) {
+      result.put("RunId", data.get("run.info.run.id"));
+
+      // Convert string to date
+      try {
+        final SimpleDateFormat sdf = new SimpleDateFormat("yyMMdd");
+        final Date runDate = sdf.parse(data.get("run.info.date"));
+        result.put("RunDate", dateFormatter.format(runDate));
+      } catch (final ParseException e1) {
+        result.put("RunDate", data.get("run.info.date"));
+      }
+
+      result.put("SequencerName", data.getSequencerName());
+      result.put("SequencerFamily", data.getSequencerFamily());
+      result.put("InstrumentSN", data.get("run.info.instrument"));
+
+      result.put("FlowcellId", data.getFlowcellId());
+      result.put("InstrumentRunNumber", data.get("run.info.run.number"));
+
+      result.put("SequencerApplicationName",
+          data.getSequencerApplicationName());
+      result.put("SequencerApplicationVersion",
+          data.getSequencerApplicationVersion());
+      result.put("SequencerRTAVersion", data.getSequencerRTAVersion());
+
+      result.put("Bcl2FastqVersion",
+          Strings.nullToEmpty(data.getBcl2FastqVersion()).isEmpty()
+              ? "Unknown version" : data.getBcl2FastqVersion());
+
+      result.put("ReportDate", dateFormatter.format(new Date()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Add an element with a text value in a XML stream. Like
+   * XMLUtils.addTagValue(), nothing is written if the value is null.
+   * @param writer XML stream writer
+   * @param name name of the element
+   * @param value text value of the element
+   * @throws XMLStreamException if an error occurs while writing the element
+   */
+  public static void addTagValue(final XMLStreamWriter writer,
+      final String name, final String value) throws XMLStreamException {
+
+    if (writer == null || name == null || value == null) {
+      return;
+    }
+
+    writer.writeStartElement(name);
+    writer.writeCharacters(value);
+    writer.writeEndElement();
+  }
+
   /**
    * Create a xml file from document xml.
    * @param doc document xml
@@ -238,18 +336,8 @@ public final class XMLUtilsWriter {
     requireNonNull(XMLFile);
     requireNonNull(XSLFile);
 
-    try {
-      DocumentBuilder db =
-          DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      Document doc = db.parse(XMLFile);
-
-      try (InputStream is = new FileInputStream(XSLFile)) {
-        return createHTMLFileFromXSL(doc, is);
-      }
-
-    } catch (ParserConfigurationException | SAXException | IOException e) {
-      throw new AozanException(e);
-    }
+    return transform(new StreamSource(XMLFile),
+        XSLTemplatesCache.get(XSLFile));
   }
 
   /**
@@ -265,6 +353,27 @@ public final class XMLUtilsWriter {
       final InputStream isXslFile, final File reportHtml)
       throws IOException, AozanException {
 
+    if (isXslFile == null) {
+      throw new AozanException(
+          "Error create HTML file, XSL file is not define.");
+    }
+
+    createHTMLFileFromXSL(doc, compile(isXslFile), reportHtml);
+  }
+
+  /**
+   * Create a html file from document xml and a compiled xsl stylesheet.
+   * @param doc document xml
+   * @param templates compiled xsl stylesheet
+   * @param reportHtml output html file
+   * @throws IOException if an error occurs while writing the file
+   * @throws AozanException if document or output file doesn't exist or if an
+   *           error occurs during transforming document.
+   */
+  public static void createHTMLFileFromXSL(final Document doc,
+      final Templates templates, final File reportHtml)
+      throws IOException, AozanException {
+
     if (doc == null) {
       throw new AozanException(
           "Error create HTML file, document doesn't exist.");
@@ -275,16 +384,10 @@ public final class XMLUtilsWriter {
           "Error create HTML file, output HTML file is not define.");
     }
 
-    if (isXslFile == null) {
-      throw new AozanException(
-          "Error create HTML file, XSL file is not define.");
-    }
+    requireNonNull(templates, "templates argument cannot be null");
 
-    // Transform document xml in text html
-    final String text = createHTMLFileFromXSL(doc, isXslFile);
-
-    // Create html file
-    Files.write(reportHtml.toPath(), text.getBytes());
+    // Transform document xml in html file
+    transform(new DOMSource(doc), templates, reportHtml);
   }
 
   /**
@@ -308,40 +411,154 @@ public final class XMLUtilsWriter {
           "Error create HTML file, XSL file is not define.");
     }
 
-    try {
-      // Set up a transformer
-      final TransformerFactory transfac = TransformerFactory.newInstance();
-      Transformer trans = transfac.newTransformer();
-      // trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-      trans.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
-      trans.setOutputProperty(OutputKeys.INDENT, "yes");
-      trans.setOutputProperty(OutputKeys.METHOD, "html");
-      trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+    return transform(new DOMSource(doc), compile(isXslFile));
+  }
+
+  /**
+   * Transform a XML stream using a XSL style sheet. The XML stream is not
+   * loaded in a DOM document, but the XSL processor builds its own tree of the
+   * whole document.
+   * @param xmlIs input stream on the XML document
+   * @param isXslFile input stream on the xsl file
+   * @return the result of the transformation
+   * @throws AozanException if an error occurs during transforming document
+   */
+  public static String createHTMLFileFromXSL(final InputStream xmlIs,
+      final InputStream isXslFile) throws AozanException {
+
+    if (isXslFile == null) {
+      throw new AozanException(
+          "Error create HTML file, XSL file is not define.");
+    }
+
+    return createHTMLFileFromXSL(xmlIs, compile(isXslFile));
+  }
+
+  /**
+   * Transform a XML stream using a compiled XSL style sheet. The XML stream is
+   * not loaded in a DOM document, but the XSL processor builds its own tree of
+   * the whole document.
+   * @param xmlIs input stream on the XML document
+   * @param templates compiled xsl stylesheet
+   * @return the result of the transformation
+   * @throws AozanException if an error occurs during transforming document
+   */
+  public static String createHTMLFileFromXSL(final InputStream xmlIs,
+      final Templates templates) throws AozanException {
 
-      // Create string from XML tree
-      final StringWriter sw = new StringWriter();
-      final StreamResult result = new StreamResult(sw);
+    requireNonNull(xmlIs, "xmlIs argument cannot be null");
+    requireNonNull(templates, "templates argument cannot be null");
 
-      final DOMSource source = new DOMSource(doc);
-      trans.transform(source, result);
+    return transform(new StreamSource(xmlIs), templates);
+  }
 
-      // Create the transformer
-      final Transformer transformer =
-          TransformerFactory.newInstance().newTransformer(
-              new javax.xml.transform.stream.StreamSource(isXslFile));
+  /**
+   * Create a html file from a XML file and a XSL file. The XML file is not
+   * loaded in a DOM document, but the XSL processor builds its own tree of the
+   * whole document. The result is directly written in the output file.
+   * @param xmlFile XML file
+   * @param isXslFile input stream on the xsl file
+   * @param reportHtml output html file
+   * @throws IOException if an error occurs while writing the file
+   * @throws AozanException if an error occurs during transforming document
+   */
+  public static void createHTMLFileFromXSL(final File xmlFile,
+      final InputStream isXslFile, final File reportHtml)
+      throws IOException, AozanException {
+
+    if (isXslFile == null) {
+      throw new AozanException(
+          "Error create HTML file, XSL file is not define.");
+    }
+
+    createHTMLFileFromXSL(xmlFile, compile(isXslFile), reportHtml);
+  }
+
+  /**
+   * Create a html file from a XML file and a compiled XSL stylesheet. The XML
+   * file is not loaded in a DOM document, but the XSL processor builds its own
+   * tree of the whole document. The result is directly written in the output
+   * file.
+   * @param xmlFile XML file
+   * @param templates compiled xsl stylesheet
+   * @param reportHtml output html file
+   * @throws IOException if an error occurs while writing the file
+   * @throws AozanException if an error occurs during transforming document
+   */
+  public static void createHTMLFileFromXSL(final File xmlFile,
+      final Templates templates, final File reportHtml)
+      throws IOException, AozanException {
+
+    requireNonNull(xmlFile, "xmlFile argument cannot be null");
+    requireNonNull(templates, "templates argument cannot be null");
+
+    if (reportHtml == null) {
+      throw new AozanException(
+          "Error create HTML file, output HTML file is not define.");
+    }
+
+    transform(new StreamSource(xmlFile), templates, reportHtml);
+  }
+
+  /**
+   * Compile a stylesheet and close its input stream.
+   * @param isXslFile input stream on the xsl file
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  private static Templates compile(final InputStream isXslFile)
+      throws AozanException {
+
+    try (InputStream is = isXslFile) {
+      return XSLTemplatesCache.compile(is);
+    } catch (final IOException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Transform a document in a String.
+   * @param source the document
+   * @param templates compiled xsl stylesheet
+   * @return the result of the transformation
+   * @throws AozanException if an error occurs during transforming document
+   */
+  private static String transform(final Source source,
+      final Templates templates) throws AozanException {
+
+    try {
 
       // Create the String writer
       final StringWriter writer = new StringWriter();
 
       // Transform the document
-      transformer.transform(new DOMSource(doc), new StreamResult(writer));
-
-      // Close input stream
-      isXslFile.close();
+      templates.newTransformer().transform(source, new StreamResult(writer));
 
       return writer.toString();
 
-    } catch (final TransformerException | IOException e) {
+    } catch (final TransformerException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Transform a document in a file.
+   * @param source the document
+   * @param templates compiled xsl stylesheet
+   * @param output output file
+   * @throws IOException if an error occurs while writing the file
+   * @throws AozanException if an error occurs during transforming document
+   */
+  private static void transform(final Source source, final Templates templates,
+      final File output) throws IOException, AozanException {
+
+    try (OutputStream out = new BufferedOutputStream(
+        Files.newOutputStream(output.toPath()))) {
+
+      // Transform the document
+      templates.newTransformer().transform(source, new StreamResult(out));
+
+    } catch (final TransformerException e) {
       throw new AozanException(e);
     }
   }
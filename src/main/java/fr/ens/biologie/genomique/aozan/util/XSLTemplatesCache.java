@@ -0,0 +1,187 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+/**
+ * This class define a process wide cache for the compiled XSL stylesheets.
+ * Templates objects are thread-safe, so each report only creates a new
+ * Transformer from the compiled stylesheet. A stylesheet file is compiled
+ * again when its modification date or its size change.
+ * @since 3.1
+ * @author agent
+ */
+public final class XSLTemplatesCache {
+
+  private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * A compiled stylesheet with the state of its file.
+   */
+  private static final class Entry {
+
+    private final long lastModified;
+    private final long length;
+    private final Templates templates;
+
+    private Entry(final long lastModified, final long length,
+        final Templates templates) {
+
+      this.lastModified = lastModified;
+      this.length = length;
+      this.templates = templates;
+    }
+  }
+
+  /**
+   * Get the compiled stylesheet of a file.
+   * @param xslFile the stylesheet file
+   * @return a Templates object
+   * @throws AozanException if an error occurs while reading or compiling the
+   *           stylesheet
+   */
+  public static Templates get(final File xslFile) throws AozanException {
+
+    requireNonNull(xslFile, "xslFile argument cannot be null");
+
+    final File file = xslFile.getAbsoluteFile();
+    final String key = "file:" + file.getPath();
+    final long lastModified = file.lastModified();
+    final long length = file.length();
+
+    final Entry entry = CACHE.get(key);
+
+    if (entry != null
+        && entry.lastModified == lastModified && entry.length == length) {
+      return entry.templates;
+    }
+
+    final Templates templates;
+    try (InputStream is = new FileInputStream(file)) {
+      templates = compile(new StreamSource(is, file.toURI().toString()));
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+
+    CACHE.put(key, new Entry(lastModified, length, templates));
+
+    return templates;
+  }
+
+  /**
+   * Get the compiled stylesheet of a resource of the application like the
+   * default stylesheets.
+   * @param resource the path of the resource
+   * @return a Templates object
+   * @throws AozanException if the resource does not exist or if an error occurs
+   *           while compiling the stylesheet
+   */
+  public static Templates getResource(final String resource)
+      throws AozanException {
+
+    requireNonNull(resource, "resource argument cannot be null");
+
+    final String key = "resource:" + resource;
+    final Entry entry = CACHE.get(key);
+
+    if (entry != null) {
+      return entry.templates;
+    }
+
+    final URL url = XSLTemplatesCache.class.getResource(resource);
+
+    if (url == null) {
+      throw new AozanException("XSL stylesheet not found: " + resource);
+    }
+
+    final Templates templates;
+    try (InputStream is = url.openStream()) {
+      templates = compile(new StreamSource(is, url.toExternalForm()));
+    } catch (IOException e) {
+      throw new AozanException(e);
+    }
+
+    CACHE.putIfAbsent(key, new Entry(0, 0, templates));
+
+    return templates;
+  }
+
+  /**
+   * Compile a stylesheet that is not cached.
+   * @param is input stream on the stylesheet
+   * @return a Templates object
+   * @throws AozanException if an error occurs while compiling the stylesheet
+   */
+  public static Templates compile(final InputStream is) throws AozanException {
+
+    requireNonNull(is, "is argument cannot be null");
+
+    return compile(new StreamSource(is));
+  }
+
+  private static Templates compile(final Source source) throws AozanException {
+
+    try {
+
+      // TransformerFactory objects are not thread-safe
+      return TransformerFactory.newInstance().newTemplates(source);
+
+    } catch (TransformerConfigurationException e) {
+      throw new AozanException(e);
+    }
+  }
+
+  /**
+   * Remove all the compiled stylesheets from the cache.
+   */
+  public static void clear() {
+
+    CACHE.clear();
+  }
+
+  //
+  // Constructor
+  //
+
+  private XSLTemplatesCache() {
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.tests.global.AbstractGlobalTest;
+
+public class PaginatedReportWriterTest {
+
+  @Test
+  public void testWrite() throws IOException {
+
+    final File dir = Files.createTempDirectory("report").toFile();
+
+    final RunData data = new RunData();
+    data.put("run.info.run.id", "run1");
+    data.put("samplesheet.project1.name", "P1");
+    data.put("samplesheet.project2.name", "P2");
+    putSample(data, 1, "S1", "P1", "ACGT");
+    putSample(data, 2, "S2", "P2", "TTTT");
+    putSample(data, 3, "S3", "P1", "GGGG");
+    putSample(data, 4, null, null, null);
+    data.put("samplesheet.sample4.undetermined", true);
+
+    final AozanTest test1 = newTest("test1");
+    final AozanTest test2 = newTest("test2");
+
+    try {
+
+      try (PaginatedReportWriter writer =
+          new PaginatedReportWriter(data, dir)) {
+
+        writer.visit("run", 0, 0, 0, test1, new TestResult(9, 100));
+        for (int lane = 1; lane <= 2; lane++) {
+          writer.visit("lane", 1, lane, 0, test1, new TestResult(9, 1.5));
+          writer.visit("lane", 1, lane, 0, test2,
+              new TestResult(lane == 2 ? 4 : 9, 0.5, true));
+        }
+        writer.visit("project", 0, 0, 1, test1, new TestResult(9, 10));
+        writer.visit("project", 0, 0, 2, test1, new TestResult(9, 20));
+
+        for (int sample = 1; sample <= 4; sample++) {
+          writer.visit("sample", 1, 1, sample, test1,
+              new TestResult(sample == 3 ? 2 : 9, 1000 * sample));
+          writer.visit("sample", 1, 1, sample, test2,
+              new TestResult(-1, "url", "url"));
+        }
+      }
+
+      Assert.assertTrue(
+          new File(dir, PaginatedReportWriter.VIEWER_FILENAME).isFile());
+
+      // Run data file
+      final JsonObject run = readDataFile(
+          new File(dir, "data/" + PaginatedReportWriter.RUN_DATA_FILENAME),
+          "loadRun");
+      Assert.assertEquals("run1",
+          run.getAsJsonObject("run").get("id").getAsString());
+      Assert.assertEquals(PaginatedReportWriter.FORMAT_VERSION,
+          run.get("version").getAsInt());
+
+      final JsonArray sections = run.getAsJsonArray("sections");
+      Assert.assertEquals(3, sections.size());
+
+      final JsonObject lanes = sections.get(1).getAsJsonObject();
+      Assert.assertEquals("lane", lanes.get("entity").getAsString());
+      Assert.assertEquals(2, lanes.getAsJsonArray("columns").size());
+      Assert.assertEquals("test2", lanes.getAsJsonArray("columns").get(1)
+          .getAsJsonObject().get("name").getAsString());
+      Assert.assertEquals(2, lanes.getAsJsonArray("rows").size());
+
+      final JsonObject lane2 =
+          lanes.getAsJsonArray("rows").get(1).getAsJsonObject();
+      Assert.assertEquals(2, lane2.get("lane").getAsInt());
+      final JsonArray cell = lane2.getAsJsonArray("cells").get(1)
+          .getAsJsonArray();
+      Assert.assertEquals(4, cell.get(0).getAsInt());
+      Assert.assertEquals("percent", cell.get(1).getAsString());
+      Assert.assertEquals(0.5, cell.get(2).getAsDouble(), 0.0);
+
+      final JsonObject projects = sections.get(2).getAsJsonObject();
+      Assert.assertEquals("P2", projects.getAsJsonArray("rows").get(1)
+          .getAsJsonObject().get("name").getAsString());
+
+      // Projects of the samples
+      final JsonObject samples = run.getAsJsonObject("samples");
+      Assert.assertEquals(2, samples.getAsJsonArray("columns").size());
+
+      final JsonArray sampleProjects = samples.getAsJsonArray("projects");
+      Assert.assertEquals(3, sampleProjects.size());
+
+      final JsonObject p1 = sampleProjects.get(0).getAsJsonObject();
+      Assert.assertEquals("P1", p1.get("name").getAsString());
+      Assert.assertEquals("data/project-1.js", p1.get("file").getAsString());
+      Assert.assertEquals(2, p1.get("rows").getAsInt());
+      Assert.assertEquals(2, p1.get("minScore").getAsInt());
+      Assert.assertEquals("undetermined", sampleProjects.get(2)
+          .getAsJsonObject().get("name").getAsString());
+
+      // Samples of a project
+      final JsonObject project1 =
+          readDataFile(new File(dir, "data/project-1.js"), "loadProject");
+      Assert.assertEquals("P1", project1.get("project").getAsString());
+
+      final JsonArray rows = project1.getAsJsonArray("rows");
+      Assert.assertEquals(2, rows.size());
+
+      final JsonObject s3 = rows.get(1).getAsJsonObject();
+      Assert.assertEquals(3, s3.get("id").getAsInt());
+      Assert.assertEquals("S3", s3.get("name").getAsString());
+      Assert.assertEquals("GGGG", s3.get("index").getAsString());
+      Assert.assertEquals(3000, s3.getAsJsonArray("cells").get(0)
+          .getAsJsonArray().get(2).getAsLong());
+      Assert.assertEquals("url", s3.getAsJsonArray("cells").get(1)
+          .getAsJsonArray().get(2).getAsString());
+
+      final JsonObject undetermined =
+          readDataFile(new File(dir, "data/project-3.js"), "loadProject")
+              .getAsJsonArray("rows").get(0).getAsJsonObject();
+      Assert.assertEquals("undetermined",
+          undetermined.get("name").getAsString());
+      Assert.assertEquals("undetermined",
+          undetermined.get("index").getAsString());
+
+    } finally {
+      for (File f : new File(dir, "data").listFiles()) {
+        f.delete();
+      }
+      new File(dir, "data").delete();
+      new File(dir, PaginatedReportWriter.VIEWER_FILENAME).delete();
+      dir.delete();
+    }
+  }
+
+  private static JsonObject readDataFile(final File file,
+      final String function) throws IOException {
+
+    final String content =
+        new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    final String prefix = "aozanReport." + function + "(";
+
+    Assert.assertTrue(content.startsWith(prefix));
+    Assert.assertTrue(content.endsWith(");\n"));
+
+    return JsonParser
+        .parseString(
+            content.substring(prefix.length(), content.length() - 3))
+        .getAsJsonObject();
+  }
+
+  private static void putSample(final RunData data, final int id,
+      final String name, final String project, final String index) {
+
+    final String prefix = "samplesheet.sample" + id;
+
+    if (name != null) {
+      data.put(prefix + ".demux.name", name);
+    }
+    if (project != null) {
+      data.put(prefix + ".project", project);
+    }
+    if (index != null) {
+      data.put(prefix + ".index", index);
+      data.put(prefix + ".indexed", true);
+    }
+    data.put(prefix + ".description", "");
+  }
+
+  private static AozanTest newTest(final String name) {
+
+    return new AbstractGlobalTest(name, "", "") {
+
+      @Override
+      public List<String> getCollectorsNamesRequiered() {
+        return null;
+      }
+
+      @Override
+      public List<AozanTest> configure(final TestConfiguration conf) {
+        return null;
+      }
+
+      @Override
+      public TestResult test(final RunData data) {
+        return null;
+      }
+    };
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.tests.TestResultCache;
+import fr.ens.biologie.genomique.aozan.tests.global.AbstractGlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.global.GlobalTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.AbstractLaneTest;
+import fr.ens.biologie.genomique.aozan.tests.lane.LaneTest;
+
+public class QCReportTest {
+
+  private static class ValueGlobalTest extends AbstractGlobalTest {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public List<String> getCollectorsNamesRequiered() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public List<AozanTest> configure(final TestConfiguration conf) {
+      return Collections.singletonList((AozanTest) this);
+    }
+
+    @Override
+    public TestResult test(final RunData data) {
+      this.count.incrementAndGet();
+      return new TestResult(9, data.getLong("test.value"));
+    }
+
+    ValueGlobalTest(final String name) {
+      super(name, "", name);
+    }
+  }
+
+  private static class ValueLaneTest extends AbstractLaneTest {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public List<String> getCollectorsNamesRequiered() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public List<AozanTest> configure(final TestConfiguration conf) {
+      return Collections.singletonList((AozanTest) this);
+    }
+
+    @Override
+    public TestResult test(final RunData data, final int read,
+        final boolean indexedRead, final int lane) {
+
+      this.count.incrementAndGet();
+
+      // Slow down the first lanes to change the order of completion
+      try {
+        Thread.sleep(lane < 3 ? 10 : 0);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      return new TestResult(
+          data.getLong("test.read" + read + ".lane" + lane + ".value", 0));
+    }
+
+    ValueLaneTest(final String name) {
+      super(name, "", name);
+    }
+  }
+
+  @Test
+  public void testSnapshot() {
+
+    final RunData data = new RunData();
+    data.put("key1", "value1");
+
+    final RunData snapshot = data.snapshot();
+    Assert.assertTrue(snapshot.isReadOnly());
+    Assert.assertFalse(data.isReadOnly());
+    Assert.assertSame(snapshot, snapshot.snapshot());
+    Assert.assertEquals("value1", snapshot.get("key1"));
+
+    // The snapshot is not affected by the changes of the original object
+    data.put("key2", "value2");
+    Assert.assertFalse(snapshot.contains("key2"));
+
+    try {
+      snapshot.put("key3", "value3");
+      Assert.fail("A snapshot cannot be modified");
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+
+    try {
+      snapshot.remove("key1");
+      Assert.fail("A snapshot cannot be modified");
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+
+    try {
+      snapshot.put(data);
+      Assert.fail("A snapshot cannot be modified");
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testRecordingView() {
+
+    final RunData data = new RunData();
+    data.put("key1", "value1");
+    data.put("key2", "value2");
+
+    final Set<String> keys = new HashSet<>();
+    final RunData view = data.recordingView(keys);
+    Assert.assertTrue(view.isReadOnly());
+
+    Assert.assertEquals("value1", view.get("Key1"));
+    Assert.assertFalse(view.contains("key3"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("key1", "key3")), keys);
+
+    try {
+      view.put("key3", "value3");
+      Assert.fail("A recording view cannot be modified");
+    } catch (UnsupportedOperationException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testIncrementalEvaluation() throws AozanException {
+
+    final RunData data = createRunData();
+    final ValueGlobalTest globalTest = new ValueGlobalTest("global");
+    final ValueLaneTest laneTest = new ValueLaneTest("lane");
+
+    final QCReport report = new QCReport(data,
+        Collections.singletonList((GlobalTest) globalTest),
+        Collections.singletonList((LaneTest) laneTest), null, null, null, 2,
+        new TestResultCache());
+
+    final String first = toString(report);
+    Assert.assertEquals(1, globalTest.count.get());
+    Assert.assertEquals(16, laneTest.count.get());
+
+    // Nothing changed
+    Assert.assertEquals(first, toString(report));
+    Assert.assertEquals(1, globalTest.count.get());
+    Assert.assertEquals(16, laneTest.count.get());
+
+    // Only the test of read 2 and lane 3 depends of this key
+    data.put("test.read2.lane3.value", 7);
+    final String second = toString(report);
+    Assert.assertEquals(1, globalTest.count.get());
+    Assert.assertEquals(17, laneTest.count.get());
+    Assert.assertTrue(second.contains(">7<"));
+    Assert.assertFalse(second.contains(">2003<"));
+
+    // The copy of the report shares the cache
+    data.put("test.value", 43);
+    final QCReport copy = new QCReport(report);
+    Assert.assertTrue(toString(copy).contains(">43<"));
+    Assert.assertEquals(2, globalTest.count.get());
+    Assert.assertEquals(17, laneTest.count.get());
+
+    // No test depends of this key
+    data.put("test.read1.lane9.value", 1);
+    toString(report);
+    Assert.assertEquals(2, globalTest.count.get());
+    Assert.assertEquals(17, laneTest.count.get());
+
+    // A removed key
+    data.remove("test.read1.lane1.value");
+    Assert.assertTrue(toString(report).contains(">0<"));
+    Assert.assertEquals(18, laneTest.count.get());
+  }
+
+  @Test
+  public void testParallelEvaluation() throws AozanException {
+
+    final RunData data = createRunData();
+    final List<GlobalTest> globalTests = Arrays.asList(
+        new ValueGlobalTest("global1"), new ValueGlobalTest("global2"));
+    final List<LaneTest> laneTests =
+        Arrays.asList(new ValueLaneTest("lane1"), new ValueLaneTest("lane2"));
+
+    final String sequential = toString(
+        new QCReport(data, globalTests, laneTests, null, null, null, 1,
+            new TestResultCache()));
+    final String parallel = toString(
+        new QCReport(data, globalTests, laneTests, null, null, null, 4,
+            new TestResultCache()));
+
+    Assert.assertEquals(sequential, parallel);
+    Assert.assertTrue(
+        sequential.indexOf(">1008<") < sequential.indexOf(">2001<"));
+    Assert.assertTrue(sequential.contains(">42<"));
+  }
+
+  @Test
+  public void testVisitResults() throws AozanException {
+
+    final ValueLaneTest laneTest = new ValueLaneTest("lane");
+    final QCReport report = new QCReport(createRunData(), null,
+        Collections.singletonList((LaneTest) laneTest), null, null, null, 2,
+        new TestResultCache());
+
+    toString(report);
+    Assert.assertEquals(16, laneTest.count.get());
+
+    final List<String> results = new ArrayList<>();
+    report.visitResults((entity, read, lane, id, test, result) -> results
+        .add(entity + read + lane + id + test.getName() + result.getMessage()));
+
+    // The results computed for the report are reused
+    Assert.assertEquals(16, laneTest.count.get());
+    Assert.assertEquals(16, results.size());
+    Assert.assertEquals("lane120lane1002", results.get(1));
+    Assert.assertEquals("lane210lane2001", results.get(8));
+  }
+
+  private static RunData createRunData() {
+
+    final RunData data = new RunData();
+    data.put("run.info.date", "201018");
+    data.put("run.info.read.count", 2);
+    data.put("run.info.flow.cell.lane.count", 8);
+    data.put("test.value", 42);
+
+    for (int read = 1; read <= 2; read++) {
+      data.put("run.info.read" + read + ".cycles", 151);
+      data.put("run.info.read" + read + ".indexed", false);
+      for (int lane = 1; lane <= 8; lane++) {
+        data.put("test.read" + read + ".lane" + lane + ".value",
+            read * 1000 + lane);
+      }
+    }
+
+    return data;
+  }
+
+  private static String toString(final QCReport report)
+      throws AozanException {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    report.write(out);
+
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.ens.biologie.genomique.aozan.tests.AozanTest;
+import fr.ens.biologie.genomique.aozan.tests.TestConfiguration;
+import fr.ens.biologie.genomique.aozan.tests.TestResult;
+import fr.ens.biologie.genomique.aozan.tests.global.AbstractGlobalTest;
+
+public class StructuredDataWriterTest {
+
+  @Test
+  public void testParseResultValue() {
+
+    Assert.assertEquals(12L,
+        StructuredDataWriter.parseResultValue(new TestResult(9, 12)));
+    Assert.assertEquals(0.5,
+        StructuredDataWriter.parseResultValue(new TestResult(0.5, true)));
+    Assert.assertEquals("url",
+        StructuredDataWriter.parseResultValue(new TestResult(9, "url")));
+    Assert.assertEquals("abc", StructuredDataWriter
+        .parseResultValue(new TestResult(9, "abc", "int")));
+    Assert.assertEquals("007", StructuredDataWriter
+        .parseResultValue(new TestResult(9, "007", "string")));
+    Assert.assertNull(StructuredDataWriter
+        .parseResultValue(new TestResult(-1, (Number) null)));
+  }
+
+  @Test
+  public void testWriteCSVRow() throws IOException {
+
+    final StringWriter writer = new StringWriter();
+
+    StructuredDataWriter.writeCSVRow(writer, "a", null, "", "b,c",
+        "say \"hi\"", "x\ny");
+
+    Assert.assertEquals("a,,\"\",\"b,c\",\"say \"\"hi\"\"\",\"x\ny\"\n",
+        writer.toString());
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+
+    final File jsonLinesFile = File.createTempFile("structured", ".jsonl");
+    final File dataCSVFile = File.createTempFile("structured", ".data.csv");
+    final File testsCSVFile = File.createTempFile("structured", ".tests.csv");
+
+    final AbstractGlobalTest test = new AbstractGlobalTest("test1", "", "") {
+
+      @Override
+      public List<String> getCollectorsNamesRequiered() {
+        return null;
+      }
+
+      @Override
+      public List<AozanTest> configure(final TestConfiguration conf) {
+        return null;
+      }
+
+      @Override
+      public TestResult test(final RunData data) {
+        return null;
+      }
+    };
+
+    try {
+
+      try (StructuredDataWriter writer = new StructuredDataWriter("run1",
+          jsonLinesFile, dataCSVFile, testsCSVFile)) {
+
+        writer.addData("key1", "12");
+        writer.addData("key2", "007");
+        writer.visit("lane", 1, 2, 0, test, new TestResult(9, 1.5));
+        writer.visit("lane", 1, 3, 0, test, new TestResult(4, 2.5));
+      }
+
+      // JSON Lines
+      final List<String> lines =
+          Files.readAllLines(jsonLinesFile.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(4, lines.size());
+
+      final JsonObject data = JsonParser.parseString(lines.get(1))
+          .getAsJsonObject();
+      Assert.assertEquals("run1", data.get("run").getAsString());
+      Assert.assertEquals("data", data.get("record").getAsString());
+      Assert.assertEquals("key2", data.get("key").getAsString());
+      Assert.assertTrue(data.get("value").getAsJsonPrimitive().isString());
+      Assert.assertEquals("007", data.get("value").getAsString());
+
+      final JsonObject result = JsonParser.parseString(lines.get(3))
+          .getAsJsonObject();
+      Assert.assertEquals("test", result.get("record").getAsString());
+      Assert.assertEquals("lane", result.get("entity").getAsString());
+      Assert.assertEquals(3, result.get("lane").getAsInt());
+      Assert.assertTrue(result.get("id").isJsonNull());
+      Assert.assertEquals("test1", result.get("test").getAsString());
+      Assert.assertEquals(4, result.get("score").getAsInt());
+      Assert.assertEquals(2.5, result.get("value").getAsDouble(), 0.0);
+
+      // CSV files
+      final List<String> dataLines =
+          Files.readAllLines(dataCSVFile.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(3, dataLines.size());
+      Assert.assertEquals("run,key,value", dataLines.get(0));
+      Assert.assertEquals("run1,key1,12", dataLines.get(1));
+      Assert.assertEquals("run1,key2,007", dataLines.get(2));
+
+      final List<String> testsLines =
+          Files.readAllLines(testsCSVFile.toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(3, testsLines.size());
+      Assert.assertEquals("run,entity,read,lane,id,test,score,type,value",
+          testsLines.get(0));
+      Assert.assertEquals("run1,lane,1,2,,test1,9,float,1.5",
+          testsLines.get(1));
+      Assert.assertEquals("run1,lane,1,3,,test1,4,float,2.5",
+          testsLines.get(2));
+
+    } finally {
+      jsonLinesFile.delete();
+      dataCSVFile.delete();
+      testsCSVFile.delete();
+    }
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+public class ConversionStatsParserTest {
+
+  private static String read(final String number, final long yield,
+      final long yieldQ30, final long qualityScoreSum) {
+
+    return "<Read number=\"" + number + "\"><Yield>" + yield + "</Yield>"
+        + "<YieldQ30>" + yieldQ30 + "</YieldQ30><QualityScoreSum>"
+        + qualityScoreSum + "</QualityScoreSum></Read>";
+  }
+
+  private static String tile(final int tile, final long raw, final long pf,
+      final int factor) {
+
+    return "<Tile number=\"" + tile + "\">"
+        + "<Raw><ClusterCount>" + raw + "</ClusterCount>"
+        + read("1", 100 * factor, 90 * factor, 3000 * factor)
+        + read("2", 200 * factor, 180 * factor, 6000 * factor) + "</Raw>"
+        + "<Pf><ClusterCount>" + pf + "</ClusterCount>"
+        + read("1", 10 * factor, 9 * factor, 300 * factor)
+        + read("2", 20 * factor, 18 * factor, 600 * factor) + "</Pf>"
+        + "</Tile>";
+  }
+
+  private static InputStream document(final String projects) {
+
+    final String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+        + "<Stats><Flowcell flowcell-id=\"H0000\">" + projects
+        + "</Flowcell></Stats>";
+
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testParse() throws AozanException {
+
+    final String lane =
+        "<Lane number=\"1\">" + tile(1101, 1000, 800, 1)
+            + tile(1102, 2000, 1500, 2) + "</Lane>";
+
+    final InputStream in = document("<Project name=\"Project_A\">"
+        + "<Sample name=\"sample_1\"><Barcode name=\"ACGT+ttga\">" + lane
+        + "</Barcode><Barcode name=\"all\">" + lane + "</Barcode></Sample>"
+        + "</Project><Project name=\"default\"><Sample name=\"unknown\">"
+        + "<Barcode name=\"unknown\">" + lane + "</Barcode></Sample>"
+        + "</Project><Project name=\"all\"><Sample name=\"all\">"
+        + "<Barcode name=\"all\">" + lane + "</Barcode></Sample></Project>");
+
+    final RunData data = new RunData();
+    new ConversionStatsParser(2).parse(in, data);
+
+    Assert.assertEquals("ACGT+ttga",
+        data.get("demux.lane1.sample.sample-1.barcode"));
+    Assert.assertEquals("Undetermined",
+        data.get("demux.lane1.sample.lane1.barcode"));
+
+    String prefix = "demux.lane1.sample.sample-1.read1.ACGT+ttga.Raw";
+    Assert.assertEquals(3000, data.getLong(prefix + ".cluster.count"));
+    Assert.assertEquals(300, data.getLong(prefix + ".yield"));
+    Assert.assertEquals(270, data.getLong(prefix + ".yield.q30"));
+    Assert.assertEquals(9000, data.getLong(prefix + ".quality.score.sum"));
+
+    prefix = "demux.lane1.sample.sample-1.read2.Pf";
+    Assert.assertEquals(2300, data.getLong(prefix + ".cluster.count"));
+    Assert.assertEquals(60, data.getLong(prefix + ".yield"));
+    Assert.assertEquals(54, data.getLong(prefix + ".yield.q30"));
+    Assert.assertEquals(1800, data.getLong(prefix + ".quality.score.sum"));
+
+    prefix = "demux.lane1.sample.lane1.read1.Pf";
+    Assert.assertEquals(2300, data.getLong(prefix + ".cluster.count"));
+    Assert.assertEquals(30, data.getLong(prefix + ".yield"));
+
+    prefix = "demux.lane1.all.read2.Raw";
+    Assert.assertEquals(3000, data.getLong(prefix + ".cluster.count"));
+    Assert.assertEquals(600, data.getLong(prefix + ".yield"));
+    Assert.assertEquals(540, data.getLong(prefix + ".yield.q30"));
+    Assert.assertEquals(18000, data.getLong(prefix + ".quality.score.sum"));
+
+    // 4 barcodes per group with values + 2 barcode keys
+    Assert.assertEquals(4 * 2 * 2 * 4 + 2, data.size());
+  }
+
+  @Test
+  public void testMissingRead() {
+
+    final InputStream in = document("<Project name=\"all\">"
+        + "<Sample name=\"all\"><Barcode name=\"all\"><Lane number=\"1\">"
+        + tile(1101, 1000, 800, 1) + "</Lane></Barcode></Sample></Project>");
+
+    try {
+      new ConversionStatsParser(3).parse(in, new RunData());
+      Assert.fail("The read 3 does not exist in the document");
+    } catch (AozanException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testInvalidBarcode() {
+
+    Assert.assertEquals("Undetermined",
+        ConversionStatsParser.checkBarcodeSeq("unknown"));
+    Assert.assertEquals("all", ConversionStatsParser.checkBarcodeSeq("all"));
+    Assert.assertEquals("AC+GT",
+        ConversionStatsParser.checkBarcodeSeq("AC+GT"));
+
+    try {
+      ConversionStatsParser.checkBarcodeSeq("ACNT");
+      Assert.fail("N is not a valid base");
+    } catch (RuntimeException e) {
+      // Expected exception
+    }
+  }
+
+}
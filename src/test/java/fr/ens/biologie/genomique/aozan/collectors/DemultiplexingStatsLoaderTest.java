@@ -0,0 +1,202 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+public class DemultiplexingStatsLoaderTest {
+
+  private static void writeRead(final Writer writer, final int number,
+      final long value) throws IOException {
+
+    writer.write("<Read number=\"" + number + "\">\n<Yield>" + value
+        + "</Yield>\n<YieldQ30>" + (value / 2) + "</YieldQ30>\n"
+        + "<QualityScoreSum>" + (value * 30) + "</QualityScoreSum>\n"
+        + "</Read>\n");
+  }
+
+  private static void writeLane(final Writer writer, final int lane,
+      final int seed) throws IOException {
+
+    writer.write("<Lane number=\"" + lane + "\">\n");
+
+    for (int tile = 0; tile < 50; tile++) {
+
+      final long value = (seed * 31L + tile * 7L + lane) % 1000;
+
+      writer.write("<Tile number=\"" + (1101 + tile) + "\">\n");
+      writer.write(
+          "<Raw>\n<ClusterCount>" + (value * 10) + "</ClusterCount>\n");
+      writeRead(writer, 1, value * 100);
+      writeRead(writer, 2, value * 100 + 1);
+      writer.write("</Raw>\n<Pf>\n<ClusterCount>" + (value * 9)
+          + "</ClusterCount>\n");
+      writeRead(writer, 1, value * 90);
+      writeRead(writer, 2, value * 90 + 1);
+      writer.write("</Pf>\n</Tile>\n");
+    }
+
+    writer.write("</Lane>\n");
+  }
+
+  private static File createConversionStats() throws IOException {
+
+    final File file = File.createTempFile("ConversionStats", ".xml");
+
+    try (Writer writer =
+        Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<Stats>\n"
+          + "<Flowcell flowcell-id=\"H0000\">\n");
+
+      for (int project = 0; project < 2; project++) {
+
+        writer.write("<Project name=\"Project_" + project + "\">\n");
+
+        for (int sample = 0; sample < 20; sample++) {
+
+          writer.write("<Sample name=\"sample_" + project + "_" + sample
+              + "\">\n<Barcode name=\"ACGT\">\n");
+          for (int lane = 1; lane <= 2; lane++) {
+            writeLane(writer, lane, project * 100 + sample);
+          }
+          writer.write("</Barcode>\n</Sample>\n");
+        }
+
+        writer.write("</Project>\n");
+      }
+
+      writer.write("</Flowcell>\n</Stats>\n");
+    }
+
+    return file;
+  }
+
+  @Test
+  public void testSplit() throws IOException, AozanException {
+
+    final File file = createConversionStats();
+
+    try {
+
+      Assert.assertTrue(
+          file.length() > 2 * DemultiplexingStatsLoader.MIN_PARTITION_SIZE);
+
+      final ConversionStatsParser parser = new ConversionStatsParser(2);
+
+      // Parse the whole file
+      final RunData expected = new RunData();
+      try (InputStream is = new FileInputStream(file)) {
+        parser.parse(is, expected);
+      }
+
+      final List<DemultiplexingStatsLoader.Partition> partitions =
+          DemultiplexingStatsLoader.split(file, "Sample", "Project", 4);
+
+      // At least one partition per project
+      Assert.assertTrue(partitions.size() >= 2);
+
+      long previousEnd = 0;
+      final List<Callable<RunData>> tasks = new ArrayList<>();
+
+      for (DemultiplexingStatsLoader.Partition partition : partitions) {
+
+        Assert.assertTrue(partition.getStart() >= previousEnd);
+        Assert.assertTrue(partition.getEnd() > partition.getStart());
+        previousEnd = partition.getEnd();
+
+        tasks.add(() -> {
+          final RunData result = new RunData();
+          try (InputStream is = partition.open(file)) {
+            parser.parse(is, result);
+          }
+          return result;
+        });
+      }
+
+      final RunData data = new RunData();
+      DemultiplexingStatsLoader.load(tasks, 4, data);
+
+      Assert.assertEquals(expected.size(), data.size());
+      Assert.assertEquals(expected.getMap(), data.getMap());
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testSplitSmallFile() throws IOException {
+
+    final File file = File.createTempFile("ConversionStats", ".xml");
+
+    try {
+
+      Files.write(file.toPath(),
+          "<Stats><Project name=\"p\"><Sample name=\"s\"/></Project></Stats>"
+              .getBytes(StandardCharsets.UTF_8));
+
+      // The file is too small to be split
+      Assert.assertTrue(DemultiplexingStatsLoader
+          .split(file, "Sample", "Project", 4).isEmpty());
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testLoadException() {
+
+    final List<Callable<RunData>> tasks = new ArrayList<>();
+    tasks.add(RunData::new);
+    tasks.add(() -> {
+      throw new AozanException("error");
+    });
+
+    try {
+      DemultiplexingStatsLoader.load(tasks, 2, new RunData());
+      Assert.fail("The exception of the task must be thrown");
+    } catch (AozanException e) {
+      // Expected exception
+      Assert.assertEquals("error", e.getMessage());
+    }
+  }
+
+}
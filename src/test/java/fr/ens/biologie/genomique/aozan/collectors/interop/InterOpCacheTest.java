@@ -0,0 +1,127 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.RunData;
+
+public class InterOpCacheTest {
+
+  @Test
+  public void testPutGet() throws IOException {
+
+    final File dir = Files.createTempDirectory("interopcache").toFile();
+    final File cacheFile = new File(dir, InterOpCache.CACHE_FILENAME);
+
+    try {
+
+      final RunData data = new RunData();
+      data.put("read1.lane1.clusters.raw", 1000);
+      data.put("read1.lane1.prc.align", 0.5);
+
+      InterOpCache cache = new InterOpCache(dir);
+      assertNull(cache.get("tilemetrics", "abc"));
+
+      cache.put("tilemetrics", "abc", data);
+      cache.save();
+
+      // Reload the cache from the file
+      cache = new InterOpCache(dir);
+      assertNull(cache.get("tilemetrics", "abd"));
+      assertNull(cache.get("errormetrics", "abc"));
+
+      final RunData result = cache.get("tilemetrics", "abc");
+      assertNotNull(result);
+      assertEquals(2, result.size());
+      assertEquals(1000, result.getInt("read1.lane1.clusters.raw"));
+      assertEquals(0.5, result.getDouble("read1.lane1.prc.align"), 0.0);
+
+      // Replace the data of the collector
+      final RunData data2 = new RunData();
+      data2.put("read1.lane1.clusters.raw", 2000);
+      cache.put("tilemetrics", "abd", data2);
+
+      assertNull(cache.get("tilemetrics", "abc"));
+      final RunData result2 = cache.get("tilemetrics", "abd");
+      assertEquals(1, result2.size());
+      assertEquals(2000, result2.getInt("read1.lane1.clusters.raw"));
+
+    } finally {
+      cacheFile.delete();
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testFingerprint() throws IOException {
+
+    final File file = File.createTempFile("interopcache", ".bin");
+
+    try {
+
+      final List<File> files = Collections.singletonList(file);
+      final RunData data = new RunData();
+      data.put("run.info.read.count", 2);
+      data.put("read1.lane1.clusters.raw", 1000);
+
+      final String fp1 = InterOpCache.fingerprint(files, "", data);
+      assertEquals(fp1, InterOpCache.fingerprint(files, "", data));
+
+      // Only the run information is used
+      data.put("read1.lane1.clusters.raw", 2000);
+      assertEquals(fp1, InterOpCache.fingerprint(files, "", data));
+
+      data.put("run.info.read.count", 3);
+      final String fp2 = InterOpCache.fingerprint(files, "", data);
+      assertNotEquals(fp1, fp2);
+
+      // The configuration of the collector has changed
+      assertNotEquals(fp2,
+          InterOpCache.fingerprint(files, "threshold=3.0", data));
+
+      // The size of the file has changed
+      try (Writer writer = new FileWriter(file)) {
+        writer.write("data");
+      }
+      assertNotEquals(fp2, InterOpCache.fingerprint(files, "", data));
+
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,795 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ErrorMetricsReader;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtractionMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.ExtractionMetricsReader;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.QMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.QMetricsReader;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.TileMetric;
+import fr.ens.biologie.genomique.kenetre.illumina.interop.TileMetricsReader;
+
+public class InterOpFileReadersTest {
+
+  private static final File SR50_INTEROP_DIR =
+      new File(new File("src/test/java/files/InterOp_SR50"), "InterOp");
+
+  /**
+   * This class define a builder of synthetic binary files.
+   */
+  private static final class BinaryFile {
+
+    private final ByteBuffer buf;
+
+    BinaryFile u8(final int value) {
+      this.buf.put((byte) value);
+      return this;
+    }
+
+    BinaryFile u16(final int value) {
+      this.buf.putShort((short) value);
+      return this;
+    }
+
+    BinaryFile u32(final long value) {
+      this.buf.putInt((int) value);
+      return this;
+    }
+
+    BinaryFile f32(final float value) {
+      this.buf.putFloat(value);
+      return this;
+    }
+
+    BinaryFile skip(final int length) {
+      this.buf.put(new byte[length]);
+      return this;
+    }
+
+    void write(final File dir, final String filename) throws IOException {
+
+      Files.write(new File(dir, filename).toPath(),
+          Arrays.copyOf(this.buf.array(), this.buf.position()));
+    }
+
+    BinaryFile(final int capacity) {
+      this.buf = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  //
+  // Readers
+  //
+
+  private static List<String> readErrors(final File dir)
+      throws AozanException {
+
+    final List<String> result = new ArrayList<>();
+    new ErrorMetricsFileReader(dir,
+        (lane, tile, cycle, errorRate) -> result
+            .add(lane + " " + tile + " " + cycle + " " + errorRate)).read();
+
+    return result;
+  }
+
+  private static List<String> readExtractions(final File dir)
+      throws AozanException {
+
+    final List<String> result = new ArrayList<>();
+    new ExtractionMetricsFileReader(dir,
+        (lane, tile, cycle, intensities) -> result.add(lane
+            + " " + tile + " " + cycle + " " + Arrays.toString(intensities)))
+                .read();
+
+    return result;
+  }
+
+  private static List<String> readQualities(final File dir)
+      throws AozanException {
+
+    final List<String> result = new ArrayList<>();
+    new QualityMetricsFileReader(dir, (lane, tile, cycle, histogram) -> result
+        .add(lane + " " + tile + " " + cycle + " " + Arrays.toString(histogram)))
+            .read();
+
+    return result;
+  }
+
+  private static List<String> readTiles(final File dir) throws AozanException {
+
+    final List<String> result = new ArrayList<>();
+    new TileMetricsFileReader(dir, new TileMetricsFileReader.Visitor() {
+
+      @Override
+      public void visitTile(final int lane, final long tile,
+          final float clusterCount, final float clusterCountPF,
+          final float density, final float densityPF) {
+        result.add("tile "
+            + lane + " " + tile + " " + clusterCount + " " + clusterCountPF
+            + " " + density + " " + densityPF);
+      }
+
+      @Override
+      public void visitRead(final int lane, final long tile, final int read,
+          final float percentAligned, final float percentPhasing,
+          final float percentPrephasing) {
+        result.add("read "
+            + lane + " " + tile + " " + read + " " + percentAligned + " "
+            + percentPhasing + " " + percentPrephasing);
+      }
+    }).read();
+
+    return result;
+  }
+
+  //
+  // Old readers
+  //
+
+  private static List<String> readErrorsWithOldReader(final File dir)
+      throws Exception {
+
+    final List<String> result = new ArrayList<>();
+    for (ErrorMetric m : readOldMetrics(
+        () -> new ErrorMetricsReader(dir).readMetrics())) {
+      result.add(m.getLaneNumber()
+          + " " + m.getTileNumber() + " " + m.getCycleNumber() + " "
+          + (float) m.getErrorRate());
+    }
+
+    return result;
+  }
+
+  private static List<String> readExtractionsWithOldReader(final File dir)
+      throws Exception {
+
+    final List<String> result = new ArrayList<>();
+    for (ExtractionMetric m : readOldMetrics(
+        () -> new ExtractionMetricsReader(dir).readMetrics())) {
+      result.add(m.getLaneNumber()
+          + " " + m.getTileNumber() + " " + m.getCycleNumber() + " "
+          + Arrays.toString(m.getIntensities()));
+    }
+
+    return result;
+  }
+
+  private static List<String> readQualitiesWithOldReader(final File dir)
+      throws Exception {
+
+    final List<String> result = new ArrayList<>();
+    for (QMetric m : readOldMetrics(
+        () -> new QMetricsReader(dir).readMetrics())) {
+      result.add(m.getLaneNumber()
+          + " " + m.getTileNumber() + " " + m.getCycleNumber() + " "
+          + Arrays.toString(m.getClustersScore()));
+    }
+
+    return result;
+  }
+
+  private static List<String> readTilesWithOldReader(final File dir)
+      throws Exception {
+
+    final List<String> result = new ArrayList<>();
+    for (TileMetric m : readOldMetrics(
+        () -> new TileMetricsReader(dir).readMetrics())) {
+
+      result.add("tile "
+          + m.getLaneNumber() + " " + m.getTileNumber() + " "
+          + (float) m.getClusterCount() + " " + (float) m.getClusterCountPF()
+          + " " + (float) m.getClusterDensity() + " "
+          + (float) m.getClusterDensityPF());
+
+      for (int i = 0; i < m.getReadCount(); i++) {
+        result.add("read "
+            + m.getLaneNumber() + " " + m.getTileNumber() + " " + (i + 1)
+            + " " + (float) m.getPercentAligned(i) + " "
+            + (float) m.getPercentPhasing(i) + " "
+            + (float) m.getPercentPrephasing(i));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * This interface define the reading of the metrics with a reader of
+   * kenetre.
+   */
+  private interface OldReader<E> {
+    List<E> read() throws Exception;
+  }
+
+  /**
+   * Read the metrics with a reader of kenetre. The comparison is skipped if
+   * the reader of kenetre does not handle the version of the file.
+   */
+  private static <E> List<E> readOldMetrics(final OldReader<E> reader)
+      throws Exception {
+
+    try {
+      return reader.read();
+    } catch (KenetreException e) {
+      Assume.assumeNoException(e);
+      return null;
+    }
+  }
+
+  private static void assertSameRecords(final List<String> expected,
+      final List<String> actual) {
+
+    final List<String> e = new ArrayList<>(expected);
+    final List<String> a = new ArrayList<>(actual);
+    Collections.sort(e);
+    Collections.sort(a);
+
+    Assert.assertEquals(e, a);
+  }
+
+  private static File createTempDir() throws IOException {
+    return Files.createTempDirectory("interop").toFile();
+  }
+
+  private static void delete(final File dir) {
+
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  //
+  // Real files
+  //
+
+  @Test
+  public void testSR50Files() throws Exception {
+
+    final List<String> errors = readErrors(SR50_INTEROP_DIR);
+    final List<String> extractions = readExtractions(SR50_INTEROP_DIR);
+    final List<String> qualities = readQualities(SR50_INTEROP_DIR);
+    final List<String> tiles = readTiles(SR50_INTEROP_DIR);
+
+    Assert.assertFalse(errors.isEmpty());
+    Assert.assertFalse(extractions.isEmpty());
+    Assert.assertFalse(qualities.isEmpty());
+    Assert.assertFalse(tiles.isEmpty());
+
+    // The values of each tile must be the same as with the old readers
+    Assert.assertEquals(readErrorsWithOldReader(SR50_INTEROP_DIR), errors);
+    Assert.assertEquals(readExtractionsWithOldReader(SR50_INTEROP_DIR),
+        extractions);
+    Assert.assertEquals(readQualitiesWithOldReader(SR50_INTEROP_DIR),
+        qualities);
+    assertSameRecords(readTilesWithOldReader(SR50_INTEROP_DIR), tiles);
+  }
+
+  //
+  // ErrorMetricsOut.bin
+  //
+
+  @Test
+  public void testErrorMetricsV3() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(3).u8(30)
+          .u16(1).u16(1101).u16(1).f32(0.25f).skip(20)
+          .u16(2).u16(2216).u16(12).f32(1.5f).skip(20)
+          .write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readErrors(dir);
+      Assert.assertEquals(Arrays.asList("1 1101 1 0.25", "2 2216 12 1.5"),
+          records);
+
+      Assert.assertEquals(readErrorsWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testErrorMetricsV4() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(4).u8(12)
+          .u16(1).u32(1_110_101L).u16(3).f32(0.5f)
+          .u16(4).u32(4_294_967_295L).u16(151).f32(2.0f)
+          .write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readErrors(dir);
+      Assert.assertEquals(
+          Arrays.asList("1 1110101 3 0.5", "4 4294967295 151 2.0"), records);
+
+      Assert.assertEquals(readErrorsWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  //
+  // ExtractionMetricsOut.bin
+  //
+
+  @Test
+  public void testExtractionMetricsV2() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(2).u8(38)
+          .u16(1).u16(1101).u16(1)
+          .f32(2.1f).f32(2.2f).f32(2.3f).f32(2.4f)
+          .u16(100).u16(200).u16(300).u16(65535).skip(8)
+          .write(dir, ExtractionMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readExtractions(dir);
+      Assert.assertEquals(
+          Collections.singletonList("1 1101 1 [100, 200, 300, 65535]"),
+          records);
+
+      Assert.assertEquals(readExtractionsWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testExtractionMetricsV3() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      // Two channels
+      new BinaryFile(1024).u8(3).u8(20).u8(2)
+          .u16(1).u32(11_101L).u16(1).f32(2.1f).f32(2.2f).u16(500).u16(600)
+          .u16(2).u32(21_102L).u16(5).f32(2.1f).f32(2.2f).u16(700).u16(800)
+          .write(dir, ExtractionMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readExtractions(dir);
+      Assert.assertEquals(
+          Arrays.asList("1 11101 1 [500, 600]", "2 21102 5 [700, 800]"),
+          records);
+
+      Assert.assertEquals(readExtractionsWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  //
+  // QMetricsOut.bin
+  //
+
+  /**
+   * Create an histogram of the 50 quality scores.
+   * @param values pairs of quality score and count
+   * @return an array with the counts
+   */
+  private static long[] histogram(final long... values) {
+
+    final long[] result = new long[QualityMetricsFileReader.QSCORE_COUNT];
+    for (int i = 0; i < values.length; i += 2) {
+      result[(int) values[i] - 1] = values[i + 1];
+    }
+
+    return result;
+  }
+
+  private static BinaryFile putHistogram(final BinaryFile file,
+      final long[] histogram) {
+
+    for (long count : histogram) {
+      file.u32(count);
+    }
+
+    return file;
+  }
+
+  /**
+   * Add the binning of the header of the versions 5 to 7: 3 bins with the
+   * quality scores 14, 21 and 38.
+   */
+  private static BinaryFile putBins(final BinaryFile file) {
+
+    return file.u8(1).u8(3).u8(2).u8(15).u8(30).u8(14).u8(29).u8(41).u8(14)
+        .u8(21).u8(38);
+  }
+
+  @Test
+  public void testQualityMetricsV4() throws Exception {
+
+    final File dir = createTempDir();
+    final long[] h = histogram(2, 10, 30, 20, 50, 4_000_000_000L);
+
+    try {
+      putHistogram(new BinaryFile(4096).u8(4).u8(206).u16(1).u16(1101).u16(7),
+          h).write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readQualities(dir);
+      Assert.assertEquals(
+          Collections.singletonList("1 1101 7 " + Arrays.toString(h)),
+          records);
+
+      Assert.assertEquals(readQualitiesWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testQualityMetricsV5() throws Exception {
+
+    final File dir = createTempDir();
+    final long[] h = histogram(14, 10, 21, 20, 38, 30);
+
+    try {
+      // The records of the version 5 contain 50 counts even with binning
+      putHistogram(
+          putBins(new BinaryFile(4096).u8(5).u8(206)).u16(1).u16(1101).u16(1),
+          h).write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      Assert.assertEquals(
+          Collections.singletonList("1 1101 1 " + Arrays.toString(h)),
+          readQualities(dir));
+
+      // Without binning
+      putHistogram(new BinaryFile(4096).u8(5).u8(206).u8(0).u16(2).u16(1102)
+          .u16(2), h).write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readQualities(dir);
+      Assert.assertEquals(
+          Collections.singletonList("2 1102 2 " + Arrays.toString(h)),
+          records);
+
+      Assert.assertEquals(readQualitiesWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testQualityMetricsV6() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      // The records contain one count by bin
+      putBins(new BinaryFile(1024).u8(6).u8(18))
+          .u16(1).u16(1101).u16(1).u32(10).u32(20).u32(30)
+          .u16(1).u16(1101).u16(2).u32(0).u32(5).u32(4_000_000_000L)
+          .write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readQualities(dir);
+      Assert.assertEquals(Arrays.asList(
+          "1 1101 1 " + Arrays.toString(histogram(14, 10, 21, 20, 38, 30)),
+          "1 1101 2 "
+              + Arrays.toString(histogram(21, 5, 38, 4_000_000_000L))),
+          records);
+
+      Assert.assertEquals(readQualitiesWithOldReader(dir), records);
+
+      // Without binning, the records contain 50 counts
+      final long[] h = histogram(1, 1, 50, 2);
+      putHistogram(new BinaryFile(4096).u8(6).u8(206).u8(0).u16(3).u16(1103)
+          .u16(3), h).write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      Assert.assertEquals(
+          Collections.singletonList("3 1103 3 " + Arrays.toString(h)),
+          readQualities(dir));
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testQualityMetricsV7() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      // The tile numbers are stored on 4 bytes
+      putBins(new BinaryFile(1024).u8(7).u8(20))
+          .u16(2).u32(1_110_101L).u16(9).u32(1).u32(2).u32(3)
+          .write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readQualities(dir);
+      Assert.assertEquals(Collections.singletonList("2 1110101 9 "
+          + Arrays.toString(histogram(14, 1, 21, 2, 38, 3))), records);
+
+      Assert.assertEquals(readQualitiesWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testQualityMetricsInvalidBin() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(6).u8(10).u8(1).u8(1).u8(1).u8(51).u8(51)
+          .u16(1).u16(1101).u16(1).u32(10)
+          .write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      readQualities(dir);
+      Assert.fail();
+    } catch (AozanException e) {
+      // Expected exception
+    } finally {
+      delete(dir);
+    }
+  }
+
+  //
+  // TileMetricsOut.bin
+  //
+
+  @Test
+  public void testTileMetricsV2() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(2).u8(10)
+          .u16(1).u16(1101).u16(100).f32(1000f)
+          .u16(1).u16(1101).u16(101).f32(900f)
+          .u16(1).u16(1101).u16(102).f32(50000f)
+          .u16(1).u16(1101).u16(103).f32(45000f)
+          // Phasing and prephasing of the reads 1 and 2
+          .u16(1).u16(1101).u16(200).f32(0.125f)
+          .u16(1).u16(1101).u16(201).f32(0.25f)
+          .u16(1).u16(1101).u16(202).f32(0.5f)
+          .u16(1).u16(1101).u16(203).f32(0.75f)
+          // Percent aligned of the reads 1 and 2
+          .u16(1).u16(1101).u16(300).f32(1.5f)
+          .u16(1).u16(1101).u16(301).f32(2.5f)
+          // Control lane metric, ignored
+          .u16(1).u16(1101).u16(400).f32(7f)
+          // Another tile without read metrics
+          .u16(2).u16(2101).u16(102).f32(10f)
+          .u16(2).u16(2101).u16(103).f32(8f)
+          .write(dir, TileMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readTiles(dir);
+      Assert.assertEquals(
+          Arrays.asList("tile 1 1101 50000.0 45000.0 1000.0 900.0",
+              "read 1 1101 1 1.5 12.5 25.0", "read 1 1101 2 2.5 50.0 75.0",
+              "tile 2 2101 10.0 8.0 0.0 0.0"),
+          records);
+
+      assertSameRecords(readTilesWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testTileMetricsV3() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      // The header contains the area of the tiles
+      new BinaryFile(1024).u8(3).u8(15).f32(2.0f)
+          .u16(1).u32(11_101L).u8('t').f32(5000f).f32(4000f)
+          .u16(1).u32(11_101L).u8('r').u32(1).f32(1.5f)
+          .u16(1).u32(11_101L).u8('r').u32(2).f32(2.5f)
+          // Empty record, ignored
+          .u16(1).u32(11_101L).u8(0).skip(8)
+          .write(dir, TileMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = readTiles(dir);
+      Assert.assertEquals(
+          Arrays.asList("tile 1 11101 5000.0 4000.0 2500.0 2000.0",
+              "read 1 11101 1 1.5 NaN NaN", "read 1 11101 2 2.5 NaN NaN"),
+          records);
+
+      assertSameRecords(readTilesWithOldReader(dir), records);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  //
+  // Headers and records
+  //
+
+  @Test
+  public void testInvalidHeader() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+
+      // Unknown version
+      new BinaryFile(1024).u8(9).u8(12).u16(1).u32(1101).u16(1).f32(0.5f)
+          .write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      final ErrorMetricsFileReader reader =
+          new ErrorMetricsFileReader(dir, (lane, tile, cycle, rate) -> {
+          });
+      Assert.assertFalse(reader.isReadable());
+
+      try {
+        reader.read();
+        Assert.fail();
+      } catch (AozanException e) {
+        // Expected exception
+      }
+
+      // Record size of the header does not match the version
+      new BinaryFile(1024).u8(4).u8(30).u16(1).u32(1101).u16(1).f32(0.5f)
+          .write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      Assert.assertTrue(reader.isReadable());
+
+      try {
+        reader.read();
+        Assert.fail();
+      } catch (AozanException e) {
+        // Expected exception
+      }
+
+      // Truncated header
+      new BinaryFile(1024).u8(6).u8(18).u8(1).u8(3).u8(2)
+          .write(dir, QualityMetricsFileReader.METRICS_FILE);
+
+      try {
+        readQualities(dir);
+        Assert.fail();
+      } catch (AozanException e) {
+        // Expected exception
+      }
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testTruncatedRecord() throws Exception {
+
+    final File dir = createTempDir();
+
+    try {
+      new BinaryFile(1024).u8(4).u8(12)
+          .u16(1).u32(1101).u16(1).f32(0.5f)
+          .u16(1).u32(1101).u16(2).f32(0.75f)
+          .u16(1).u32(1101).u16(3)
+          .write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      final List<String> records = new ArrayList<>();
+      final ErrorMetricsFileReader reader = new ErrorMetricsFileReader(dir,
+          (lane, tile, cycle, rate) -> records.add(lane + " " + cycle));
+
+      // A complete file cannot end with a truncated record
+      try {
+        reader.read();
+        Assert.fail();
+      } catch (AozanException e) {
+        // Expected exception
+      }
+
+      try {
+        reader.getRecordCount();
+        Assert.fail();
+      } catch (AozanException e) {
+        // Expected exception
+      }
+
+      // A file being written can end with a truncated record
+      records.clear();
+      Assert.assertEquals(2 + 2 * 12, reader.readAppendedRecords(0));
+      Assert.assertEquals(Arrays.asList("1 1", "1 2"), records);
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testReadRanges() throws Exception {
+
+    final File dir = createTempDir();
+    final int recordCount = 2 * (1 << 16) + 5;
+
+    try {
+      final BinaryFile file = new BinaryFile(2 + 12 * recordCount).u8(4).u8(12);
+      for (int i = 0; i < recordCount; i++) {
+        file.u16(1 + i % 8).u32(1101 + i % 100).u16(1 + i / 800)
+            .f32(i % 1000 / 1000f);
+      }
+      file.write(dir, ErrorMetricsFileReader.METRICS_FILE);
+
+      final List<String> expected = readErrors(dir);
+      Assert.assertEquals(recordCount, expected.size());
+
+      // Each range is read in its own list
+      final List<List<String>> ranges = new ArrayList<>();
+      final List<String> first = new ArrayList<>();
+      ranges.add(first);
+
+      final int rangeCount = AbstractBinaryFileReader.readRanges(
+          new ErrorMetricsFileReader(dir,
+              (lane, tile, cycle, rate) -> first
+                  .add(lane + " " + tile + " " + cycle + " " + rate)),
+          () -> {
+            final List<String> range = new ArrayList<>();
+            ranges.add(range);
+            return new ErrorMetricsFileReader(dir,
+                (lane, tile, cycle, rate) -> range
+                    .add(lane + " " + tile + " " + cycle + " " + rate));
+          }, 4);
+
+      Assert.assertEquals(2, rangeCount);
+      Assert.assertEquals(2, ranges.size());
+
+      // The ranges are record-aligned and follow the order of the file
+      final List<String> actual = new ArrayList<>();
+      for (List<String> range : ranges) {
+        Assert.assertFalse(range.isEmpty());
+        actual.addAll(range);
+      }
+      Assert.assertEquals(expected, actual);
+
+      // The files that cannot be split are read in one range
+      Assert.assertEquals(1, AbstractBinaryFileReader.readRanges(
+          new ErrorMetricsFileReader(dir, (lane, tile, cycle, rate) -> {
+          }), () -> {
+            throw new AssertionError();
+          }, 1));
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.QC;
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.collectors.Collector;
+import fr.ens.biologie.genomique.aozan.collectors.CollectorConfiguration;
+
+public class InterOpLoaderTest {
+
+  /**
+   * A collector that changes the run data.
+   */
+  private static class ChangeCollector implements Collector {
+
+    private final String name;
+    private final String sharedValue;
+    private final String removedKey;
+
+    @Override
+    public String getName() {
+      return this.name;
+    }
+
+    @Override
+    public List<String> getCollectorsNamesRequiered() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public void configure(final QC qc, final CollectorConfiguration conf) {
+    }
+
+    @Override
+    public void collect(final RunData data) throws AozanException {
+
+      // The data of the run are visible to each collector
+      data.put(this.name + ".lanes",
+          data.getInt("run.info.flow.cell.lane.count"));
+      data.put("shared", this.sharedValue);
+
+      if (this.removedKey != null) {
+        data.remove(this.removedKey);
+      }
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public boolean isSummaryCollector() {
+      return false;
+    }
+
+    ChangeCollector(final String name, final String sharedValue,
+        final String removedKey) {
+      this.name = name;
+      this.sharedValue = sharedValue;
+      this.removedKey = removedKey;
+    }
+  }
+
+  /**
+   * A metrics collector that saves the number of threads it can use.
+   */
+  private static class ThreadCountCollector extends AbstractMetricsCollector {
+
+    private int threads;
+
+    @Override
+    public String getName() {
+      return "threads";
+    }
+
+    @Override
+    public void collect(final RunData data) {
+      this.threads = getThreadCount();
+    }
+  }
+
+  private static RunData createRunData() {
+
+    final RunData data = new RunData();
+    data.put("run.info.flow.cell.lane.count", 4);
+    data.put("shared", "initial");
+    data.put("old.key", "value");
+
+    return data;
+  }
+
+  private static void testLoad(final int threads) throws AozanException {
+
+    final RunData data = createRunData();
+
+    // The second collector sets the initial value of the shared key
+    new InterOpLoader(Arrays.asList(new ChangeCollector("a", "changed", null),
+        new ChangeCollector("b", "initial", "old.key"),
+        new ChangeCollector("c", "initial", null)), threads).load(data);
+
+    assertEquals(4, data.getInt("a.lanes"));
+    assertEquals(4, data.getInt("b.lanes"));
+    assertEquals(4, data.getInt("c.lanes"));
+
+    // The changes are merged in the order of the collectors
+    assertEquals("initial", data.get("shared"));
+
+    // The removed keys are removed from the run data
+    assertFalse(data.contains("old.key"));
+    assertEquals(5, data.size());
+  }
+
+  @Test
+  public void testLoad() throws AozanException {
+
+    testLoad(1);
+    testLoad(4);
+  }
+
+  @Test
+  public void testThreadCount() throws AozanException {
+
+    final ThreadCountCollector c1 = new ThreadCountCollector();
+    final ThreadCountCollector c2 = new ThreadCountCollector();
+
+    // The threads are shared between the collectors run concurrently
+    new InterOpLoader(Arrays.<Collector> asList(c1, c2), 4)
+        .load(createRunData());
+    assertEquals(2, c1.threads);
+    assertEquals(2, c2.threads);
+
+    new InterOpLoader(
+        Arrays.<Collector> asList(c1, c2, new ThreadCountCollector()), 2)
+            .load(createRunData());
+    assertEquals(1, c1.threads);
+    assertEquals(1, c2.threads);
+
+    // A collector run alone can use all the threads
+    new InterOpLoader(Collections.<Collector> singletonList(c1), 4)
+        .load(createRunData());
+    assertEquals(4, c1.threads);
+  }
+
+  @Test
+  public void testOverlay() {
+
+    final RunData data = createRunData();
+    final RunData overlay = data.snapshot().overlay();
+
+    overlay.put("new.key", "1");
+    overlay.remove("old.key");
+    overlay.put("shared", "initial");
+
+    assertTrue(overlay.contains("run.info.flow.cell.lane.count"));
+    assertFalse(overlay.contains("old.key"));
+    assertEquals(2, overlay.size());
+
+    // The base is not modified
+    assertTrue(data.contains("old.key"));
+    assertFalse(data.contains("new.key"));
+
+    // A removed key can be set again
+    overlay.put("old.key", "other");
+    assertEquals("other", overlay.get("old.key"));
+    overlay.remove("old.key");
+
+    data.put(overlay);
+    assertEquals("1", data.get("new.key"));
+    assertEquals("initial", data.get("shared"));
+    assertFalse(data.contains("old.key"));
+  }
+
+}
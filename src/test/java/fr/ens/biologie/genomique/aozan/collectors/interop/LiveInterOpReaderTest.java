@@ -0,0 +1,150 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+public class LiveInterOpReaderTest {
+
+  private static final File INTEROP_DIR =
+      new File(new File("src/test/java/files/InterOp_SR50"), "InterOp");
+
+  private static final String[] APPEND_ONLY_FILES =
+      {ErrorMetricsFileReader.METRICS_FILE,
+          ExtractionMetricsFileReader.METRICS_FILE,
+          QualityMetricsFileReader.METRICS_FILE};
+
+  private static void write(final File file, final byte[] content,
+      final int from, final int to, final boolean append) throws IOException {
+
+    try (OutputStream out = new FileOutputStream(file, append)) {
+      out.write(content, from, to - from);
+    }
+  }
+
+  private static void assertSameRunData(final RunData expected,
+      final RunData actual, final int laneCount) {
+
+    for (int lane = 1; lane <= laneCount; lane++) {
+
+      final String key = LiveInterOpReader.DATA_PREFIX + ".lane" + lane;
+
+      for (String suffix : Arrays.asList(".called.cycles", ".extracted.cycles",
+          ".error.cycles", ".clusters.raw", ".clusters.pf")) {
+        Assert.assertEquals(expected.get(key + suffix),
+            actual.get(key + suffix));
+      }
+
+      for (String suffix : Arrays.asList(".prc.q30", ".err.rate",
+          ".err.rate.sd", ".err.rate.median", ".first.cycle.int",
+          ".density.raw")) {
+        Assert.assertEquals(expected.getDouble(key + suffix),
+            actual.getDouble(key + suffix), 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void testUpdate() throws IOException, AozanException {
+
+    final LiveInterOpReader expectedReader = new LiveInterOpReader(INTEROP_DIR);
+    Assert.assertTrue(expectedReader.update());
+    final RunData expected = expectedReader.getRunData();
+
+    final int cycleCount = expected.getInt("live.cycle");
+    Assert.assertTrue(cycleCount > 0);
+    final int laneCount = expected.getInt("live.lane.count");
+    Assert.assertTrue(laneCount > 0);
+
+    final File dir = Files.createTempDirectory("interop").toFile();
+
+    try {
+
+      final LiveInterOpReader reader = new LiveInterOpReader(dir);
+
+      // No file
+      Assert.assertFalse(reader.update());
+
+      // Write the first part of the files, the records are truncated
+      for (String filename : APPEND_ONLY_FILES) {
+        final byte[] content =
+            Files.readAllBytes(new File(INTEROP_DIR, filename).toPath());
+        write(new File(dir, filename), content, 0, content.length / 3 + 7,
+            false);
+      }
+      Files.copy(
+          new File(INTEROP_DIR, TileMetricsFileReader.METRICS_FILE).toPath(),
+          new File(dir, TileMetricsFileReader.METRICS_FILE).toPath());
+
+      Assert.assertTrue(reader.update());
+      final int cycle = reader.getLastCycle();
+      Assert.assertTrue(cycle > 0 && cycle < cycleCount);
+
+      // Nothing new
+      Assert.assertFalse(reader.update());
+
+      // Append the end of the files
+      for (String filename : APPEND_ONLY_FILES) {
+        final byte[] content =
+            Files.readAllBytes(new File(INTEROP_DIR, filename).toPath());
+        write(new File(dir, filename), content, content.length / 3 + 7,
+            content.length, true);
+      }
+
+      Assert.assertTrue(reader.update());
+      Assert.assertEquals(cycleCount, reader.getLastCycle());
+      assertSameRunData(expected, reader.getRunData(), laneCount);
+
+      // The quality file is rewritten
+      final File qualityFile =
+          new File(dir, QualityMetricsFileReader.METRICS_FILE);
+      final byte[] content = Files.readAllBytes(qualityFile.toPath());
+      write(qualityFile, content, 0, content.length / 2, false);
+      Assert.assertTrue(reader.update());
+      write(qualityFile, content, content.length / 2, content.length, true);
+      Assert.assertTrue(reader.update());
+
+      assertSameRunData(expected, reader.getRunData(), laneCount);
+
+    } finally {
+
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.interop;
+
+import static fr.ens.biologie.genomique.aozan.collectors.interop.TileAnomalyDetector.LANE_OUTLIER;
+import static fr.ens.biologie.genomique.aozan.collectors.interop.TileAnomalyDetector.LOCAL_OUTLIER;
+import static fr.ens.biologie.genomique.aozan.collectors.interop.TileAnomalyDetector.SWATH_OUTLIER;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.util.RobustZScore;
+
+public class TileAnomalyDetectorTest {
+
+  // 2 surfaces, 3 swaths and 12 tiles by swath
+  private static long[] tiles() {
+
+    final long[] result = new long[2 * 3 * 12];
+    int i = 0;
+    for (int surface = 1; surface <= 2; surface++) {
+      for (int swath = 1; swath <= 3; swath++) {
+        for (int tile = 1; tile <= 12; tile++) {
+          result[i++] = surface * 1000 + swath * 100 + tile;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static double[] values(final long[] tiles, final boolean gradient) {
+
+    final Random random = new Random(0);
+    final double[] result = new double[tiles.length];
+
+    // Bounded noise, so there is no outlier by chance
+    for (int i = 0; i < tiles.length; i++) {
+      result[i] = 100.0 + random.nextDouble() - 0.5;
+      if (gradient) {
+        result[i] += 10.0 * TileAnomalyDetector.position(tiles[i]);
+      }
+    }
+
+    return result;
+  }
+
+  private static int indexOf(final long[] tiles, final long tile) {
+
+    return Arrays.binarySearch(tiles, tile);
+  }
+
+  @Test
+  public void testNoAnomaly() {
+
+    final long[] tiles = tiles();
+    final TileAnomalyDetector.Anomalies anomalies =
+        new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD).detect(tiles,
+            values(tiles, false));
+
+    for (int flag : anomalies.getFlags()) {
+      Assert.assertEquals(0, flag);
+    }
+    Assert.assertEquals(0, anomalies.getSwathOutliers().length);
+    Assert.assertEquals(100.0, anomalies.getLaneStatistics().getMedian(), 1.0);
+  }
+
+  @Test
+  public void testGradient() {
+
+    // A gradient along the swaths is not an anomaly, even for the tiles at
+    // the ends of the swaths
+    final long[] tiles = tiles();
+    final int[] flags =
+        new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD)
+            .detect(tiles, values(tiles, true)).getFlags();
+
+    for (int i = 0; i < flags.length; i++) {
+      Assert.assertEquals("tile " + tiles[i], 0, flags[i] & LOCAL_OUTLIER);
+    }
+  }
+
+  @Test
+  public void testTileOutlier() {
+
+    final long[] tiles = tiles();
+    final double[] values = values(tiles, false);
+    values[indexOf(tiles, 1205)] = 50.0;
+
+    final int[] flags = new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD)
+        .detect(tiles, values).getFlags();
+
+    Assert.assertEquals(LANE_OUTLIER | LOCAL_OUTLIER,
+        flags[indexOf(tiles, 1205)]);
+    Assert.assertEquals(0, flags[indexOf(tiles, 1204)] & LANE_OUTLIER);
+  }
+
+  @Test
+  public void testLocalOutlier() {
+
+    // The value is in the range of the lane but not in the range of its
+    // neighbours
+    final long[] tiles = tiles();
+    final double[] values = values(tiles, true);
+    values[indexOf(tiles, 2306)] = 200.0;
+
+    final int[] flags = new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD)
+        .detect(tiles, values).getFlags();
+
+    Assert.assertEquals(LOCAL_OUTLIER, flags[indexOf(tiles, 2306)]);
+  }
+
+  @Test
+  public void testSwathOutlier() {
+
+    final long[] tiles = tiles();
+    final double[] values = values(tiles, false);
+    for (int i = 0; i < tiles.length; i++) {
+      if (TileAnomalyDetector.swath(tiles[i]) == 12) {
+        values[i] -= 20.0;
+      }
+    }
+
+    final TileAnomalyDetector.Anomalies anomalies =
+        new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD).detect(tiles,
+            values);
+
+    Assert.assertArrayEquals(new long[] {12}, anomalies.getSwathOutliers());
+
+    for (int i = 0; i < tiles.length; i++) {
+      Assert.assertEquals("tile " + tiles[i],
+          TileAnomalyDetector.swath(tiles[i]) == 12,
+          (anomalies.getFlags()[i] & SWATH_OUTLIER) != 0);
+    }
+  }
+
+  @Test
+  public void testMissingValues() {
+
+    final long[] tiles = tiles();
+    final double[] values = values(tiles, false);
+    values[0] = Double.NaN;
+    values[1] = Double.NaN;
+
+    final int[] flags = new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD)
+        .detect(tiles, values).getFlags();
+
+    Assert.assertEquals(0, flags[0]);
+    Assert.assertEquals(0, flags[1]);
+  }
+
+  @Test
+  public void testCountCycleOutliers() {
+
+    final int tileCount = 20;
+    final int cycleCount = 10;
+    final float[] values = new float[tileCount * cycleCount];
+    final Random random = new Random(0);
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (float) (1.0 + 0.01 * random.nextGaussian());
+    }
+
+    // Tile 3 is an outlier for 4 cycles, tile 7 has no value for cycle 1
+    for (int cycle = 2; cycle < 6; cycle++) {
+      values[cycle * tileCount + 3] = 2.0f;
+    }
+    values[7] = Float.NaN;
+
+    final int[] counts = new TileAnomalyDetector(RobustZScore.DEFAULT_THRESHOLD)
+        .countCycleOutliers(values, tileCount, cycleCount);
+
+    Assert.assertEquals(tileCount, counts.length);
+    Assert.assertEquals(4, counts[3]);
+    Assert.assertEquals(0, counts[7]);
+  }
+
+  @Test
+  public void testInvalidThreshold() {
+
+    try {
+      new TileAnomalyDetector(0.0);
+      Assert.fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+}
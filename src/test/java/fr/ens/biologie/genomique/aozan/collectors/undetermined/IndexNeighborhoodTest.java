@@ -0,0 +1,136 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexNeighborhoodTest {
+
+  private static String randomIndex(final Random random, final int length) {
+
+    final char[] bases = {'A', 'C', 'G', 'T'};
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(bases[random.nextInt(4)]);
+    }
+
+    return sb.toString();
+  }
+
+  private static List<int[]> lookup(final IndexNeighborhood neighborhood,
+      final String index) {
+
+    final List<int[]> result = new ArrayList<>();
+    neighborhood.lookup(PackedIndexes.pack(index),
+        (sample, mismatches) -> result.add(new int[] {sample, mismatches}));
+
+    return result;
+  }
+
+  @Test
+  public void testLookup() {
+
+    final long[] samples = {PackedIndexes.pack("ACGTACGT"),
+        PackedIndexes.pack("ACGTACGA"), PackedIndexes.NOT_PACKED,
+        PackedIndexes.pack("TTTTTTTT+GGGGGGGG")};
+
+    final IndexNeighborhood neighborhood = new IndexNeighborhood(samples, 2);
+
+    // Exact match
+    List<int[]> result = lookup(neighborhood, "TTTTTTTT+GGGGGGGG");
+    Assert.assertEquals(1, result.size());
+    Assert.assertArrayEquals(new int[] {3, 0}, result.get(0));
+
+    // Ambiguous index, the candidates are sorted by sample ordinal
+    result = lookup(neighborhood, "ACGTACGC");
+    Assert.assertEquals(2, result.size());
+    Assert.assertArrayEquals(new int[] {0, 1}, result.get(0));
+    Assert.assertArrayEquals(new int[] {1, 1}, result.get(1));
+
+    result = lookup(neighborhood, "ACGTACGT");
+    Assert.assertEquals(2, result.size());
+    Assert.assertArrayEquals(new int[] {0, 0}, result.get(0));
+    Assert.assertArrayEquals(new int[] {1, 1}, result.get(1));
+
+    // Two mismatches, one on each index
+    result = lookup(neighborhood, "TTTTTTTA+GGGGGGGA");
+    Assert.assertEquals(1, result.size());
+    Assert.assertArrayEquals(new int[] {3, 2}, result.get(0));
+
+    // Too far or not the same lengths
+    Assert.assertTrue(lookup(neighborhood, "ACGTTTTT").isEmpty());
+    Assert.assertTrue(lookup(neighborhood, "ACGTACG").isEmpty());
+    Assert.assertTrue(lookup(neighborhood, "TTTTTTTTGGGGGGGG").isEmpty());
+    Assert.assertEquals(0, neighborhood.lookup(PackedIndexes.NOT_PACKED,
+        (sample, mismatches) -> Assert.fail()));
+
+    // With one mismatch
+    final IndexNeighborhood neighborhood1 = new IndexNeighborhood(samples, 1);
+    Assert.assertEquals(1, neighborhood1.getMaxMismatches());
+    Assert.assertTrue(lookup(neighborhood1, "TTTTTTTA+GGGGGGGA").isEmpty());
+    Assert.assertEquals(1, lookup(neighborhood1, "TTTTTTTA+GGGGGGGG").size());
+  }
+
+  @Test
+  public void testRandomIndexes() {
+
+    final Random random = new Random(0);
+    final int sampleCount = 96;
+
+    final String[] sampleIndexes = new String[sampleCount];
+    final long[] packed = new long[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      sampleIndexes[i] = randomIndex(random, 6);
+      packed[i] = PackedIndexes.pack(sampleIndexes[i]);
+    }
+
+    final IndexNeighborhood neighborhood = new IndexNeighborhood(packed, 2);
+
+    for (int n = 0; n < 2000; n++) {
+
+      final String index = randomIndex(random, 6);
+
+      final List<int[]> expected = new ArrayList<>();
+      for (int i = 0; i < sampleCount; i++) {
+        final int mismatches =
+            UndeterminedIndexCounter.mismatches(index, sampleIndexes[i]);
+        if (mismatches <= 2) {
+          expected.add(new int[] {i, mismatches});
+        }
+      }
+
+      final List<int[]> result = lookup(neighborhood, index);
+      Assert.assertEquals(expected.size(), result.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertArrayEquals(expected.get(i), result.get(i));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TopUnknownBarcodesTest {
+
+  private static File createFile(final String content) throws IOException {
+
+    final File file = File.createTempFile("Top_Unknown_Barcodes", ".csv");
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+    return file;
+  }
+
+  @Test
+  public void testCount() throws IOException {
+
+    final File file = createFile(
+        "Lane,index,index2,# Reads,% of Unknown Barcodes,% of All Reads\n"
+            + "1,ACGTACGT,GGGGAAAA,1000,0.5,0.01\n"
+            + "1,ACGTACGT,GGGGCAAA,600,0.3,0.006\n"
+            + "1,ACGTNCGT,GGGGAAAA,400,0.2,0.004\n"
+            + "2,TTTTTTTT,,50,1.0,0.001\n");
+
+    try {
+
+      final TopUnknownBarcodes barcodes = new TopUnknownBarcodes(file);
+
+      Assert.assertTrue(barcodes.containsLane(1));
+      Assert.assertFalse(barcodes.containsLane(3));
+      Assert.assertEquals(3, barcodes.getBarcodeCount(1));
+
+      // Dual indexes
+      UndeterminedIndexCounter counter = new UndeterminedIndexCounter();
+      Assert.assertTrue(barcodes.count(1, true, 5000, counter));
+      Assert.assertEquals(3, counter.size());
+      Assert.assertFalse(counter.isRawCountAvailable());
+      Assert.assertEquals(-1, counter.getTotalRawCount());
+      Assert.assertEquals(5000, counter.getTotalPFCount());
+      Assert.assertEquals(-1, counter.getRawCount("ACGTACGT+GGGGCAAA"));
+      Assert.assertEquals(600, counter.getPFCount("ACGTACGT+GGGGCAAA"));
+      counter.forEach(e -> Assert.assertEquals(-1, e.getRawCount()));
+      Assert.assertTrue(counter.isTruncated());
+      Assert.assertFalse(counter.isApproximate());
+      Assert.assertEquals(400, counter.getMaxUncountedRawCount());
+
+      // Single index
+      counter = new UndeterminedIndexCounter();
+      Assert.assertTrue(barcodes.count(1, false, 5000, counter));
+      Assert.assertEquals(2, counter.size());
+      Assert.assertEquals(1600, counter.getPFCount("ACGTACGT"));
+
+      // Missing second index or lane
+      Assert.assertFalse(
+          barcodes.count(2, true, 50, new UndeterminedIndexCounter()));
+      Assert.assertTrue(
+          barcodes.count(2, false, 50, new UndeterminedIndexCounter()));
+      Assert.assertFalse(
+          barcodes.count(3, false, 0, new UndeterminedIndexCounter()));
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testTruncatedFile() throws IOException {
+
+    final File file = createFile(
+        "Lane,index,index2,# Reads,% of Unknown Barcodes,% of All Reads\n"
+            + "1,ACGTACGT,GGGGAAAA,1000,0.5,0.01\n" + "1,ACGTACGT,GGG");
+
+    try {
+      new TopUnknownBarcodes(file);
+      Assert.fail("A truncated file must not be parsed");
+    } catch (IOException e) {
+      // Expected exception
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UndeterminedIndexCounterTest {
+
+  @Test
+  public void testPackedIndexes() {
+
+    final long single = PackedIndexes.pack("ACGTACGT", null);
+    Assert.assertNotEquals(PackedIndexes.NOT_PACKED, single);
+    Assert.assertEquals("ACGTACGT", PackedIndexes.unpack(single));
+    Assert.assertEquals(8, PackedIndexes.i7Length(single));
+    Assert.assertEquals(0, PackedIndexes.i5Length(single));
+
+    final long dual = PackedIndexes.pack("ACGTACGT+TTTTGGGG");
+    Assert.assertEquals("ACGTACGT+TTTTGGGG", PackedIndexes.unpack(dual));
+    Assert.assertEquals(dual, PackedIndexes.pack("ACGTACGT", "TTTTGGGG"));
+
+    Assert.assertEquals(PackedIndexes.NOT_PACKED,
+        PackedIndexes.pack("ACGTNCGT", null));
+    Assert.assertEquals(PackedIndexes.NOT_PACKED, PackedIndexes.pack(""));
+    Assert.assertEquals(PackedIndexes.NOT_PACKED,
+        PackedIndexes.pack("ACGTACGTACGTAC", "ACGTACGTACGTAC"));
+
+    Assert.assertEquals(0, PackedIndexes.mismatches(dual, dual));
+    Assert.assertEquals(1, PackedIndexes.mismatches(dual,
+        PackedIndexes.pack("ACGTACGT+TTTTGGGC")));
+    Assert.assertEquals(2, PackedIndexes.mismatches(dual,
+        PackedIndexes.pack("CCGTACGT+TTTTGGGC")));
+    Assert.assertEquals(-1, PackedIndexes.mismatches(dual, single));
+    Assert.assertEquals(-1, PackedIndexes.mismatches(dual,
+        PackedIndexes.pack("ACGTACG+TTTTGGGGA")));
+  }
+
+  @Test
+  public void testCounter() {
+
+    final UndeterminedIndexCounter counter = new UndeterminedIndexCounter();
+
+    for (int i = 0; i < 10000; i++) {
+      counter.add("ACGTACGT", "GGGG" + "ACGT".charAt(i % 4) + "AAA",
+          i % 2 == 0);
+    }
+    counter.add("ACGTNCGT", "GGGGAAAA", true);
+    counter.add("ACGTNCGT", "GGGGAAAA", false);
+
+    Assert.assertEquals(5, counter.size());
+    Assert.assertEquals(10002, counter.getTotalRawCount());
+    Assert.assertEquals(5001, counter.getTotalPFCount());
+    Assert.assertEquals(2500, counter.getRawCount("ACGTACGT+GGGGAAAA"));
+    Assert.assertEquals(2500, counter.getPFCount("ACGTACGT+GGGGAAAA"));
+    Assert.assertEquals(0, counter.getPFCount("ACGTACGT+GGGGCAAA"));
+    Assert.assertEquals(2, counter.getRawCount("ACGTNCGT+GGGGAAAA"));
+    Assert.assertEquals(1, counter.getPFCount("ACGTNCGT+GGGGAAAA"));
+    Assert.assertEquals(0, counter.getRawCount("TTTTTTTT+GGGGAAAA"));
+
+    final int[] sum = new int[1];
+    final long sampleIndex = PackedIndexes.pack("ACGTACGT+GGGGAAAA");
+    counter.forEach(e -> {
+      sum[0] += e.getRawCount();
+      Assert.assertEquals(counter.getRawCount(e.getIndex()), e.getRawCount());
+      Assert.assertEquals(e.getIndex().equals("ACGTACGT+GGGGAAAA") ? 0 : 1,
+          e.mismatches("ACGTACGT+GGGGAAAA", sampleIndex));
+    });
+    Assert.assertEquals(10002, sum[0]);
+  }
+
+  @Test
+  public void testBoundedCounter() {
+
+    final Random random = new Random(0);
+    final String[] bases = {"A", "C", "G", "T", "N"};
+    final Map<String, Integer> expected = new HashMap<>();
+
+    final UndeterminedIndexCounter counter = new UndeterminedIndexCounter(50);
+
+    // A few frequent indexes and a lot of rare indexes
+    for (int i = 0; i < 100000; i++) {
+
+      final StringBuilder sb = new StringBuilder();
+      if (random.nextInt(10) < 7) {
+        sb.append("ACGTACG").append(bases[random.nextInt(5)]);
+      } else {
+        for (int j = 0; j < 8; j++) {
+          sb.append(bases[random.nextInt(4)]);
+        }
+      }
+
+      final String index = sb.toString();
+      counter.add(index, null, true);
+      expected.merge(index, 1, Integer::sum);
+    }
+
+    Assert.assertEquals(50, counter.size());
+    Assert.assertTrue(counter.isApproximate());
+    Assert.assertTrue(counter.isTruncated());
+    Assert.assertEquals(100000, counter.getTotalRawCount());
+
+    final int maxUncounted = counter.getMaxUncountedRawCount();
+    Assert.assertTrue(maxUncounted > 0);
+    Assert.assertTrue(maxUncounted <= 100000 / 50);
+
+    // The counts are overestimated by at most the error of the entry
+    counter.forEach(e -> {
+      final int count = expected.get(e.getIndex()) == null
+          ? 0 : expected.get(e.getIndex());
+      Assert.assertTrue(e.getRawCount() >= count);
+      Assert.assertTrue(e.getRawCount() - e.getError() <= count);
+    });
+
+    // The frequent indexes are in the counter
+    for (String base : bases) {
+      Assert.assertTrue(counter.getRawCount("ACGTACG" + base)
+          >= expected.get("ACGTACG" + base));
+    }
+
+    // Exact counts after a second pass
+    counter.recount();
+    for (Map.Entry<String, Integer> e : expected.entrySet()) {
+      counter.add(e.getKey(), null, e.getValue(), e.getValue());
+    }
+
+    Assert.assertFalse(counter.isApproximate());
+    Assert.assertTrue(counter.isTruncated());
+    Assert.assertEquals(50, counter.size());
+    Assert.assertEquals(100000, counter.getTotalRawCount());
+    Assert.assertEquals(maxUncounted, counter.getMaxUncountedRawCount());
+
+    counter.forEach(e -> {
+      Assert.assertEquals((int) expected.get(e.getIndex()), e.getRawCount());
+      Assert.assertEquals(0, e.getError());
+    });
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.collectors.undetermined;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UndeterminedReportWriterTest {
+
+  private static final List<String> COLUMN_NAMES =
+      Arrays.asList("Index", "PF cluster count", "Comment");
+  private static final List<String> COLUMN_TYPES =
+      Arrays.asList("string", "int", "string");
+
+  @Test
+  public void testLaneReport() throws IOException {
+
+    final Map<String, String> values = new HashMap<>();
+    values.put("sampleName", "lane1_undetermined");
+    values.put("RunId", "run<1>");
+
+    final StringWriter sw = new StringWriter();
+
+    try (UndeterminedReportWriter writer = new UndeterminedReportWriter(sw,
+        values, Arrays.asList("s1", "s2"), COLUMN_NAMES, COLUMN_TYPES)) {
+
+      writer.writeEntry("total", Arrays.asList("Total", "1234567", ""));
+      writer.writeEntry("s1", Arrays.asList("ACGT", "NA", "s1"));
+    }
+
+    final String html = sw.toString();
+
+    Assert.assertTrue(html.startsWith("<!DOCTYPE html>"));
+    Assert.assertTrue(html.trim().endsWith("</html>"));
+    Assert.assertTrue(
+        html.contains("<title>lane1_undetermined Recovery clusters</title>"));
+    Assert.assertTrue(html.contains("<b>Run Id: </b>run&lt;1&gt;</li>"));
+    Assert.assertFalse(html.contains("for project"));
+    Assert.assertFalse(html.contains("${"));
+
+    // Filters of the rows
+    Assert.assertTrue(html.contains("filterRow([&#39;s1&#39;], this);\">s1<"));
+    Assert.assertTrue(html.contains(
+        "filterRow([&#39;s1&#39;,&#39;s2&#39;], this);\">All samples<"));
+
+    // Table
+    final int header = html.indexOf("<tr class=\"headerColumns\"><th>Index"
+        + "</th><th>PF cluster count</th><th>Comment</th></tr>");
+    final int total = html.indexOf("<tr class=\"total\"><td>Total</td>"
+        + "<td>1 234 567</td><td></td></tr>");
+    final int entry = html.indexOf(
+        "<tr class=\"s1\"><td>ACGT</td><td>NA</td><td>s1</td></tr>");
+    final int end = html.indexOf("</table>\n</div>\n<!-- end report -->");
+
+    Assert.assertTrue(header > 0);
+    Assert.assertTrue(total > header);
+    Assert.assertTrue(entry > total);
+    Assert.assertTrue(end > entry);
+  }
+
+  @Test
+  public void testSampleReport() throws IOException {
+
+    final Map<String, String> values = new HashMap<>();
+    values.put("sampleName", "sample1");
+    values.put("projectName", "project1");
+
+    final StringWriter sw = new StringWriter();
+
+    new UndeterminedReportWriter(sw, values, Collections.emptyList(),
+        COLUMN_NAMES, COLUMN_TYPES).close();
+
+    final String html = sw.toString();
+
+    Assert.assertTrue(html.contains("for project project1"));
+    Assert.assertTrue(html.contains("<b>Project : </b>project1</li>"));
+    Assert.assertFalse(html.contains("<div id=\"filterSample\">"));
+    Assert.assertTrue(html.contains("<table id=\"data\">\n"
+        + "<tr class=\"headerColumns\">"));
+  }
+
+  @Test
+  public void testInvalidEntry() throws IOException {
+
+    final StringWriter sw = new StringWriter();
+
+    try (UndeterminedReportWriter writer = new UndeterminedReportWriter(sw,
+        new HashMap<>(), Collections.emptyList(), COLUMN_NAMES,
+        COLUMN_TYPES)) {
+
+      writer.writeEntry("entry", Arrays.asList("ACGT", "1"));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testFormatInteger() {
+
+    Assert.assertEquals("0", UndeterminedReportWriter.formatInteger("0"));
+    Assert.assertEquals("999", UndeterminedReportWriter.formatInteger("999"));
+    Assert.assertEquals("1 000",
+        UndeterminedReportWriter.formatInteger("1000"));
+    Assert.assertEquals("12 345 678",
+        UndeterminedReportWriter.formatInteger("12345678"));
+    Assert.assertEquals("NA", UndeterminedReportWriter.formatInteger("NA"));
+  }
+
+}
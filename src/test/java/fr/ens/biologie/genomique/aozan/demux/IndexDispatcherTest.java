@@ -0,0 +1,106 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import static fr.ens.biologie.genomique.aozan.demux.IndexDispatcher.NO_OUTPUT;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexDispatcherTest {
+
+  @Test
+  public void testSingleIndexes() {
+
+    final IndexDispatcher dispatcher = new IndexDispatcher(
+        Arrays.asList("ACGTAC", "TTGGCC", "AC.TTT"), new int[] {0, 1, 0}, 1);
+
+    Assert.assertFalse(dispatcher.isDualIndexes());
+    Assert.assertEquals(1, dispatcher.getMaxMismatches());
+
+    // Exact matches
+    Assert.assertEquals(0, dispatcher.dispatch("ACGTAC"));
+    Assert.assertEquals(1, dispatcher.dispatch("TTGGCC"));
+    Assert.assertEquals(0, dispatcher.dispatch("ACATTT"));
+    Assert.assertEquals(0, dispatcher.dispatch("ACGTTT"));
+
+    // Mismatches
+    Assert.assertEquals(0, dispatcher.dispatch("ACGTAA"));
+    Assert.assertEquals(1, dispatcher.dispatch("TTGGCA"));
+    Assert.assertEquals(0, dispatcher.dispatch("ACNTAC"));
+    Assert.assertEquals(NO_OUTPUT, dispatcher.dispatch("TCGATT"));
+    Assert.assertEquals(NO_OUTPUT, dispatcher.dispatch("AAAAAA"));
+    Assert.assertEquals(NO_OUTPUT, dispatcher.dispatch("ACGTACG"));
+
+    // The second index of the reads is ignored
+    Assert.assertEquals(1, dispatcher.dispatch("TTGGCC+AAAAAA"));
+
+    // Index in the name of the read
+    Assert.assertEquals(0,
+        dispatcher.dispatchRead("M01:1:FC:1:1101:1000:2000 1:N:0:ACGTAC"));
+  }
+
+  @Test
+  public void testDualIndexes() {
+
+    final IndexDispatcher dispatcher =
+        new IndexDispatcher(Arrays.asList("ACGTAC+GGTTAA", "ACGTAC+CCTTAA"),
+            new int[] {0, 1}, 2);
+
+    Assert.assertTrue(dispatcher.isDualIndexes());
+
+    Assert.assertEquals(0, dispatcher.dispatch("ACGTAC+GGTTAA"));
+    Assert.assertEquals(1, dispatcher.dispatch("ACGTAC+CCTTAA"));
+    Assert.assertEquals(0, dispatcher.dispatch("ACGTTT+GGTTAA"));
+
+    // Ambiguous index
+    Assert.assertEquals(NO_OUTPUT, dispatcher.dispatch("ACGTAC+GCTTAA"));
+
+    // Missing second index
+    Assert.assertEquals(NO_OUTPUT, dispatcher.dispatch("ACGTAC"));
+  }
+
+  @Test
+  public void testMixedIndexes() {
+
+    try {
+      new IndexDispatcher(Arrays.asList("ACGTAC", "ACGTAC+CCTTAA"),
+          new int[] {0, 1}, 0);
+      Assert.fail("Single and dual indexes cannot be mixed");
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testMismatches() {
+
+    Assert.assertEquals(0, IndexDispatcher.mismatches("AC.T", "ACGT"));
+    Assert.assertEquals(1, IndexDispatcher.mismatches("AC.T", "TCGT"));
+    Assert.assertEquals(-1, IndexDispatcher.mismatches("AC.T", "ACGTA"));
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.demux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrderedBatchWriterTest {
+
+  private static final class ListWriter
+      implements OrderedBatchWriter.EntryWriter<Integer> {
+
+    private final List<Integer> entries =
+        Collections.synchronizedList(new ArrayList<>());
+    private final int failingEntry;
+    private boolean closed;
+
+    @Override
+    public void write(final Integer entry) throws IOException {
+
+      if (entry == this.failingEntry) {
+        throw new IOException("Cannot write entry " + entry);
+      }
+      this.entries.add(entry);
+    }
+
+    @Override
+    public void close() {
+      this.closed = true;
+    }
+
+    ListWriter(final int failingEntry) {
+      this.failingEntry = failingEntry;
+    }
+  }
+
+  private static List<List<Integer>> batches(final int first,
+      final int second) {
+
+    return Arrays.asList(Collections.singletonList(first),
+        Collections.singletonList(second));
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final ListWriter w1 = new ListWriter(Integer.MIN_VALUE);
+    final ListWriter w2 = new ListWriter(Integer.MIN_VALUE);
+
+    try {
+
+      try (OrderedBatchWriter<Integer> writer =
+          new OrderedBatchWriter<>(Arrays.asList(w1, w2), executor, 2)) {
+
+        for (int i = 0; i < 1000; i++) {
+          writer.write(batches(i, -i));
+        }
+        writer.write(Arrays.asList(Collections.<Integer> emptyList(),
+            Collections.singletonList(-1000)));
+        writer.await();
+      }
+
+      Assert.assertEquals(1000, w1.entries.size());
+      Assert.assertEquals(1001, w2.entries.size());
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(i, (int) w1.entries.get(i));
+        Assert.assertEquals(-i, (int) w2.entries.get(i));
+      }
+      Assert.assertTrue(w1.closed);
+      Assert.assertTrue(w2.closed);
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailingWriter() throws IOException {
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final ListWriter w1 = new ListWriter(10);
+    final ListWriter w2 = new ListWriter(Integer.MIN_VALUE);
+
+    try {
+
+      final OrderedBatchWriter<Integer> writer =
+          new OrderedBatchWriter<>(Arrays.asList(w1, w2), executor, 2);
+
+      // With only 2 permits, the writes would block if the permits of the
+      // batches chained after the failing write were not released
+      try {
+        for (int i = 0; i < 100000; i++) {
+          writer.write(batches(i, i));
+        }
+        Assert.fail("The failure of a writer must be reported");
+      } catch (IOException e) {
+        Assert.assertEquals("Cannot write entry 10", e.getMessage());
+      }
+
+      try {
+        writer.await();
+        Assert.fail("The failure of a writer must be reported");
+      } catch (IOException e) {
+        // Expected exception
+      }
+
+      writer.close();
+
+      Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+          w1.entries);
+      Assert.assertTrue(w1.closed);
+      Assert.assertTrue(w2.closed);
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+public class FastqScreenIndexCacheTest {
+
+  @Test
+  public void testCreateIndexKey() {
+
+    Assert.assertEquals("bowtie-1.2.3-abcdef",
+        FastqScreenIndexCache.createIndexKey("Bowtie", " 1.2.3 ", "ABCDEF"));
+    Assert.assertEquals("bowtie-unknown-abcdef",
+        FastqScreenIndexCache.createIndexKey("bowtie", null, "abcdef"));
+    Assert.assertEquals("bowtie2-2.3_beta-abcdef",
+        FastqScreenIndexCache.createIndexKey("bowtie2", "2.3/beta", "abcdef"));
+  }
+
+  @Test
+  public void testGetEntryKey() {
+
+    final String key = "bowtie-1.2.3-abcdef";
+
+    for (String suffix : new String[] {"", ".complete", ".complete.partial",
+        ".zip", ".partial.zip", ".partial", ".idx", ".partial.idx", ".bloom",
+        ".partial.bloom", ".txt", ".txt.partial"}) {
+      Assert.assertEquals(key, FastqScreenIndexCache.getEntryKey(key + suffix));
+    }
+  }
+
+  @Test
+  public void testGetChecksum() throws IOException, AozanException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+
+    try {
+
+      final File genome1 = new File(dir, "genome1.fasta");
+      final File genome2 = new File(dir, "genome2.fasta");
+      write(genome1, ">chr1\nACGTACGT\n");
+      write(genome2, ">chr1\nACGTACGT\n");
+
+      final FastqScreenIndexCache cache = newCache(dir);
+      final String checksum = cache.getChecksum(genome1);
+
+      // Same content, same checksum
+      Assert.assertEquals(checksum, cache.getChecksum(genome2));
+
+      // The checksum is saved in the cache directory
+      Assert.assertEquals(checksum, newCache(dir).getChecksum(genome1));
+
+      // A modified genome has a new checksum
+      write(genome1, ">chr1\nACGTACGA\n");
+      genome1.setLastModified(genome1.lastModified() + 2000);
+      Assert.assertNotEquals(checksum, newCache(dir).getChecksum(genome1));
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testLockEntry() throws IOException, AozanException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+
+    try {
+
+      final FastqScreenIndexCache cache = newCache(dir);
+      final File lockFile = new File(dir, "locks/key.lock");
+
+      try (FileLock lock = cache.lockEntry("key")) {
+
+        Assert.assertTrue(lock.isValid());
+        Assert.assertTrue(lockFile.isFile());
+
+        // The entry cannot be locked again while the lock is held
+        try (FileChannel channel =
+            new RandomAccessFile(lockFile, "rw").getChannel()) {
+          channel.tryLock();
+          Assert.fail("The entry must be locked");
+        } catch (OverlappingFileLockException e) {
+          // Expected exception
+        }
+      }
+
+      // The lock can be acquired once released
+      try (FileLock lock = cache.lockEntry("key")) {
+        Assert.assertTrue(lock.isValid());
+      }
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testUnpackIndex() throws IOException, AozanException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+
+    try {
+
+      final FastqScreenIndexCache cache = newCache(dir);
+      final File archive = new File(dir, "index.zip");
+      createArchive(archive, "genome.1.ebwt", "genome.2.ebwt");
+
+      final File indexDir = cache.unpackIndex(archive, "key");
+      final File completeFile = new File(dir, "indexes/key.complete");
+
+      Assert.assertEquals(new File(dir, "indexes/key"), indexDir);
+      Assert.assertTrue(new File(indexDir, "genome.1.ebwt").isFile());
+      Assert.assertTrue(new File(indexDir, "genome.2.ebwt").isFile());
+      Assert.assertTrue(completeFile.isFile());
+      Assert.assertFalse(new File(dir, "indexes/key.partial").exists());
+
+      // A complete index is not unpacked again
+      final File extraFile = new File(indexDir, "genome.1.ebwt");
+      final long lastModified = extraFile.lastModified() - 10000;
+      extraFile.setLastModified(lastModified);
+      cache.unpackIndex(archive, "key");
+      Assert.assertEquals(lastModified, extraFile.lastModified());
+
+      // An index with a missing file is unpacked again
+      Files.delete(new File(indexDir, "genome.2.ebwt").toPath());
+      cache.unpackIndex(archive, "key");
+      Assert.assertTrue(new File(indexDir, "genome.2.ebwt").isFile());
+
+      // An index without marker is unpacked again
+      Files.delete(completeFile.toPath());
+      write(new File(indexDir, "garbage"), "garbage");
+      cache.unpackIndex(archive, "key");
+      Assert.assertFalse(new File(indexDir, "garbage").exists());
+      Assert.assertTrue(completeFile.isFile());
+
+      // An empty archive is not marked as complete
+      final File emptyArchive = new File(dir, "empty.zip");
+      createArchive(emptyArchive);
+      try {
+        cache.unpackIndex(emptyArchive, "empty");
+        Assert.fail("An empty archive must throw an exception");
+      } catch (IOException e) {
+        // Expected exception
+      }
+      Assert.assertFalse(new File(dir, "indexes/empty.complete").exists());
+      Assert.assertFalse(new File(dir, "indexes/empty").exists());
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testEvict() throws IOException, AozanException {
+
+    final File dir = Files.createTempDirectory("cache").toFile();
+
+    try {
+
+      final FastqScreenIndexCache cache = newCache(dir);
+      final File archive = new File(dir, "index.zip");
+      createArchive(archive, "genome.1.ebwt");
+
+      cache.unpackIndex(archive, "old");
+      cache.unpackIndex(archive, "new");
+
+      final File oldArchive = new File(dir, "archives/old.zip");
+      final File newArchive = new File(dir, "archives/new.zip");
+      final File partialDesc = new File(dir, "descs/old.txt.partial");
+      write(oldArchive, "archive");
+      write(newArchive, "archive");
+      write(partialDesc, "desc");
+
+      final long oldDate =
+          System.currentTimeMillis() - TimeUnit.DAYS.toMillis(10);
+      for (File f : new File[] {new File(dir, "indexes/old.complete"),
+          oldArchive, partialDesc}) {
+        f.setLastModified(oldDate);
+      }
+
+      Assert.assertEquals(3, cache.evict(TimeUnit.DAYS.toMillis(5)));
+
+      Assert.assertFalse(new File(dir, "indexes/old.complete").exists());
+      Assert.assertFalse(new File(dir, "indexes/old").exists());
+      Assert.assertFalse(oldArchive.exists());
+      Assert.assertFalse(partialDesc.exists());
+
+      Assert.assertTrue(new File(dir, "indexes/new.complete").exists());
+      Assert.assertTrue(new File(dir, "indexes/new").isDirectory());
+      Assert.assertTrue(newArchive.exists());
+
+      // A used index is not evicted
+      new File(dir, "indexes/new.complete").setLastModified(oldDate);
+      cache.unpackIndex(archive, "new");
+      Assert.assertEquals(0, cache.evict(TimeUnit.DAYS.toMillis(5)));
+
+      try {
+        cache.evict(-1);
+        Assert.fail("A negative age must throw an exception");
+      } catch (IllegalArgumentException e) {
+        // Expected exception
+      }
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  private static FastqScreenIndexCache newCache(final File dir)
+      throws AozanException {
+
+    return new FastqScreenIndexCache(dir, dir);
+  }
+
+  private static void write(final File file, final String content)
+      throws IOException {
+
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void createArchive(final File file, final String... entries)
+      throws IOException {
+
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(entry.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static void delete(final File dir) throws IOException {
+
+    final List<Path> paths;
+    try (Stream<Path> stream = Files.walk(dir.toPath())) {
+      paths = stream.sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList());
+    }
+
+    for (Path p : paths) {
+      Files.delete(p);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+
+public class FastqScreenKmerClassifierTest {
+
+  private static final int READ_LENGTH = 100;
+
+  private static String randomSequence(final Random random, final int length) {
+
+    final char[] bases = {'A', 'C', 'G', 'T'};
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(bases[random.nextInt(4)]);
+    }
+
+    return sb.toString();
+  }
+
+  private static File buildIndex(final String sequence, final File dir,
+      final String name) throws IOException {
+
+    final File indexFile = new File(dir, name + ".idx");
+    final String fasta = ">" + name + "\n" + sequence + "\n";
+
+    MinimizerIndex.build(
+        new ByteArrayInputStream(fasta.getBytes(StandardCharsets.US_ASCII)),
+        indexFile, MinimizerSketcher.DEFAULT_K, MinimizerSketcher.DEFAULT_W,
+        dir);
+
+    return indexFile;
+  }
+
+  private static void writeFastq(final File file, final List<String> reads)
+      throws IOException {
+
+    OutputStream os = new FileOutputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      os = new GZIPOutputStream(os);
+    }
+
+    try (Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+
+      final char[] quality = new char[READ_LENGTH];
+      Arrays.fill(quality, 'I');
+
+      for (int i = 0; i < reads.size(); i++) {
+        writer.write("@read" + i + "\n" + reads.get(i) + "\n+\n");
+        writer.write(quality);
+        writer.write('\n');
+      }
+    }
+  }
+
+  private static List<String> reads(final Random random, final String genome,
+      final int count) {
+
+    final List<String> result = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final int start = random.nextInt(genome.length() - READ_LENGTH);
+      result.add(genome.substring(start, start + READ_LENGTH));
+    }
+
+    return result;
+  }
+
+  @Test
+  public void testClassify() throws IOException, AozanException {
+
+    final Random random = new Random(0);
+    final String genome1 = randomSequence(random, 20000);
+    final String genome2 = randomSequence(random, 20000);
+
+    final List<String> reads1 = new ArrayList<>();
+    reads1.addAll(reads(random, genome1, 30));
+    reads1.addAll(reads(random, genome2, 20));
+    for (int i = 0; i < 10; i++) {
+      reads1.add(randomSequence(random, READ_LENGTH));
+    }
+
+    final List<String> reads2 = reads(random, genome1, reads1.size());
+
+    final File dir = Files.createTempDirectory("classifier").toFile();
+    final File index1File = buildIndex(genome1, dir, "genome1");
+    final File index2File = buildIndex(genome2, dir, "genome2");
+    final File fastq = new File(dir, "reads_R1.fastq");
+    final File fastqGz = new File(dir, "reads_R1.fastq.gz");
+    final File fastq2Gz = new File(dir, "reads_R2.fastq.gz");
+
+    final List<String> genomes = Arrays.asList("genome1", "genome2");
+
+    try (MinimizerIndex index1 = new MinimizerIndex(index1File);
+        MinimizerIndex index2 = new MinimizerIndex(index2File)) {
+
+      writeFastq(fastq, reads1);
+      writeFastq(fastqGz, reads1);
+      writeFastq(fastq2Gz, reads2);
+
+      final List<MinimizerIndex> indexes = Arrays.asList(index1, index2);
+      final FastqScreenKmerClassifier classifier =
+          new FastqScreenKmerClassifier(0.5, 2);
+
+      final FastqScreenResult result =
+          classifier.classify(fastq, null, genomes, indexes, "genome1");
+      Assert.assertEquals(60, result.getCountReadsProcessed());
+      Assert.assertEquals(50, result.getCountReadsMapped());
+
+      // The compressed FASTQ files give the same result
+      final FastqScreenResult resultGz =
+          classifier.classify(fastqGz, null, genomes, indexes, "genome1");
+      Assert.assertEquals(60, resultGz.getCountReadsProcessed());
+      Assert.assertEquals(50, resultGz.getCountReadsMapped());
+      Assert.assertEquals(result.createRundata("sample").getMap(),
+          resultGz.createRundata("sample").getMap());
+
+      // The second reads of the pairs all come from the first genome
+      final FastqScreenResult resultPaired =
+          classifier.classify(fastqGz, fastq2Gz, genomes, indexes, "genome1");
+      Assert.assertEquals(60, resultPaired.getCountReadsProcessed());
+
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+}
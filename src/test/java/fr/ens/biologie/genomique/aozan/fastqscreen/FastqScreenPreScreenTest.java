@@ -0,0 +1,172 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.RunData;
+
+public class FastqScreenPreScreenTest {
+
+  private static final int READ_LENGTH = 100;
+
+  private static String randomSequence(final Random random, final int length) {
+
+    final char[] bases = {'A', 'C', 'G', 'T'};
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(bases[random.nextInt(4)]);
+    }
+
+    return sb.toString();
+  }
+
+  private static BloomFilter<Long> createFilter(final String sequence) {
+
+    final BloomFilter<Long> result =
+        BloomFilter.create(Funnels.longFunnel(), sequence.length(), 0.001);
+    new MinimizerSketcher(MinimizerSketcher.DEFAULT_K,
+        MinimizerSketcher.DEFAULT_W, result::put).add(sequence);
+
+    return result;
+  }
+
+  /**
+   * Write a compressed FASTQ file with reads of a genome and random reads.
+   */
+  private static void writeFastq(final File file, final Random random,
+      final String genome, final int genomeReads, final int randomReads)
+      throws IOException {
+
+    try (Writer writer = new OutputStreamWriter(
+        new GZIPOutputStream(new FileOutputStream(file)),
+        StandardCharsets.UTF_8)) {
+
+      for (int i = 0; i < genomeReads + randomReads; i++) {
+
+        final String sequence;
+        if (i < genomeReads) {
+          final int start = random.nextInt(genome.length() - READ_LENGTH);
+          sequence = genome.substring(start, start + READ_LENGTH);
+        } else {
+          sequence = randomSequence(random, READ_LENGTH);
+        }
+
+        final char[] quality = new char[READ_LENGTH];
+        Arrays.fill(quality, 'I');
+        writer.write("@read" + i + "\n" + sequence + "\n+\n");
+        writer.write(quality);
+        writer.write('\n');
+      }
+    }
+  }
+
+  @Test
+  public void testSelectGenomes() throws IOException {
+
+    final Random random = new Random(0);
+    final String contaminant = randomSequence(random, 20000);
+    final String absent = randomSequence(random, 20000);
+    final String sample = randomSequence(random, 20000);
+
+    final Map<String, BloomFilter<Long>> filters = new HashMap<>();
+    filters.put("contaminant", createFilter(contaminant));
+    filters.put("absent", createFilter(absent));
+    filters.put("sample", createFilter(sample));
+
+    final List<String> genomes =
+        Arrays.asList("sample", "absent", "contaminant", "nofilter");
+
+    final File dir = Files.createTempDirectory("prescreen").toFile();
+    final File fastq = new File(dir, "reads.fastq.gz");
+
+    try {
+
+      // 10% of the reads come from the contaminant genome
+      writeFastq(fastq, random, contaminant, 10, 90);
+
+      final FastqScreenPreScreen preScreen = new FastqScreenPreScreen(0.05);
+      List<String> result =
+          preScreen.selectGenomes(fastq, genomes, "sample", filters::get);
+
+      // The genome of the sample and the genomes without filter are kept
+      Assert.assertEquals(Arrays.asList("sample", "contaminant", "nofilter"),
+          result);
+      Assert.assertEquals(Collections.singletonList("absent"),
+          preScreen.getSkippedGenomes());
+      Assert.assertEquals(100, preScreen.getReadCount());
+
+      // The contaminant is skipped with a higher threshold
+      final FastqScreenPreScreen strictPreScreen =
+          new FastqScreenPreScreen(0.2);
+      result =
+          strictPreScreen.selectGenomes(fastq, genomes, "sample", filters::get);
+
+      Assert.assertEquals(Arrays.asList("sample", "nofilter"), result);
+      Assert.assertEquals(Arrays.asList("absent", "contaminant"),
+          strictPreScreen.getSkippedGenomes());
+
+    } finally {
+      fastq.delete();
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testSkippedKey() throws AozanException {
+
+    final FastqScreenResult result = new FastqScreenResult("bowtie");
+    result.addGenome("sample", "sample");
+    result.addSkippedGenome("absent", "sample");
+    result.countHitPerGenome("sample", true, true, 80);
+    result.countPercentValue(80, 100);
+
+    final RunData data = result.createRundata("fastqscreen.sample1");
+
+    // Only the skipped genomes are flagged
+    Assert.assertTrue(data.getBoolean("fastqscreen.sample1.absent.skipped"));
+    Assert.assertFalse(data.contains("fastqscreen.sample1.sample.skipped"));
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastqScreenSAMParserTest {
+
+  private static final String HEADER =
+      "@HD\tVN:1.0\tSO:unsorted\n@SQ\tSN:chr1\tLN:1000\n";
+
+  @Test
+  public void testSingleEnd() throws IOException {
+
+    final String sam = HEADER
+        + "read1\t0\tchr1\t10\t42\t4M\t*\t0\t0\tACGT\tIIII\n"
+        + "read2\t4\t*\t0\t0\t*\t*\t0\t0\tACGT\tIIII\n"
+        + "read3\t0\tchr1\t10\t1\t4M\t*\t0\t0\tACGT\tIIII\n"
+        + "read3\t256\tchr1\t50\t1\t4M\t*\t0\t0\tACGT\tIIII\n"
+        + "read4\t16\tchr1\t20\t42\t4M\t*\t0\t0\tACGT\tIIII";
+
+    final Result result = parse(sam, false);
+
+    Assert.assertEquals(4, result.readsProcessed);
+    Assert.assertEquals(Arrays.asList("read1\t1hg19", "read3\t2hg19",
+        "read4\t1hg19"), result.lines);
+  }
+
+  @Test
+  public void testPairedEnd() throws IOException {
+
+    final String sam = HEADER
+
+        // Pair with the two mates mapped
+        + "pair1\t99\tchr1\t10\t42\t4M\t=\t60\t54\tACGT\tIIII\n"
+        + "pair1\t147\tchr1\t60\t42\t4M\t=\t10\t-54\tACGT\tIIII\n"
+
+        // Pair with only one mate mapped
+        + "pair2\t73\tchr1\t10\t42\t4M\t=\t10\t0\tACGT\tIIII\n"
+        + "pair2\t133\tchr1\t10\t0\t*\t=\t10\t0\tACGT\tIIII\n"
+
+        // Unmapped pair
+        + "pair3\t77\t*\t0\t0\t*\t*\t0\t0\tACGT\tIIII\n"
+        + "pair3\t141\t*\t0\t0\t*\t*\t0\t0\tACGT\tIIII\n"
+
+        // Pair mapped on two locations
+        + "pair4\t99\tchr1\t10\t1\t4M\t=\t60\t54\tACGT\tIIII\n"
+        + "pair4\t147\tchr1\t60\t1\t4M\t=\t10\t-54\tACGT\tIIII\n"
+        + "pair4\t355\tchr1\t110\t1\t4M\t=\t160\t54\tACGT\tIIII\n"
+        + "pair4\t403\tchr1\t160\t1\t4M\t=\t110\t-54\tACGT\tIIII\n";
+
+    final Result result = parse(sam, true);
+
+    Assert.assertEquals(4, result.readsProcessed);
+    Assert.assertEquals(Arrays.asList("pair1\t1hg19", "pair4\t2hg19"),
+        result.lines);
+  }
+
+  @Test
+  public void testNoAlignment() throws IOException {
+
+    final Result result = parse(HEADER, true);
+
+    Assert.assertEquals(0, result.readsProcessed);
+    Assert.assertEquals(0, result.lines.size());
+  }
+
+  private static final class Result {
+
+    private final int readsProcessed;
+    private final List<String> lines;
+
+    private Result(final int readsProcessed, final List<String> lines) {
+      this.readsProcessed = readsProcessed;
+      this.lines = lines;
+    }
+  }
+
+  private static Result parse(final String sam, final boolean pairedMode)
+      throws IOException {
+
+    final File outputFile = File.createTempFile("fastqscreen", ".txt");
+
+    try {
+
+      final FastqScreenSAMParser parser =
+          new FastqScreenSAMParser(outputFile, "hg19", pairedMode, null);
+      parser.parseLines(
+          new ByteArrayInputStream(sam.getBytes(StandardCharsets.UTF_8)));
+
+      return new Result(parser.getReadsprocessed(),
+          Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8));
+
+    } finally {
+      outputFile.delete();
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.fastqscreen;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MinimizerIndexTest {
+
+  private static String randomSequence(final Random random, final int length) {
+
+    final char[] bases = {'A', 'C', 'G', 'T'};
+    final StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(bases[random.nextInt(4)]);
+    }
+
+    return sb.toString();
+  }
+
+  private static String reverseComplement(final String sequence) {
+
+    final StringBuilder sb = new StringBuilder(sequence.length());
+    for (int i = sequence.length() - 1; i >= 0; i--) {
+      switch (sequence.charAt(i)) {
+      case 'A':
+        sb.append('T');
+        break;
+      case 'C':
+        sb.append('G');
+        break;
+      case 'G':
+        sb.append('C');
+        break;
+      default:
+        sb.append('A');
+        break;
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static List<Long> sketch(final String sequence) {
+
+    final List<Long> result = new ArrayList<>();
+    final MinimizerSketcher sketcher = new MinimizerSketcher(
+        MinimizerSketcher.DEFAULT_K, MinimizerSketcher.DEFAULT_W, result::add);
+    sketcher.add(sequence);
+
+    return result;
+  }
+
+  @Test
+  public void testSketcher() {
+
+    final String sequence = randomSequence(new Random(0), 1000);
+
+    final List<Long> forward = sketch(sequence);
+    final List<Long> reverse = sketch(reverseComplement(sequence));
+
+    Assert.assertFalse(forward.isEmpty());
+
+    // Canonical k-mers: a sequence and its reverse complement share their
+    // minimizers
+    Assert.assertTrue(reverse.containsAll(forward));
+    Assert.assertTrue(forward.containsAll(reverse));
+
+    // Sequences shorter than a k-mer have no minimizer
+    Assert.assertTrue(sketch("ACGT").isEmpty());
+    Assert.assertTrue(sketch("ACGTACGTACGTNACGTACGTACGT").isEmpty());
+  }
+
+  @Test
+  public void testIndex() throws IOException {
+
+    final Random random = new Random(1);
+    final String chr1 = randomSequence(random, 5000);
+    final String repeat = randomSequence(random, 200);
+    final String chr2 = repeat + randomSequence(random, 3000) + repeat;
+
+    final String fasta = ">chr1\n"
+        + chr1.substring(0, 2500) + '\n' + chr1.substring(2500) + '\n'
+        + ">chr2 description\n" + chr2 + '\n';
+
+    final File tmpDir = Files.createTempDirectory("minimizers").toFile();
+    final File indexFile = new File(tmpDir, "genome.idx");
+
+    try {
+
+      MinimizerIndex.build(
+          new ByteArrayInputStream(fasta.getBytes(StandardCharsets.US_ASCII)),
+          indexFile, MinimizerSketcher.DEFAULT_K, MinimizerSketcher.DEFAULT_W,
+          tmpDir);
+
+      try (MinimizerIndex index = new MinimizerIndex(indexFile)) {
+
+        Assert.assertEquals(MinimizerSketcher.DEFAULT_K, index.getK());
+        Assert.assertEquals(MinimizerSketcher.DEFAULT_W, index.getW());
+        Assert.assertTrue(index.size() > 0);
+
+        // Reads from the genome are found
+        for (long h : sketch(reverseComplement(chr1.substring(1000, 1100)))) {
+          Assert.assertNotEquals(MinimizerIndex.ABSENT, index.lookup(h));
+        }
+
+        // Reads from a repeat are found several times
+        for (long h : sketch(repeat)) {
+          Assert.assertEquals(MinimizerIndex.REPEATED, index.lookup(h));
+        }
+
+        // Random reads are not found
+        int found = 0;
+        final List<Long> hashes = sketch(randomSequence(random, 100));
+        for (long h : hashes) {
+          if (index.lookup(h) != MinimizerIndex.ABSENT) {
+            found++;
+          }
+        }
+        Assert.assertTrue(found < hashes.size() / 2);
+      }
+
+    } finally {
+      indexFile.delete();
+      tmpDir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.history;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.RunData;
+import fr.ens.biologie.genomique.aozan.history.MetricsStore.Query;
+
+public class MetricsStoreTest {
+
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testGetMetricName() {
+
+    Assert.assertEquals("reads.read1.lane.prc.align",
+        MetricsStore.getMetricName("reads.read1.lane3.prc.align"));
+    Assert.assertEquals("demux.lane.sample.read1.pf.cluster.count",
+        MetricsStore
+            .getMetricName("demux.lane2.sample12.read1.pf.cluster.count"));
+    Assert.assertEquals("projectstats.project.raw.cluster.sum",
+        MetricsStore.getMetricName("projectstats.project1.raw.cluster.sum"));
+    Assert.assertEquals("reads.read1.lane.err.rate.35",
+        MetricsStore.getMetricName("reads.read1.lane1.err.rate.35"));
+  }
+
+  @Test
+  public void testQuery() throws IOException {
+
+    final File dir = Files.createTempDirectory("metrics").toFile();
+
+    try {
+
+      final MetricsStore store = new MetricsStore(dir);
+      store.add("run1", createRunData("SNL110", 80.0));
+      store.add("run2", createRunData("SNL110", 90.0));
+      store.add("run3", createRunData("NB500", 70.0));
+
+      Assert.assertEquals(Arrays.asList("NB500", "SNL110"),
+          store.getInstruments());
+      Assert.assertEquals(Arrays.asList("run1", "run2"),
+          store.getRunIds("SNL110"));
+
+      // All the lanes
+      final String metric = "reads.read1.lane.prc.align";
+      Assert.assertArrayEquals(new double[] {80.0, 81.0, 90.0, 91.0},
+          store.getValues(new Query("SNL110", metric)), DELTA);
+
+      // A lane
+      Assert.assertArrayEquals(new double[] {81.0, 91.0},
+          store.getValues(new Query("SNL110", metric).lane(2)), DELTA);
+
+      // The last run
+      Assert.assertArrayEquals(new double[] {90.0, 91.0},
+          store.getValues(new Query("SNL110", metric).lastRuns(1)), DELTA);
+
+      // Exclude a run
+      Assert.assertArrayEquals(new double[] {80.0, 81.0}, store
+          .getValues(new Query("SNL110", metric).excludeRun("run2")), DELTA);
+
+      // Samples and projects
+      final String sampleMetric = "demux.sample.read1.pf.cluster.count";
+      Assert.assertArrayEquals(new double[] {1000.0, 1000.0},
+          store.getValues(new Query("SNL110", sampleMetric).sample("S1")),
+          DELTA);
+      Assert.assertArrayEquals(new double[] {2000.0, 2000.0},
+          store.getValues(new Query("SNL110", sampleMetric).lane(2)), DELTA);
+      Assert.assertArrayEquals(new double[] {2000.0, 2000.0},
+          store.getValues(new Query("SNL110", sampleMetric).project("P2")),
+          DELTA);
+      Assert.assertEquals(0,
+          store.getValues(new Query("SNL110", sampleMetric).project("P3"))
+              .length);
+
+      // Unknown metric and instrument
+      Assert.assertEquals(0,
+          store.getValues(new Query("SNL110", "unknown")).length);
+      Assert.assertEquals(0, store.getValues(new Query("HWI", metric)).length);
+
+      // Ignored keys
+      Assert.assertEquals(0, store
+          .getValues(new Query("SNL110", "run.info.read.count")).length);
+      Assert.assertEquals(0,
+          store.getValues(new Query("SNL110", "reads.read1.type")).length);
+
+      // Statistics and baseline
+      Assert.assertEquals(85.5,
+          store.getStatistics(new Query("SNL110", metric)).getMean(), DELTA);
+      Assert.assertEquals(85.5,
+          store.getBaseline(new Query("SNL110", metric)).getMedian(), DELTA);
+      Assert.assertEquals(80.5, store.getBaseline(
+          new Query("SNL110", metric).excludeRun("run2").lastRuns(1))
+          .getMedian(), DELTA);
+
+      // Add again a run, the previous block of the run is removed
+      final File file = new File(dir, "SNL110.metrics");
+      final long length = file.length();
+      store.add("run1", createRunData("SNL110", 60.0));
+      Assert.assertEquals(length, file.length());
+      Assert.assertEquals(Arrays.asList("run2", "run1"),
+          store.getRunIds("SNL110"));
+      Assert.assertArrayEquals(new double[] {90.0, 91.0, 60.0, 61.0},
+          store.getValues(new Query("SNL110", metric)), DELTA);
+
+      // Another store reads the same files
+      final MetricsStore store2 = new MetricsStore(dir);
+      Assert.assertArrayEquals(new double[] {90.0, 91.0, 60.0, 61.0},
+          store2.getValues(new Query("SNL110", metric)), DELTA);
+
+      // The blocks added by another store are read
+      store2.add("run4", createRunData("SNL110", 50.0));
+      Assert.assertArrayEquals(new double[] {60.0, 61.0, 50.0, 51.0},
+          store.getValues(new Query("SNL110", metric).lastRuns(2)), DELTA);
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testIncompleteBlock() throws IOException {
+
+    final File dir = Files.createTempDirectory("metrics").toFile();
+
+    try {
+
+      final MetricsStore store = new MetricsStore(dir);
+      store.add("run1", createRunData("SNL110", 80.0));
+
+      // Block of an interrupted write
+      try (OutputStream out =
+          new FileOutputStream(new File(dir, "SNL110.metrics"), true)) {
+        out.write(new byte[] {0x41, 0x51, 0x4d, 0x31, 0, 0, 1, 0, 1, 2});
+      }
+
+      final String metric = "reads.read1.lane.prc.align";
+      Assert.assertArrayEquals(new double[] {80.0, 81.0},
+          new MetricsStore(dir).getValues(new Query("SNL110", metric)),
+          DELTA);
+
+      store.add("run2", createRunData("SNL110", 90.0));
+      Assert.assertArrayEquals(new double[] {80.0, 81.0, 90.0, 91.0},
+          new MetricsStore(dir).getValues(new Query("SNL110", metric)),
+          DELTA);
+
+      // Invalid block
+      try (OutputStream out =
+          new FileOutputStream(new File(dir, "SNL110.metrics"), true)) {
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+      }
+
+      try {
+        new MetricsStore(dir).getValues(new Query("SNL110", metric));
+        Assert.fail("An invalid block must throw an exception");
+      } catch (IOException e) {
+        // Expected exception
+      }
+
+    } finally {
+      delete(dir);
+    }
+  }
+
+  private static RunData createRunData(final String instrument,
+      final double align) {
+
+    final RunData data = new RunData();
+    data.put("run.info.instrument", instrument);
+    data.put("run.info.read.count", 2);
+    data.put("reads.read1.type", "false");
+    data.put("reads.read1.lane1.prc.align", align);
+    data.put("reads.read1.lane2.prc.align", align + 1);
+
+    data.put("samplesheet.project1.name", "P1");
+    data.put("samplesheet.project2.name", "P2");
+    data.put("samplesheet.sample1.id", "S1");
+    data.put("samplesheet.sample1.lane", 1);
+    data.put("samplesheet.sample1.project", "P1");
+    data.put("samplesheet.sample2.id", "S2");
+    data.put("samplesheet.sample2.lane", 2);
+    data.put("samplesheet.sample2.project", "P2");
+    data.put("demux.sample1.read1.pf.cluster.count", 1000);
+    data.put("demux.sample2.read1.pf.cluster.count", 2000);
+
+    return data;
+  }
+
+  private static void delete(final File dir) {
+
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantilesTest {
+
+  @Test
+  public void testMedian() {
+
+    Assert.assertTrue(Double.isNaN(Quantiles.median(new double[0], 0)));
+    Assert.assertEquals(3.0, Quantiles.median(new double[] {3}, 1), 0.0);
+    Assert.assertEquals(2.0, Quantiles.median(new double[] {3, 1, 2}, 3), 0.0);
+    Assert.assertEquals(2.5, Quantiles.median(new double[] {4, 1, 3, 2}, 4),
+        0.0);
+
+    // Only the first values are used
+    Assert.assertEquals(2.0,
+        Quantiles.median(new double[] {3, 1, 2, 100, 100}, 3), 0.0);
+
+    // Duplicated values
+    Assert.assertEquals(5.0,
+        Quantiles.median(new double[] {5, 5, 5, 5, 1, 9}, 6), 0.0);
+  }
+
+  @Test
+  public void testSameResultsAsStatisticsUtils() {
+
+    final Random random = new Random(0);
+    final double[] buffer = new double[1001];
+
+    for (int length : new int[] {1, 2, 10, 101, 1000, 1001}) {
+
+      final StatisticsUtils expected = new StatisticsUtils();
+      for (int i = 0; i < length; i++) {
+        buffer[i] = random.nextInt(50);
+        expected.addValues(buffer[i]);
+      }
+
+      Assert.assertEquals(expected.getMediane(),
+          Quantiles.median(buffer, length), 0.0);
+    }
+  }
+
+  @Test
+  public void testQuantile() {
+
+    final Random random = new Random(1);
+    final double[] values = new double[999];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble();
+    }
+
+    final double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    Assert.assertEquals(sorted[0], Quantiles.quantile(values, 999, 0.0001),
+        0.0);
+    Assert.assertEquals(sorted[249], Quantiles.quantile(values, 999, 0.25),
+        0.0);
+    Assert.assertEquals(sorted[998], Quantiles.quantile(values, 999, 1.0),
+        0.0);
+
+    try {
+      Quantiles.quantile(values, 999, 0.0);
+      Assert.fail("p must be greater than 0");
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testP2Quantile() {
+
+    final P2Quantile median = new P2Quantile(0.5);
+    Assert.assertTrue(Double.isNaN(median.getQuantile()));
+
+    // Exact with less than 5 values
+    median.add(3);
+    median.add(1);
+    median.add(2);
+    Assert.assertEquals(2.0, median.getQuantile(), 0.0);
+
+    final Random random = new Random(2);
+    final P2Quantile q90 = new P2Quantile(0.9);
+    median.clear();
+
+    for (int i = 0; i < 100000; i++) {
+      final double value = random.nextDouble() * 100;
+      median.add(value);
+      q90.add(value);
+    }
+
+    Assert.assertEquals(100000, median.getCount());
+    Assert.assertEquals(50.0, median.getQuantile(), 1.0);
+    Assert.assertEquals(90.0, q90.getQuantile(), 1.0);
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RobustZScoreTest {
+
+  @Test
+  public void testMedianAndMAD() {
+
+    final double[] values = {1, 2, 3, 4, 100, Double.NaN};
+    final RobustZScore z = RobustZScore.of(values);
+
+    // NaN values are ignored
+    Assert.assertEquals(5, z.getCount());
+    Assert.assertEquals(3.0, z.getMedian(), 0.0);
+    Assert.assertEquals(1.0, z.getMedianAbsoluteDeviation(), 0.0);
+    Assert.assertEquals(1.0 / 0.6745, z.getStandardDeviation(), 1e-10);
+
+    // The array is not modified
+    Assert.assertEquals(100.0, values[4], 0.0);
+
+    // Only the first values are used
+    Assert.assertEquals(2.0, RobustZScore.of(values, 3).getMedian(), 0.0);
+  }
+
+  @Test
+  public void testZScore() {
+
+    final RobustZScore z = RobustZScore.of(1, 2, 3, 4, 100);
+
+    Assert.assertEquals(0.0, z.zScore(3), 0.0);
+    Assert.assertEquals(0.6745, z.zScore(4), 1e-10);
+    Assert.assertEquals(-0.6745, z.zScore(2), 1e-10);
+    Assert.assertTrue(Double.isNaN(z.zScore(Double.NaN)));
+
+    // The outlier does not change the median and the MAD
+    Assert.assertTrue(z.isOutlier(100, RobustZScore.DEFAULT_THRESHOLD));
+    Assert.assertFalse(z.isOutlier(4, RobustZScore.DEFAULT_THRESHOLD));
+  }
+
+  @Test
+  public void testNullMAD() {
+
+    // More than half of the values are equal, the mean absolute deviation is
+    // used
+    final RobustZScore z = RobustZScore.of(5, 5, 5, 5, 6);
+    Assert.assertEquals(0.0, z.getMedianAbsoluteDeviation(), 0.0);
+    Assert.assertEquals(1.253314 * 0.2, z.getStandardDeviation(), 1e-10);
+    Assert.assertEquals(1.0 / (1.253314 * 0.2), z.zScore(6), 1e-10);
+
+    // All the values are equal
+    final RobustZScore same = RobustZScore.of(5, 5, 5);
+    Assert.assertEquals(0.0, same.zScore(5), 0.0);
+    Assert.assertEquals(Double.POSITIVE_INFINITY, same.zScore(6), 0.0);
+    Assert.assertEquals(Double.NEGATIVE_INFINITY, same.zScore(4), 0.0);
+  }
+
+  @Test
+  public void testEmpty() {
+
+    final RobustZScore z = RobustZScore.of(Double.NaN);
+
+    Assert.assertEquals(0, z.getCount());
+    Assert.assertTrue(Double.isNaN(z.getMedian()));
+    Assert.assertTrue(Double.isNaN(z.zScore(1)));
+    Assert.assertFalse(z.isOutlier(1, RobustZScore.DEFAULT_THRESHOLD));
+  }
+
+}
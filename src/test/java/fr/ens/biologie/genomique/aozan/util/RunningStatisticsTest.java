@@ -0,0 +1,128 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RunningStatisticsTest {
+
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testEmpty() {
+
+    final RunningStatistics stats = new RunningStatistics();
+
+    Assert.assertEquals(0, stats.getCount());
+    Assert.assertTrue(Double.isNaN(stats.getMean()));
+    Assert.assertTrue(Double.isNaN(stats.getStandardDeviation()));
+    Assert.assertTrue(Double.isNaN(stats.getMin()));
+    Assert.assertTrue(Double.isNaN(stats.getMax()));
+    Assert.assertEquals(0.0, stats.getSum(), 0.0);
+
+    stats.add(42.0);
+    Assert.assertEquals(42.0, stats.getMean(), 0.0);
+    Assert.assertEquals(0.0, stats.getStandardDeviation(), 0.0);
+  }
+
+  @Test
+  public void testStatistics() {
+
+    final RunningStatistics stats =
+        RunningStatistics.of(new double[] {2, 4, 4, 4, 5, 5, 7, 9});
+
+    Assert.assertEquals(8, stats.getCount());
+    Assert.assertEquals(5.0, stats.getMean(), DELTA);
+    Assert.assertEquals(40.0, stats.getSum(), DELTA);
+    Assert.assertEquals(2.0, stats.getMin(), 0.0);
+    Assert.assertEquals(9.0, stats.getMax(), 0.0);
+    Assert.assertEquals(2.0, stats.getStandardDeviation(), DELTA);
+    Assert.assertEquals(Math.sqrt(32.0 / 7.0),
+        stats.getStandardDeviation(true), DELTA);
+
+    // Infinite values are ignored
+    stats.add(Double.POSITIVE_INFINITY);
+    stats.add(Double.NEGATIVE_INFINITY);
+    Assert.assertEquals(8, stats.getCount());
+    Assert.assertEquals(5.0, stats.getMean(), DELTA);
+
+    stats.clear();
+    Assert.assertEquals(0, stats.getCount());
+    Assert.assertTrue(Double.isNaN(stats.getMean()));
+  }
+
+  @Test
+  public void testSameResultsAsStatisticsUtils() {
+
+    final Random random = new Random(0);
+    final RunningStatistics stats = new RunningStatistics();
+    final StatisticsUtils expected = new StatisticsUtils();
+
+    for (int i = 0; i < 1000; i++) {
+      final double value = 1e6 + random.nextGaussian() * 1e3;
+      stats.add(value);
+      expected.addValues(value);
+    }
+
+    Assert.assertEquals(expected.getMean(), stats.getMean(), 1e-6);
+    Assert.assertEquals(expected.getStandardDeviation(),
+        stats.getStandardDeviation(), 1e-6);
+    Assert.assertEquals(expected.getSum(), stats.getSum(), 1e-3);
+  }
+
+  @Test
+  public void testMerge() {
+
+    final Random random = new Random(1);
+    final RunningStatistics all = new RunningStatistics();
+    final RunningStatistics first = new RunningStatistics();
+    final RunningStatistics second = new RunningStatistics();
+
+    for (int i = 0; i < 500; i++) {
+      final double value = random.nextDouble() * 100;
+      all.add(value);
+      if (i < 123) {
+        first.add(value);
+      } else {
+        second.add(value);
+      }
+    }
+
+    final RunningStatistics merged = new RunningStatistics();
+    merged.merge(first);
+    merged.merge(second);
+    merged.merge(new RunningStatistics());
+
+    Assert.assertEquals(all.getCount(), merged.getCount());
+    Assert.assertEquals(all.getMean(), merged.getMean(), DELTA);
+    Assert.assertEquals(all.getStandardDeviation(),
+        merged.getStandardDeviation(), DELTA);
+    Assert.assertEquals(all.getMin(), merged.getMin(), 0.0);
+    Assert.assertEquals(all.getMax(), merged.getMax(), 0.0);
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *                  Aozan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 3 or later
+ * and CeCILL. This should be distributed with the code. If you
+ * do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/gpl-3.0-standalone.html
+ *      http://www.cecill.info/licences/Licence_CeCILL_V2-en.html
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École Normale Supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Aozan project and its aims,
+ * or to join the Aozan Google group, visit the home page at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/aozan
+ *
+ */
+
+package fr.ens.biologie.genomique.aozan.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.transform.Templates;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.aozan.AozanException;
+import fr.ens.biologie.genomique.aozan.Globals;
+
+public class XSLTemplatesCacheTest {
+
+  private static final String XSL =
+      "<xsl:stylesheet version=\"1.0\" "
+          + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+          + "<xsl:template match=\"/\">%s</xsl:template></xsl:stylesheet>";
+
+  @Test
+  public void testGet() throws IOException, AozanException {
+
+    final File file = File.createTempFile("xsltemplates", ".xsl");
+
+    try {
+      Files.write(file.toPath(),
+          String.format(XSL, "a").getBytes(StandardCharsets.UTF_8));
+
+      final Templates t1 = XSLTemplatesCache.get(file);
+      Assert.assertNotNull(t1);
+      Assert.assertSame(t1, XSLTemplatesCache.get(file));
+
+      // A modified stylesheet must be compiled again
+      Files.write(file.toPath(),
+          String.format(XSL, "abc").getBytes(StandardCharsets.UTF_8));
+      final Templates t2 = XSLTemplatesCache.get(file);
+      Assert.assertNotSame(t1, t2);
+      Assert.assertSame(t2, XSLTemplatesCache.get(file));
+
+    } finally {
+      file.delete();
+      XSLTemplatesCache.clear();
+    }
+  }
+
+  @Test
+  public void testGetResource() throws AozanException {
+
+    final String resource = Globals.EMBEDDED_QC_XSL;
+    final Templates t = XSLTemplatesCache.getResource(resource);
+    Assert.assertNotNull(t);
+    Assert.assertSame(t, XSLTemplatesCache.getResource(resource));
+
+    try {
+      XSLTemplatesCache.getResource("/META-INF/not-found.xsl");
+      Assert.fail("A missing resource must throw an exception");
+    } catch (AozanException e) {
+      // Expected exception
+    }
+
+    XSLTemplatesCache.clear();
+  }
+
+}